@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.account.api;
+
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.account.dao.AccountDao;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.events.BusInternalEvent.BusInternalEventType;
+import org.killbill.billing.util.broadcast.BroadcastListener;
+import org.killbill.billing.util.broadcast.BroadcastService;
+
+import com.google.inject.Inject;
+
+// Evicts the cached accounts when they are created or modified by another node (the bus events only reach the node which posted them)
+public class AccountCacheInvalidationListener {
+
+    private final BroadcastService broadcastService;
+    private final AccountDao accountDao;
+
+    // Account creations are broadcast with the external key, to drop any lookup of that key made before the account existed
+    private final BroadcastListener accountCreationListener = new BroadcastListener() {
+        @Override
+        public void onBroadcast(final String eventKey, @Nullable final Long tenantRecordId) {
+            accountDao.invalidateCachedAccount(null, eventKey, new InternalTenantContext(tenantRecordId, null));
+        }
+    };
+
+    // Account changes are broadcast with the account id
+    private final BroadcastListener accountChangeListener = new BroadcastListener() {
+        @Override
+        public void onBroadcast(final String eventKey, @Nullable final Long tenantRecordId) {
+            accountDao.invalidateCachedAccount(UUID.fromString(eventKey), null, new InternalTenantContext(tenantRecordId, null));
+        }
+    };
+
+    @Inject
+    public AccountCacheInvalidationListener(final BroadcastService broadcastService, final AccountDao accountDao) {
+        this.broadcastService = broadcastService;
+        this.accountDao = accountDao;
+    }
+
+    public void register() {
+        broadcastService.registerListener(BusInternalEventType.ACCOUNT_CREATE.name(), accountCreationListener);
+        broadcastService.registerListener(BusInternalEventType.ACCOUNT_CHANGE.name(), accountChangeListener);
+    }
+
+    public void unregister() {
+        broadcastService.unregisterListener(BusInternalEventType.ACCOUNT_CREATE.name(), accountCreationListener);
+        broadcastService.unregisterListener(BusInternalEventType.ACCOUNT_CHANGE.name(), accountChangeListener);
+    }
+}
@@ -14,15 +14,37 @@
  * under the License.
  */
 
+
 package org.killbill.billing.account.api;
 
+import org.killbill.billing.platform.api.LifecycleHandlerType;
+import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
+
+import com.google.inject.Inject;
+
 public class DefaultAccountService implements AccountService {
 
     private static final String ACCOUNT_SERVICE_NAME = "account-service";
 
+    private final AccountCacheInvalidationListener cacheInvalidationListener;
+
+    @Inject
+    public DefaultAccountService(final AccountCacheInvalidationListener cacheInvalidationListener) {
+        this.cacheInvalidationListener = cacheInvalidationListener;
+    }
+
     @Override
     public String getName() {
         return ACCOUNT_SERVICE_NAME;
     }
 
+    @LifecycleHandlerType(LifecycleLevel.INIT_SERVICE)
+    public void initialize() {
+        cacheInvalidationListener.register();
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
+    public void stop() {
+        cacheInvalidationListener.unregister();
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.account.api.user;
+
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.account.api.AccountCursorUserApi;
+import org.killbill.billing.account.api.DefaultAccount;
+import org.killbill.billing.account.dao.AccountDao;
+import org.killbill.billing.account.dao.AccountModelDao;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.entity.Pagination;
+import org.killbill.billing.util.entity.dao.DefaultPaginationHelper.SourcePaginationBuilder;
+
+import com.google.common.base.Function;
+import com.google.inject.Inject;
+
+import static org.killbill.billing.util.entity.dao.DefaultPaginationHelper.getEntityPaginationNoException;
+
+public class DefaultAccountCursorUserApi implements AccountCursorUserApi {
+
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final AccountDao accountDao;
+
+    @Inject
+    public DefaultAccountCursorUserApi(final InternalCallContextFactory internalCallContextFactory, final AccountDao accountDao) {
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.accountDao = accountDao;
+    }
+
+    @Override
+    public Pagination<Account> getAccounts(final Long recordIdCursor, final Long limit, final boolean withCount, final TenantContext context) {
+        return getEntityPaginationNoException(limit,
+                                              new SourcePaginationBuilder<AccountModelDao, AccountApiException>() {
+                                                  @Override
+                                                  public Pagination<AccountModelDao> build() {
+                                                      return accountDao.getByRecordIdCursor(recordIdCursor, limit, withCount, internalCallContextFactory.createInternalTenantContext(context));
+                                                  }
+                                              },
+                                              new Function<AccountModelDao, Account>() {
+                                                  @Override
+                                                  public Account apply(final AccountModelDao accountModelDao) {
+                                                      return new DefaultAccount(accountModelDao);
+                                                  }
+                                              }
+                                             );
+    }
+
+    @Override
+    public Pagination<Account> searchAccounts(final String searchKey, final Long recordIdCursor, final Long limit, final boolean withCount, final TenantContext context) {
+        return getEntityPaginationNoException(limit,
+                                              new SourcePaginationBuilder<AccountModelDao, AccountApiException>() {
+                                                  @Override
+                                                  public Pagination<AccountModelDao> build() {
+                                                      return accountDao.searchAccountsByRecordIdCursor(searchKey, recordIdCursor, limit, withCount, internalCallContextFactory.createInternalTenantContext(context));
+                                                  }
+                                              },
+                                              new Function<AccountModelDao, Account>() {
+                                                  @Override
+                                                  public Account apply(final AccountModelDao accountModelDao) {
+                                                      return new DefaultAccount(accountModelDao);
+                                                  }
+                                              }
+                                             );
+    }
+}
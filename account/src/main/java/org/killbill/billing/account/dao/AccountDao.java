@@ -19,6 +19,8 @@ package org.killbill.billing.account.dao;
 import java.util.List;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.callcontext.InternalCallContext;
@@ -32,6 +34,8 @@ public interface AccountDao extends EntityDao<AccountModelDao, Account, AccountA
 
     public Pagination<AccountModelDao> searchAccounts(String searchKey, Long offset, Long limit, InternalTenantContext context);
 
+    public Pagination<AccountModelDao> searchAccountsByRecordIdCursor(String searchKey, Long recordIdCursor, Long limit, boolean withCount, InternalTenantContext context);
+
     /**
      * @throws AccountApiException when externalKey is null
      */
@@ -50,4 +54,12 @@ public interface AccountDao extends EntityDao<AccountModelDao, Account, AccountA
     public void removeEmail(AccountEmailModelDao email, InternalCallContext context);
 
     public List<AccountEmailModelDao> getEmailsByAccountId(UUID accountId, InternalTenantContext context);
+
+    /**
+     * Evict the cached account, following a change made by this node or by another one
+     *
+     * @param accountId   the id of the account, if its entry needs to be evicted
+     * @param externalKey the external key of the account, if its mapping to the id needs to be evicted
+     */
+    public void invalidateCachedAccount(@Nullable UUID accountId, @Nullable String externalKey, InternalTenantContext context);
 }
@@ -99,6 +99,18 @@ public class AccountModelDao extends EntityModelDaoBase implements EntityModelDa
         this(UUID.randomUUID(), account);
     }
 
+    // Copy of an account shared through the account cache, which callers are then free to modify
+    public AccountModelDao(final AccountModelDao account) {
+        this(account.getId(), account.getCreatedDate(), account.getUpdatedDate(), account.getExternalKey(),
+             account.getEmail(), account.getName(), account.getFirstNameLength(), account.getCurrency(),
+             account.getBillingCycleDayLocal(), account.getPaymentMethodId(), account.getTimeZone(), account.getLocale(), account.getAddress1(), account.getAddress2(),
+             account.getCompanyName(), account.getCity(), account.getStateOrProvince(), account.getCountry(), account.getPostalCode(),
+             account.getPhone(), account.getMigrated(), account.getIsNotifiedForInvoices());
+        setRecordId(account.getRecordId());
+        setAccountRecordId(account.getAccountRecordId());
+        setTenantRecordId(account.getTenantRecordId());
+    }
+
     public String getExternalKey() {
         return externalKey;
     }
@@ -20,12 +20,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.skife.jdbi.v2.IDBI;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.killbill.billing.BillingExceptionBase;
 import org.killbill.billing.ErrorCode;
+import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.user.DefaultAccountChangeEvent;
@@ -39,8 +42,15 @@ import org.killbill.clock.Clock;
 import org.killbill.billing.entity.EntityPersistenceException;
 import org.killbill.billing.events.AccountChangeInternalEvent;
 import org.killbill.billing.events.AccountCreationInternalEvent;
+import org.killbill.billing.events.BusInternalEvent.BusInternalEventType;
 import org.killbill.billing.util.audit.ChangeType;
+import org.killbill.billing.util.broadcast.BroadcastModelDao;
+import org.killbill.billing.util.broadcast.BroadcastSqlDao;
+import org.killbill.billing.util.cache.AccountCacheLoader;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheLoaderArgument;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.Pagination;
@@ -57,8 +67,23 @@ public class DefaultAccountDao extends EntityDaoBase<AccountModelDao, Account, A
 
     private static final Logger log = LoggerFactory.getLogger(DefaultAccountDao.class);
 
+    private static final String EXTERNAL_KEY_CACHE_KEY_PREFIX = "key";
+
     private final PersistentBus eventBus;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final CacheControllerDispatcher cacheControllerDispatcher;
+
+    private final AccountCacheLoader.LoaderCallback accountLoaderCallback = new AccountCacheLoader.LoaderCallback() {
+        @Override
+        public Object loadAccount(final UUID accountId, final InternalTenantContext context) {
+            return DefaultAccountDao.super.getById(accountId, context);
+        }
+
+        @Override
+        public UUID loadAccountId(final String externalKey, final InternalTenantContext context) {
+            return getIdFromKeyFromDb(externalKey, context);
+        }
+    };
 
     @Inject
     public DefaultAccountDao(final IDBI dbi, final PersistentBus eventBus, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher,
@@ -66,6 +91,14 @@ public class DefaultAccountDao extends EntityDaoBase<AccountModelDao, Account, A
         super(new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, cacheControllerDispatcher, nonEntityDao), AccountSqlDao.class);
         this.eventBus = eventBus;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
+    }
+
+    @Override
+    public void create(final AccountModelDao entity, final InternalCallContext context) throws AccountApiException {
+        super.create(entity, context);
+        // Drop any lookup of that key made before the account existed
+        invalidateCachedAccount(entity.getId(), entity.getExternalKey(), context);
     }
 
     @Override
@@ -94,16 +127,39 @@ public class DefaultAccountDao extends EntityDaoBase<AccountModelDao, Account, A
         } catch (final EventBusException e) {
             log.warn("Failed to post account creation event for account " + savedAccount.getId(), e);
         }
+
+        if (savedAccount.getExternalKey() != null) {
+            broadcastInvalidation(BusInternalEventType.ACCOUNT_CREATE, savedAccount.getExternalKey(), entitySqlDaoWrapperFactory, context);
+        }
+    }
+
+    @Override
+    public AccountModelDao getById(final UUID id, final InternalTenantContext context) {
+        final CacheController<Object, Object> accountCache = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT);
+        if (accountCache == null) {
+            return super.getById(id, context);
+        }
+
+        final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(ObjectType.ACCOUNT, new Object[]{id, accountLoaderCallback}, context);
+        final AccountModelDao cachedAccount = (AccountModelDao) accountCache.get(getAccountCacheKey(id, context), cacheLoaderArgument);
+        // The cached instance is shared across callers: hand out a copy, so that it can't be modified
+        return cachedAccount == null ? null : new AccountModelDao(cachedAccount);
     }
 
     @Override
     public AccountModelDao getAccountByKey(final String key, final InternalTenantContext context) {
-        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<AccountModelDao>() {
-            @Override
-            public AccountModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
-                return entitySqlDaoWrapperFactory.become(AccountSqlDao.class).getAccountByKey(key, context);
-            }
-        });
+        if (cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT) == null) {
+            return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<AccountModelDao>() {
+                @Override
+                public AccountModelDao inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                    return entitySqlDaoWrapperFactory.become(AccountSqlDao.class).getAccountByKey(key, context);
+                }
+            });
+        }
+
+        // The external key of an account never changes: resolve the id first, so only the id entry needs to be invalidated on update
+        final UUID accountId = getIdFromKeyWithCache(key, context);
+        return accountId == null ? null : getById(accountId, context);
     }
 
     @Override
@@ -125,12 +181,46 @@ public class DefaultAccountDao extends EntityDaoBase<AccountModelDao, Account, A
                                               context);
     }
 
+    @Override
+    public Pagination<AccountModelDao> searchAccountsByRecordIdCursor(final String searchKey, final Long recordIdCursor, final Long limit, final boolean withCount, final InternalTenantContext context) {
+        return paginationHelper.getPaginationFromRecordIdCursor(AccountSqlDao.class,
+                                                                new PaginationIteratorBuilder<AccountModelDao, Account, AccountSqlDao>() {
+                                                                    @Override
+                                                                    public Long getCount(final AccountSqlDao accountSqlDao, final InternalTenantContext context) {
+                                                                        return accountSqlDao.getSearchCount(searchKey, String.format("%%%s%%", searchKey), context);
+                                                                    }
+
+                                                                    @Override
+                                                                    public Iterator<AccountModelDao> build(final AccountSqlDao accountSqlDao, final Long limit, final InternalTenantContext context) {
+                                                                        return accountSqlDao.searchByRecordIdCursor(searchKey, String.format("%%%s%%", searchKey), recordIdCursor, limit, context);
+                                                                    }
+                                                                },
+                                                                recordIdCursor,
+                                                                limit,
+                                                                withCount,
+                                                                context);
+    }
+
     @Override
     public UUID getIdFromKey(final String externalKey, final InternalTenantContext context) throws AccountApiException {
         if (externalKey == null) {
             throw new AccountApiException(ErrorCode.ACCOUNT_CANNOT_MAP_NULL_KEY, "");
         }
 
+        return getIdFromKeyWithCache(externalKey, context);
+    }
+
+    private UUID getIdFromKeyWithCache(final String externalKey, final InternalTenantContext context) {
+        final CacheController<Object, Object> accountCache = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT);
+        if (accountCache == null) {
+            return getIdFromKeyFromDb(externalKey, context);
+        }
+
+        final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(ObjectType.ACCOUNT, new Object[]{externalKey, accountLoaderCallback}, context);
+        return (UUID) accountCache.get(getExternalKeyCacheKey(externalKey, context), cacheLoaderArgument);
+    }
+
+    private UUID getIdFromKeyFromDb(final String externalKey, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<UUID>() {
             @Override
             public UUID inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
@@ -166,10 +256,12 @@ public class DefaultAccountDao extends EntityDaoBase<AccountModelDao, Account, A
                 } catch (final EventBusException e) {
                     log.warn("Failed to post account change event for account " + accountId, e);
                 }
+                broadcastInvalidation(BusInternalEventType.ACCOUNT_CHANGE, accountId.toString(), entitySqlDaoWrapperFactory, context);
 
                 return null;
             }
         });
+        invalidateCachedAccount(specifiedAccount.getId(), null, context);
     }
 
     @Override
@@ -205,9 +297,40 @@ public class DefaultAccountDao extends EntityDaoBase<AccountModelDao, Account, A
                 } catch (final EventBusException e) {
                     log.warn("Failed to post account change event for account " + accountId, e);
                 }
+                broadcastInvalidation(BusInternalEventType.ACCOUNT_CHANGE, accountId.toString(), entitySqlDaoWrapperFactory, context);
                 return null;
             }
         });
+        invalidateCachedAccount(accountId, null, context);
+    }
+
+    // The bus only delivers the account events to this node: the other nodes invalidate their own cache when they poll the broadcast (see AccountCacheInvalidationListener)
+    private void broadcastInvalidation(final BusInternalEventType eventType, final String eventKey, final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final InternalCallContext context) {
+        final BroadcastModelDao broadcast = new BroadcastModelDao(eventType.name(), eventKey, context.getTenantRecordId(), context.getCreatedDate());
+        entitySqlDaoWrapperFactory.transmogrify(BroadcastSqlDao.class).create(broadcast);
+    }
+
+    @Override
+    public void invalidateCachedAccount(@Nullable final UUID accountId, @Nullable final String externalKey, final InternalTenantContext context) {
+        final CacheController<Object, Object> accountCache = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT);
+        if (accountCache == null) {
+            return;
+        }
+
+        if (accountId != null) {
+            accountCache.remove(getAccountCacheKey(accountId, context));
+        }
+        if (externalKey != null) {
+            accountCache.remove(getExternalKeyCacheKey(externalKey, context));
+        }
+    }
+
+    private String getAccountCacheKey(final UUID accountId, final InternalTenantContext context) {
+        return context.getTenantRecordId() + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + accountId;
+    }
+
+    private String getExternalKeyCacheKey(final String externalKey, final InternalTenantContext context) {
+        return context.getTenantRecordId() + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + EXTERNAL_KEY_CACHE_KEY_PREFIX + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + externalKey;
     }
 
     @Override
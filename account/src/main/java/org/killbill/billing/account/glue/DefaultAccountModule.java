@@ -18,11 +18,13 @@
 
 package org.killbill.billing.account.glue;
 
+import org.killbill.billing.account.api.AccountCursorUserApi;
 import org.killbill.billing.account.api.AccountInternalApi;
 import org.killbill.billing.account.api.AccountService;
 import org.killbill.billing.account.api.AccountUserApi;
 import org.killbill.billing.account.api.DefaultAccountService;
 import org.killbill.billing.account.api.svcs.DefaultAccountInternalApi;
+import org.killbill.billing.account.api.user.DefaultAccountCursorUserApi;
 import org.killbill.billing.account.api.user.DefaultAccountUserApi;
 import org.killbill.billing.account.dao.AccountDao;
 import org.killbill.billing.account.dao.DefaultAccountDao;
@@ -48,6 +50,10 @@ public class DefaultAccountModule extends KillBillModule implements AccountModul
         bind(AccountUserApi.class).to(DefaultAccountUserApi.class).asEagerSingleton();
     }
 
+    protected void installAccountCursorUserApi() {
+        bind(AccountCursorUserApi.class).to(DefaultAccountCursorUserApi.class).asEagerSingleton();
+    }
+
     @Override
     public void installInternalApi() {
         bind(AccountInternalApi.class).to(DefaultAccountInternalApi.class).asEagerSingleton();
@@ -63,6 +69,7 @@ public class DefaultAccountModule extends KillBillModule implements AccountModul
         installAccountDao();
         installAccountService();
         installAccountUserApi();
+        installAccountCursorUserApi();
         installInternalApi();
     }
 }
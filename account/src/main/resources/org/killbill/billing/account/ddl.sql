@@ -66,6 +66,7 @@ CREATE TABLE account_history (
     tenant_record_id int(11) unsigned default null,
     PRIMARY KEY(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE INDEX account_history_id ON account_history(id);
 CREATE INDEX account_history_target_record_id ON account_history(target_record_id);
 CREATE INDEX account_history_tenant_record_id ON account_history(tenant_record_id);
 
@@ -105,5 +106,6 @@ CREATE TABLE account_email_history (
     tenant_record_id int(11) unsigned default null,
     PRIMARY KEY(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE INDEX account_email_history_id ON account_email_history(id);
 CREATE INDEX account_email_target_record_id ON account_email_history(target_record_id);
 CREATE INDEX account_email_history_tenant_account_record_id ON account_email_history(tenant_record_id, account_record_id);
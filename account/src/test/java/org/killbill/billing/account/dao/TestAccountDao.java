@@ -17,6 +17,7 @@
 package org.killbill.billing.account.dao;
 
 import java.sql.SQLException;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 
@@ -24,6 +25,7 @@ import org.joda.time.DateTimeZone;
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.AccountTestSuiteWithEmbeddedDB;
+import org.killbill.billing.account.api.AccountCacheInvalidationListener;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountData;
 import org.killbill.billing.account.api.AccountEmail;
@@ -32,6 +34,7 @@ import org.killbill.billing.account.api.DefaultAccountEmail;
 import org.killbill.billing.account.api.MutableAccountData;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.events.BusInternalEvent.BusInternalEventType;
 import org.killbill.billing.mock.MockAccountBuilder;
 import org.killbill.billing.util.api.AuditLevel;
 import org.killbill.billing.util.api.CustomFieldApiException;
@@ -40,6 +43,10 @@ import org.killbill.billing.util.api.TagDefinitionApiException;
 import org.killbill.billing.util.audit.AuditLog;
 import org.killbill.billing.util.audit.ChangeType;
 import org.killbill.billing.util.audit.DefaultAccountAuditLogs;
+import org.killbill.billing.util.broadcast.BroadcastListener;
+import org.killbill.billing.util.broadcast.BroadcastModelDao;
+import org.killbill.billing.util.broadcast.BroadcastService;
+import org.killbill.billing.util.broadcast.BroadcastSqlDao;
 import org.killbill.billing.util.customfield.CustomField;
 import org.killbill.billing.util.customfield.StringCustomField;
 import org.killbill.billing.util.customfield.dao.CustomFieldModelDao;
@@ -49,6 +56,9 @@ import org.killbill.billing.util.tag.DescriptiveTag;
 import org.killbill.billing.util.tag.Tag;
 import org.killbill.billing.util.tag.dao.TagDefinitionModelDao;
 import org.killbill.billing.util.tag.dao.TagModelDao;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.skife.jdbi.v2.Handle;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -85,6 +95,49 @@ public class TestAccountDao extends AccountTestSuiteWithEmbeddedDB {
         Assert.assertEquals(auditLogsForAccount.get(0).getChangeType(), ChangeType.INSERT);
     }
 
+    @Test(groups = "slow", description = "Test Account DAO: keyset pagination")
+    public void testGetByRecordIdCursor() throws AccountApiException {
+        final List<UUID> accountIds = new LinkedList<UUID>();
+        for (int i = 0; i < 5; i++) {
+            final AccountModelDao account = createTestAccount();
+            accountDao.create(account, internalCallContext);
+            accountIds.add(account.getId());
+        }
+
+        // Walk all accounts, 2 by 2
+        final List<UUID> retrievedAccountIds = new LinkedList<UUID>();
+        Long recordIdCursor = 0L;
+        int nbPages = 0;
+        while (recordIdCursor != null) {
+            final Pagination<AccountModelDao> page = accountDao.getByRecordIdCursor(recordIdCursor, 2L, false, internalCallContext);
+            Assert.assertEquals(page.getCurrentOffset(), recordIdCursor);
+            Assert.assertNull(page.getTotalNbRecords());
+            Assert.assertNull(page.getMaxNbRecords());
+            for (final AccountModelDao account : page) {
+                retrievedAccountIds.add(account.getId());
+            }
+            recordIdCursor = page.getNextOffset();
+            nbPages++;
+        }
+        Assert.assertEquals(nbPages, 3);
+        Assert.assertEquals(retrievedAccountIds, accountIds);
+
+        // Counts are computed on demand
+        final Pagination<AccountModelDao> firstPage = accountDao.getByRecordIdCursor(0L, 2L, true, internalCallContext);
+        Assert.assertEquals(firstPage.getTotalNbRecords(), (Long) 5L);
+        Assert.assertEquals(firstPage.getMaxNbRecords(), (Long) 5L);
+
+        // Search
+        final AccountModelDao account = accountDao.getById(accountIds.get(3), internalCallContext);
+        final Pagination<AccountModelDao> searchPage = accountDao.searchAccountsByRecordIdCursor(account.getExternalKey(), 0L, 2L, true, internalCallContext);
+        Assert.assertEquals(searchPage.getTotalNbRecords(), (Long) 1L);
+        Assert.assertNull(searchPage.getNextOffset());
+        final List<AccountModelDao> searchResults = ImmutableList.<AccountModelDao>copyOf(searchPage);
+        Assert.assertEquals(searchResults.size(), 1);
+        checkAccountsEqual(searchResults.get(0), account);
+        Assert.assertFalse(accountDao.searchAccountsByRecordIdCursor(account.getExternalKey(), account.getRecordId(), 2L, false, internalCallContext).iterator().hasNext());
+    }
+
     @Test(groups = "slow", description = "Test Account: verify audits")
     public void testAudits() throws AccountApiException {
         // Special test to verify audits - they are handled a bit differently due to the account record id (see EntitySqlDaoWrapperInvocationHandler#insertAudits)
@@ -239,6 +292,57 @@ public class TestAccountDao extends AccountTestSuiteWithEmbeddedDB {
         checkAccountsEqual(retrievedAccount, newAccount);
     }
 
+    @Test(groups = "slow", description = "Test Account DAO: cached accounts are invalidated on change")
+    public void testAccountCacheInvalidation() throws Exception {
+        final AccountModelDao account = createTestAccount();
+
+        // The lookup made before the account exists must not stick
+        Assert.assertNull(accountDao.getAccountByKey(account.getExternalKey(), internalCallContext));
+        accountDao.create(account, internalCallContext);
+        checkAccountsEqual(accountDao.getAccountByKey(account.getExternalKey(), internalCallContext), account);
+
+        // Callers get their own copy of the cached account
+        final AccountModelDao cachedAccount = accountDao.getById(account.getId(), internalCallContext);
+        Assert.assertNotSame(accountDao.getById(account.getId(), internalCallContext), cachedAccount);
+        cachedAccount.setName(UUID.randomUUID().toString().substring(0, 20));
+        Assert.assertEquals(accountDao.getById(account.getId(), internalCallContext).getName(), account.getName());
+
+        // Local updates are visible right away
+        final UUID newPaymentMethodId = UUID.randomUUID();
+        accountDao.updatePaymentMethod(account.getId(), newPaymentMethodId, internalCallContext);
+        Assert.assertEquals(accountDao.getById(account.getId(), internalCallContext).getPaymentMethodId(), newPaymentMethodId);
+
+        // ...and broadcast to the other nodes
+        final List<String> broadcastEventTypes = new LinkedList<String>();
+        for (final BroadcastModelDao broadcast : dbi.onDemand(BroadcastSqlDao.class).getEntriesCreatedAfter(clock.getUTCNow().minusDays(1))) {
+            if (account.getExternalKey().equals(broadcast.getEventKey()) || account.getId().toString().equals(broadcast.getEventKey())) {
+                broadcastEventTypes.add(broadcast.getEventType());
+            }
+        }
+        Assert.assertEquals(broadcastEventTypes, ImmutableList.<String>of(BusInternalEventType.ACCOUNT_CREATE.name(), BusInternalEventType.ACCOUNT_CHANGE.name()));
+
+        // Simulate a change made by another node: the stale entry is served until the broadcast is polled
+        final String newName = UUID.randomUUID().toString().substring(0, 20);
+        final Handle handle = dbi.open();
+        try {
+            handle.execute("update accounts set name = ? where id = ?", newName, account.getId().toString());
+        } finally {
+            handle.close();
+        }
+        final AccountModelDao staleAccount = accountDao.getById(account.getId(), internalCallContext);
+        Assert.assertEquals(staleAccount.getName(), account.getName());
+
+        final BroadcastService broadcastService = Mockito.mock(BroadcastService.class);
+        final AccountCacheInvalidationListener listener = new AccountCacheInvalidationListener(broadcastService, accountDao);
+        listener.register();
+        final ArgumentCaptor<BroadcastListener> accountChangeListener = ArgumentCaptor.forClass(BroadcastListener.class);
+        Mockito.verify(broadcastService).registerListener(Mockito.eq(BusInternalEventType.ACCOUNT_CHANGE.name()), accountChangeListener.capture());
+
+        accountChangeListener.getValue().onBroadcast(account.getId().toString(), internalCallContext.getTenantRecordId());
+        Assert.assertEquals(accountDao.getById(account.getId(), internalCallContext).getName(), newName);
+        Assert.assertEquals(accountDao.getAccountByKey(account.getExternalKey(), internalCallContext).getName(), newName);
+    }
+
     @Test(groups = "slow", description = "Test Account DAO: BCD of 0")
     public void testShouldBeAbleToHandleBCDOfZero() throws Exception {
         final AccountModelDao account = createTestAccount(0);
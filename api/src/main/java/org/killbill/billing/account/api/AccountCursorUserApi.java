@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.account.api;
+
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.entity.Pagination;
+
+/**
+ * Keyset (seek) pagination over the accounts of a tenant
+ * <p/>
+ * Contrary to the offset based <tt>AccountUserApi</tt> calls, the offsets of the returned pages are record_id cursors:
+ * the first page is retrieved with a cursor of 0 and each subsequent one with the <tt>getNextOffset()</tt> of the
+ * previous page (null once all accounts have been returned). The cost of a page doesn't depend on its position.
+ */
+public interface AccountCursorUserApi {
+
+    /**
+     * @param recordIdCursor the cursor (0 for the first page)
+     * @param limit          the maximum number of accounts to return
+     * @param withCount      whether to compute the total number of records (expensive on large tenants)
+     * @param context        tenant context
+     * @return the page of accounts
+     */
+    public Pagination<Account> getAccounts(Long recordIdCursor, Long limit, boolean withCount, TenantContext context);
+
+    /**
+     * @param searchKey      the search key
+     * @param recordIdCursor the cursor (0 for the first page)
+     * @param limit          the maximum number of accounts to return
+     * @param withCount      whether to compute the total number of matching records (expensive on large tenants)
+     * @param context        tenant context
+     * @return the page of matching accounts
+     */
+    public Pagination<Account> searchAccounts(String searchKey, Long recordIdCursor, Long limit, boolean withCount, TenantContext context);
+}
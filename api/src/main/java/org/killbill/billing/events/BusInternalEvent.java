@@ -41,6 +41,7 @@ public interface BusInternalEvent extends BusEvent {
         PAYMENT_PLUGIN_ERROR,
         PAYMENT_INFO,
         SUBSCRIPTION_TRANSITION,
+        TENANT_CONFIG_CHANGE,
         USER_TAGDEFINITION_CREATION,
         USER_TAGDEFINITION_DELETION,
         USER_TAG_CREATION,
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.invoice.api;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+public interface BulkInvoiceRun {
+
+    public UUID getId();
+
+    public LocalDate getTargetDate();
+
+    public DateTime getStartDate();
+
+    /**
+     * @return the date at which the last account was processed, null if the run is still in progress
+     */
+    public DateTime getEndDate();
+
+    /**
+     * @return the number of accounts scheduled so far (accounts are paged while the run is in progress)
+     */
+    public int getNbAccounts();
+
+    /**
+     * @return the number of accounts processed so far, including the ones which failed
+     */
+    public int getNbProcessedAccounts();
+
+    /**
+     * @return the number of accounts for which an invoice was generated
+     */
+    public int getNbInvoicedAccounts();
+
+    public int getNbFailedAccounts();
+
+    public List<UUID> getFailedAccountIds();
+
+    /**
+     * @return the number of accounts processed per second since the beginning of the run
+     */
+    public double getThroughput();
+
+    public boolean isCompleted();
+}
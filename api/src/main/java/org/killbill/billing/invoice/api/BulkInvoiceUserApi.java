@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.invoice.api;
+
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.TenantContext;
+
+public interface BulkInvoiceUserApi {
+
+    /**
+     * Trigger the invoice generation for many accounts at once
+     * <p/>
+     * The accounts are processed asynchronously on a bounded pool, each one exactly as an individual invoice generation
+     * (same account lock, transaction and bus events). A failure for a given account does not prevent the other accounts
+     * from being invoiced.
+     * <p/>
+     * The account ids are iterated in the background as the pool frees up, so they can be paged lazily.
+     *
+     * @param accountIds  the accounts to invoice
+     * @param targetDate  the target date, in the timezone of each account
+     * @param callContext call context
+     * @return the run, which is updated as the accounts are processed
+     */
+    public BulkInvoiceRun triggerInvoiceGeneration(Iterable<UUID> accountIds, LocalDate targetDate, CallContext callContext);
+
+    /**
+     * @param runId   the run id
+     * @param context tenant context
+     * @return the progress of that run, or null if it is unknown (runs are only kept in memory, for a limited time)
+     */
+    public BulkInvoiceRun getBulkInvoiceRun(UUID runId, TenantContext context);
+}
@@ -40,6 +40,11 @@ public interface InvoiceInternalApi {
 
     public BigDecimal getAccountBalance(UUID accountId, InternalTenantContext context);
 
+    /**
+     * @return a number which changes whenever the invoice items or payments of the account do, null if not tracked
+     */
+    public Long getAccountBalanceVersion(UUID accountId, InternalTenantContext context);
+
     public void notifyOfPayment(UUID invoiceId, BigDecimal amountOutstanding, Currency currency, Currency processedCurrency, UUID paymentId, DateTime paymentDate, InternalCallContext context) throws InvoiceApiException;
 
     public void notifyOfPayment(InvoicePayment invoicePayment, InternalCallContext context) throws InvoiceApiException;
@@ -40,6 +40,15 @@ public interface TagInternalApi {
      */
     public List<Tag> getTags(UUID objectId, ObjectType objectType, InternalTenantContext context);
 
+    /**
+     * Return all tags for the account of the context, regardless of the type of object they are attached to
+     *
+     * @param includedDeleted whether to return deleted tags as well
+     * @param context         call callcontext
+     * @return all tags for the account
+     */
+    public List<Tag> getTagsForAccount(boolean includedDeleted, InternalTenantContext context);
+
     public void addTag(final UUID objectId, final ObjectType objectType, UUID tagDefinitionId, InternalCallContext context) throws TagApiException;
 
     public void removeTag(final UUID objectId, final ObjectType objectType, final UUID tagDefinitionId, InternalCallContext context) throws TagApiException;
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage;
+
+import java.util.List;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.callcontext.InternalTenantContext;
+
+public interface UsageInternalApi {
+
+    /**
+     * Retrieve the usage for all the subscriptions of the account at once
+     *
+     * @param startDate start date (inclusive)
+     * @param endDate   end date (exclusive)
+     * @param context   tenant context, associated with the account
+     * @return the usage summed per subscription, unit type and day, ordered by record date
+     */
+    public List<RawUsage> getRawUsageForAccount(LocalDate startDate, LocalDate endDate, InternalTenantContext context);
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage.api;
+
+import java.util.List;
+
+import org.killbill.billing.util.callcontext.CallContext;
+
+public interface BulkUsageUserApi {
+
+    /**
+     * Record rolled-up usage for many subscriptions at once
+     * <p/>
+     * Each subscription is validated once and its usage rows are written using JDBC batches (one transaction per chunk).
+     * A failure for a given subscription does not prevent the usage of the other subscriptions from being recorded.
+     *
+     * @param records     the usage records, potentially for different subscriptions
+     * @param callContext call context
+     * @return one result per subscription usage record, in the same order as the input
+     */
+    public List<SubscriptionUsageRecordResult> recordRolledUpUsage(List<SubscriptionUsageRecord> records, CallContext callContext);
+}
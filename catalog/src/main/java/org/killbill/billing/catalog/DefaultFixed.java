@@ -16,6 +16,7 @@
 
 package org.killbill.billing.catalog;
 
+import java.io.Serializable;
 import java.net.URI;
 
 import javax.xml.bind.annotation.XmlAccessType;
@@ -31,7 +32,7 @@ import org.killbill.xmlloader.ValidatingConfig;
 import org.killbill.xmlloader.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public class DefaultFixed extends ValidatingConfig<StandaloneCatalog> implements Fixed {
+public class DefaultFixed extends ValidatingConfig<StandaloneCatalog> implements Fixed, Serializable {
 
 
     @XmlAttribute(required = false)
@@ -19,8 +19,11 @@ package org.killbill.billing.catalog;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.catalog.api.BillingPeriod;
@@ -32,14 +35,19 @@ import org.killbill.xmlloader.ValidatingConfig;
 import org.killbill.xmlloader.ValidationError;
 import org.killbill.xmlloader.ValidationErrors;
 
+import com.google.common.collect.ImmutableMap;
+
 @XmlAccessorType(XmlAccessType.NONE)
-public class DefaultPriceListSet extends ValidatingConfig<StandaloneCatalog> {
+public class DefaultPriceListSet extends ValidatingConfig<StandaloneCatalog> implements Serializable {
     @XmlElement(required = true, name = "defaultPriceList")
     private PriceListDefault defaultPricelist;
 
     @XmlElement(required = false, name = "childPriceList")
     private DefaultPriceList[] childPriceLists = new DefaultPriceList[0];
 
+    // Built on first lookup, once JAXB has populated the price lists
+    private transient volatile Map<String, DefaultPriceList> priceListsByName;
+
     public DefaultPriceListSet() {
         if (childPriceLists == null) {
             childPriceLists = new DefaultPriceList[0];
@@ -69,15 +77,28 @@ public class DefaultPriceListSet extends ValidatingConfig<StandaloneCatalog> {
         if (priceListName == null) {
             throw new CatalogApiException(ErrorCode.CAT_NULL_PRICE_LIST_NAME);
         }
-        if (defaultPricelist.getName().equals(priceListName)) {
-            return defaultPricelist;
+        final DefaultPriceList priceList = getPriceListsByName().get(priceListName);
+        if (priceList == null) {
+            throw new CatalogApiException(ErrorCode.CAT_PRICE_LIST_NOT_FOUND, priceListName);
         }
-        for (final DefaultPriceList pl : childPriceLists) {
-            if (pl.getName().equals(priceListName)) {
-                return pl;
+        return priceList;
+    }
+
+    private Map<String, DefaultPriceList> getPriceListsByName() {
+        Map<String, DefaultPriceList> indexedPriceLists = priceListsByName;
+        if (indexedPriceLists == null) {
+            // The default price list takes precedence, then the first child with a given name
+            final Map<String, DefaultPriceList> tmp = new HashMap<String, DefaultPriceList>();
+            tmp.put(defaultPricelist.getName(), defaultPricelist);
+            for (final DefaultPriceList pl : childPriceLists) {
+                if (pl.getName() != null && !tmp.containsKey(pl.getName())) {
+                    tmp.put(pl.getName(), pl);
+                }
             }
+            indexedPriceLists = ImmutableMap.<String, DefaultPriceList>copyOf(tmp);
+            priceListsByName = indexedPriceLists;
         }
-        throw new CatalogApiException(ErrorCode.CAT_PRICE_LIST_NOT_FOUND, priceListName);
+        return indexedPriceLists;
     }
 
     @Override
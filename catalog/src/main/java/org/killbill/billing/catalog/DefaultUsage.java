@@ -16,6 +16,7 @@
 
 package org.killbill.billing.catalog;
 
+import java.io.Serializable;
 import java.net.URI;
 
 import javax.xml.bind.annotation.XmlAccessType;
@@ -39,7 +40,7 @@ import org.killbill.xmlloader.ValidationError;
 import org.killbill.xmlloader.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public class DefaultUsage extends ValidatingConfig<StandaloneCatalog> implements Usage {
+public class DefaultUsage extends ValidatingConfig<StandaloneCatalog> implements Usage, Serializable {
 
     @XmlAttribute(required = true)
     @XmlID
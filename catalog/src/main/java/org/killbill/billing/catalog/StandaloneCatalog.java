@@ -16,10 +16,13 @@
 
 package org.killbill.billing.catalog;
 
+import java.io.Serializable;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 import javax.xml.bind.annotation.XmlAccessType;
@@ -51,9 +54,11 @@ import org.killbill.billing.catalog.rules.PlanRules;
 import org.killbill.xmlloader.ValidatingConfig;
 import org.killbill.xmlloader.ValidationErrors;
 
+import com.google.common.collect.ImmutableMap;
+
 @XmlRootElement(name = "catalog")
 @XmlAccessorType(XmlAccessType.NONE)
-public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> implements StaticCatalog {
+public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> implements StaticCatalog, Serializable {
     @XmlElement(required = true)
     private Date effectiveDate;
 
@@ -87,6 +92,9 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
     @XmlElement(name = "priceLists", required = true)
     private DefaultPriceListSet priceLists;
 
+    // Built when the catalog is initialized, or on the first lookup for catalogs assembled in code
+    private transient volatile NameIndexes nameIndexes;
+
     public StandaloneCatalog() {
     }
 
@@ -179,12 +187,11 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
         if (name == null || plans == null) {
             throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PLAN, name);
         }
-        for (final DefaultPlan p : plans) {
-            if (p.getName().equals(name)) {
-                return p;
-            }
+        final DefaultPlan plan = getNameIndexes().plans.get(name);
+        if (plan == null) {
+            throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PLAN, name);
         }
-        throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PLAN, name);
+        return plan;
     }
 
     @Override
@@ -192,12 +199,11 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
         if (name == null || products == null) {
             throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PRODUCT, name);
         }
-        for (final DefaultProduct p : products) {
-            if (p.getName().equals(name)) {
-                return p;
-            }
+        final DefaultProduct product = getNameIndexes().products.get(name);
+        if (product == null) {
+            throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PRODUCT, name);
         }
-        throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PRODUCT, name);
+        return product;
     }
 
     @Override
@@ -206,6 +212,12 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
             throw new CatalogApiException(ErrorCode.CAT_NO_SUCH_PHASE, name);
         }
 
+        final PlanPhase phase = getNameIndexes().phases.get(name);
+        if (phase != null) {
+            return phase;
+        }
+
+        // Not found: go through the plan to surface the right error
         final String planName = DefaultPlanPhase.planName(name);
         final Plan plan = findCurrentPlan(planName);
         return plan.findPhase(name);
@@ -280,7 +292,17 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
         for (final DefaultPlan p : plans) {
             p.initialize(catalog, sourceURI);
         }
+        nameIndexes = new NameIndexes(products, plans);
+    }
 
+    private NameIndexes getNameIndexes() {
+        NameIndexes indexes = nameIndexes;
+        if (indexes == null) {
+            // Benign race: concurrent callers would build equivalent indexes
+            indexes = new NameIndexes(products, plans);
+            nameIndexes = indexes;
+        }
+        return indexes;
     }
 
 
@@ -298,6 +320,7 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
     protected StandaloneCatalog setProducts(final DefaultProduct[] products) {
         this.products = products;
+        this.nameIndexes = null;
         return this;
     }
 
@@ -313,6 +336,7 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
     protected StandaloneCatalog setPlans(final DefaultPlan[] plans) {
         this.plans = plans;
+        this.nameIndexes = null;
         return this;
     }
 
@@ -398,4 +422,49 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
         return availBasePlans;
     }
+
+    // Immutable name lookups, the first entry wins on duplicate names (as the previous linear scans did)
+    private static final class NameIndexes {
+
+        private final Map<String, DefaultProduct> products;
+        private final Map<String, DefaultPlan> plans;
+        private final Map<String, PlanPhase> phases;
+
+        private NameIndexes(@Nullable final DefaultProduct[] products, @Nullable final DefaultPlan[] plans) {
+            final Map<String, DefaultProduct> productsByName = new HashMap<String, DefaultProduct>();
+            if (products != null) {
+                for (final DefaultProduct product : products) {
+                    if (product.getName() != null && !productsByName.containsKey(product.getName())) {
+                        productsByName.put(product.getName(), product);
+                    }
+                }
+            }
+
+            final Map<String, DefaultPlan> plansByName = new HashMap<String, DefaultPlan>();
+            final Map<String, PlanPhase> phasesByName = new HashMap<String, PlanPhase>();
+            if (plans != null) {
+                for (final DefaultPlan plan : plans) {
+                    if (plan.getName() == null || plansByName.containsKey(plan.getName())) {
+                        continue;
+                    }
+                    plansByName.put(plan.getName(), plan);
+
+                    for (final PlanPhase phase : plan.getAllPhases()) {
+                        if (phase == null || phase.getPhaseType() == null) {
+                            continue;
+                        }
+                        // Same name as PlanPhase#getName, without requiring the phase to be attached to its plan yet
+                        final String phaseName = DefaultPlanPhase.phaseName(plan.getName(), phase.getPhaseType());
+                        if (!phasesByName.containsKey(phaseName)) {
+                            phasesByName.put(phaseName, phase);
+                        }
+                    }
+                }
+            }
+
+            this.products = ImmutableMap.<String, DefaultProduct>copyOf(productsByName);
+            this.plans = ImmutableMap.<String, DefaultPlan>copyOf(plansByName);
+            this.phases = ImmutableMap.<String, PlanPhase>copyOf(phasesByName);
+        }
+    }
 }
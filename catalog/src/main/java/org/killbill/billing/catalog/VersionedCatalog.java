@@ -80,22 +80,29 @@ public class VersionedCatalog extends ValidatingConfig<StandaloneCatalog> implem
     }
 
     private List<StandaloneCatalog> versionsBeforeDate(final Date date) throws CatalogApiException {
-        final List<StandaloneCatalog> result = new ArrayList<StandaloneCatalog>();
         final int index = indexOfVersionForDate(date);
-        for (int i = 0; i <= index; i++) {
-            result.add(versions.get(i));
-        }
-        return result;
+        return versions.subList(0, index + 1);
     }
 
+    // Versions are sorted by effective date: binary search for the last version effective strictly before the date
     private int indexOfVersionForDate(final Date date) throws CatalogApiException {
-        for (int i = versions.size() - 1; i >= 0; i--) {
-            final StandaloneCatalog c = versions.get(i);
-            if (c.getEffectiveDate().getTime() < date.getTime()) {
-                return i;
+        final long time = date.getTime();
+        int low = 0;
+        int high = versions.size() - 1;
+        int result = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (versions.get(mid).getEffectiveDate().getTime() < time) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
             }
         }
-        throw new CatalogApiException(ErrorCode.CAT_NO_CATALOG_FOR_GIVEN_DATE, date.toString());
+        if (result < 0) {
+            throw new CatalogApiException(ErrorCode.CAT_NO_CATALOG_FOR_GIVEN_DATE, date.toString());
+        }
+        return result;
     }
 
     private class PlanRequestWrapper {
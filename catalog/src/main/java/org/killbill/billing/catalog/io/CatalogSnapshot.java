@@ -0,0 +1,228 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.catalog.StandaloneCatalog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+
+/**
+ * Serialized form of the validated catalog versions, to avoid going through the XML parsing and validation on startup.
+ * <p/>
+ * <p>The snapshot records a checksum of the XML files it was built from, and is ignored when they have changed since.
+ * It is also ignored when it cannot be read back, e.g. after an upgrade changed the catalog classes (they don't declare
+ * a serialVersionUID on purpose, so that any change invalidates existing snapshots), or when it references a class
+ * outside of the catalog object graph.
+ */
+public class CatalogSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSnapshot.class);
+
+    // Bumped when the layout of the file changes
+    private static final int FORMAT_VERSION = 1;
+
+    // Classes which can appear in the serialized catalogs: anything else is rejected before being instantiated
+    private static final Set<String> ALLOWED_PACKAGE_PREFIXES = ImmutableSet.<String>of("org.killbill.billing.catalog.",
+                                                                                     "org.killbill.xmlloader.");
+    private static final Set<String> ALLOWED_CLASSES = ImmutableSet.<String>of(String.class.getName(),
+                                                                            Boolean.class.getName(),
+                                                                            Integer.class.getName(),
+                                                                            Long.class.getName(),
+                                                                            Double.class.getName(),
+                                                                            Number.class.getName(),
+                                                                            Enum.class.getName(),
+                                                                            BigDecimal.class.getName(),
+                                                                            BigInteger.class.getName(),
+                                                                            URI.class.getName(),
+                                                                            Date.class.getName(),
+                                                                            ArrayList.class.getName(),
+                                                                            HashMap.class.getName(),
+                                                                            LinkedHashMap.class.getName(),
+                                                                            BitSet.class.getName());
+
+    private final File file;
+
+    public CatalogSnapshot(final File file) {
+        this.file = file;
+    }
+
+    public static String computeChecksum(final List<URI> xmlURIs) throws IOException {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        for (final URI xmlURI : xmlURIs) {
+            final byte[] content = Resources.toByteArray(xmlURI.toURL());
+            hasher.putInt(content.length);
+            hasher.putBytes(content);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * @return the catalog versions, or null if there is no usable snapshot for this checksum
+     */
+    @Nullable
+    public List<StandaloneCatalog> read(final String checksum) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        ObjectInputStream in = null;
+        try {
+            in = new CatalogObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION || !checksum.equals(in.readUTF())) {
+                log.info("Ignoring outdated catalog snapshot {}", file);
+                return null;
+            }
+
+            final int nbVersions = in.readInt();
+            final List<StandaloneCatalog> versions = new ArrayList<StandaloneCatalog>(nbVersions);
+            for (int i = 0; i < nbVersions; i++) {
+                versions.add((StandaloneCatalog) in.readObject());
+            }
+            return versions;
+        } catch (final Exception e) {
+            // Most likely a snapshot written by a different version
+            log.warn("Ignoring unreadable catalog snapshot " + file, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Failing to write the snapshot isn't fatal: the catalog will be loaded from the XML files again on the next startup.
+     */
+    public void write(final String checksum, final List<StandaloneCatalog> versions) {
+        // Write to a temporary file first, so that readers never see a partial snapshot
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(checksum);
+            out.writeInt(versions.size());
+            for (final StandaloneCatalog version : versions) {
+                out.writeObject(version);
+            }
+            out.close();
+            out = null;
+
+            if (!replaceWith(tmpFile)) {
+                log.warn("Unable to move the catalog snapshot to {}", file);
+                tmpFile.delete();
+            }
+        } catch (final IOException e) {
+            log.warn("Unable to write the catalog snapshot " + file, e);
+            tmpFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    // File#renameTo is a rename(2) on POSIX systems, which atomically replaces the snapshot. Where it refuses to
+    // replace an existing file (Windows), delete the old snapshot first: a reader in between finds no snapshot and
+    // parses the XML files, it never sees a partial one. java.nio.file isn't an option as we still build on Java 6.
+    private boolean replaceWith(final File tmpFile) {
+        if (tmpFile.renameTo(file)) {
+            return true;
+        }
+        return file.exists() && file.delete() && tmpFile.renameTo(file);
+    }
+
+    private static final class CatalogObjectInputStream extends ObjectInputStream {
+
+        private CatalogObjectInputStream(final InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "Unexpected class in the catalog snapshot");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("Unexpected proxy class in the catalog snapshot");
+        }
+
+        private static boolean isAllowed(final String className) {
+            // Arrays: check the component type, primitive ones (e.g. [J for BitSet) are fine
+            String componentName = className;
+            while (componentName.startsWith("[")) {
+                componentName = componentName.substring(1);
+            }
+            if (componentName.length() != className.length()) {
+                if (!componentName.startsWith("L")) {
+                    return true;
+                }
+                componentName = componentName.substring(1, componentName.length() - 1);
+            }
+
+            if (ALLOWED_CLASSES.contains(componentName)) {
+                return true;
+            }
+            for (final String prefix : ALLOWED_PACKAGE_PREFIXES) {
+                if (componentName.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static void closeQuietly(@Nullable final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (final IOException ignored) {
+        }
+    }
+}
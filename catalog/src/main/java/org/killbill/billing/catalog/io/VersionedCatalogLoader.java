@@ -16,17 +16,20 @@
 
 package org.killbill.billing.catalog.io;
 
+import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.Resources;
 import com.google.inject.Inject;
 import org.killbill.billing.catalog.StandaloneCatalog;
 import org.killbill.billing.catalog.VersionedCatalog;
 import org.killbill.billing.platform.api.KillbillService.ServiceException;
+import org.killbill.billing.util.config.CatalogConfig;
 import org.killbill.clock.Clock;
 import org.killbill.xmlloader.UriAccessor;
 import org.killbill.xmlloader.XMLLoader;
@@ -34,10 +37,12 @@ import org.killbill.xmlloader.XMLLoader;
 public class VersionedCatalogLoader implements ICatalogLoader {
     private static final Object PROTOCOL_FOR_FILE = "file";
     private final String XML_EXTENSION = ".xml";
+    private final CatalogConfig config;
     private final Clock clock;
 
     @Inject
-    public VersionedCatalogLoader(final Clock clock) {
+    public VersionedCatalogLoader(final CatalogConfig config, final Clock clock) {
+        this.config = config;
         this.clock = clock;
     }
 
@@ -70,18 +75,39 @@ public class VersionedCatalogLoader implements ICatalogLoader {
                 xmlURIs = findXmlReferences(directoryContents, new URL(uriString));
             }
 
-            final VersionedCatalog result = new VersionedCatalog(clock);
-            for (final URI u : xmlURIs) {
-                final StandaloneCatalog catalog = XMLLoader.getObjectFromUri(u, StandaloneCatalog.class);
-                result.add(catalog);
+            final String snapshotPath = config.getCatalogSnapshotPath();
+            if (snapshotPath == null) {
+                return loadFromXML(xmlURIs);
             }
 
+            final CatalogSnapshot snapshot = new CatalogSnapshot(new File(snapshotPath));
+            final String checksum = CatalogSnapshot.computeChecksum(xmlURIs);
+            final List<StandaloneCatalog> versions = snapshot.read(checksum);
+            if (versions != null) {
+                final VersionedCatalog result = new VersionedCatalog(clock);
+                for (final StandaloneCatalog catalog : versions) {
+                    result.add(catalog);
+                }
+                return result;
+            }
+
+            final VersionedCatalog result = loadFromXML(xmlURIs);
+            snapshot.write(checksum, ImmutableList.<StandaloneCatalog>copyOf(result.iterator()));
             return result;
         } catch (Exception e) {
             throw new ServiceException("Problem encountered loading catalog", e);
         }
     }
 
+    private VersionedCatalog loadFromXML(final List<URI> xmlURIs) throws Exception {
+        final VersionedCatalog result = new VersionedCatalog(clock);
+        for (final URI u : xmlURIs) {
+            final StandaloneCatalog catalog = XMLLoader.getObjectFromUri(u, StandaloneCatalog.class);
+            result.add(catalog);
+        }
+        return result;
+    }
+
     protected List<URI> findXmlReferences(final String directoryContents, final URL url) throws URISyntaxException {
         if (url.getProtocol().equals(PROTOCOL_FOR_FILE)) {
             return findXmlFileReferences(directoryContents, url);
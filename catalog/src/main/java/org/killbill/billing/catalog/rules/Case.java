@@ -16,6 +16,7 @@
 
 package org.killbill.billing.catalog.rules;
 
+import java.io.Serializable;
 
 import org.killbill.billing.catalog.DefaultPriceList;
 import org.killbill.billing.catalog.DefaultProduct;
@@ -27,7 +28,7 @@ import org.killbill.billing.catalog.api.ProductCategory;
 import org.killbill.xmlloader.ValidatingConfig;
 import org.killbill.xmlloader.ValidationErrors;
 
-public abstract class Case<T> extends ValidatingConfig<StandaloneCatalog> {
+public abstract class Case<T> extends ValidatingConfig<StandaloneCatalog> implements Serializable {
 
     protected abstract T getResult();
 
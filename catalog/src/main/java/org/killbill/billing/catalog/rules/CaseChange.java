@@ -16,6 +16,8 @@
 
 package org.killbill.billing.catalog.rules;
 
+import java.io.Serializable;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
@@ -34,7 +36,7 @@ import org.killbill.xmlloader.ValidatingConfig;
 import org.killbill.xmlloader.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public abstract class CaseChange<T> extends ValidatingConfig<StandaloneCatalog> {
+public abstract class CaseChange<T> extends ValidatingConfig<StandaloneCatalog> implements Serializable {
 
     @XmlElement(required = false)
     private PhaseType phaseType;
@@ -106,6 +108,42 @@ public abstract class CaseChange<T> extends ValidatingConfig<StandaloneCatalog>
         return errors;
     }
 
+    public PhaseType getPhaseType() {
+        return phaseType;
+    }
+
+    public DefaultProduct getFromProduct() {
+        return fromProduct;
+    }
+
+    public ProductCategory getFromProductCategory() {
+        return fromProductCategory;
+    }
+
+    public BillingPeriod getFromBillingPeriod() {
+        return fromBillingPeriod;
+    }
+
+    public DefaultPriceList getFromPriceList() {
+        return fromPriceList;
+    }
+
+    public DefaultProduct getToProduct() {
+        return toProduct;
+    }
+
+    public ProductCategory getToProductCategory() {
+        return toProductCategory;
+    }
+
+    public BillingPeriod getToBillingPeriod() {
+        return toBillingPeriod;
+    }
+
+    public DefaultPriceList getToPriceList() {
+        return toPriceList;
+    }
+
     protected CaseChange<T> setPhaseType(final PhaseType phaseType) {
         this.phaseType = phaseType;
         return this;
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog.rules;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.catalog.StandaloneCatalog;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.CatalogApiException;
+import org.killbill.billing.catalog.api.PhaseType;
+import org.killbill.billing.catalog.api.PlanPhaseSpecifier;
+import org.killbill.billing.catalog.api.PlanSpecifier;
+import org.killbill.billing.catalog.api.ProductCategory;
+
+/**
+ * Compiled form of an ordered list of change cases, see {@link CaseTable}.
+ */
+class CaseChangeTable<T> {
+
+    private final CaseChange<T>[] cases;
+    private final CaseIndex<PhaseType> phaseTypes;
+    private final CaseIndex<String> fromProducts;
+    private final CaseIndex<ProductCategory> fromProductCategories;
+    private final CaseIndex<BillingPeriod> fromBillingPeriods;
+    private final CaseIndex<String> fromPriceLists;
+    private final CaseIndex<String> toProducts;
+    private final CaseIndex<ProductCategory> toProductCategories;
+    private final CaseIndex<BillingPeriod> toBillingPeriods;
+    private final CaseIndex<String> toPriceLists;
+
+    CaseChangeTable(@Nullable final CaseChange<T>[] cases) {
+        this.cases = cases;
+
+        final int nbCases = cases == null ? 0 : cases.length;
+        final List<PhaseType> phases = new ArrayList<PhaseType>(nbCases);
+        final List<String> fromProductNames = new ArrayList<String>(nbCases);
+        final List<ProductCategory> fromCategories = new ArrayList<ProductCategory>(nbCases);
+        final List<BillingPeriod> fromPeriods = new ArrayList<BillingPeriod>(nbCases);
+        final List<String> fromPriceListNames = new ArrayList<String>(nbCases);
+        final List<String> toProductNames = new ArrayList<String>(nbCases);
+        final List<ProductCategory> toCategories = new ArrayList<ProductCategory>(nbCases);
+        final List<BillingPeriod> toPeriods = new ArrayList<BillingPeriod>(nbCases);
+        final List<String> toPriceListNames = new ArrayList<String>(nbCases);
+        for (int i = 0; i < nbCases; i++) {
+            phases.add(cases[i].getPhaseType());
+            fromProductNames.add(CaseTable.getName(cases[i].getFromProduct()));
+            fromCategories.add(cases[i].getFromProductCategory());
+            fromPeriods.add(cases[i].getFromBillingPeriod());
+            fromPriceListNames.add(CaseTable.getName(cases[i].getFromPriceList()));
+            toProductNames.add(CaseTable.getName(cases[i].getToProduct()));
+            toCategories.add(cases[i].getToProductCategory());
+            toPeriods.add(cases[i].getToBillingPeriod());
+            toPriceListNames.add(CaseTable.getName(cases[i].getToPriceList()));
+        }
+        this.phaseTypes = new CaseIndex<PhaseType>(phases);
+        this.fromProducts = new CaseIndex<String>(fromProductNames);
+        this.fromProductCategories = new CaseIndex<ProductCategory>(fromCategories);
+        this.fromBillingPeriods = new CaseIndex<BillingPeriod>(fromPeriods);
+        this.fromPriceLists = new CaseIndex<String>(fromPriceListNames);
+        this.toProducts = new CaseIndex<String>(toProductNames);
+        this.toProductCategories = new CaseIndex<ProductCategory>(toCategories);
+        this.toBillingPeriods = new CaseIndex<BillingPeriod>(toPeriods);
+        this.toPriceLists = new CaseIndex<String>(toPriceListNames);
+    }
+
+    T getResult(final PlanPhaseSpecifier from, final PlanSpecifier to, final StandaloneCatalog catalog) throws CatalogApiException {
+        if (cases == null) {
+            return null;
+        }
+        if (!isResolvable(from, to, catalog)) {
+            return CaseChange.getResult(cases, from, to, catalog);
+        }
+
+        final BitSet candidates = (BitSet) phaseTypes.getCasesAccepting(from.getPhaseType()).clone();
+        candidates.and(fromProducts.getCasesAccepting(from.getProductName()));
+        candidates.and(fromProductCategories.getCasesAccepting(from.getProductCategory()));
+        candidates.and(fromBillingPeriods.getCasesAccepting(from.getBillingPeriod()));
+        candidates.and(fromPriceLists.getCasesAccepting(from.getPriceListName()));
+        candidates.and(toProducts.getCasesAccepting(to.getProductName()));
+        candidates.and(toProductCategories.getCasesAccepting(to.getProductCategory()));
+        candidates.and(toBillingPeriods.getCasesAccepting(to.getBillingPeriod()));
+        candidates.and(toPriceLists.getCasesAccepting(to.getPriceListName()));
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final T result = cases[i].getResult(from, to, catalog);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private boolean isResolvable(final PlanPhaseSpecifier from, final PlanSpecifier to, final StandaloneCatalog catalog) {
+        return (!fromProducts.isConstrained() || CaseTable.isKnownProduct(from.getProductName(), catalog)) &&
+               (!toProducts.isConstrained() || CaseTable.isKnownProduct(to.getProductName(), catalog)) &&
+               (!fromPriceLists.isConstrained() || CaseTable.isKnownPriceList(from.getPriceListName(), catalog)) &&
+               (!toPriceLists.isConstrained() || CaseTable.isKnownPriceList(to.getPriceListName(), catalog));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog.rules;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+// Index of the rule cases on one attribute: for each value, the (ordered) set of cases accepting it. Cases which
+// don't constrain the attribute accept any value.
+class CaseIndex<V> {
+
+    private final Map<V, BitSet> casesByValue = new HashMap<V, BitSet>();
+    private final BitSet unconstrainedCases = new BitSet();
+
+    CaseIndex(final List<V> valuePerCase) {
+        for (int i = 0; i < valuePerCase.size(); i++) {
+            if (valuePerCase.get(i) == null) {
+                unconstrainedCases.set(i);
+            }
+        }
+        for (int i = 0; i < valuePerCase.size(); i++) {
+            final V value = valuePerCase.get(i);
+            if (value == null) {
+                continue;
+            }
+            BitSet cases = casesByValue.get(value);
+            if (cases == null) {
+                cases = (BitSet) unconstrainedCases.clone();
+                casesByValue.put(value, cases);
+            }
+            cases.set(i);
+        }
+    }
+
+    boolean isConstrained() {
+        return !casesByValue.isEmpty();
+    }
+
+    // Don't modify the returned set
+    BitSet getCasesAccepting(@Nullable final V value) {
+        final BitSet cases = value == null ? null : casesByValue.get(value);
+        return cases == null ? unconstrainedCases : cases;
+    }
+}
@@ -57,6 +57,10 @@ public abstract class CasePhase<T> extends CaseStandardNaming<T> {
         return errors;
     }
 
+    public PhaseType getPhaseType() {
+        return phaseType;
+    }
+
     protected CasePhase<T> setPhaseType(final PhaseType phaseType) {
         this.phaseType = phaseType;
         return this;
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog.rules;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.catalog.DefaultPriceList;
+import org.killbill.billing.catalog.DefaultProduct;
+import org.killbill.billing.catalog.StandaloneCatalog;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.CatalogApiException;
+import org.killbill.billing.catalog.api.PhaseType;
+import org.killbill.billing.catalog.api.PlanPhaseSpecifier;
+import org.killbill.billing.catalog.api.PlanSpecifier;
+import org.killbill.billing.catalog.api.ProductCategory;
+
+/**
+ * Compiled form of an ordered list of cases (optionally phase cases), indexed on product, product category, billing
+ * period, price list and phase type.
+ * <p/>
+ * <p>A lookup intersects the cases accepting each attribute of the specifier and evaluates the surviving candidates
+ * in order, so that the result is the one of the first matching case, as with {@link Case#getResult(Case[], PlanSpecifier, StandaloneCatalog)}.
+ * Specifiers referring to an unknown product or price list are handed over to the original evaluation, to preserve
+ * its error handling.
+ */
+class CaseTable<T> {
+
+    private final Case<T>[] cases;
+    private final CaseIndex<String> products;
+    private final CaseIndex<ProductCategory> productCategories;
+    private final CaseIndex<BillingPeriod> billingPeriods;
+    private final CaseIndex<String> priceLists;
+    private final CaseIndex<PhaseType> phaseTypes;
+
+    CaseTable(@Nullable final Case<T>[] cases) {
+        this.cases = cases;
+
+        final int nbCases = cases == null ? 0 : cases.length;
+        final List<String> productNames = new ArrayList<String>(nbCases);
+        final List<ProductCategory> categories = new ArrayList<ProductCategory>(nbCases);
+        final List<BillingPeriod> periods = new ArrayList<BillingPeriod>(nbCases);
+        final List<String> priceListNames = new ArrayList<String>(nbCases);
+        final List<PhaseType> phases = new ArrayList<PhaseType>(nbCases);
+        for (int i = 0; i < nbCases; i++) {
+            productNames.add(getName(cases[i].getProduct()));
+            categories.add(cases[i].getProductCategory());
+            periods.add(cases[i].getBillingPeriod());
+            priceListNames.add(getName(cases[i].getPriceList()));
+            phases.add(cases[i] instanceof CasePhase ? ((CasePhase<T>) cases[i]).getPhaseType() : null);
+        }
+        this.products = new CaseIndex<String>(productNames);
+        this.productCategories = new CaseIndex<ProductCategory>(categories);
+        this.billingPeriods = new CaseIndex<BillingPeriod>(periods);
+        this.priceLists = new CaseIndex<String>(priceListNames);
+        this.phaseTypes = new CaseIndex<PhaseType>(phases);
+    }
+
+    T getResult(final PlanSpecifier specifier, final StandaloneCatalog catalog) throws CatalogApiException {
+        if (cases == null) {
+            return null;
+        }
+        if (!isResolvable(specifier, catalog)) {
+            return Case.getResult(cases, specifier, catalog);
+        }
+
+        final BitSet candidates = getCandidates(specifier, null);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final T result = cases[i].getResult(specifier, catalog);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    T getResult(final PlanPhaseSpecifier specifier, final StandaloneCatalog catalog) throws CatalogApiException {
+        if (cases == null) {
+            return null;
+        }
+        final CasePhase<T>[] phaseCases = (CasePhase<T>[]) cases;
+        final PlanSpecifier planSpecifier = new PlanSpecifier(specifier);
+        if (!isResolvable(planSpecifier, catalog)) {
+            return CasePhase.getResult(phaseCases, specifier, catalog);
+        }
+
+        final BitSet candidates = getCandidates(planSpecifier, specifier.getPhaseType());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final T result = phaseCases[i].getResult(specifier, catalog);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private BitSet getCandidates(final PlanSpecifier specifier, @Nullable final PhaseType phaseType) {
+        final BitSet candidates = (BitSet) products.getCasesAccepting(specifier.getProductName()).clone();
+        candidates.and(productCategories.getCasesAccepting(specifier.getProductCategory()));
+        candidates.and(billingPeriods.getCasesAccepting(specifier.getBillingPeriod()));
+        candidates.and(priceLists.getCasesAccepting(specifier.getPriceListName()));
+        candidates.and(phaseTypes.getCasesAccepting(phaseType));
+        return candidates;
+    }
+
+    private boolean isResolvable(final PlanSpecifier specifier, final StandaloneCatalog catalog) {
+        return (!products.isConstrained() || isKnownProduct(specifier.getProductName(), catalog)) &&
+               (!priceLists.isConstrained() || isKnownPriceList(specifier.getPriceListName(), catalog));
+    }
+
+    static boolean isKnownProduct(@Nullable final String productName, final StandaloneCatalog catalog) {
+        try {
+            catalog.findCurrentProduct(productName);
+            return true;
+        } catch (final CatalogApiException e) {
+            return false;
+        }
+    }
+
+    static boolean isKnownPriceList(@Nullable final String priceListName, final StandaloneCatalog catalog) {
+        try {
+            catalog.findCurrentPriceList(priceListName);
+            return true;
+        } catch (final CatalogApiException e) {
+            return false;
+        }
+    }
+
+    static String getName(@Nullable final DefaultProduct product) {
+        return product == null ? null : product.getName();
+    }
+
+    static String getName(@Nullable final DefaultPriceList priceList) {
+        return priceList == null ? null : priceList.getName();
+    }
+}
@@ -16,6 +16,9 @@
 
 package org.killbill.billing.catalog.rules;
 
+import java.io.Serializable;
+import java.net.URI;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
@@ -36,7 +39,7 @@ import org.killbill.xmlloader.ValidatingConfig;
 import org.killbill.xmlloader.ValidationErrors;
 
 @XmlAccessorType(XmlAccessType.NONE)
-public class PlanRules extends ValidatingConfig<StandaloneCatalog> {
+public class PlanRules extends ValidatingConfig<StandaloneCatalog> implements Serializable {
 
     @XmlElementWrapper(name = "changePolicy")
     @XmlElement(name = "changePolicyCase", required = false)
@@ -62,16 +65,19 @@ public class PlanRules extends ValidatingConfig<StandaloneCatalog> {
     @XmlElement(name = "priceListCase", required = false)
     private CasePriceList[] priceListCase;
 
+    // Built when the catalog is initialized, or on the first lookup for rules assembled in code
+    private transient volatile CompiledRules compiledRules;
+
     public PlanAlignmentCreate getPlanCreateAlignment(final PlanSpecifier specifier, final StandaloneCatalog catalog) throws CatalogApiException {
-        return Case.getResult(createAlignmentCase, specifier, catalog);
+        return getCompiledRules().createAlignment.getResult(specifier, catalog);
     }
 
     public BillingActionPolicy getPlanCancelPolicy(final PlanPhaseSpecifier planPhase, final StandaloneCatalog catalog) throws CatalogApiException {
-        return CasePhase.getResult(cancelCase, planPhase, catalog);
+        return getCompiledRules().cancel.getResult(planPhase, catalog);
     }
 
     public BillingAlignment getBillingAlignment(final PlanPhaseSpecifier planPhase, final StandaloneCatalog catalog) throws CatalogApiException {
-        return CasePhase.getResult(billingAlignmentCase, planPhase, catalog);
+        return getCompiledRules().billingAlignment.getResult(planPhase, catalog);
     }
 
     public PlanChangeResult planChange(final PlanPhaseSpecifier from, PlanSpecifier to, final StandaloneCatalog catalog) throws CatalogApiException {
@@ -95,7 +101,7 @@ public class PlanRules extends ValidatingConfig<StandaloneCatalog> {
 
     public PlanAlignmentChange getPlanChangeAlignment(final PlanPhaseSpecifier from,
                                                       final PlanSpecifier to, final StandaloneCatalog catalog) throws CatalogApiException {
-        return CaseChange.getResult(changeAlignmentCase, from, to, catalog);
+        return getCompiledRules().changeAlignment.getResult(from, to, catalog);
     }
 
     public BillingActionPolicy getPlanChangePolicy(final PlanPhaseSpecifier from,
@@ -107,17 +113,32 @@ public class PlanRules extends ValidatingConfig<StandaloneCatalog> {
         }
         //Plan toPlan = catalog.findPlan()
 
-        return CaseChange.getResult(changeCase, from, to, catalog);
+        return getCompiledRules().change.getResult(from, to, catalog);
     }
 
     private DefaultPriceList findPriceList(final PlanSpecifier specifier, final StandaloneCatalog catalog) throws CatalogApiException {
-        DefaultPriceList result = Case.getResult(priceListCase, specifier, catalog);
+        DefaultPriceList result = getCompiledRules().priceList.getResult(specifier, catalog);
         if (result == null) {
             result = catalog.findCurrentPriceList(specifier.getPriceListName());
         }
         return result;
     }
 
+    @Override
+    public void initialize(final StandaloneCatalog catalog, final URI sourceURI) {
+        super.initialize(catalog, sourceURI);
+        compiledRules = new CompiledRules(this);
+    }
+
+    private CompiledRules getCompiledRules() {
+        CompiledRules rules = compiledRules;
+        if (rules == null) {
+            // Benign race: concurrent callers would build equivalent tables
+            rules = new CompiledRules(this);
+            compiledRules = rules;
+        }
+        return rules;
+    }
 
     @Override
     public ValidationErrors validate(final StandaloneCatalog catalog, final ValidationErrors errors) {
@@ -136,34 +157,59 @@ public class PlanRules extends ValidatingConfig<StandaloneCatalog> {
 
     protected PlanRules setChangeCase(final CaseChangePlanPolicy[] changeCase) {
         this.changeCase = changeCase;
+        this.compiledRules = null;
         return this;
     }
 
     protected PlanRules setChangeAlignmentCase(
             final CaseChangePlanAlignment[] changeAlignmentCase) {
         this.changeAlignmentCase = changeAlignmentCase;
+        this.compiledRules = null;
         return this;
     }
 
     protected PlanRules setCancelCase(final CaseCancelPolicy[] cancelCase) {
         this.cancelCase = cancelCase;
+        this.compiledRules = null;
         return this;
     }
 
     protected PlanRules setCreateAlignmentCase(final CaseCreateAlignment[] createAlignmentCase) {
         this.createAlignmentCase = createAlignmentCase;
+        this.compiledRules = null;
         return this;
     }
 
     protected PlanRules setBillingAlignmentCase(
             final CaseBillingAlignment[] billingAlignmentCase) {
         this.billingAlignmentCase = billingAlignmentCase;
+        this.compiledRules = null;
         return this;
     }
 
     protected PlanRules setPriceListCase(final CasePriceList[] priceListCase) {
         this.priceListCase = priceListCase;
+        this.compiledRules = null;
         return this;
     }
 
+    // Rules are evaluated in order, the first matching case wins
+    private static final class CompiledRules {
+
+        private final CaseChangeTable<BillingActionPolicy> change;
+        private final CaseChangeTable<PlanAlignmentChange> changeAlignment;
+        private final CaseTable<BillingActionPolicy> cancel;
+        private final CaseTable<PlanAlignmentCreate> createAlignment;
+        private final CaseTable<BillingAlignment> billingAlignment;
+        private final CaseTable<DefaultPriceList> priceList;
+
+        private CompiledRules(final PlanRules rules) {
+            this.change = new CaseChangeTable<BillingActionPolicy>(rules.changeCase);
+            this.changeAlignment = new CaseChangeTable<PlanAlignmentChange>(rules.changeAlignmentCase);
+            this.cancel = new CaseTable<BillingActionPolicy>(rules.cancelCase);
+            this.createAlignment = new CaseTable<PlanAlignmentCreate>(rules.createAlignmentCase);
+            this.billingAlignment = new CaseTable<BillingAlignment>(rules.billingAlignmentCase);
+            this.priceList = new CaseTable<DefaultPriceList>(rules.priceListCase);
+        }
+    }
 }
@@ -29,13 +29,8 @@ public class TestCatalogService extends CatalogTestSuiteNoDB {
 
     @Test(groups = "fast")
     public void testCatalogServiceDirectory() throws ServiceException {
-        final DefaultCatalogService service = new DefaultCatalogService(new CatalogConfig() {
-            @Override
-            public String getCatalogURI() {
-                return "file:src/test/resources/versionedCatalog";
-            }
-
-        }, new VersionedCatalogLoader(new DefaultClock()));
+        final CatalogConfig config = createConfig("file:src/test/resources/versionedCatalog");
+        final DefaultCatalogService service = new DefaultCatalogService(config, new VersionedCatalogLoader(config, new DefaultClock()));
         service.loadCatalog();
         Assert.assertNotNull(service.getFullCatalog());
         Assert.assertEquals(service.getFullCatalog().getCatalogName(), "WeaponsHireSmall");
@@ -43,15 +38,24 @@ public class TestCatalogService extends CatalogTestSuiteNoDB {
 
     @Test(groups = "fast")
     public void testCatalogServiceFile() throws ServiceException {
-        final DefaultCatalogService service = new DefaultCatalogService(new CatalogConfig() {
+        final CatalogConfig config = createConfig("file:src/test/resources/WeaponsHire.xml");
+        final DefaultCatalogService service = new DefaultCatalogService(config, new VersionedCatalogLoader(config, new DefaultClock()));
+        service.loadCatalog();
+        Assert.assertNotNull(service.getFullCatalog());
+        Assert.assertEquals(service.getFullCatalog().getCatalogName(), "Firearms");
+    }
+
+    private CatalogConfig createConfig(final String catalogURI) {
+        return new CatalogConfig() {
             @Override
             public String getCatalogURI() {
-                return "file:src/test/resources/WeaponsHire.xml";
+                return catalogURI;
             }
 
-        }, new VersionedCatalogLoader(new DefaultClock()));
-        service.loadCatalog();
-        Assert.assertNotNull(service.getFullCatalog());
-        Assert.assertEquals(service.getFullCatalog().getCatalogName(), "Firearms");
+            @Override
+            public String getCatalogSnapshotPath() {
+                return null;
+            }
+        };
     }
 }
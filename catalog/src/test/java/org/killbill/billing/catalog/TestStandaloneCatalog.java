@@ -19,6 +19,7 @@ package org.killbill.billing.catalog;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import org.killbill.billing.ErrorCode;
 import org.killbill.billing.catalog.api.CatalogApiException;
 import org.killbill.billing.catalog.api.PhaseType;
 
@@ -45,4 +46,40 @@ public class TestStandaloneCatalog extends CatalogTestSuiteNoDB {
         Assert.assertEquals(cat.findCurrentPhase("TestPlan1-trial"), phaseTrial1);
         Assert.assertEquals(cat.findCurrentPhase("TestPlan2-trial"), phaseTrial2);
     }
+
+    @Test(groups = "fast")
+    public void testFindByName() throws CatalogApiException {
+        final StandaloneCatalog cat = new MockCatalog();
+
+        for (final DefaultPlan plan : cat.getCurrentPlans()) {
+            Assert.assertSame(cat.findCurrentPlan(plan.getName()), plan);
+        }
+        for (final DefaultProduct product : cat.getCurrentProducts()) {
+            Assert.assertSame(cat.findCurrentProduct(product.getName()), product);
+        }
+
+        try {
+            cat.findCurrentPlan("unknown-plan");
+            Assert.fail();
+        } catch (final CatalogApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.CAT_NO_SUCH_PLAN.getCode());
+        }
+        try {
+            cat.findCurrentProduct("unknown-product");
+            Assert.fail();
+        } catch (final CatalogApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.CAT_NO_SUCH_PRODUCT.getCode());
+        }
+        try {
+            cat.findCurrentPriceList("unknown-pricelist");
+            Assert.fail();
+        } catch (final CatalogApiException e) {
+            Assert.assertEquals(e.getCode(), ErrorCode.CAT_PRICE_LIST_NOT_FOUND.getCode());
+        }
+
+        // The indexes follow the catalog content
+        final DefaultPlan newPlan = new MockPlan().setName("TestPlanAddedLater");
+        cat.setPlans(new DefaultPlan[]{newPlan});
+        Assert.assertSame(cat.findCurrentPlan("TestPlanAddedLater"), newPlan);
+    }
 }
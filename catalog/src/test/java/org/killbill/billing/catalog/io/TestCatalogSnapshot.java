@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.killbill.billing.catalog.CatalogTestSuiteNoDB;
+import org.killbill.billing.catalog.StandaloneCatalog;
+import org.killbill.billing.catalog.VersionedCatalog;
+import org.killbill.billing.util.config.CatalogConfig;
+import org.killbill.clock.DefaultClock;
+import org.killbill.xmlloader.XMLWriter;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+public class TestCatalogSnapshot extends CatalogTestSuiteNoDB {
+
+    private File snapshotFile;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws IOException {
+        snapshotFile = File.createTempFile("catalog", ".snapshot");
+        snapshotFile.delete();
+    }
+
+    @AfterMethod(groups = "fast")
+    public void afterMethod() {
+        snapshotFile.delete();
+    }
+
+    @Test(groups = "fast")
+    public void testRoundTrip() throws Exception {
+        final List<StandaloneCatalog> versions = ImmutableList.<StandaloneCatalog>copyOf(loader.load(Resources.getResource("WeaponsHire.xml").toExternalForm()).iterator());
+
+        final CatalogSnapshot snapshot = new CatalogSnapshot(snapshotFile);
+        Assert.assertNull(snapshot.read("checksum"));
+
+        snapshot.write("checksum", versions);
+        final List<StandaloneCatalog> readVersions = snapshot.read("checksum");
+        Assert.assertNotNull(readVersions);
+        Assert.assertEquals(readVersions.size(), versions.size());
+        for (int i = 0; i < versions.size(); i++) {
+            Assert.assertEquals(XMLWriter.writeXML(readVersions.get(i), StandaloneCatalog.class),
+                                XMLWriter.writeXML(versions.get(i), StandaloneCatalog.class));
+            Assert.assertEquals(readVersions.get(i).findCurrentPlan("pistol-monthly").getName(), "pistol-monthly");
+        }
+
+        // Source changed
+        Assert.assertNull(snapshot.read("other-checksum"));
+    }
+
+    @Test(groups = "fast")
+    public void testCorruptedSnapshot() throws Exception {
+        Files.write("not a snapshot", snapshotFile, Charsets.UTF_8);
+        Assert.assertNull(new CatalogSnapshot(snapshotFile).read("checksum"));
+    }
+
+    @Test(groups = "fast")
+    public void testUnexpectedClassInSnapshot() throws Exception {
+        // Same layout as CatalogSnapshot#write, but with an object which isn't part of a catalog
+        final ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(snapshotFile));
+        try {
+            out.writeInt(1);
+            out.writeUTF("checksum");
+            out.writeInt(1);
+            out.writeObject(new LinkedList<String>());
+        } finally {
+            out.close();
+        }
+
+        Assert.assertNull(new CatalogSnapshot(snapshotFile).read("checksum"));
+    }
+
+    @Test(groups = "fast")
+    public void testReplaceExistingSnapshot() throws Exception {
+        final List<StandaloneCatalog> versions = ImmutableList.<StandaloneCatalog>copyOf(loader.load(Resources.getResource("WeaponsHire.xml").toExternalForm()).iterator());
+
+        final CatalogSnapshot snapshot = new CatalogSnapshot(snapshotFile);
+        snapshot.write("checksum", versions);
+        snapshot.write("other-checksum", versions);
+
+        Assert.assertNull(snapshot.read("checksum"));
+        Assert.assertEquals(snapshot.read("other-checksum").size(), versions.size());
+        Assert.assertFalse(new File(snapshotFile.getPath() + ".tmp").exists());
+    }
+
+    @Test(groups = "fast")
+    public void testChecksum() throws Exception {
+        final URI weaponsHire = Resources.getResource("WeaponsHire.xml").toURI();
+        final URI weaponsHireSmall = Resources.getResource("WeaponsHireSmall.xml").toURI();
+
+        Assert.assertEquals(CatalogSnapshot.computeChecksum(ImmutableList.<URI>of(weaponsHire)),
+                            CatalogSnapshot.computeChecksum(ImmutableList.<URI>of(weaponsHire)));
+        Assert.assertFalse(CatalogSnapshot.computeChecksum(ImmutableList.<URI>of(weaponsHire))
+                                          .equals(CatalogSnapshot.computeChecksum(ImmutableList.<URI>of(weaponsHireSmall))));
+        Assert.assertFalse(CatalogSnapshot.computeChecksum(ImmutableList.<URI>of(weaponsHire, weaponsHireSmall))
+                                          .equals(CatalogSnapshot.computeChecksum(ImmutableList.<URI>of(weaponsHireSmall, weaponsHire))));
+    }
+
+    @Test(groups = "fast")
+    public void testLoaderUsesSnapshot() throws Exception {
+        final VersionedCatalogLoader snapshotLoader = new VersionedCatalogLoader(new CatalogConfig() {
+            @Override
+            public String getCatalogURI() {
+                return null;
+            }
+
+            @Override
+            public String getCatalogSnapshotPath() {
+                return snapshotFile.getPath();
+            }
+        }, new DefaultClock());
+
+        final String uri = "file:src/test/resources/versionedCatalog";
+        final VersionedCatalog fromXML = snapshotLoader.load(uri);
+        Assert.assertTrue(snapshotFile.isFile());
+
+        final VersionedCatalog fromSnapshot = snapshotLoader.load(uri);
+        Assert.assertEquals(fromSnapshot.size(), fromXML.size());
+        Assert.assertEquals(fromSnapshot.getCatalogName(), fromXML.getCatalogName());
+        final Iterator<StandaloneCatalog> fromXMLVersions = fromXML.iterator();
+        final Iterator<StandaloneCatalog> fromSnapshotVersions = fromSnapshot.iterator();
+        while (fromXMLVersions.hasNext()) {
+            Assert.assertEquals(XMLWriter.writeXML(fromSnapshotVersions.next(), StandaloneCatalog.class),
+                                XMLWriter.writeXML(fromXMLVersions.next(), StandaloneCatalog.class));
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.bind.annotation.XmlElement;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import org.killbill.billing.catalog.CatalogTestSuiteNoDB;
+import org.killbill.billing.catalog.DefaultPriceList;
+import org.killbill.billing.catalog.DefaultProduct;
+import org.killbill.billing.catalog.MockCatalog;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.CatalogApiException;
+import org.killbill.billing.catalog.api.PhaseType;
+import org.killbill.billing.catalog.api.PlanPhaseSpecifier;
+import org.killbill.billing.catalog.api.PlanSpecifier;
+import org.killbill.billing.catalog.api.ProductCategory;
+
+import org.killbill.billing.catalog.rules.TestCaseChange.CaseChangeResult;
+
+// Verify the compiled tables return the same results (and errors) as evaluating the cases one by one
+public class TestCaseTable extends CatalogTestSuiteNoDB {
+
+    private static final int NB_RULE_SETS = 50;
+    private static final int NB_LOOKUPS = 500;
+
+    private final Random random = new Random(4815162342L);
+
+    private static class CaseResult extends CasePhase<Result> {
+
+        @XmlElement(required = true)
+        private final Result policy;
+
+        private CaseResult(final DefaultProduct product, final ProductCategory productCategory, final BillingPeriod billingPeriod, final DefaultPriceList priceList,
+                           final PhaseType phaseType, final Result policy) {
+            setProduct(product);
+            setProductCategory(productCategory);
+            setBillingPeriod(billingPeriod);
+            setPriceList(priceList);
+            setPhaseType(phaseType);
+
+            this.policy = policy;
+        }
+
+        @Override
+        protected Result getResult() {
+            return policy;
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testPhaseCasesMatchSequentialEvaluation() {
+        final MockCatalog cat = new MockCatalog();
+        final List<DefaultProduct> products = getProducts(cat);
+        final List<DefaultPriceList> priceLists = getPriceLists(cat);
+
+        for (int i = 0; i < NB_RULE_SETS; i++) {
+            final CaseResult[] cases = new CaseResult[random.nextInt(20)];
+            for (int j = 0; j < cases.length; j++) {
+                cases[j] = new CaseResult(pick(products), pick(ProductCategory.values()), pick(BillingPeriod.values()), pick(priceLists),
+                                          pick(PhaseType.values()), pick(Result.values()));
+            }
+
+            final CaseTable<Result> table = new CaseTable<Result>(cases);
+            for (int j = 0; j < NB_LOOKUPS; j++) {
+                final PlanPhaseSpecifier specifier = new PlanPhaseSpecifier(pickName(products), pick(ProductCategory.values()), pick(BillingPeriod.values()),
+                                                                            pickPriceListName(priceLists), pick(PhaseType.values()));
+
+                Object expected;
+                try {
+                    expected = CasePhase.getResult(cases, specifier, cat);
+                } catch (final CatalogApiException e) {
+                    expected = e.getCode();
+                }
+                Object actual;
+                try {
+                    actual = table.getResult(specifier, cat);
+                } catch (final CatalogApiException e) {
+                    actual = e.getCode();
+                }
+                Assert.assertEquals(actual, expected);
+
+                final PlanSpecifier planSpecifier = new PlanSpecifier(specifier);
+                try {
+                    expected = Case.getResult(cases, planSpecifier, cat);
+                } catch (final CatalogApiException e) {
+                    expected = e.getCode();
+                }
+                try {
+                    actual = table.getResult(planSpecifier, cat);
+                } catch (final CatalogApiException e) {
+                    actual = e.getCode();
+                }
+                Assert.assertEquals(actual, expected);
+            }
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testChangeCasesMatchSequentialEvaluation() {
+        final MockCatalog cat = new MockCatalog();
+        final List<DefaultProduct> products = getProducts(cat);
+        final List<DefaultPriceList> priceLists = getPriceLists(cat);
+
+        for (int i = 0; i < NB_RULE_SETS; i++) {
+            final CaseChangeResult[] cases = new CaseChangeResult[random.nextInt(20)];
+            for (int j = 0; j < cases.length; j++) {
+                cases[j] = new CaseChangeResult(pick(products), pick(products),
+                                                pick(ProductCategory.values()), pick(ProductCategory.values()),
+                                                pick(BillingPeriod.values()), pick(BillingPeriod.values()),
+                                                pick(priceLists), pick(priceLists),
+                                                pick(PhaseType.values()),
+                                                pick(Result.values()));
+            }
+
+            final CaseChangeTable<Result> table = new CaseChangeTable<Result>(cases);
+            for (int j = 0; j < NB_LOOKUPS; j++) {
+                final PlanPhaseSpecifier from = new PlanPhaseSpecifier(pickName(products), pick(ProductCategory.values()), pick(BillingPeriod.values()),
+                                                                       pickPriceListName(priceLists), pick(PhaseType.values()));
+                final PlanSpecifier to = new PlanSpecifier(pickName(products), pick(ProductCategory.values()), pick(BillingPeriod.values()),
+                                                           pickPriceListName(priceLists));
+
+                Object expected;
+                try {
+                    expected = CaseChange.getResult(cases, from, to, cat);
+                } catch (final CatalogApiException e) {
+                    expected = e.getCode();
+                }
+                Object actual;
+                try {
+                    actual = table.getResult(from, to, cat);
+                } catch (final CatalogApiException e) {
+                    actual = e.getCode();
+                }
+                Assert.assertEquals(actual, expected);
+            }
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testEmptyTables() throws CatalogApiException {
+        final MockCatalog cat = new MockCatalog();
+        final PlanPhaseSpecifier specifier = new PlanPhaseSpecifier("unknown", ProductCategory.BASE, BillingPeriod.MONTHLY, "unknown", PhaseType.EVERGREEN);
+
+        Assert.assertNull(new CaseTable<Result>(null).getResult(specifier, cat));
+        Assert.assertNull(new CaseTable<Result>(new CaseResult[0]).getResult(specifier, cat));
+        Assert.assertNull(new CaseChangeTable<Result>(null).getResult(specifier, new PlanSpecifier(specifier), cat));
+    }
+
+    private List<DefaultProduct> getProducts(final MockCatalog cat) {
+        final List<DefaultProduct> products = new ArrayList<DefaultProduct>();
+        for (final DefaultProduct product : cat.getCurrentProducts()) {
+            products.add(product);
+        }
+        return products;
+    }
+
+    private List<DefaultPriceList> getPriceLists(final MockCatalog cat) {
+        final List<DefaultPriceList> priceLists = new ArrayList<DefaultPriceList>();
+        priceLists.add(cat.getPriceLists().getDefaultPricelist());
+        for (final DefaultPriceList priceList : cat.getPriceLists().getChildPriceLists()) {
+            priceLists.add(priceList);
+        }
+        return priceLists;
+    }
+
+    // Unconstrained half of the time
+    private <T> T pick(final List<T> values) {
+        return random.nextBoolean() ? null : values.get(random.nextInt(values.size()));
+    }
+
+    private <T> T pick(final T[] values) {
+        return random.nextBoolean() ? null : values[random.nextInt(values.length)];
+    }
+
+    // Mostly known names, with a few unknown and missing ones
+    private String pickName(final List<DefaultProduct> products) {
+        final int i = random.nextInt(products.size() + 2);
+        return i < products.size() ? products.get(i).getName() : (i == products.size() ? "unknown" : null);
+    }
+
+    private String pickPriceListName(final List<DefaultPriceList> priceLists) {
+        final int i = random.nextInt(priceLists.size() + 2);
+        return i < priceLists.size() ? priceLists.get(i).getName() : (i == priceLists.size() ? "unknown" : null);
+    }
+}
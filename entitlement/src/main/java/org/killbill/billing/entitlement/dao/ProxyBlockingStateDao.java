@@ -220,6 +220,11 @@ public class ProxyBlockingStateDao implements BlockingStateDao {
         return delegate.get(offset, limit, context);
     }
 
+    @Override
+    public Pagination<BlockingStateModelDao> getByRecordIdCursor(final Long recordIdCursor, final Long limit, final boolean withCount, final InternalTenantContext context) {
+        return delegate.getByRecordIdCursor(recordIdCursor, limit, withCount, context);
+    }
+
     @Override
     public Long getCount(final InternalTenantContext context) {
         return delegate.getCount(context);
@@ -18,10 +18,13 @@
 
 package org.killbill.billing.invoice;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -60,12 +63,15 @@ import org.killbill.billing.invoice.api.user.DefaultNullInvoiceEvent;
 import org.killbill.billing.invoice.dao.InvoiceDao;
 import org.killbill.billing.invoice.dao.InvoiceItemModelDao;
 import org.killbill.billing.invoice.dao.InvoiceModelDao;
+import org.killbill.billing.invoice.dao.InvoiceTreeSnapshotModelDao;
 import org.killbill.billing.invoice.generator.InvoiceGenerator;
 import org.killbill.billing.invoice.model.DefaultInvoice;
 import org.killbill.billing.invoice.model.FixedPriceInvoiceItem;
 import org.killbill.billing.invoice.model.InvoiceItemFactory;
 import org.killbill.billing.invoice.model.RecurringInvoiceItem;
 import org.killbill.billing.invoice.plugin.api.InvoicePluginApi;
+import org.killbill.billing.invoice.tree.AccountItemTreeSnapshot;
+import org.killbill.billing.invoice.tree.SubscriptionItemTreeSnapshot;
 import org.killbill.billing.junction.BillingEventSet;
 import org.killbill.billing.junction.BillingInternalApi;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
@@ -76,8 +82,10 @@ import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.InvoiceConfig;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.globallocker.LockerType;
+import org.killbill.billing.util.jackson.ObjectMapper;
 import org.killbill.billing.util.timezone.DateAndTimeZoneContext;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.bus.api.PersistentBus.EventBusException;
@@ -88,17 +96,21 @@ import org.killbill.commons.locker.LockFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
 
 public class InvoiceDispatcher {
 
     private static final Logger log = LoggerFactory.getLogger(InvoiceDispatcher.class);
     private static final int NB_LOCK_TRY = 5;
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<List<UUID>> ITEM_IDS_TYPE = new TypeReference<List<UUID>>() {};
 
     private final InvoiceGenerator generator;
     private final BillingInternalApi billingApi;
@@ -112,6 +124,7 @@ public class InvoiceDispatcher {
     private final Clock clock;
     private final OSGIServiceRegistration<InvoicePluginApi> pluginRegistry;
     private final CacheControllerDispatcher controllerDispatcher;
+    private final InvoiceConfig invoiceConfig;
 
     @Inject
     public InvoiceDispatcher(final OSGIServiceRegistration<InvoicePluginApi> pluginRegistry,
@@ -123,7 +136,8 @@ public class InvoiceDispatcher {
                              final InvoiceNotifier invoiceNotifier,
                              final GlobalLocker locker,
                              final PersistentBus eventBus,
-                             final Clock clock, final CacheControllerDispatcher controllerDispatcher) {
+                             final Clock clock, final CacheControllerDispatcher controllerDispatcher,
+                             final InvoiceConfig invoiceConfig) {
         this.pluginRegistry = pluginRegistry;
         this.generator = generator;
         this.billingApi = billingApi;
@@ -136,23 +150,29 @@ public class InvoiceDispatcher {
         this.eventBus = eventBus;
         this.clock = clock;
         this.controllerDispatcher = controllerDispatcher;
+        this.invoiceConfig = invoiceConfig;
     }
 
     public void processSubscription(final EffectiveSubscriptionInternalEvent transition,
                                     final InternalCallContext context) throws InvoiceApiException {
         final UUID subscriptionId = transition.getSubscriptionId();
         final DateTime targetDate = transition.getEffectiveTransitionTime();
-        processSubscription(subscriptionId, targetDate, context);
+        // Nothing prior the transition can have changed
+        processSubscription(subscriptionId, targetDate, true, context);
     }
 
     public void processSubscription(final UUID subscriptionId, final DateTime targetDate, final InternalCallContext context) throws InvoiceApiException {
+        processSubscription(subscriptionId, targetDate, false, context);
+    }
+
+    private void processSubscription(final UUID subscriptionId, final DateTime targetDate, final boolean isIncrementalCandidate, final InternalCallContext context) throws InvoiceApiException {
         try {
             if (subscriptionId == null) {
                 log.error("Failed handling SubscriptionBase change.", new InvoiceApiException(ErrorCode.INVOICE_INVALID_TRANSITION));
                 return;
             }
             final UUID accountId = subscriptionApi.getAccountIdFromSubscriptionId(subscriptionId, context);
-            processAccount(accountId, targetDate, null, context);
+            processAccount(accountId, targetDate, null, isIncrementalCandidate, context);
         } catch (final SubscriptionBaseApiException e) {
             log.error("Failed handling SubscriptionBase change.",
                       new InvoiceApiException(ErrorCode.INVOICE_NO_ACCOUNT_ID_FOR_SUBSCRIPTION_ID, subscriptionId.toString()));
@@ -161,25 +181,41 @@ public class InvoiceDispatcher {
 
     public Invoice processAccount(final UUID accountId, final DateTime targetDate,
                                   @Nullable final DryRunArguments dryRunArguments, final InternalCallContext context) throws InvoiceApiException {
-        GlobalLock lock = null;
-        try {
-            lock = locker.lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS.toString(), accountId.toString(), NB_LOCK_TRY);
+        return processAccount(accountId, targetDate, dryRunArguments, false, context);
+    }
 
-            return processAccountWithLock(accountId, targetDate, dryRunArguments, context);
+    /**
+     * Same as processAccount, except that failing to grab the account lock is reported to the caller (instead of returning null)
+     */
+    public Invoice processAccountOrFailOnLock(final UUID accountId, final DateTime targetDate,
+                                              @Nullable final DryRunArguments dryRunArguments, final InternalCallContext context) throws InvoiceApiException, LockFailedException {
+        return processAccountOrFailOnLock(accountId, targetDate, dryRunArguments, false, context);
+    }
+
+    private Invoice processAccount(final UUID accountId, final DateTime targetDate, @Nullable final DryRunArguments dryRunArguments,
+                                   final boolean isIncrementalCandidate, final InternalCallContext context) throws InvoiceApiException {
+        try {
+            return processAccountOrFailOnLock(accountId, targetDate, dryRunArguments, isIncrementalCandidate, context);
         } catch (final LockFailedException e) {
             // Not good!
             log.error(String.format("Failed to process invoice for account %s, targetDate %s",
                                     accountId.toString(), targetDate), e);
-        } finally {
-            if (lock != null) {
-                lock.release();
-            }
         }
         return null;
     }
 
-    private Invoice processAccountWithLock(final UUID accountId, final DateTime targetDateTime,
-                                           @Nullable final DryRunArguments dryRunArguments, final InternalCallContext context) throws InvoiceApiException {
+    private Invoice processAccountOrFailOnLock(final UUID accountId, final DateTime targetDate, @Nullable final DryRunArguments dryRunArguments,
+                                               final boolean isIncrementalCandidate, final InternalCallContext context) throws InvoiceApiException, LockFailedException {
+        final GlobalLock lock = locker.lockWithNumberOfTries(LockerType.ACCOUNT_FOR_INVOICE_PAYMENTS.toString(), accountId.toString(), NB_LOCK_TRY);
+        try {
+            return processAccountWithLock(accountId, targetDate, dryRunArguments, isIncrementalCandidate, context);
+        } finally {
+            lock.release();
+        }
+    }
+
+    private Invoice processAccountWithLock(final UUID accountId, final DateTime targetDateTime, @Nullable final DryRunArguments dryRunArguments,
+                                           final boolean isIncrementalCandidate, final InternalCallContext context) throws InvoiceApiException {
 
         final boolean isDryRun = dryRunArguments != null;
         try {
@@ -192,21 +228,31 @@ public class InvoiceDispatcher {
                                                                   new DateAndTimeZoneContext(billingEvents.iterator().next().getEffectiveDate(), account.getTimeZone(), clock) :
                                                                   null;
 
+            final Currency targetCurrency = account.getCurrency();
+
+            final LocalDate targetDate = dateAndTimeZoneContext != null ? dateAndTimeZoneContext.computeTargetDate(targetDateTime) : null;
+
+            // In incremental mode, only the items which can overlap the target date are loaded
+            final LocalDate cutoffDate = isIncrementalCandidate && !isDryRun && targetDate != null && invoiceConfig.isIncrementalGenerationEnabled() ? targetDate : null;
+
             List<Invoice> invoices = new ArrayList<Invoice>();
+            List<InvoiceModelDao> invoiceModelDaos = ImmutableList.<InvoiceModelDao>of();
+            AccountItemTreeSnapshot treeSnapshot = null;
             if (!billingEvents.isAccountAutoInvoiceOff()) {
-                invoices = ImmutableList.<Invoice>copyOf(Collections2.transform(invoiceDao.getInvoicesByAccount(context),
-                                                                                new Function<InvoiceModelDao, Invoice>() {
-                                                                                    @Override
-                                                                                    public Invoice apply(final InvoiceModelDao input) {
-                                                                                        return new DefaultInvoice(input);
-                                                                                    }
-                                                                                })); //no need to fetch, invoicing is off on this account
+                invoiceModelDaos = cutoffDate != null ? invoiceDao.getInvoicesByAccountForGeneration(cutoffDate, context) : invoiceDao.getInvoicesByAccount(context); //no need to fetch, invoicing is off on this account
+                invoices = toInvoices(invoiceModelDaos);
+                if (cutoffDate == null && !isDryRun && invoiceConfig.isInvoiceTreeSnapshotEnabled()) {
+                    treeSnapshot = getAccountItemTreeSnapshot(invoiceModelDaos, context);
+                }
             }
 
-            final Currency targetCurrency = account.getCurrency();
-
-            final LocalDate targetDate = dateAndTimeZoneContext != null ? dateAndTimeZoneContext.computeTargetDate(targetDateTime) : null;
-            final Invoice invoice = targetDate != null ? generator.generateInvoice(accountId, billingEvents, invoices, targetDate, targetCurrency, context) : null;
+            Invoice invoice = targetDate != null ? generator.generateInvoice(accountId, billingEvents, invoices, targetDate, targetCurrency, cutoffDate, treeSnapshot, context) : null;
+            if (treeSnapshot != null) {
+                saveAccountItemTreeSnapshot(treeSnapshot, invoiceModelDaos, context);
+            }
+            if (cutoffDate != null && invoiceConfig.isIncrementalGenerationVerified()) {
+                invoice = verifyIncrementalInvoice(invoice, accountId, billingEvents, targetDate, targetCurrency, context);
+            }
             //
             // If invoice comes back null, there is nothing new to generate, we can bail early
             //
@@ -314,6 +360,147 @@ public class InvoiceDispatcher {
         }
     }
 
+    private List<Invoice> toInvoices(final List<InvoiceModelDao> invoiceModelDaos) {
+        return ImmutableList.<Invoice>copyOf(Collections2.transform(invoiceModelDaos,
+                                                                    new Function<InvoiceModelDao, Invoice>() {
+                                                                        @Override
+                                                                        public Invoice apply(final InvoiceModelDao input) {
+                                                                            return new DefaultInvoice(input);
+                                                                        }
+                                                                    }));
+    }
+
+    // Run the full history generation as well, and fall back to it if the incremental one disagrees
+    private Invoice verifyIncrementalInvoice(@Nullable final Invoice incrementalInvoice, final UUID accountId, final BillingEventSet billingEvents,
+                                             final LocalDate targetDate, final Currency targetCurrency, final InternalCallContext context) throws InvoiceApiException {
+        final List<Invoice> allInvoices = toInvoices(invoiceDao.getInvoicesByAccount(context));
+        final Invoice fullInvoice = generator.generateInvoice(accountId, billingEvents, allInvoices, targetDate, targetCurrency, context);
+        if (!getInvoiceItemKeys(incrementalInvoice).equals(getInvoiceItemKeys(fullInvoice))) {
+            log.warn("Incremental invoice generation mismatch for accountId {} and targetDate {}: incremental items {}, full history items {}",
+                     new Object[]{accountId, targetDate, getInvoiceItemKeys(incrementalInvoice), getInvoiceItemKeys(fullInvoice)});
+            return fullInvoice;
+        }
+        return incrementalInvoice;
+    }
+
+    private List<String> getInvoiceItemKeys(@Nullable final Invoice invoice) {
+        if (invoice == null) {
+            return ImmutableList.<String>of();
+        }
+        // Item and invoice ids are generated for each run, so compare the rest
+        final List<String> result = new ArrayList<String>();
+        for (final InvoiceItem item : invoice.getInvoiceItems()) {
+            result.add(Joiner.on("|").useForNull("").join(item.getInvoiceItemType(), item.getSubscriptionId(), item.getPhaseName(), item.getUsageName(),
+                                                          item.getStartDate(), item.getEndDate(), item.getAmount().stripTrailingZeros().toPlainString(), item.getLinkedItemId()));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    //
+    // The snapshots of an account are always written together, each one along with the ids of the invoice items it accounts for.
+    // New items are detected by id rather than by record_id: items don't necessarily commit in record_id order (e.g. adjustments
+    // are written outside of the account lock), so an item with a lower record_id than the last one seen can still show up later.
+    //
+    @VisibleForTesting
+    AccountItemTreeSnapshot getAccountItemTreeSnapshot(final List<InvoiceModelDao> invoiceModelDaos, final InternalTenantContext context) {
+        final List<InvoiceTreeSnapshotModelDao> storedSnapshots = invoiceDao.getInvoiceTreeSnapshots(context);
+        if (storedSnapshots.isEmpty()) {
+            return new AccountItemTreeSnapshot(ImmutableList.<SubscriptionItemTreeSnapshot>of(), ImmutableList.<UUID>of());
+        }
+
+        final List<SubscriptionItemTreeSnapshot> subscriptionSnapshots = new ArrayList<SubscriptionItemTreeSnapshot>();
+        final Set<UUID> snapshotItemIds = new HashSet<UUID>();
+        for (final InvoiceTreeSnapshotModelDao storedSnapshot : storedSnapshots) {
+            try {
+                final SubscriptionItemTreeSnapshot subscriptionSnapshot = objectMapper.readValue(storedSnapshot.getSnapshot(), SubscriptionItemTreeSnapshot.class);
+                final List<UUID> itemIds = objectMapper.readValue(storedSnapshot.getItemIds(), ITEM_IDS_TYPE);
+                subscriptionSnapshots.add(subscriptionSnapshot);
+                snapshotItemIds.addAll(itemIds);
+            } catch (final IOException e) {
+                log.warn("Ignoring invalid invoice tree snapshot for subscriptionId " + storedSnapshot.getSubscriptionId(), e);
+            }
+        }
+
+        // Subscriptions without a snapshot are populated from all their items anyways
+        final Map<UUID, List<UUID>> treeItemIdsBySubscription = getTreeItemIdsBySubscription(invoiceModelDaos);
+        final List<UUID> newItemIds = new ArrayList<UUID>();
+        for (final SubscriptionItemTreeSnapshot subscriptionSnapshot : subscriptionSnapshots) {
+            final List<UUID> treeItemIds = treeItemIdsBySubscription.get(subscriptionSnapshot.getSubscriptionId());
+            if (treeItemIds == null) {
+                continue;
+            }
+            for (final UUID treeItemId : treeItemIds) {
+                if (!snapshotItemIds.contains(treeItemId)) {
+                    newItemIds.add(treeItemId);
+                }
+            }
+        }
+        return new AccountItemTreeSnapshot(subscriptionSnapshots, newItemIds);
+    }
+
+    @VisibleForTesting
+    void saveAccountItemTreeSnapshot(final AccountItemTreeSnapshot treeSnapshot, final List<InvoiceModelDao> invoiceModelDaos, final InternalCallContext context) {
+        final List<SubscriptionItemTreeSnapshot> builtSnapshots = treeSnapshot.getBuiltSnapshots();
+        if (builtSnapshots == null ||
+            (treeSnapshot.getNewItemIds().isEmpty() && ImmutableSet.copyOf(builtSnapshots).equals(ImmutableSet.copyOf(treeSnapshot.getSubscriptionSnapshots())))) {
+            return;
+        }
+
+        // The trees were built from all the items read for this generation: items committed since then will be new at the next one
+        final Map<UUID, List<UUID>> treeItemIdsBySubscription = getTreeItemIdsBySubscription(invoiceModelDaos);
+        final List<InvoiceTreeSnapshotModelDao> snapshots = new ArrayList<InvoiceTreeSnapshotModelDao>();
+        for (final SubscriptionItemTreeSnapshot builtSnapshot : builtSnapshots) {
+            final List<UUID> treeItemIds = treeItemIdsBySubscription.get(builtSnapshot.getSubscriptionId());
+            try {
+                snapshots.add(new InvoiceTreeSnapshotModelDao(builtSnapshot.getSubscriptionId(),
+                                                              objectMapper.writeValueAsString(treeItemIds != null ? treeItemIds : ImmutableList.<UUID>of()),
+                                                              objectMapper.writeValueAsString(builtSnapshot)));
+            } catch (final IOException e) {
+                log.warn("Failed to serialize invoice tree snapshot for subscriptionId " + builtSnapshot.getSubscriptionId(), e);
+                return;
+            }
+        }
+        invoiceDao.setInvoiceTreeSnapshots(snapshots, context);
+    }
+
+    // Ids of the items which end up in the subscription trees, per subscription (adjustments belong to the subscription of the item they target)
+    private Map<UUID, List<UUID>> getTreeItemIdsBySubscription(final List<InvoiceModelDao> invoiceModelDaos) {
+        final Map<UUID, InvoiceItemModelDao> itemsById = new HashMap<UUID, InvoiceItemModelDao>();
+        for (final InvoiceModelDao invoiceModelDao : invoiceModelDaos) {
+            for (final InvoiceItemModelDao invoiceItemModelDao : invoiceModelDao.getInvoiceItems()) {
+                itemsById.put(invoiceItemModelDao.getId(), invoiceItemModelDao);
+            }
+        }
+
+        final Map<UUID, List<UUID>> result = new HashMap<UUID, List<UUID>>();
+        for (final InvoiceModelDao invoiceModelDao : invoiceModelDaos) {
+            for (final InvoiceItemModelDao invoiceItemModelDao : invoiceModelDao.getInvoiceItems()) {
+                final UUID subscriptionId = getTreeSubscriptionId(invoiceItemModelDao, itemsById);
+                if (subscriptionId == null) {
+                    continue;
+                }
+
+                if (result.get(subscriptionId) == null) {
+                    result.put(subscriptionId, new ArrayList<UUID>());
+                }
+                result.get(subscriptionId).add(invoiceItemModelDao.getId());
+            }
+        }
+        return result;
+    }
+
+    private UUID getTreeSubscriptionId(final InvoiceItemModelDao invoiceItemModelDao, final Map<UUID, InvoiceItemModelDao> itemsById) {
+        if (invoiceItemModelDao.getType() == InvoiceItemType.RECURRING || invoiceItemModelDao.getType() == InvoiceItemType.FIXED) {
+            return invoiceItemModelDao.getSubscriptionId();
+        } else if (invoiceItemModelDao.getType() == InvoiceItemType.REPAIR_ADJ || invoiceItemModelDao.getType() == InvoiceItemType.ITEM_ADJ) {
+            final InvoiceItemModelDao linkedItem = itemsById.get(invoiceItemModelDao.getLinkedItemId());
+            return linkedItem != null ? linkedItem.getSubscriptionId() : null;
+        } else {
+            return null;
+        }
+    }
+
     private InvoiceItem computeCBAOnExistingInvoice(final Invoice invoice, final InternalCallContext context) throws InvoiceApiException {
         // Transformation to Invoice -> InvoiceModelDao
         final InvoiceModelDao invoiceModelDao = new InvoiceModelDao(invoice);
@@ -18,31 +18,54 @@
 
 package org.killbill.billing.invoice.api;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Named;
+
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.billing.invoice.InvoiceListener;
 import org.killbill.billing.invoice.InvoiceTagHandler;
+import org.killbill.billing.invoice.dao.AccountBalanceReconciler;
+import org.killbill.billing.invoice.glue.DefaultInvoiceModule;
 import org.killbill.billing.invoice.notification.NextBillingDateNotifier;
 import org.killbill.billing.platform.api.LifecycleHandlerType;
 import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
 import org.killbill.notificationq.api.NotificationQueueService.NoSuchNotificationQueue;
 import org.killbill.notificationq.api.NotificationQueueService.NotificationQueueAlreadyExists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.inject.Inject;
 
 public class DefaultInvoiceService implements InvoiceService {
 
+    private static final Logger log = LoggerFactory.getLogger(DefaultInvoiceService.class);
+
     public static final String INVOICE_SERVICE_NAME = "invoice-service";
+
+    private static final int TERMINATION_TIMEOUT_SEC = 5;
+
     private final NextBillingDateNotifier dateNotifier;
     private final InvoiceListener invoiceListener;
     private final InvoiceTagHandler tagHandler;
     private final PersistentBus eventBus;
+    private final AccountBalanceReconciler accountBalanceReconciler;
+    private final ExecutorService bulkInvoiceExecutor;
+    private final ExecutorService bulkInvoiceProducerExecutor;
 
     @Inject
-    public DefaultInvoiceService(final InvoiceListener invoiceListener, final InvoiceTagHandler tagHandler, final PersistentBus eventBus, final NextBillingDateNotifier dateNotifier) {
+    public DefaultInvoiceService(final InvoiceListener invoiceListener, final InvoiceTagHandler tagHandler, final PersistentBus eventBus, final NextBillingDateNotifier dateNotifier,
+                                 final AccountBalanceReconciler accountBalanceReconciler,
+                                 @Named(DefaultInvoiceModule.BULK_INVOICE_EXECUTOR_NAMED) final ExecutorService bulkInvoiceExecutor,
+                                 @Named(DefaultInvoiceModule.BULK_INVOICE_PRODUCER_EXECUTOR_NAMED) final ExecutorService bulkInvoiceProducerExecutor) {
         this.invoiceListener = invoiceListener;
         this.tagHandler = tagHandler;
         this.eventBus = eventBus;
         this.dateNotifier = dateNotifier;
+        this.accountBalanceReconciler = accountBalanceReconciler;
+        this.bulkInvoiceExecutor = bulkInvoiceExecutor;
+        this.bulkInvoiceProducerExecutor = bulkInvoiceProducerExecutor;
     }
 
     @Override
@@ -64,6 +87,7 @@ public class DefaultInvoiceService implements InvoiceService {
     @LifecycleHandlerType(LifecycleLevel.START_SERVICE)
     public void start() {
         dateNotifier.start();
+        accountBalanceReconciler.start();
     }
 
     @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
@@ -75,5 +99,23 @@ public class DefaultInvoiceService implements InvoiceService {
             throw new RuntimeException("Unable to unregister to the EventBus!", e);
         }
         dateNotifier.stop();
+        accountBalanceReconciler.stop();
+        // Stop the producer first, so that it doesn't schedule accounts on a stopped executor
+        stopBulkInvoiceExecutor(bulkInvoiceProducerExecutor, "Bulk invoice producer executor");
+        stopBulkInvoiceExecutor(bulkInvoiceExecutor, "Bulk invoice executor");
+    }
+
+    private void stopBulkInvoiceExecutor(final ExecutorService executor, final String executorName) {
+        // Accounts still queued are dropped: their runs never complete, as the runs are only kept in memory anyways
+        executor.shutdownNow();
+        try {
+            final boolean success = executor.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS);
+            if (!success) {
+                log.warn(executorName + " failed to complete termination within " + TERMINATION_TIMEOUT_SEC + "sec");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn(executorName + " stop sequence got interrupted");
+        }
     }
 }
@@ -97,6 +97,11 @@ public class DefaultInvoiceInternalApi implements InvoiceInternalApi {
         return dao.getAccountBalance(accountId, context);
     }
 
+    @Override
+    public Long getAccountBalanceVersion(final UUID accountId, final InternalTenantContext context) {
+        return dao.getAccountBalanceVersion(accountId, context);
+    }
+
     @Override
     public void notifyOfPayment(final UUID invoiceId, final BigDecimal amount, final Currency currency, final Currency processedCurrency, final UUID paymentId, final DateTime paymentDate, final InternalCallContext context) throws InvoiceApiException {
         final InvoicePayment invoicePayment = new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, paymentId, invoiceId, paymentDate, amount, currency, processedCurrency);
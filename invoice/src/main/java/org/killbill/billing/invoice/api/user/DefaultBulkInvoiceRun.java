@@ -0,0 +1,165 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.invoice.api.user;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.killbill.billing.invoice.api.BulkInvoiceRun;
+
+import com.google.common.collect.ImmutableList;
+
+public class DefaultBulkInvoiceRun implements BulkInvoiceRun {
+
+    private final UUID id;
+    private final UUID tenantId;
+    private final LocalDate targetDate;
+    private final DateTime startDate;
+    private final AtomicInteger nbAccounts;
+    private final AtomicInteger nbProcessedAccounts;
+    private final AtomicInteger nbInvoicedAccounts;
+    private final List<UUID> failedAccountIds;
+
+    private volatile boolean allAccountsScheduled;
+    private volatile DateTime lastProcessedDate;
+    private volatile DateTime endDate;
+
+    public DefaultBulkInvoiceRun(final UUID id, final UUID tenantId, final LocalDate targetDate, final DateTime startDate) {
+        this.id = id;
+        this.tenantId = tenantId;
+        this.targetDate = targetDate;
+        this.startDate = startDate;
+        this.nbAccounts = new AtomicInteger();
+        this.nbProcessedAccounts = new AtomicInteger();
+        this.nbInvoicedAccounts = new AtomicInteger();
+        this.failedAccountIds = new CopyOnWriteArrayList<UUID>();
+        this.allAccountsScheduled = false;
+        this.lastProcessedDate = startDate;
+        this.endDate = null;
+    }
+
+    // Accounts are scheduled as they are paged, before being processed
+    public void onAccountScheduled() {
+        nbAccounts.incrementAndGet();
+    }
+
+    public void onAllAccountsScheduled(final DateTime scheduledDate) {
+        allAccountsScheduled = true;
+        completeIfAllProcessed(scheduledDate);
+    }
+
+    public void onAccountInvoiced(final boolean hasInvoice, final DateTime processedDate) {
+        if (hasInvoice) {
+            nbInvoicedAccounts.incrementAndGet();
+        }
+        onAccountProcessed(processedDate);
+    }
+
+    public void onAccountFailed(final UUID accountId, final DateTime processedDate) {
+        failedAccountIds.add(accountId);
+        onAccountProcessed(processedDate);
+    }
+
+    private void onAccountProcessed(final DateTime processedDate) {
+        lastProcessedDate = processedDate;
+        nbProcessedAccounts.incrementAndGet();
+        completeIfAllProcessed(processedDate);
+    }
+
+    private synchronized void completeIfAllProcessed(final DateTime date) {
+        if (endDate == null && allAccountsScheduled && nbProcessedAccounts.get() == nbAccounts.get()) {
+            endDate = date;
+        }
+    }
+
+    @Override
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getTenantId() {
+        return tenantId;
+    }
+
+    @Override
+    public LocalDate getTargetDate() {
+        return targetDate;
+    }
+
+    @Override
+    public DateTime getStartDate() {
+        return startDate;
+    }
+
+    @Override
+    public DateTime getEndDate() {
+        return endDate;
+    }
+
+    @Override
+    public int getNbAccounts() {
+        return nbAccounts.get();
+    }
+
+    @Override
+    public int getNbProcessedAccounts() {
+        return nbProcessedAccounts.get();
+    }
+
+    @Override
+    public int getNbInvoicedAccounts() {
+        return nbInvoicedAccounts.get();
+    }
+
+    @Override
+    public int getNbFailedAccounts() {
+        return failedAccountIds.size();
+    }
+
+    @Override
+    public List<UUID> getFailedAccountIds() {
+        return ImmutableList.<UUID>copyOf(failedAccountIds);
+    }
+
+    @Override
+    public double getThroughput() {
+        // Based on the last processed account, so that it doesn't decrease while a slow account is being processed
+        final long elapsedMillis = lastProcessedDate.getMillis() - startDate.getMillis();
+        return elapsedMillis > 0 ? (getNbProcessedAccounts() * 1000.0) / elapsedMillis : 0.0;
+    }
+
+    @Override
+    public boolean isCompleted() {
+        return endDate != null;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DefaultBulkInvoiceRun{");
+        sb.append("id=").append(id);
+        sb.append(", targetDate=").append(targetDate);
+        sb.append(", nbAccounts=").append(nbAccounts);
+        sb.append(", nbProcessedAccounts=").append(nbProcessedAccounts);
+        sb.append(", nbInvoicedAccounts=").append(nbInvoicedAccounts);
+        sb.append(", nbFailedAccounts=").append(failedAccountIds.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
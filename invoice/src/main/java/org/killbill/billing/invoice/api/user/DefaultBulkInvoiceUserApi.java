@@ -0,0 +1,209 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.invoice.api.user;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import javax.inject.Named;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.invoice.InvoiceDispatcher;
+import org.killbill.billing.invoice.api.BulkInvoiceRun;
+import org.killbill.billing.invoice.api.BulkInvoiceUserApi;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.invoice.glue.DefaultInvoiceModule;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.InvoiceConfig;
+import org.killbill.clock.Clock;
+import org.killbill.commons.locker.LockFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.inject.Inject;
+
+public class DefaultBulkInvoiceUserApi implements BulkInvoiceUserApi {
+
+    private static final Logger log = LoggerFactory.getLogger(DefaultBulkInvoiceUserApi.class);
+
+    // Runs are only kept in memory, to report their progress
+    private static final int MAX_RUNS = 100;
+    private static final int ACCOUNTS_PAGE_SIZE = 1000;
+
+    private final InvoiceDispatcher dispatcher;
+    private final AccountInternalApi accountApi;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final ExecutorService bulkInvoiceExecutor;
+    private final ExecutorService bulkInvoiceProducerExecutor;
+    private final Semaphore bulkInvoiceQueuePermits;
+    private final Clock clock;
+    private final Map<UUID, DefaultBulkInvoiceRun> runs;
+
+    @Inject
+    public DefaultBulkInvoiceUserApi(final InvoiceDispatcher dispatcher,
+                                     final AccountInternalApi accountApi,
+                                     final InternalCallContextFactory internalCallContextFactory,
+                                     @Named(DefaultInvoiceModule.BULK_INVOICE_EXECUTOR_NAMED) final ExecutorService bulkInvoiceExecutor,
+                                     @Named(DefaultInvoiceModule.BULK_INVOICE_PRODUCER_EXECUTOR_NAMED) final ExecutorService bulkInvoiceProducerExecutor,
+                                     final InvoiceConfig config,
+                                     final Clock clock) {
+        this.dispatcher = dispatcher;
+        this.accountApi = accountApi;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.bulkInvoiceExecutor = bulkInvoiceExecutor;
+        this.bulkInvoiceProducerExecutor = bulkInvoiceProducerExecutor;
+        // Sized to the queue of the executor: a task holds its permit until it is done, so the queue never overflows
+        this.bulkInvoiceQueuePermits = new Semaphore(config.getBulkInvoiceQueueSize());
+        this.clock = clock;
+        this.runs = Collections.synchronizedMap(new LinkedHashMap<UUID, DefaultBulkInvoiceRun>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<UUID, DefaultBulkInvoiceRun> eldest) {
+                return size() > MAX_RUNS;
+            }
+        });
+    }
+
+    @Override
+    public BulkInvoiceRun triggerInvoiceGeneration(final Iterable<UUID> accountIds, final LocalDate targetDate, final CallContext callContext) {
+        final DefaultBulkInvoiceRun run = new DefaultBulkInvoiceRun(UUID.randomUUID(), callContext.getTenantId(), targetDate, clock.getUTCNow());
+        runs.put(run.getId(), run);
+        log.info("Starting bulk invoice run {} for targetDate {}", run.getId(), targetDate);
+
+        try {
+            bulkInvoiceProducerExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    scheduleAccounts(run, accountIds, targetDate, callContext);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // The service is stopping
+            log.warn("Bulk invoice run " + run.getId() + " failed to start", e);
+            run.onAllAccountsScheduled(clock.getUTCNow());
+        }
+        return run;
+    }
+
+    private void scheduleAccounts(final DefaultBulkInvoiceRun run, final Iterable<UUID> accountIds, final LocalDate targetDate, final CallContext callContext) {
+        final Iterator<UUID> accountIdsIterator = accountIds.iterator();
+        try {
+            while (accountIdsIterator.hasNext()) {
+                final List<UUID> page = new ArrayList<UUID>(ACCOUNTS_PAGE_SIZE);
+                while (accountIdsIterator.hasNext() && page.size() < ACCOUNTS_PAGE_SIZE) {
+                    page.add(accountIdsIterator.next());
+                }
+
+                // Resolve the record ids of the page upfront, so that creating the context of each account doesn't hit the database
+                internalCallContextFactory.populateRecordIdCaches(page, ObjectType.ACCOUNT);
+
+                for (final UUID accountId : page) {
+                    scheduleAccount(run, accountId, targetDate, callContext);
+                }
+            }
+        } catch (final InterruptedException e) {
+            // The service is stopping: the accounts which haven't been scheduled yet are not part of the run
+            Thread.currentThread().interrupt();
+            log.warn("Bulk invoice run {} interrupted after scheduling {} accounts", run.getId(), run.getNbAccounts());
+        } catch (final RuntimeException e) {
+            log.warn("Bulk invoice run " + run.getId() + " failed to retrieve the accounts after scheduling " + run.getNbAccounts() + " accounts", e);
+        } finally {
+            run.onAllAccountsScheduled(clock.getUTCNow());
+            logIfCompleted(run);
+        }
+    }
+
+    private void scheduleAccount(final DefaultBulkInvoiceRun run, final UUID accountId, final LocalDate targetDate, final CallContext callContext) throws InterruptedException {
+        // Wait for the queue to free up, instead of rejecting the account
+        bulkInvoiceQueuePermits.acquire();
+        run.onAccountScheduled();
+        try {
+            bulkInvoiceExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        processAccount(run, accountId, targetDate, callContext);
+                    } finally {
+                        bulkInvoiceQueuePermits.release();
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // The service is stopping
+            bulkInvoiceQueuePermits.release();
+            log.warn("Bulk invoice run " + run.getId() + " failed to schedule accountId " + accountId, e);
+            onAccountFailed(run, accountId);
+        }
+    }
+
+    @Override
+    public BulkInvoiceRun getBulkInvoiceRun(final UUID runId, final TenantContext context) {
+        final DefaultBulkInvoiceRun run = runs.get(runId);
+        return run != null && Objects.equal(run.getTenantId(), context.getTenantId()) ? run : null;
+    }
+
+    private void processAccount(final DefaultBulkInvoiceRun run, final UUID accountId, final LocalDate targetDate, final CallContext callContext) {
+        try {
+            final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContext(accountId, callContext);
+            final Account account = accountApi.getAccountById(accountId, internalContext);
+            final DateTime processingDateTime = targetDate.toDateTimeAtCurrentTime(account.getTimeZone());
+
+            // Same path as a single invoice generation: account lock, transaction and bus events
+            final Invoice invoice = dispatcher.processAccountOrFailOnLock(accountId, processingDateTime, null, internalContext);
+            run.onAccountInvoiced(invoice != null, clock.getUTCNow());
+            logIfCompleted(run);
+            return;
+        } catch (final AccountApiException e) {
+            log.warn("Bulk invoice run " + run.getId() + " failed for accountId " + accountId, e);
+        } catch (final InvoiceApiException e) {
+            log.warn("Bulk invoice run " + run.getId() + " failed for accountId " + accountId, e);
+        } catch (final LockFailedException e) {
+            log.warn("Bulk invoice run " + run.getId() + " failed to lock accountId " + accountId, e);
+        } catch (final RuntimeException e) {
+            log.warn("Bulk invoice run " + run.getId() + " failed for accountId " + accountId, e);
+        }
+        onAccountFailed(run, accountId);
+    }
+
+    private void onAccountFailed(final DefaultBulkInvoiceRun run, final UUID accountId) {
+        run.onAccountFailed(accountId, clock.getUTCNow());
+        logIfCompleted(run);
+    }
+
+    private void logIfCompleted(final DefaultBulkInvoiceRun run) {
+        if (run.isCompleted()) {
+            log.info("Completed bulk invoice run {}: {} accounts invoiced, {} failed, {} accounts/s",
+                     new Object[]{run.getId(), run.getNbInvoicedAccounts(), run.getNbFailedAccounts(), String.format("%.2f", run.getThroughput())});
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.dao;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.invoice.api.InvoiceItemType;
+import org.killbill.billing.util.entity.dao.EntitySqlDao;
+import org.killbill.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+/**
+ * Maintains the invoice_account_balances table, the running totals from which the account balance and credit are read,
+ * as well as the balance columns of the invoices table, from which the unpaid invoices are looked up.
+ * <p/>
+ * Every write of invoice items or invoice payments must be recorded here, from the same transaction. The row of an account
+ * is created the first time something is recorded for it, from the full history (this also covers existing accounts).
+ * Writes bypassing the invoice DAO are caught up by the AccountBalanceReconciler.
+ */
+public class AccountBalanceLedger {
+
+    public void recordInvoiceItem(final InvoiceItemModelDao invoiceItem,
+                                  final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                  final InternalCallContext context) {
+        recordInvoiceItems(ImmutableList.<InvoiceItemModelDao>of(invoiceItem), entitySqlDaoWrapperFactory, context);
+    }
+
+    public void recordInvoiceItems(final Iterable<InvoiceItemModelDao> invoiceItems,
+                                   final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                   final InternalCallContext context) {
+        Currency currency = null;
+        BigDecimal chargedAmount = BigDecimal.ZERO;
+        BigDecimal cbaAmount = BigDecimal.ZERO;
+        final Set<UUID> invoiceIds = Sets.newLinkedHashSet();
+        for (final InvoiceItemModelDao invoiceItem : invoiceItems) {
+            invoiceIds.add(invoiceItem.getInvoiceId());
+            currency = invoiceItem.getCurrency();
+            if (InvoiceItemType.CBA_ADJ.equals(invoiceItem.getType())) {
+                cbaAmount = cbaAmount.add(invoiceItem.getAmount());
+            } else {
+                chargedAmount = chargedAmount.add(invoiceItem.getAmount());
+            }
+        }
+
+        if (currency != null) {
+            record(currency, chargedAmount, cbaAmount, BigDecimal.ZERO, entitySqlDaoWrapperFactory, context);
+        }
+        for (final UUID invoiceId : invoiceIds) {
+            refreshInvoiceBalance(invoiceId, entitySqlDaoWrapperFactory, context);
+        }
+    }
+
+    public void recordInvoicePayment(final InvoicePaymentModelDao invoicePayment,
+                                     final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                     final InternalCallContext context) {
+        record(invoicePayment.getCurrency(), BigDecimal.ZERO, BigDecimal.ZERO, invoicePayment.getAmount(), entitySqlDaoWrapperFactory, context);
+        refreshInvoiceBalance(invoicePayment.getInvoiceId(), entitySqlDaoWrapperFactory, context);
+    }
+
+    /**
+     * Update the balance columns of the invoice, if they don't match its items and payments
+     *
+     * @param invoice the invoice, with its items and payments populated
+     * @return true if the columns were up-to-date
+     */
+    public boolean refreshInvoiceBalance(final InvoiceModelDao invoice,
+                                         final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                         final InternalCallContext context) {
+        final BigDecimal amountCharged = InvoiceModelDaoHelper.getAmountCharged(invoice);
+        final BigDecimal amountCredited = InvoiceModelDaoHelper.getCBAAmount(invoice);
+        final BigDecimal amountPaid = InvoiceModelDaoHelper.getAmountPaid(invoice);
+        final BigDecimal balance = InvoiceModelDaoHelper.getBalance(invoice);
+        if (isSameAmount(invoice.getAmountCharged(), amountCharged) &&
+            isSameAmount(invoice.getAmountCredited(), amountCredited) &&
+            isSameAmount(invoice.getAmountPaid(), amountPaid) &&
+            isSameAmount(invoice.getBalance(), balance)) {
+            return true;
+        }
+
+        entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class).updateBalance(invoice.getId().toString(), amountCharged, amountCredited, amountPaid, balance, context);
+        invoice.setAmountCharged(amountCharged);
+        invoice.setAmountCredited(amountCredited);
+        invoice.setAmountPaid(amountPaid);
+        invoice.setBalance(balance);
+        return false;
+    }
+
+    /**
+     * @return the ledger entry of the account, null if nothing was recorded for it yet
+     */
+    @Nullable
+    public InvoiceAccountBalanceModelDao getAccountBalanceFromTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                                                         final InternalTenantContext context) {
+        if (context.getAccountRecordId() == null) {
+            return null;
+        }
+        return entitySqlDaoWrapperFactory.transmogrify(InvoiceAccountBalanceSqlDao.class).getAccountBalance(context);
+    }
+
+    /**
+     * Same as {@link #getAccountBalanceFromTransaction}, but also locks the ledger entry until the end of the transaction
+     */
+    @Nullable
+    public InvoiceAccountBalanceModelDao getAccountBalanceForUpdateFromTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                                                                  final InternalTenantContext context) {
+        if (context.getAccountRecordId() == null) {
+            return null;
+        }
+        return entitySqlDaoWrapperFactory.transmogrify(InvoiceAccountBalanceSqlDao.class).getAccountBalanceForUpdate(context);
+    }
+
+    /**
+     * Reset the ledger entry of the account from the full history
+     *
+     * @return the ledger entry before the reset, null if there was none
+     */
+    @Nullable
+    public InvoiceAccountBalanceModelDao rebuildFromTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                                                final InternalCallContext context) {
+        final InvoiceAccountBalanceSqlDao invoiceAccountBalanceSqlDao = entitySqlDaoWrapperFactory.transmogrify(InvoiceAccountBalanceSqlDao.class);
+        final InvoiceAccountBalanceModelDao previousAccountBalance = invoiceAccountBalanceSqlDao.getAccountBalance(context);
+        final InvoiceAccountBalanceModelDao accountBalance = invoiceAccountBalanceSqlDao.computeAccountBalance(context);
+        if (previousAccountBalance == null && createFromHistory(accountBalance.getCurrency(), invoiceAccountBalanceSqlDao, context)) {
+            return null;
+        }
+        invoiceAccountBalanceSqlDao.setAccountBalance(accountBalance.getChargedAmount(), accountBalance.getCbaAmount(), accountBalance.getPaidAmount(), context);
+        return previousAccountBalance;
+    }
+
+    /**
+     * Update the balance columns of the invoice from its items and payments
+     *
+     * @param invoiceId the invoice id
+     */
+    public void refreshInvoiceBalance(final UUID invoiceId,
+                                      final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                                      final InternalCallContext context) {
+        final InvoiceModelDao invoice = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class).getById(invoiceId.toString(), context);
+        if (invoice == null) {
+            // Items recorded against a shell invoice which was not persisted
+            return;
+        }
+
+        // Only load the children of that invoice, not the ones of the whole account
+        invoice.addInvoiceItems(entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class).getInvoiceItemsByInvoice(invoiceId.toString(), context));
+        invoice.addPayments(entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class).getPaymentsForInvoice(invoiceId.toString(), context));
+        refreshInvoiceBalance(invoice, entitySqlDaoWrapperFactory, context);
+    }
+
+    private boolean isSameAmount(@Nullable final BigDecimal storedAmount, final BigDecimal amount) {
+        return storedAmount != null && storedAmount.compareTo(amount) == 0;
+    }
+
+    private void record(final Currency currency,
+                        final BigDecimal chargedAmount,
+                        final BigDecimal cbaAmount,
+                        final BigDecimal paidAmount,
+                        final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
+                        final InternalCallContext context) {
+        if (context.getAccountRecordId() == null) {
+            return;
+        }
+
+        final InvoiceAccountBalanceSqlDao invoiceAccountBalanceSqlDao = entitySqlDaoWrapperFactory.transmogrify(InvoiceAccountBalanceSqlDao.class);
+        final int updated = invoiceAccountBalanceSqlDao.addToAccountBalance(chargedAmount, cbaAmount, paidAmount, context);
+        // First write for that account: the history already contains the rows we are recording
+        if (updated == 0 && !createFromHistory(currency, invoiceAccountBalanceSqlDao, context)) {
+            // A concurrent transaction created the row first, from a history which didn't contain our (uncommitted) rows:
+            // the insert waited for it to commit, the update now locks the row and adds them
+            invoiceAccountBalanceSqlDao.addToAccountBalance(chargedAmount, cbaAmount, paidAmount, context);
+        }
+    }
+
+    // Returns false if the row already existed (the insert is ignored on the unique account_record_id key)
+    private boolean createFromHistory(@Nullable final Currency currency, final InvoiceAccountBalanceSqlDao invoiceAccountBalanceSqlDao, final InternalCallContext context) {
+        final InvoiceAccountBalanceModelDao accountBalance = invoiceAccountBalanceSqlDao.computeAccountBalance(context);
+        final Currency accountCurrency = currency != null ? currency : accountBalance.getCurrency();
+        return invoiceAccountBalanceSqlDao.createAccountBalance(accountCurrency == null ? null : accountCurrency.toString(),
+                                                                accountBalance.getChargedAmount(),
+                                                                accountBalance.getCbaAmount(),
+                                                                accountBalance.getPaidAmount(),
+                                                                context) > 0;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.dao;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.invoice.glue.DefaultInvoiceModule;
+import org.killbill.billing.util.callcontext.CallOrigin;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.UserType;
+import org.killbill.billing.util.config.InvoiceConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically verifies the account balance ledger against the full recomputation from the invoice items and payments,
+ * rebuilding the entries which have drifted.
+ */
+public class AccountBalanceReconciler implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountBalanceReconciler.class);
+
+    private static final int TERMINATION_TIMEOUT_SEC = 5;
+    private static final String RECONCILER_USER_NAME = "AccountBalanceReconciler";
+
+    private final InvoiceDao invoiceDao;
+    private final InvoiceConfig invoiceConfig;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final ScheduledExecutorService reconciliationExecutor;
+
+    private volatile boolean isStopped;
+
+    @Inject
+    public AccountBalanceReconciler(final InvoiceDao invoiceDao,
+                                    final InvoiceConfig invoiceConfig,
+                                    final InternalCallContextFactory internalCallContextFactory,
+                                    @Named(DefaultInvoiceModule.BALANCE_RECONCILIATION_EXECUTOR_NAMED) final ScheduledExecutorService reconciliationExecutor) {
+        this.invoiceDao = invoiceDao;
+        this.invoiceConfig = invoiceConfig;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.reconciliationExecutor = reconciliationExecutor;
+        this.isStopped = false;
+    }
+
+    public void start() {
+        if (!invoiceConfig.isAccountBalanceReconciliationEnabled()) {
+            log.info("Account balance reconciliation is disabled");
+            return;
+        }
+        if (isStopped) {
+            log.warn("AccountBalanceReconciler is not a restartable service, and was already started, aborting");
+            return;
+        }
+
+        final TimeUnit rateUnit = invoiceConfig.getAccountBalanceReconciliationRate().getUnit();
+        final long period = invoiceConfig.getAccountBalanceReconciliationRate().getPeriod();
+        reconciliationExecutor.scheduleAtFixedRate(this, period, period, rateUnit);
+    }
+
+    public void stop() {
+        if (isStopped) {
+            log.warn("AccountBalanceReconciler is already in a stopped state");
+            return;
+        }
+        try {
+            reconciliationExecutor.shutdown();
+            final boolean success = reconciliationExecutor.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS);
+            if (!success) {
+                log.warn("AccountBalanceReconciler failed to complete termination within " + TERMINATION_TIMEOUT_SEC + "sec");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("AccountBalanceReconciler stop sequence got interrupted");
+        } finally {
+            isStopped = true;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            final int nbMismatches = reconcile();
+            if (nbMismatches > 0) {
+                log.warn("Account balance reconciliation rebuilt {} ledger entries", nbMismatches);
+            }
+        } catch (final RuntimeException e) {
+            // Don't let the exception kill the scheduled task
+            log.warn("Failed to reconcile account balances", e);
+        }
+    }
+
+    /**
+     * Verify all the ledger entries, one batch at a time
+     *
+     * @return the number of entries which had to be rebuilt
+     */
+    public int reconcile() {
+        final long batchSize = invoiceConfig.getAccountBalanceReconciliationBatchSize();
+
+        int nbMismatches = 0;
+        Long recordIdCursor = 0L;
+        List<InvoiceAccountBalanceModelDao> accountBalances;
+        do {
+            accountBalances = invoiceDao.getAccountBalancesAfterRecordId(recordIdCursor, batchSize);
+            for (final InvoiceAccountBalanceModelDao accountBalance : accountBalances) {
+                if (isStopped) {
+                    return nbMismatches;
+                }
+
+                final InternalCallContext context = internalCallContextFactory.createInternalCallContext(accountBalance.getTenantRecordId(),
+                                                                                                         accountBalance.getAccountRecordId(),
+                                                                                                         RECONCILER_USER_NAME,
+                                                                                                         CallOrigin.INTERNAL,
+                                                                                                         UserType.SYSTEM,
+                                                                                                         null);
+                if (!invoiceDao.reconcileAccountBalance(context)) {
+                    nbMismatches++;
+                }
+                recordIdCursor = accountBalance.getRecordId();
+            }
+        } while (accountBalances.size() == batchSize);
+
+        return nbMismatches;
+    }
+}
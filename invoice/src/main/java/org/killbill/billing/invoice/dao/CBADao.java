@@ -26,6 +26,7 @@ import org.killbill.billing.invoice.model.CreditBalanceAdjInvoiceItem;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.entity.EntityPersistenceException;
+import org.killbill.billing.util.config.InvoiceConfig;
 import org.killbill.billing.util.entity.dao.EntitySqlDao;
 import org.killbill.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
 
@@ -35,15 +36,26 @@ import com.google.common.collect.Ordering;
 public class CBADao {
 
     private final InvoiceDaoHelper invoiceDaoHelper;
+    private final AccountBalanceLedger accountBalanceLedger;
+    private final InvoiceConfig invoiceConfig;
 
-    public CBADao() {
+    public CBADao(final InvoiceConfig invoiceConfig) {
         this.invoiceDaoHelper = new InvoiceDaoHelper();
+        this.accountBalanceLedger = new AccountBalanceLedger();
+        this.invoiceConfig = invoiceConfig;
     }
 
 
     public BigDecimal getAccountCBAFromTransaction(final UUID accountId,
                                                     final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory,
                                                     final InternalTenantContext context) {
+        if (invoiceConfig.isAccountBalanceLedgerEnabled()) {
+            final InvoiceAccountBalanceModelDao accountBalance = accountBalanceLedger.getAccountBalanceFromTransaction(entitySqlDaoWrapperFactory, context);
+            if (accountBalance != null) {
+                return accountBalance.getAccountCBA();
+            }
+        }
+
         final List<InvoiceModelDao> invoices = invoiceDaoHelper.getAllInvoicesByAccountFromTransaction(entitySqlDaoWrapperFactory, context);
         return getAccountCBAFromTransaction(invoices);
     }
@@ -68,8 +80,7 @@ public class CBADao {
         // Current balance is positive, we need to use some of the existing if available (negative CBA amount)
         } else if (balance.compareTo(BigDecimal.ZERO) > 0) {
 
-            final List<InvoiceModelDao> allInvoices = invoiceDaoHelper.getAllInvoicesByAccountFromTransaction(entitySqlDaoWrapperFactory, context);
-            final BigDecimal accountCBA = getAccountCBAFromTransaction(allInvoices);
+            final BigDecimal accountCBA = getAccountCBAFromTransaction(invoice.getAccountId(), entitySqlDaoWrapperFactory, context);
             if (accountCBA.compareTo(BigDecimal.ZERO) <= 0) {
                 return null;
             }
@@ -87,6 +98,7 @@ public class CBADao {
         if (cbaItem != null) {
             final InvoiceItemSqlDao transInvoiceItemDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
             transInvoiceItemDao.create(cbaItem, context);
+            accountBalanceLedger.recordInvoiceItem(cbaItem, entitySqlDaoWrapperFactory, context);
         }
     }
 
@@ -126,6 +138,7 @@ public class CBADao {
             final InvoiceItemSqlDao transInvoiceItemDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
             final InvoiceItemModelDao cbaAdjItem = new InvoiceItemModelDao(new CreditBalanceAdjInvoiceItem(invoice.getId(), invoice.getAccountId(), context.getCreatedDate().toLocalDate(), balance.negate(), invoice.getCurrency()));
             transInvoiceItemDao.create(cbaAdjItem, context);
+            accountBalanceLedger.recordInvoiceItem(cbaAdjItem, entitySqlDaoWrapperFactory, context);
         }
     }
 
@@ -156,6 +169,7 @@ public class CBADao {
 
             final InvoiceItemSqlDao transInvoiceItemDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
             transInvoiceItemDao.create(cbaAdjItem, context);
+            accountBalanceLedger.recordInvoiceItem(cbaAdjItem, entitySqlDaoWrapperFactory, context);
 
             if (remainingAccountCBA.compareTo(BigDecimal.ZERO) <= 0) {
                 break;
@@ -42,6 +42,7 @@ import org.killbill.billing.invoice.api.user.DefaultInvoiceAdjustmentEvent;
 import org.killbill.billing.invoice.notification.NextBillingDatePoster;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.config.InvoiceConfig;
 import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.billing.util.entity.Pagination;
 import org.killbill.billing.util.entity.dao.DefaultPaginationSqlDaoHelper.PaginationIteratorBuilder;
@@ -84,6 +85,8 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
     private final InternalCallContextFactory internalCallContextFactory;
     private final InvoiceDaoHelper invoiceDaoHelper;
     private final CBADao cbaDao;
+    private final AccountBalanceLedger accountBalanceLedger;
+    private final InvoiceConfig invoiceConfig;
 
     @Inject
     public DefaultInvoiceDao(final IDBI dbi,
@@ -92,13 +95,16 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                              final Clock clock,
                              final CacheControllerDispatcher cacheControllerDispatcher,
                              final NonEntityDao nonEntityDao,
-                             final InternalCallContextFactory internalCallContextFactory) {
+                             final InternalCallContextFactory internalCallContextFactory,
+                             final InvoiceConfig invoiceConfig) {
         super(new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, cacheControllerDispatcher, nonEntityDao), InvoiceSqlDao.class);
         this.nextBillingDatePoster = nextBillingDatePoster;
         this.eventBus = eventBus;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.invoiceConfig = invoiceConfig;
         this.invoiceDaoHelper = new InvoiceDaoHelper();
-        this.cbaDao = new CBADao();
+        this.cbaDao = new CBADao(invoiceConfig);
+        this.accountBalanceLedger = new AccountBalanceLedger();
     }
 
     @Override
@@ -152,6 +158,38 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    @Override
+    public List<InvoiceModelDao> getInvoicesByAccountForGeneration(final LocalDate cutoffDate, final InternalTenantContext context) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+            @Override
+            public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final List<InvoiceItemModelDao> invoiceItems = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class).getInvoiceItemsByAccountForGeneration(cutoffDate.toDate(), context);
+                final Map<UUID, List<InvoiceItemModelDao>> invoiceItemsPerInvoiceId = new HashMap<UUID, List<InvoiceItemModelDao>>();
+                for (final InvoiceItemModelDao item : invoiceItems) {
+                    if (invoiceItemsPerInvoiceId.get(item.getInvoiceId()) == null) {
+                        invoiceItemsPerInvoiceId.put(item.getInvoiceId(), new LinkedList<InvoiceItemModelDao>());
+                    }
+                    invoiceItemsPerInvoiceId.get(item.getInvoiceId()).add(item);
+                }
+
+                // Invoices targeted on or after the cutoff date are kept even without items, as their target date is needed by the generator
+                final InvoiceSqlDao invoiceDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
+                final List<InvoiceModelDao> invoices = ImmutableList.<InvoiceModelDao>copyOf(INVOICE_MODEL_DAO_ORDERING.sortedCopy(Iterables.<InvoiceModelDao>filter(invoiceDao.getByAccountRecordId(context),
+                                                                                                                                                                     new Predicate<InvoiceModelDao>() {
+                                                                                                                                                                         @Override
+                                                                                                                                                                         public boolean apply(final InvoiceModelDao invoice) {
+                                                                                                                                                                             return !invoice.isMigrated() &&
+                                                                                                                                                                                    (invoiceItemsPerInvoiceId.containsKey(invoice.getId()) || invoice.getTargetDate().compareTo(cutoffDate) >= 0);
+                                                                                                                                                                         }
+                                                                                                                                                                     })));
+                for (final InvoiceModelDao invoice : invoices) {
+                    invoice.addInvoiceItems(Objects.firstNonNull(invoiceItemsPerInvoiceId.get(invoice.getId()), ImmutableList.<InvoiceItemModelDao>of()));
+                }
+                return invoices;
+            }
+        });
+    }
+
     private List<InvoiceModelDao> getAllNonMigratedInvoicesByAccountAfterDate(final InvoiceSqlDao invoiceSqlDao, final LocalDate fromDate, final InternalTenantContext context) {
         return ImmutableList.<InvoiceModelDao>copyOf(INVOICE_MODEL_DAO_ORDERING.sortedCopy(Iterables.<InvoiceModelDao>filter(invoiceSqlDao.getByAccountRecordId(context),
                                                                                                                              new Predicate<InvoiceModelDao>() {
@@ -220,12 +258,17 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                     // a shell invoice and we only need to insert the invoiceItems -- for the already existing invoices
                     if (isRealInvoice) {
                         transactional.create(invoice, context);
+                        if (invoiceItems.isEmpty()) {
+                            // Populate the balance columns of the empty invoice (recording the items does it otherwise)
+                            accountBalanceLedger.refreshInvoiceBalance(invoice.getId(), entitySqlDaoWrapperFactory, context);
+                        }
                     }
 
-                    // Create the invoice items
-                    final InvoiceItemSqlDao transInvoiceItemSqlDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
-                    for (final InvoiceItemModelDao invoiceItemModelDao : invoiceItems) {
-                        transInvoiceItemSqlDao.create(invoiceItemModelDao, context);
+                    // Create the invoice items (along with their history and audit rows) in batches
+                    if (!invoiceItems.isEmpty()) {
+                        final InvoiceItemSqlDao transInvoiceItemSqlDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
+                        transInvoiceItemSqlDao.batchCreate(invoiceItems, context);
+                        accountBalanceLedger.recordInvoiceItems(invoiceItems, entitySqlDaoWrapperFactory, context);
                     }
 
                     cbaDao.addCBAComplexityFromTransaction(invoice, entitySqlDaoWrapperFactory, context);
@@ -285,24 +328,68 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     }
 
+    @Override
+    public Pagination<InvoiceModelDao> searchInvoicesByRecordIdCursor(final String searchKey, final Long recordIdCursor, final Long limit, final boolean withCount, final InternalTenantContext context) {
+        Integer invoiceNumberParsed = null;
+        try {
+            invoiceNumberParsed = Integer.parseInt(searchKey);
+        } catch (final NumberFormatException ignored) {
+        }
+
+        final Integer invoiceNumber = invoiceNumberParsed;
+        return paginationHelper.getPaginationFromRecordIdCursor(InvoiceSqlDao.class,
+                                                                new PaginationIteratorBuilder<InvoiceModelDao, Invoice, InvoiceSqlDao>() {
+                                                                    @Override
+                                                                    public Long getCount(final InvoiceSqlDao invoiceSqlDao, final InternalTenantContext context) {
+                                                                        return invoiceNumber != null ? 1L : invoiceSqlDao.getSearchCount(searchKey, String.format("%%%s%%", searchKey), context);
+                                                                    }
+
+                                                                    @Override
+                                                                    public Iterator<InvoiceModelDao> build(final InvoiceSqlDao invoiceSqlDao, final Long limit, final InternalTenantContext context) {
+                                                                        if (invoiceNumber == null) {
+                                                                            return invoiceSqlDao.searchByRecordIdCursor(searchKey, String.format("%%%s%%", searchKey), recordIdCursor, limit, context);
+                                                                        }
+
+                                                                        // The invoice number is the record_id
+                                                                        final InvoiceModelDao invoice = invoiceNumber > recordIdCursor ? invoiceSqlDao.getByRecordId(invoiceNumber.longValue(), context) : null;
+                                                                        return invoice == null ? Iterators.<InvoiceModelDao>emptyIterator() : ImmutableList.<InvoiceModelDao>of(invoice).iterator();
+                                                                    }
+                                                                },
+                                                                recordIdCursor,
+                                                                limit,
+                                                                withCount,
+                                                                context);
+    }
+
     @Override
     public BigDecimal getAccountBalance(final UUID accountId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<BigDecimal>() {
             @Override
             public BigDecimal inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
-                BigDecimal cba = BigDecimal.ZERO;
+                if (invoiceConfig.isAccountBalanceLedgerEnabled()) {
+                    final InvoiceAccountBalanceModelDao accountBalance = accountBalanceLedger.getAccountBalanceFromTransaction(entitySqlDaoWrapperFactory, context);
+                    if (accountBalance != null) {
+                        return accountBalance.getAccountBalance();
+                    }
+                }
 
-                BigDecimal accountBalance = BigDecimal.ZERO;
                 final List<InvoiceModelDao> invoices = invoiceDaoHelper.getAllInvoicesByAccountFromTransaction(entitySqlDaoWrapperFactory, context);
-                for (final InvoiceModelDao cur : invoices) {
-                    accountBalance = accountBalance.add(InvoiceModelDaoHelper.getBalance(cur));
-                    cba = cba.add(InvoiceModelDaoHelper.getCBAAmount(cur));
-                }
-                return accountBalance.subtract(cba);
+                return computeAccountBalance(invoices);
             }
         });
     }
 
+    private BigDecimal computeAccountBalance(final List<InvoiceModelDao> invoices) {
+        BigDecimal cba = BigDecimal.ZERO;
+
+        BigDecimal accountBalance = BigDecimal.ZERO;
+        for (final InvoiceModelDao cur : invoices) {
+            accountBalance = accountBalance.add(InvoiceModelDaoHelper.getBalance(cur));
+            cba = cba.add(InvoiceModelDaoHelper.getCBAAmount(cur));
+        }
+        return accountBalance.subtract(cba);
+    }
+
     @Override
     public BigDecimal getAccountCBA(final UUID accountId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<BigDecimal>() {
@@ -313,6 +400,21 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    @Override
+    public Long getAccountBalanceVersion(final UUID accountId, final InternalTenantContext context) {
+        if (!invoiceConfig.isAccountBalanceLedgerEnabled()) {
+            return null;
+        }
+
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Long>() {
+            @Override
+            public Long inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final InvoiceAccountBalanceModelDao accountBalance = accountBalanceLedger.getAccountBalanceFromTransaction(entitySqlDaoWrapperFactory, context);
+                return accountBalance == null ? null : accountBalance.getVersion();
+            }
+        });
+    }
+
     @Override
     public List<InvoiceModelDao> getUnpaidInvoicesByAccountId(final UUID accountId, @Nullable final LocalDate upToDate, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
@@ -398,6 +500,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                                                                                  context.getCreatedDate(), requestedPositiveAmount.negate(),
                                                                                  payment.getCurrency(), payment.getProcessedCurrency(), transactionExternalKey, payment.getId());
                 transactional.create(refund, context);
+                accountBalanceLedger.recordInvoicePayment(refund, entitySqlDaoWrapperFactory, context);
 
                 // Retrieve invoice after the Refund
                 final InvoiceModelDao invoice = transInvoiceDao.getById(payment.getInvoiceId().toString(), context);
@@ -419,6 +522,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                                                                                     null, null, null, null, null, null, context.getCreatedDate().toLocalDate(), null,
                                                                                     requestedPositiveAmountToAdjust.negate(), null, invoice.getCurrency(), null);
                         transInvoiceItemDao.create(adjItem, context);
+                        accountBalanceLedger.recordInvoiceItem(adjItem, entitySqlDaoWrapperFactory, context);
                         invoice.addInvoiceItem(adjItem);
                     }
                 } else if (isInvoiceAdjusted) {
@@ -429,6 +533,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                                                                                                invoice.getCurrency(), context.getCreatedDate().toLocalDate(),
                                                                                                context);
                         transInvoiceItemDao.create(item, context);
+                        accountBalanceLedger.recordInvoiceItem(item, entitySqlDaoWrapperFactory, context);
                         invoice.addInvoiceItem(item);
                     }
                 }
@@ -483,6 +588,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                                                                                      requestedChargedBackAmount.negate(), payment.getCurrency(), payment.getProcessedCurrency(),
                                                                                      null, payment.getId());
                 transactional.create(chargeBack, context);
+                accountBalanceLedger.recordInvoicePayment(chargeBack, entitySqlDaoWrapperFactory, context);
 
                 // Notify the bus since the balance of the invoice changed
                 final UUID accountId = transactional.getAccountIdFromInvoicePaymentId(chargeBack.getId().toString(), context);
@@ -598,6 +704,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                 }).orNull();
                 if (existingAttempt == null) {
                     transactional.create(invoicePayment, context);
+                    accountBalanceLedger.recordInvoicePayment(invoicePayment, entitySqlDaoWrapperFactory, context);
                 }
                 return null;
             }
@@ -648,12 +755,15 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                                                                                        null,
                                                                                        charge.getCurrency(),
                                                                                        null);
-                    transInvoiceItemDao.create(externalCharge, context);
-
                     createdExternalCharges.add(externalCharge);
                     changedInvoices.add(invoiceIdForExternalCharge);
                 }
 
+                if (!createdExternalCharges.isEmpty()) {
+                    transInvoiceItemDao.batchCreate(createdExternalCharges, context);
+                    accountBalanceLedger.recordInvoiceItems(createdExternalCharges, entitySqlDaoWrapperFactory, context);
+                }
+
                 cbaDao.addCBAComplexityFromTransaction(entitySqlDaoWrapperFactory, context);
 
                 // Notify the bus since the balance of the invoice changed
@@ -760,6 +870,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                                                                                null, null, null, null, null, null, context.getCreatedDate().toLocalDate(),
                                                                                null, cbaItem.getAmount().negate(), null, cbaItem.getCurrency(), cbaItem.getId());
                 invoiceItemSqlDao.create(cbaAdjItem, context);
+                accountBalanceLedger.recordInvoiceItem(cbaAdjItem, entitySqlDaoWrapperFactory, context);
 
                 // Verify the final invoice balance is not negative
                 invoiceDaoHelper.populateChildren(invoice, entitySqlDaoWrapperFactory, context);
@@ -817,6 +928,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                                                                                            context.getCreatedDate().toLocalDate(), null,
                                                                                            positiveCBAAdjItemAmount, null, cbaItem.getCurrency(), cbaItem.getId());
                         invoiceItemSqlDao.create(nextCBAAdjItem, context);
+                        accountBalanceLedger.recordInvoiceItem(nextCBAAdjItem, entitySqlDaoWrapperFactory, context);
                         if (positiveRemainderToAdjust.compareTo(BigDecimal.ZERO) == 0) {
                             break;
                         }
@@ -839,6 +951,75 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    @Override
+    public List<InvoiceTreeSnapshotModelDao> getInvoiceTreeSnapshots(final InternalTenantContext context) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceTreeSnapshotModelDao>>() {
+            @Override
+            public List<InvoiceTreeSnapshotModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.transmogrify(InvoiceTreeSnapshotSqlDao.class).getSnapshots(context);
+            }
+        });
+    }
+
+    @Override
+    public void setInvoiceTreeSnapshots(final List<InvoiceTreeSnapshotModelDao> snapshots, final InternalCallContext context) {
+        transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final InvoiceTreeSnapshotSqlDao invoiceTreeSnapshotSqlDao = entitySqlDaoWrapperFactory.transmogrify(InvoiceTreeSnapshotSqlDao.class);
+                invoiceTreeSnapshotSqlDao.deleteSnapshots(context);
+                if (!snapshots.isEmpty()) {
+                    invoiceTreeSnapshotSqlDao.createSnapshots(snapshots, context);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public List<InvoiceAccountBalanceModelDao> getAccountBalancesAfterRecordId(final Long recordIdCursor, final Long limit) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<InvoiceAccountBalanceModelDao>>() {
+            @Override
+            public List<InvoiceAccountBalanceModelDao> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                return entitySqlDaoWrapperFactory.transmogrify(InvoiceAccountBalanceSqlDao.class).getAccountBalancesAfterRecordId(recordIdCursor, limit);
+            }
+        });
+    }
+
+    @Override
+    public boolean reconcileAccountBalance(final InternalCallContext context) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Boolean>() {
+            @Override
+            public Boolean inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                // Lock the ledger entry first, so that concurrent writers wait for the (possible) rebuild
+                final InvoiceAccountBalanceModelDao ledgerAccountBalance = accountBalanceLedger.getAccountBalanceForUpdateFromTransaction(entitySqlDaoWrapperFactory, context);
+
+                final List<InvoiceModelDao> invoices = invoiceDaoHelper.getAllInvoicesByAccountFromTransaction(entitySqlDaoWrapperFactory, context);
+                final BigDecimal accountBalance = computeAccountBalance(invoices);
+                final BigDecimal accountCBA = cbaDao.getAccountCBAFromTransaction(invoices);
+
+                // Fix the balance columns of the invoices as well (e.g. for invoices created before they existed)
+                boolean invoicesUpToDate = true;
+                for (final InvoiceModelDao invoice : invoices) {
+                    if (!accountBalanceLedger.refreshInvoiceBalance(invoice, entitySqlDaoWrapperFactory, context)) {
+                        invoicesUpToDate = false;
+                    }
+                }
+
+                if (ledgerAccountBalance != null &&
+                    ledgerAccountBalance.getAccountBalance().compareTo(accountBalance) == 0 &&
+                    ledgerAccountBalance.getAccountCBA().compareTo(accountCBA) == 0) {
+                    return invoicesUpToDate;
+                }
+
+                log.warn("Rebuilding the account balance ledger for accountRecordId {}: ledger {} doesn't match the invoice history (balance = {}, CBA = {})",
+                         new Object[]{context.getAccountRecordId(), ledgerAccountBalance, accountBalance, accountCBA});
+                accountBalanceLedger.rebuildFromTransaction(entitySqlDaoWrapperFactory, context);
+                return false;
+            }
+        });
+    }
+
     private void notifyOfFutureBillingEvents(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final UUID accountId,
                                              final Map<UUID, List<DateTime>> callbackDateTimePerSubscriptions, final UUID userToken) {
         for (final UUID subscriptionId : callbackDateTimePerSubscriptions.keySet()) {
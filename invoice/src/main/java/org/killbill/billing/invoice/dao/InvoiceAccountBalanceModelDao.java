@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.dao;
+
+import java.math.BigDecimal;
+
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.util.currency.KillBillMoney;
+
+/**
+ * Running totals of the invoice items and invoice payments of an account (see AccountBalanceLedger).
+ * <p/>
+ * Items and payments are never updated nor deleted, so the account balance and credit only depend on these sums:
+ * the balance is what was charged minus what was paid, and the account credit is the sum of the CBA_ADJ items.
+ */
+public class InvoiceAccountBalanceModelDao {
+
+    private Long recordId;
+    private Currency currency;
+    // Sum of all items, except CBA_ADJ
+    private BigDecimal chargedAmount;
+    // Sum of the CBA_ADJ items
+    private BigDecimal cbaAmount;
+    // Sum of all payments (refunds and chargebacks are negative)
+    private BigDecimal paidAmount;
+    // Incremented on every change of the entry
+    private Long version;
+    private Long accountRecordId;
+    private Long tenantRecordId;
+
+    public InvoiceAccountBalanceModelDao() { /* For the DAO mapper */ }
+
+    public InvoiceAccountBalanceModelDao(final Long recordId, final Currency currency, final BigDecimal chargedAmount, final BigDecimal cbaAmount, final BigDecimal paidAmount,
+                                         final Long version, final Long accountRecordId, final Long tenantRecordId) {
+        this.recordId = recordId;
+        this.currency = currency;
+        this.chargedAmount = chargedAmount;
+        this.cbaAmount = cbaAmount;
+        this.paidAmount = paidAmount;
+        this.version = version;
+        this.accountRecordId = accountRecordId;
+        this.tenantRecordId = tenantRecordId;
+    }
+
+    public BigDecimal getAccountBalance() {
+        return round(chargedAmount.subtract(paidAmount));
+    }
+
+    public BigDecimal getAccountCBA() {
+        return round(cbaAmount);
+    }
+
+    private BigDecimal round(final BigDecimal amount) {
+        return currency == null ? amount : KillBillMoney.of(amount, currency);
+    }
+
+    public Long getRecordId() {
+        return recordId;
+    }
+
+    public void setRecordId(final Long recordId) {
+        this.recordId = recordId;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(final Currency currency) {
+        this.currency = currency;
+    }
+
+    public BigDecimal getChargedAmount() {
+        return chargedAmount;
+    }
+
+    public void setChargedAmount(final BigDecimal chargedAmount) {
+        this.chargedAmount = chargedAmount;
+    }
+
+    public BigDecimal getCbaAmount() {
+        return cbaAmount;
+    }
+
+    public void setCbaAmount(final BigDecimal cbaAmount) {
+        this.cbaAmount = cbaAmount;
+    }
+
+    public BigDecimal getPaidAmount() {
+        return paidAmount;
+    }
+
+    public void setPaidAmount(final BigDecimal paidAmount) {
+        this.paidAmount = paidAmount;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(final Long version) {
+        this.version = version;
+    }
+
+    public Long getAccountRecordId() {
+        return accountRecordId;
+    }
+
+    public void setAccountRecordId(final Long accountRecordId) {
+        this.accountRecordId = accountRecordId;
+    }
+
+    public Long getTenantRecordId() {
+        return tenantRecordId;
+    }
+
+    public void setTenantRecordId(final Long tenantRecordId) {
+        this.tenantRecordId = tenantRecordId;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("InvoiceAccountBalanceModelDao");
+        sb.append("{recordId=").append(recordId);
+        sb.append(", currency=").append(currency);
+        sb.append(", chargedAmount=").append(chargedAmount);
+        sb.append(", cbaAmount=").append(cbaAmount);
+        sb.append(", paidAmount=").append(paidAmount);
+        sb.append(", version=").append(version);
+        sb.append(", accountRecordId=").append(accountRecordId);
+        sb.append(", tenantRecordId=").append(tenantRecordId);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.dao;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.util.entity.dao.EntitySqlDaoStringTemplate;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.BindBean;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+@EntitySqlDaoStringTemplate
+@RegisterMapper(InvoiceAccountBalanceSqlDao.InvoiceAccountBalanceModelDaoMapper.class)
+public interface InvoiceAccountBalanceSqlDao {
+
+    @SqlQuery
+    public InvoiceAccountBalanceModelDao getAccountBalance(@BindBean final InternalTenantContext context);
+
+    // Locks the row until the end of the transaction, so that concurrent writes are not lost on rebuild
+    @SqlQuery
+    public InvoiceAccountBalanceModelDao getAccountBalanceForUpdate(@BindBean final InternalTenantContext context);
+
+    // Full recomputation from the invoice_items and invoice_payments tables
+    @SqlQuery
+    public InvoiceAccountBalanceModelDao computeAccountBalance(@BindBean final InternalTenantContext context);
+
+    // Across all tenants, for the reconciliation job
+    @SqlQuery
+    public List<InvoiceAccountBalanceModelDao> getAccountBalancesAfterRecordId(@Bind("recordIdCursor") final Long recordIdCursor,
+                                                                               @Bind("rowCount") final Long rowCount);
+
+    @SqlUpdate
+    public int addToAccountBalance(@Bind("chargedAmount") final BigDecimal chargedAmount,
+                                   @Bind("cbaAmount") final BigDecimal cbaAmount,
+                                   @Bind("paidAmount") final BigDecimal paidAmount,
+                                   @BindBean final InternalCallContext context);
+
+    @SqlUpdate
+    public int setAccountBalance(@Bind("chargedAmount") final BigDecimal chargedAmount,
+                                 @Bind("cbaAmount") final BigDecimal cbaAmount,
+                                 @Bind("paidAmount") final BigDecimal paidAmount,
+                                 @BindBean final InternalCallContext context);
+
+    // Does nothing (returns 0) if the account already has a row
+    @SqlUpdate
+    public int createAccountBalance(@Bind("currency") final String currency,
+                                     @Bind("chargedAmount") final BigDecimal chargedAmount,
+                                     @Bind("cbaAmount") final BigDecimal cbaAmount,
+                                     @Bind("paidAmount") final BigDecimal paidAmount,
+                                     @BindBean final InternalCallContext context);
+
+    public class InvoiceAccountBalanceModelDaoMapper implements ResultSetMapper<InvoiceAccountBalanceModelDao> {
+
+        @Override
+        public InvoiceAccountBalanceModelDao map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException {
+            final long recordId = r.getLong("record_id");
+            final String currency = r.getString("currency");
+            final BigDecimal chargedAmount = r.getBigDecimal("charged_amount");
+            final BigDecimal cbaAmount = r.getBigDecimal("cba_amount");
+            final BigDecimal paidAmount = r.getBigDecimal("paid_amount");
+            // Null for computeAccountBalance
+            Long version = r.getLong("version");
+            if (r.wasNull()) {
+                version = null;
+            }
+            final long accountRecordId = r.getLong("account_record_id");
+            final long tenantRecordId = r.getLong("tenant_record_id");
+            return new InvoiceAccountBalanceModelDao(recordId,
+                                                     currency == null ? null : Currency.valueOf(currency),
+                                                     chargedAmount == null ? BigDecimal.ZERO : chargedAmount,
+                                                     cbaAmount == null ? BigDecimal.ZERO : cbaAmount,
+                                                     paidAmount == null ? BigDecimal.ZERO : paidAmount,
+                                                     version,
+                                                     accountRecordId,
+                                                     tenantRecordId);
+        }
+    }
+}
@@ -48,10 +48,22 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
 
     List<InvoiceModelDao> getInvoicesByAccount(LocalDate fromDate, InternalTenantContext context);
 
+    /**
+     * Retrieve the invoices required to generate the next invoice, when nothing before the cutoff date can have changed
+     *
+     * @param cutoffDate earliest date affected by the billing events being processed
+     * @param context    the tenant context
+     * @return the invoices (without payments) with their recurring, fixed and usage items which can overlap the cutoff date (and
+     *         the adjustments linked to them), as well as the invoices with a target date on or after the cutoff date
+     */
+    List<InvoiceModelDao> getInvoicesByAccountForGeneration(LocalDate cutoffDate, InternalTenantContext context);
+
     List<InvoiceModelDao> getInvoicesBySubscription(UUID subscriptionId, InternalTenantContext context);
 
     public Pagination<InvoiceModelDao> searchInvoices(String searchKey, Long offset, Long limit, InternalTenantContext context);
 
+    public Pagination<InvoiceModelDao> searchInvoicesByRecordIdCursor(String searchKey, Long recordIdCursor, Long limit, boolean withCount, InternalTenantContext context);
+
     UUID getInvoiceIdByPaymentId(UUID paymentId, InternalTenantContext context);
 
     List<InvoicePaymentModelDao> getInvoicePayments(UUID paymentId, InternalTenantContext context);
@@ -62,6 +74,15 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
 
     public BigDecimal getAccountCBA(UUID accountId, InternalTenantContext context);
 
+    /**
+     * @param accountId the account id
+     * @param context   the tenant context
+     * @return the version of the account balance ledger entry, incremented on every invoice item or payment write, null if
+     *         the account has no entry yet or the ledger is disabled
+     */
+    @Nullable
+    Long getAccountBalanceVersion(UUID accountId, InternalTenantContext context);
+
     List<InvoiceModelDao> getUnpaidInvoicesByAccountId(UUID accountId, @Nullable LocalDate upToDate, InternalTenantContext context);
 
     // Include migrated invoices
@@ -170,4 +191,34 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
      * @param context   the callcontext
      */
     public void consumeExstingCBAOnAccountWithUnpaidInvoices(final UUID accountId, final InternalCallContext context);
+
+    /**
+     * @param context the tenant context
+     * @return the serialized invoice item tree snapshots for the account, one per subscription
+     */
+    List<InvoiceTreeSnapshotModelDao> getInvoiceTreeSnapshots(InternalTenantContext context);
+
+    /**
+     * Replace all the invoice item tree snapshots for the account.
+     *
+     * @param snapshots the new snapshots
+     * @param context   the call context
+     */
+    void setInvoiceTreeSnapshots(List<InvoiceTreeSnapshotModelDao> snapshots, InternalCallContext context);
+
+    /**
+     * @param recordIdCursor the record id of the last ledger entry seen by the caller
+     * @param limit          the maximum number of entries to return
+     * @return the account balance ledger entries following the cursor, ordered by record id
+     */
+    List<InvoiceAccountBalanceModelDao> getAccountBalancesAfterRecordId(Long recordIdCursor, Long limit);
+
+    /**
+     * Verify the account balance ledger and the invoice balance columns against a full recomputation from invoice
+     * items and payments, rebuilding them if they have drifted.
+     *
+     * @param context the call context of the account to verify
+     * @return true if the ledger entry and the invoice balances were consistent
+     */
+    boolean reconcileAccountBalance(InternalCallContext context);
 }
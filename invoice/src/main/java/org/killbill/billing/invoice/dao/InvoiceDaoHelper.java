@@ -47,6 +47,8 @@ import com.google.common.collect.ImmutableMap.Builder;
 
 public class InvoiceDaoHelper {
 
+    private final AccountBalanceLedger accountBalanceLedger = new AccountBalanceLedger();
+
     /**
      * Find amounts to adjust for individual items, if not specified.
      * The user gives us a list of items to adjust associated with a given amount (how much to refund per invoice item).
@@ -155,8 +157,25 @@ public class InvoiceDaoHelper {
     }
 
     public List<InvoiceModelDao> getUnpaidInvoicesByAccountFromTransaction(final UUID accountId, final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final LocalDate upToDate, final InternalTenantContext context) {
-        final List<InvoiceModelDao> invoices = getAllInvoicesByAccountFromTransaction(entitySqlDaoWrapperFactory, context);
-        return getUnpaidInvoicesByAccountFromTransaction(invoices, upToDate);
+        // Rely on the balance column to only load the candidate invoices (and their children). Invoices whose
+        // balance was never computed are returned as well, and checked below like the others
+        final List<InvoiceModelDao> candidates = new LinkedList<InvoiceModelDao>();
+        for (final InvoiceModelDao invoice : entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class).getUnpaidInvoicesByAccountRecordId(context)) {
+            if (upToDate == null || !invoice.getTargetDate().isAfter(upToDate)) {
+                candidates.add(invoice);
+            }
+        }
+
+        final InvoiceItemSqlDao invoiceItemSqlDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
+        final InvoicePaymentSqlDao invoicePaymentSqlDao = entitySqlDaoWrapperFactory.become(InvoicePaymentSqlDao.class);
+        for (final InvoiceModelDao invoice : candidates) {
+            invoice.addInvoiceItems(invoiceItemSqlDao.getInvoiceItemsByInvoice(invoice.getId().toString(), context));
+            final List<InvoicePaymentModelDao> invoicePayments = invoicePaymentSqlDao.getPaymentsForInvoice(invoice.getId().toString(), context);
+            invoice.addPayments(invoicePayments);
+            setProcessedCurrency(invoice, invoicePayments);
+        }
+
+        return getUnpaidInvoicesByAccountFromTransaction(candidates, upToDate);
     }
 
     public List<InvoiceModelDao> getUnpaidInvoicesByAccountFromTransaction(final List<InvoiceModelDao> invoices, @Nullable final LocalDate upToDate) {
@@ -218,6 +237,7 @@ public class InvoiceDaoHelper {
                            final InternalCallContext context) throws EntityPersistenceException {
         final InvoiceItemSqlDao transInvoiceItemDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
         transInvoiceItemDao.create(item, context);
+        accountBalanceLedger.recordInvoiceItem(item, entitySqlDaoWrapperFactory, context);
     }
 
     public void populateChildren(final InvoiceModelDao invoice, final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final InternalTenantContext context) {
@@ -276,13 +296,16 @@ public class InvoiceDaoHelper {
             // Make sure to set payments to a non-null value
             final List<InvoicePaymentModelDao> invoicePaymentsForInvoice = Objects.firstNonNull(invoicePaymentsPerInvoiceId.get(invoice.getId()), ImmutableList.<InvoicePaymentModelDao>of());
             invoice.addPayments(invoicePaymentsForInvoice);
+            setProcessedCurrency(invoice, invoicePaymentsForInvoice);
+        }
+    }
 
-            for (final InvoicePaymentModelDao invoicePayment : invoicePaymentsForInvoice) {
-                if (invoicePayment.getCurrency() != invoicePayment.getProcessedCurrency()) {
-                    // If any entry is set with a different processed currency, we use it as a processed currency.
-                    invoice.setProcessedCurrency(invoicePayment.getProcessedCurrency());
-                    break;
-                }
+    private void setProcessedCurrency(final InvoiceModelDao invoice, final Iterable<InvoicePaymentModelDao> invoicePayments) {
+        for (final InvoicePaymentModelDao invoicePayment : invoicePayments) {
+            if (invoicePayment.getCurrency() != invoicePayment.getProcessedCurrency()) {
+                // If any entry is set with a different processed currency, we use it as a processed currency.
+                invoice.setProcessedCurrency(invoicePayment.getProcessedCurrency());
+                break;
             }
         }
     }
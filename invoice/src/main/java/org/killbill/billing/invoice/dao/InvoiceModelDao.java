@@ -16,6 +16,7 @@
 
 package org.killbill.billing.invoice.dao;
 
+import java.math.BigDecimal;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
@@ -41,6 +42,12 @@ public class InvoiceModelDao extends EntityModelDaoBase implements EntityModelDa
     private Currency currency;
     private boolean migrated;
 
+    // Denormalized from the items and payments (null if never computed, e.g. for invoices created before these columns existed)
+    private BigDecimal amountCharged;
+    private BigDecimal amountCredited;
+    private BigDecimal amountPaid;
+    private BigDecimal balance;
+
     // Note in the database, for convenience only
     private List<InvoiceItemModelDao> invoiceItems = new LinkedList<InvoiceItemModelDao>();
     private List<InvoicePaymentModelDao> invoicePayments = new LinkedList<InvoicePaymentModelDao>();
@@ -125,6 +132,22 @@ public class InvoiceModelDao extends EntityModelDaoBase implements EntityModelDa
         return migrated;
     }
 
+    public BigDecimal getAmountCharged() {
+        return amountCharged;
+    }
+
+    public BigDecimal getAmountCredited() {
+        return amountCredited;
+    }
+
+    public BigDecimal getAmountPaid() {
+        return amountPaid;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
     public void setAccountId(final UUID accountId) {
         this.accountId = accountId;
     }
@@ -149,6 +172,22 @@ public class InvoiceModelDao extends EntityModelDaoBase implements EntityModelDa
         this.migrated = migrated;
     }
 
+    public void setAmountCharged(final BigDecimal amountCharged) {
+        this.amountCharged = amountCharged;
+    }
+
+    public void setAmountCredited(final BigDecimal amountCredited) {
+        this.amountCredited = amountCredited;
+    }
+
+    public void setAmountPaid(final BigDecimal amountPaid) {
+        this.amountPaid = amountPaid;
+    }
+
+    public void setBalance(final BigDecimal balance) {
+        this.balance = balance;
+    }
+
     public void setInvoiceItems(final List<InvoiceItemModelDao> invoiceItems) {
         this.invoiceItems = invoiceItems;
     }
@@ -167,6 +206,7 @@ public class InvoiceModelDao extends EntityModelDaoBase implements EntityModelDa
         sb.append(", targetDate=").append(targetDate);
         sb.append(", currency=").append(currency);
         sb.append(", migrated=").append(migrated);
+        sb.append(", balance=").append(balance);
         sb.append('}');
         return sb.toString();
     }
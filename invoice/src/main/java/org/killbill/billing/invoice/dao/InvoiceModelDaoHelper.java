@@ -59,4 +59,26 @@ public class InvoiceModelDaoHelper {
                                                                        }
                                                                    }));
     }
+
+    public static BigDecimal getAmountCharged(final InvoiceModelDao invoiceModelDao) {
+        return InvoiceCalculatorUtils.computeInvoiceAmountCharged(invoiceModelDao.getCurrency(),
+                                                                  Iterables.transform(invoiceModelDao.getInvoiceItems(), new Function<InvoiceItemModelDao, InvoiceItem>() {
+                                                                      @Override
+                                                                      public InvoiceItem apply(final InvoiceItemModelDao input) {
+                                                                          return InvoiceItemFactory.fromModelDao(input);
+                                                                      }
+                                                                  }));
+    }
+
+    // Net of refunds and chargebacks
+    public static BigDecimal getAmountPaid(final InvoiceModelDao invoiceModelDao) {
+        final Iterable<InvoicePayment> invoicePayments = Iterables.transform(invoiceModelDao.getInvoicePayments(), new Function<InvoicePaymentModelDao, InvoicePayment>() {
+            @Override
+            public InvoicePayment apply(final InvoicePaymentModelDao input) {
+                return new DefaultInvoicePayment(input);
+            }
+        });
+        return InvoiceCalculatorUtils.computeInvoiceAmountPaid(invoiceModelDao.getCurrency(), invoicePayments)
+                                     .add(InvoiceCalculatorUtils.computeInvoiceAmountRefunded(invoiceModelDao.getCurrency(), invoicePayments));
+    }
 }
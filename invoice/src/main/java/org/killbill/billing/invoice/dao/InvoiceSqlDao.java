@@ -16,13 +16,16 @@
 
 package org.killbill.billing.invoice.dao;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.UUID;
 
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.BindBean;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.util.entity.dao.EntitySqlDao;
@@ -38,5 +41,16 @@ public interface InvoiceSqlDao extends EntitySqlDao<InvoiceModelDao, Invoice> {
     @SqlQuery
     UUID getInvoiceIdByPaymentId(@Bind("paymentId") final String paymentId,
                                  @BindBean final InternalTenantContext context);
-}
 
+    // Invoices with a positive balance, or whose balance columns were never populated
+    @SqlQuery
+    List<InvoiceModelDao> getUnpaidInvoicesByAccountRecordId(@BindBean final InternalTenantContext context);
+
+    @SqlUpdate
+    void updateBalance(@Bind("id") final String invoiceId,
+                       @Bind("amountCharged") final BigDecimal amountCharged,
+                       @Bind("amountCredited") final BigDecimal amountCredited,
+                       @Bind("amountPaid") final BigDecimal amountPaid,
+                       @Bind("balance") final BigDecimal balance,
+                       @BindBean final InternalCallContext context);
+}
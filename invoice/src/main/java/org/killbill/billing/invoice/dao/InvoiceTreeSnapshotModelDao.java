@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.invoice.dao;
+
+import java.util.UUID;
+
+public class InvoiceTreeSnapshotModelDao {
+
+    private UUID subscriptionId;
+    private String itemIds;
+    private String snapshot;
+
+    public InvoiceTreeSnapshotModelDao() { /* For the DAO mapper */ }
+
+    public InvoiceTreeSnapshotModelDao(final UUID subscriptionId, final String itemIds, final String snapshot) {
+        this.subscriptionId = subscriptionId;
+        this.itemIds = itemIds;
+        this.snapshot = snapshot;
+    }
+
+    public UUID getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public void setSubscriptionId(final UUID subscriptionId) {
+        this.subscriptionId = subscriptionId;
+    }
+
+    public String getItemIds() {
+        return itemIds;
+    }
+
+    public void setItemIds(final String itemIds) {
+        this.itemIds = itemIds;
+    }
+
+    public String getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(final String snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("InvoiceTreeSnapshotModelDao");
+        sb.append("{subscriptionId=").append(subscriptionId);
+        sb.append('}');
+        return sb.toString();
+    }
+}
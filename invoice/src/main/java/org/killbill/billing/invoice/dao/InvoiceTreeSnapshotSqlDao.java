@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.invoice.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.entity.dao.EntitySqlDaoStringTemplate;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.sqlobject.BindBean;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+@EntitySqlDaoStringTemplate
+@RegisterMapper(InvoiceTreeSnapshotSqlDao.InvoiceTreeSnapshotModelDaoMapper.class)
+public interface InvoiceTreeSnapshotSqlDao {
+
+    @SqlQuery
+    public List<InvoiceTreeSnapshotModelDao> getSnapshots(@BindBean final InternalTenantContext context);
+
+    @SqlUpdate
+    public void deleteSnapshots(@BindBean final InternalCallContext context);
+
+    @SqlBatch
+    public void createSnapshots(@BindBean final Iterable<InvoiceTreeSnapshotModelDao> snapshots,
+                                @BindBean final InternalCallContext context);
+
+    public class InvoiceTreeSnapshotModelDaoMapper implements ResultSetMapper<InvoiceTreeSnapshotModelDao> {
+
+        @Override
+        public InvoiceTreeSnapshotModelDao map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException {
+            final UUID subscriptionId = UUID.fromString(r.getString("subscription_id"));
+            final String itemIds = r.getString("item_ids");
+            final String snapshot = r.getString("snapshot");
+            return new InvoiceTreeSnapshotModelDao(subscriptionId, itemIds, snapshot);
+        }
+    }
+}
@@ -19,8 +19,12 @@ package org.killbill.billing.invoice.generator;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -28,7 +32,6 @@ import javax.annotation.Nullable;
 import org.joda.time.LocalDate;
 import org.joda.time.Months;
 import org.killbill.billing.ErrorCode;
-import org.killbill.billing.ObjectType;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.catalog.api.BillingMode;
 import org.killbill.billing.catalog.api.BillingPeriod;
@@ -46,20 +49,19 @@ import org.killbill.billing.invoice.model.InvalidDateSequenceException;
 import org.killbill.billing.invoice.model.RecurringInvoiceItem;
 import org.killbill.billing.invoice.model.RecurringInvoiceItemData;
 import org.killbill.billing.invoice.tree.AccountItemTree;
+import org.killbill.billing.invoice.tree.AccountItemTreeSnapshot;
 import org.killbill.billing.invoice.usage.SubscriptionConsumableInArrear;
 import org.killbill.billing.junction.BillingEvent;
 import org.killbill.billing.junction.BillingEventSet;
-import org.killbill.billing.usage.api.UsageUserApi;
-import org.killbill.billing.util.cache.Cachable.CacheType;
-import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.usage.RawUsage;
+import org.killbill.billing.usage.UsageInternalApi;
 import org.killbill.billing.util.config.InvoiceConfig;
 import org.killbill.billing.util.currency.KillBillMoney;
-import org.killbill.billing.util.dao.NonEntityDao;
 import org.killbill.clock.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Function;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -72,17 +74,13 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
 
     private final Clock clock;
     private final InvoiceConfig config;
-    private final UsageUserApi usageApi;
-    private final NonEntityDao nonEntityDao;
-    private final CacheControllerDispatcher controllerDispatcher;
+    private final UsageInternalApi usageApi;
 
     @Inject
-    public DefaultInvoiceGenerator(final Clock clock, final UsageUserApi usageApi, final InvoiceConfig config, final NonEntityDao nonEntityDao, final CacheControllerDispatcher controllerDispatcher) {
+    public DefaultInvoiceGenerator(final Clock clock, final UsageInternalApi usageApi, final InvoiceConfig config) {
         this.clock = clock;
         this.config = config;
         this.usageApi = usageApi;
-        this.nonEntityDao = nonEntityDao;
-        this.controllerDispatcher = controllerDispatcher;
     }
 
     /*
@@ -93,6 +91,25 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
                                    @Nullable final List<Invoice> existingInvoices,
                                    final LocalDate targetDate,
                                    final Currency targetCurrency, final InternalCallContext context) throws InvoiceApiException {
+        return generateInvoice(accountId, events, existingInvoices, targetDate, targetCurrency, null, context);
+    }
+
+    @Override
+    public Invoice generateInvoice(final UUID accountId, @Nullable final BillingEventSet events,
+                                   @Nullable final List<Invoice> existingInvoices,
+                                   final LocalDate targetDate,
+                                   final Currency targetCurrency, @Nullable final LocalDate cutoffDate,
+                                   final InternalCallContext context) throws InvoiceApiException {
+        return generateInvoice(accountId, events, existingInvoices, targetDate, targetCurrency, cutoffDate, null, context);
+    }
+
+    @Override
+    public Invoice generateInvoice(final UUID accountId, @Nullable final BillingEventSet events,
+                                   @Nullable final List<Invoice> existingInvoices,
+                                   final LocalDate targetDate,
+                                   final Currency targetCurrency, @Nullable final LocalDate cutoffDate,
+                                   @Nullable final AccountItemTreeSnapshot treeSnapshot,
+                                   final InternalCallContext context) throws InvoiceApiException {
         if ((events == null) || (events.size() == 0) || events.isAccountAutoInvoiceOff()) {
             return null;
         }
@@ -103,21 +120,81 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
         final Invoice invoice = new DefaultInvoice(accountId, clock.getUTCToday(), adjustedTargetDate, targetCurrency);
         final UUID invoiceId = invoice.getId();
 
-        final List<InvoiceItem> inAdvanceItems = generateInAdvanceInvoiceItems(accountId, invoiceId, events, existingInvoices, adjustedTargetDate, targetCurrency);
+        final List<InvoiceItem> existingItems = getExistingItems(existingInvoices, cutoffDate);
+
+        // The snapshot describes the trees built from all the existing items, so it can't be used in incremental mode
+        final AccountItemTreeSnapshot effectiveTreeSnapshot = cutoffDate == null ? treeSnapshot : null;
+        final List<InvoiceItem> inAdvanceItems = generateInAdvanceInvoiceItems(accountId, invoiceId, events, existingItems, adjustedTargetDate, targetCurrency, cutoffDate, effectiveTreeSnapshot);
         invoice.addInvoiceItems(inAdvanceItems);
 
-        final List<InvoiceItem> usageItems = generateUsageInvoiceItems(invoiceId, events, existingInvoices, targetDate, context);
-        invoice.addInvoiceItems(usageItems);
+        final List<InvoiceItem> usageItems = generateUsageInvoiceItems(invoiceId, events, existingItems, targetDate, context);
+        invoice.addInvoiceItems(filterItemsForCutoffDate(usageItems, cutoffDate));
 
         return invoice.getInvoiceItems().size() != 0 ? invoice : null;
     }
 
+    private List<InvoiceItem> getExistingItems(@Nullable final List<Invoice> existingInvoices, @Nullable final LocalDate cutoffDate) {
+        if (existingInvoices == null) {
+            return ImmutableList.<InvoiceItem>of();
+        }
+
+        final List<InvoiceItem> existingItems = new ArrayList<InvoiceItem>();
+        for (final Invoice invoice : existingInvoices) {
+            existingItems.addAll(invoice.getInvoiceItems());
+        }
+        return filterItemsForCutoffDate(existingItems, cutoffDate);
+    }
+
+    /**
+     * When a cutoff date is specified, nothing before that date can have changed: the recurring, fixed and usage items entirely
+     * before that date (and the adjustments linked to them) are left out, both on the existing and the proposed side.
+     * <p/>
+     * This needs to match what InvoiceDao#getInvoicesByAccountForGeneration loads.
+     */
+    @VisibleForTesting
+    static List<InvoiceItem> filterItemsForCutoffDate(final List<InvoiceItem> items, @Nullable final LocalDate cutoffDate) {
+        if (cutoffDate == null) {
+            return items;
+        }
+
+        final Set<UUID> removedItemIds = new HashSet<UUID>();
+        for (final InvoiceItem item : items) {
+            if (isDatedItem(item) && !isOverlappingCutoffDate(item, cutoffDate)) {
+                removedItemIds.add(item.getId());
+            }
+        }
+
+        final List<InvoiceItem> result = new ArrayList<InvoiceItem>(items.size() - removedItemIds.size());
+        for (final InvoiceItem item : items) {
+            if (removedItemIds.contains(item.getId())) {
+                continue;
+            }
+            if ((item.getInvoiceItemType() == InvoiceItemType.REPAIR_ADJ || item.getInvoiceItemType() == InvoiceItemType.ITEM_ADJ) &&
+                removedItemIds.contains(item.getLinkedItemId())) {
+                continue;
+            }
+            result.add(item);
+        }
+        return result;
+    }
+
+    private static boolean isDatedItem(final InvoiceItem item) {
+        return item.getInvoiceItemType() == InvoiceItemType.RECURRING ||
+               item.getInvoiceItemType() == InvoiceItemType.FIXED ||
+               item.getInvoiceItemType() == InvoiceItemType.USAGE;
+    }
+
+    private static boolean isOverlappingCutoffDate(final InvoiceItem item, final LocalDate cutoffDate) {
+        return item.getEndDate() != null ? item.getEndDate().isAfter(cutoffDate) : item.getStartDate().compareTo(cutoffDate) >= 0;
+    }
+
     // STEPH_USAGE Only deals with consumable in arrear usage billing.
     private List<InvoiceItem> generateUsageInvoiceItems(final UUID invoiceId, final BillingEventSet eventSet,
-                                                        @Nullable final List<Invoice> existingInvoices, final LocalDate targetDate,
+                                                        final List<InvoiceItem> existingItems, final LocalDate targetDate,
                                                         final InternalCallContext context) throws InvoiceApiException {
 
-        final UUID tenantId = nonEntityDao.retrieveIdFromObject(context.getTenantRecordId(), ObjectType.TENANT, controllerDispatcher.getCacheController(CacheType.OBJECT_ID));
+        // Retrieve the usage of all the subscriptions at once, instead of querying it for each subscription and usage section
+        final Map<UUID, List<RawUsage>> rawUsagePerSubscription = getRawUsagePerSubscription(eventSet, targetDate, context);
         try {
 
             final List<InvoiceItem> items = Lists.newArrayList();
@@ -135,16 +212,16 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
 
                 final UUID subscriptionId = event.getSubscription().getId();
                 if (curSubscriptionId != null && !curSubscriptionId.equals(subscriptionId)) {
-                    final SubscriptionConsumableInArrear subscriptionConsumableInArrear = new SubscriptionConsumableInArrear(invoiceId, curEvents, usageApi, config.isInsertZeroUsageItems(), targetDate, context.toTenantContext(tenantId));
-                    items.addAll(subscriptionConsumableInArrear.computeMissingUsageInvoiceItems(extractUsageItemsForSubscription(curSubscriptionId, existingInvoices)));
+                    final SubscriptionConsumableInArrear subscriptionConsumableInArrear = new SubscriptionConsumableInArrear(invoiceId, curEvents, getRawUsageForSubscription(curSubscriptionId, rawUsagePerSubscription), config.isInsertZeroUsageItems(), targetDate);
+                    items.addAll(subscriptionConsumableInArrear.computeMissingUsageInvoiceItems(extractUsageItemsForSubscription(curSubscriptionId, existingItems)));
                     curEvents = Lists.newArrayList();
                 }
                 curSubscriptionId = subscriptionId;
                 curEvents.add(event);
             }
             if (curSubscriptionId != null) {
-                final SubscriptionConsumableInArrear subscriptionConsumableInArrear = new SubscriptionConsumableInArrear(invoiceId, curEvents, usageApi, config.isInsertZeroUsageItems(), targetDate, context.toTenantContext(tenantId));
-                items.addAll(subscriptionConsumableInArrear.computeMissingUsageInvoiceItems(extractUsageItemsForSubscription(curSubscriptionId, existingInvoices)));
+                final SubscriptionConsumableInArrear subscriptionConsumableInArrear = new SubscriptionConsumableInArrear(invoiceId, curEvents, getRawUsageForSubscription(curSubscriptionId, rawUsagePerSubscription), config.isInsertZeroUsageItems(), targetDate);
+                items.addAll(subscriptionConsumableInArrear.computeMissingUsageInvoiceItems(extractUsageItemsForSubscription(curSubscriptionId, existingItems)));
             }
             return items;
 
@@ -153,45 +230,71 @@ public class DefaultInvoiceGenerator implements InvoiceGenerator {
         }
     }
 
-    private List<InvoiceItem> extractUsageItemsForSubscription(final UUID subscriptionId, @Nullable final List<Invoice> existingInvoices) {
+    private Map<UUID, List<RawUsage>> getRawUsagePerSubscription(final BillingEventSet eventSet, final LocalDate targetDate, final InternalCallContext context) {
+        // Earliest date for which usage can be billed: the first billing event with usage sections
+        LocalDate startDate = null;
+        for (final BillingEvent event : eventSet) {
+            if (event.getUsages().isEmpty()) {
+                continue;
+            }
+            final LocalDate eventLocalEffectiveDate = new LocalDate(event.getEffectiveDate(), event.getTimeZone());
+            if (startDate == null || eventLocalEffectiveDate.isBefore(startDate)) {
+                startDate = eventLocalEffectiveDate;
+            }
+        }
+
+        final Map<UUID, List<RawUsage>> result = new HashMap<UUID, List<RawUsage>>();
+        if (startDate == null || !startDate.isBefore(targetDate)) {
+            return result;
+        }
 
-        if (existingInvoices == null) {
-            return Collections.emptyList();
+        for (final RawUsage cur : usageApi.getRawUsageForAccount(startDate, targetDate, context)) {
+            List<RawUsage> rawUsageForSubscription = result.get(cur.getSubscriptionId());
+            if (rawUsageForSubscription == null) {
+                rawUsageForSubscription = new ArrayList<RawUsage>();
+                result.put(cur.getSubscriptionId(), rawUsageForSubscription);
+            }
+            rawUsageForSubscription.add(cur);
         }
+        return result;
+    }
 
-        final Iterable usageItems = Iterables.concat(Iterables.transform(existingInvoices, new Function<Invoice, Iterable<InvoiceItem>>() {
-            @Override
-            public Iterable<InvoiceItem> apply(final Invoice input) {
+    private List<RawUsage> getRawUsageForSubscription(final UUID subscriptionId, final Map<UUID, List<RawUsage>> rawUsagePerSubscription) {
+        final List<RawUsage> result = rawUsagePerSubscription.get(subscriptionId);
+        return result != null ? result : Collections.<RawUsage>emptyList();
+    }
 
-                return Iterables.filter(input.getInvoiceItems(), new Predicate<InvoiceItem>() {
-                    @Override
-                    public boolean apply(final InvoiceItem input) {
-                        return input.getInvoiceItemType() == InvoiceItemType.USAGE && input.getSubscriptionId().equals(subscriptionId);
-                    }
-                });
+    private List<InvoiceItem> extractUsageItemsForSubscription(final UUID subscriptionId, final List<InvoiceItem> existingItems) {
+        return ImmutableList.<InvoiceItem>copyOf(Iterables.filter(existingItems, new Predicate<InvoiceItem>() {
+            @Override
+            public boolean apply(final InvoiceItem input) {
+                return input.getInvoiceItemType() == InvoiceItemType.USAGE && input.getSubscriptionId().equals(subscriptionId);
             }
         }));
-        return ImmutableList.<InvoiceItem>copyOf(usageItems);
     }
 
     private List<InvoiceItem> generateInAdvanceInvoiceItems(final UUID accountId, final UUID invoiceId, final BillingEventSet eventSet,
-                                                            @Nullable final List<Invoice> existingInvoices, final LocalDate targetDate,
-                                                            final Currency targetCurrency) throws InvoiceApiException {
+                                                            final List<InvoiceItem> existingItems, final LocalDate targetDate,
+                                                            final Currency targetCurrency, @Nullable final LocalDate cutoffDate,
+                                                            @Nullable final AccountItemTreeSnapshot treeSnapshot) throws InvoiceApiException {
         final AccountItemTree accountItemTree = new AccountItemTree(accountId, invoiceId);
-        if (existingInvoices != null) {
-            for (final Invoice invoice : existingInvoices) {
-                for (final InvoiceItem item : invoice.getInvoiceItems()) {
-                    if (item.getSubscriptionId() == null || // Always include migration invoices, credits, external charges etc.
-                        !eventSet.getSubscriptionIdsWithAutoInvoiceOff()
-                                 .contains(item.getSubscriptionId())) { //don't add items with auto_invoice_off tag
-                        accountItemTree.addExistingItem(item);
-                    }
-                }
+        final List<InvoiceItem> treeItems = new ArrayList<InvoiceItem>();
+        for (final InvoiceItem item : existingItems) {
+            if (item.getSubscriptionId() == null || // Always include migration invoices, credits, external charges etc.
+                !eventSet.getSubscriptionIdsWithAutoInvoiceOff()
+                         .contains(item.getSubscriptionId())) { //don't add items with auto_invoice_off tag
+                treeItems.add(item);
             }
         }
+        accountItemTree.addExistingItems(treeItems, treeSnapshot);
+        if (treeSnapshot != null) {
+            accountItemTree.build();
+            treeSnapshot.setBuiltSnapshots(accountItemTree.getSnapshots());
+        }
 
         // Generate list of proposed invoice items based on billing events from junction-- proposed items are ALL items since beginning of time
-        final List<InvoiceItem> proposedItems = generateInAdvanceInvoiceItems(invoiceId, accountId, eventSet, targetDate, targetCurrency);
+        // (or since the cutoff date, in incremental mode)
+        final List<InvoiceItem> proposedItems = filterItemsForCutoffDate(generateInAdvanceInvoiceItems(invoiceId, accountId, eventSet, targetDate, targetCurrency), cutoffDate);
 
         accountItemTree.mergeWithProposedItems(proposedItems);
         return accountItemTree.getResultingItemList();
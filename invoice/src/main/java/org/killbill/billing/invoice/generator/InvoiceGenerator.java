@@ -27,10 +27,26 @@ import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.invoice.tree.AccountItemTreeSnapshot;
 import org.killbill.billing.junction.BillingEventSet;
 
 public interface InvoiceGenerator {
 
     public Invoice generateInvoice(UUID accountId, @Nullable BillingEventSet events, @Nullable List<Invoice> existingInvoices,
                                    LocalDate targetDate, Currency targetCurrency, final InternalCallContext context) throws InvoiceApiException;
+
+    /**
+     * Incremental version: the caller guarantees that nothing before the cutoff date can have changed since the last generation,
+     * and the existing invoices only need to contain the items which can overlap that date.
+     */
+    public Invoice generateInvoice(UUID accountId, @Nullable BillingEventSet events, @Nullable List<Invoice> existingInvoices,
+                                   LocalDate targetDate, Currency targetCurrency, @Nullable LocalDate cutoffDate, final InternalCallContext context) throws InvoiceApiException;
+
+    /**
+     * Same as above, but the invoice item trees are populated from the snapshot of the previous generation (ignored in incremental mode),
+     * and the snapshot of the trees built during this generation are set back on it.
+     */
+    public Invoice generateInvoice(UUID accountId, @Nullable BillingEventSet events, @Nullable List<Invoice> existingInvoices,
+                                   LocalDate targetDate, Currency targetCurrency, @Nullable LocalDate cutoffDate,
+                                   @Nullable AccountItemTreeSnapshot treeSnapshot, final InternalCallContext context) throws InvoiceApiException;
 }
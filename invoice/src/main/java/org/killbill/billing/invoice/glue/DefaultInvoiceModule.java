@@ -18,10 +18,20 @@
 
 package org.killbill.billing.invoice.glue;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import org.killbill.billing.glue.InvoiceModule;
 import org.killbill.billing.invoice.InvoiceListener;
 import org.killbill.billing.invoice.InvoiceTagHandler;
+import org.killbill.billing.invoice.api.BulkInvoiceUserApi;
 import org.killbill.billing.invoice.api.DefaultInvoiceService;
+import org.killbill.billing.invoice.api.InvoiceCursorUserApi;
 import org.killbill.billing.invoice.api.InvoiceInternalApi;
 import org.killbill.billing.invoice.api.InvoiceMigrationApi;
 import org.killbill.billing.invoice.api.InvoiceNotifier;
@@ -32,7 +42,10 @@ import org.killbill.billing.invoice.api.formatters.InvoiceFormatterFactory;
 import org.killbill.billing.invoice.api.invoice.DefaultInvoicePaymentApi;
 import org.killbill.billing.invoice.api.migration.DefaultInvoiceMigrationApi;
 import org.killbill.billing.invoice.api.svcs.DefaultInvoiceInternalApi;
+import org.killbill.billing.invoice.api.user.DefaultBulkInvoiceUserApi;
+import org.killbill.billing.invoice.api.user.DefaultInvoiceCursorUserApi;
 import org.killbill.billing.invoice.api.user.DefaultInvoiceUserApi;
+import org.killbill.billing.invoice.dao.AccountBalanceReconciler;
 import org.killbill.billing.invoice.dao.DefaultInvoiceDao;
 import org.killbill.billing.invoice.dao.InvoiceDao;
 import org.killbill.billing.invoice.generator.DefaultInvoiceGenerator;
@@ -52,9 +65,17 @@ import org.killbill.billing.util.template.translation.TranslatorConfig;
 import org.skife.config.ConfigurationObjectFactory;
 
 import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
 
 public class DefaultInvoiceModule extends KillBillModule implements InvoiceModule {
 
+    public static final String BULK_INVOICE_EXECUTOR_NAMED = "BulkInvoiceExecutor";
+    public static final String BULK_INVOICE_PRODUCER_EXECUTOR_NAMED = "BulkInvoiceProducerExecutor";
+    public static final String BALANCE_RECONCILIATION_EXECUTOR_NAMED = "AccountBalanceReconciliationExecutor";
+
+    private static final String BULK_INVOICE_THREAD_PREFIX = "Bulk-invoice-th-";
+    private static final String BULK_INVOICE_PRODUCER_THREAD_PREFIX = "Bulk-invoice-producer-th-";
+
     InvoiceConfig config;
 
     public DefaultInvoiceModule(final KillbillConfigSource configSource) {
@@ -70,6 +91,42 @@ public class DefaultInvoiceModule extends KillBillModule implements InvoiceModul
         bind(InvoiceUserApi.class).to(DefaultInvoiceUserApi.class).asEagerSingleton();
     }
 
+    protected void installInvoiceCursorUserApi() {
+        bind(InvoiceCursorUserApi.class).to(DefaultInvoiceCursorUserApi.class).asEagerSingleton();
+    }
+
+    protected void installBulkInvoiceUserApi() {
+        final ExecutorService bulkInvoiceExecutor = new ThreadPoolExecutor(config.getBulkInvoiceThreadNb(), config.getBulkInvoiceThreadNb(),
+                                                                           0L, TimeUnit.MILLISECONDS,
+                                                                           new LinkedBlockingQueue<Runnable>(config.getBulkInvoiceQueueSize()),
+                                                                           newDaemonThreadFactory(BULK_INVOICE_THREAD_PREFIX));
+        bind(ExecutorService.class).annotatedWith(Names.named(BULK_INVOICE_EXECUTOR_NAMED)).toInstance(bulkInvoiceExecutor);
+        // Single thread paging the accounts of the runs into the bulk invoice executor (runs are scheduled one after the other)
+        final ExecutorService bulkInvoiceProducerExecutor = Executors.newSingleThreadExecutor(newDaemonThreadFactory(BULK_INVOICE_PRODUCER_THREAD_PREFIX));
+        bind(ExecutorService.class).annotatedWith(Names.named(BULK_INVOICE_PRODUCER_EXECUTOR_NAMED)).toInstance(bulkInvoiceProducerExecutor);
+        bind(BulkInvoiceUserApi.class).to(DefaultBulkInvoiceUserApi.class).asEagerSingleton();
+    }
+
+    private ThreadFactory newDaemonThreadFactory(final String threadPrefix) {
+        return new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread th = new Thread(r);
+                th.setName(threadPrefix + th.getId());
+                th.setDaemon(true);
+                return th;
+            }
+        };
+    }
+
+    protected void installAccountBalanceReconciler() {
+        final ScheduledExecutorService reconciliationExecutor = org.killbill.commons.concurrent.Executors.newSingleThreadScheduledExecutor("AccountBalanceReconciler");
+        bind(ScheduledExecutorService.class).annotatedWith(Names.named(BALANCE_RECONCILIATION_EXECUTOR_NAMED)).toInstance(reconciliationExecutor);
+
+        bind(AccountBalanceReconciler.class).asEagerSingleton();
+    }
+
     @Override
     public void installInvoiceInternalApi() {
         bind(InvoiceInternalApi.class).to(DefaultInvoiceInternalApi.class).asEagerSingleton();
@@ -138,7 +195,10 @@ public class DefaultInvoiceModule extends KillBillModule implements InvoiceModul
         installTagHandler();
         installInvoiceGenerator();
         installInvoiceDao();
+        installAccountBalanceReconciler();
         installInvoiceUserApi();
+        installInvoiceCursorUserApi();
+        installBulkInvoiceUserApi();
         installInvoiceInternalApi();
         installInvoicePaymentApi();
         installInvoiceMigrationApi();
@@ -18,17 +18,20 @@ package org.killbill.billing.invoice.tree;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoiceItemType;
+import org.killbill.billing.invoice.tree.SubscriptionItemTreeSnapshot.ItemSnapshot;
 
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 
 /**
  * Tree of invoice items for a given account.
@@ -50,7 +53,7 @@ public class AccountItemTree {
     private final UUID accountId;
     private final UUID targetInvoiceId;
     private final Map<UUID, SubscriptionItemTree> subscriptionItemTree;
-    private final List<InvoiceItem> allExistingItems;
+    private final Map<UUID, InvoiceItem> allExistingItems;
     private List<InvoiceItem> pendingItemAdj;
 
     private boolean isBuilt;
@@ -60,7 +63,7 @@ public class AccountItemTree {
         this.targetInvoiceId = targetInvoiceId;
         this.subscriptionItemTree = new HashMap<UUID, SubscriptionItemTree>();
         this.isBuilt = false;
-        this.allExistingItems = new LinkedList<InvoiceItem>();
+        this.allExistingItems = new HashMap<UUID, InvoiceItem>();
         this.pendingItemAdj = new LinkedList<InvoiceItem>();
     }
 
@@ -114,7 +117,7 @@ public class AccountItemTree {
 
         }
 
-        allExistingItems.add(existingItem);
+        allExistingItems.put(existingItem.getId(), existingItem);
 
         final UUID subscriptionId = getSubscriptionId(existingItem, allExistingItems);
         Preconditions.checkState(subscriptionId != null || !failOnMissingSubscription);
@@ -131,6 +134,70 @@ public class AccountItemTree {
         tree.addItem(existingItem);
     }
 
+    /**
+     * Populate tree from existing items on disk, reusing the snapshot of a previous build when possible.
+     * <p/>
+     * Subscriptions covered by the snapshot are populated from it, and only get the items created since it was taken. If one
+     * of these new items can't be applied on top of the snapshot (e.g. adjustment of an item which had been partially repaired),
+     * the subscription tree is populated from all its items instead.
+     *
+     * @param existingItems all the items read on disk
+     * @param snapshot      snapshot of the trees built during a previous generation
+     */
+    public void addExistingItems(final List<InvoiceItem> existingItems, @Nullable final AccountItemTreeSnapshot snapshot) {
+
+        Preconditions.checkState(!isBuilt);
+        if (snapshot == null) {
+            for (final InvoiceItem existingItem : existingItems) {
+                addExistingItem(existingItem);
+            }
+            return;
+        }
+
+        final Map<UUID, InvoiceItem> treeItems = new HashMap<UUID, InvoiceItem>();
+        for (final InvoiceItem existingItem : existingItems) {
+            if (isTreeItem(existingItem)) {
+                treeItems.put(existingItem.getId(), existingItem);
+            }
+        }
+
+        final Set<UUID> subscriptionIdsFromSnapshot = new HashSet<UUID>();
+        for (final SubscriptionItemTreeSnapshot subscriptionSnapshot : snapshot.getSubscriptionSnapshots()) {
+            if (isSnapshotApplicable(subscriptionSnapshot, treeItems, snapshot.getNewItemIds())) {
+                final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionSnapshot.getSubscriptionId(), targetInvoiceId);
+                tree.addSnapshot(subscriptionSnapshot, treeItems);
+                subscriptionItemTree.put(subscriptionSnapshot.getSubscriptionId(), tree);
+                subscriptionIdsFromSnapshot.add(subscriptionSnapshot.getSubscriptionId());
+            }
+        }
+
+        for (final InvoiceItem existingItem : existingItems) {
+            if (isTreeItem(existingItem) &&
+                !snapshot.getNewItemIds().contains(existingItem.getId()) &&
+                subscriptionIdsFromSnapshot.contains(getSubscriptionId(existingItem, treeItems))) {
+                // Already part of the snapshot, but still needed to find the subscription of the new adjustments
+                allExistingItems.put(existingItem.getId(), existingItem);
+            } else {
+                addExistingItem(existingItem);
+            }
+        }
+    }
+
+    /**
+     * @return the snapshots of the subscription trees, once built
+     */
+    public List<SubscriptionItemTreeSnapshot> getSnapshots() {
+        Preconditions.checkState(isBuilt);
+
+        final List<SubscriptionItemTreeSnapshot> result = new ArrayList<SubscriptionItemTreeSnapshot>();
+        for (final SubscriptionItemTree tree : subscriptionItemTree.values()) {
+            if (tree.getSubscriptionId() != null) {
+                result.add(tree.getSnapshot());
+            }
+        }
+        return result;
+    }
+
     /**
      * Rebuild the new tree by merging current on-disk existing view with new proposed list.
      *
@@ -138,7 +205,9 @@ public class AccountItemTree {
      */
     public void mergeWithProposedItems(final List<InvoiceItem> proposedItems) {
 
-        build();
+        if (!isBuilt) {
+            build();
+        }
         for (SubscriptionItemTree tree : subscriptionItemTree.values()) {
             tree.flatten(true);
         }
@@ -176,18 +245,78 @@ public class AccountItemTree {
         return accountId;
     }
 
-    private UUID getSubscriptionId(final InvoiceItem item, final List<InvoiceItem> allItems) {
+    private UUID getSubscriptionId(final InvoiceItem item, final Map<UUID, InvoiceItem> allItems) {
         if (item.getInvoiceItemType() == InvoiceItemType.RECURRING ||
             item.getInvoiceItemType() == InvoiceItemType.FIXED) {
             return item.getSubscriptionId();
         } else {
-            final InvoiceItem linkedItem = Iterables.tryFind(allItems, new Predicate<InvoiceItem>() {
-                @Override
-                public boolean apply(final InvoiceItem input) {
-                    return item.getLinkedItemId().equals(input.getId());
-                }
-            }).orNull();
+            final InvoiceItem linkedItem = allItems.get(item.getLinkedItemId());
             return linkedItem != null ? linkedItem.getSubscriptionId() : null;
         }
     }
+
+    private boolean isTreeItem(final InvoiceItem item) {
+        return item.getInvoiceItemType() == InvoiceItemType.RECURRING ||
+               item.getInvoiceItemType() == InvoiceItemType.REPAIR_ADJ ||
+               item.getInvoiceItemType() == InvoiceItemType.FIXED ||
+               item.getInvoiceItemType() == InvoiceItemType.ITEM_ADJ;
+    }
+
+    //
+    // The snapshot can only be used if all the items it refers to are still there, and if the new adjustments only target
+    // new items or items which were left whole by the previous build: adjusting (or repairing) a prorated piece instead of the
+    // original item would not give the same result.
+    //
+    private boolean isSnapshotApplicable(final SubscriptionItemTreeSnapshot subscriptionSnapshot, final Map<UUID, InvoiceItem> allItems, final Set<UUID> newItemIds) {
+
+        final UUID subscriptionId = subscriptionSnapshot.getSubscriptionId();
+        if (subscriptionSnapshot.getItems().isEmpty() && subscriptionSnapshot.getFixedItemIds().isEmpty()) {
+            return false;
+        }
+
+        final Map<UUID, ItemSnapshot> pieces = new HashMap<UUID, ItemSnapshot>();
+        final Set<UUID> splitItemIds = new HashSet<UUID>();
+        for (final ItemSnapshot piece : subscriptionSnapshot.getItems()) {
+            if (!isExistingItem(piece.getId(), InvoiceItemType.RECURRING, subscriptionId, allItems, newItemIds)) {
+                return false;
+            }
+            if (pieces.put(piece.getId(), piece) != null) {
+                splitItemIds.add(piece.getId());
+            }
+        }
+        for (final UUID fixedItemId : subscriptionSnapshot.getFixedItemIds()) {
+            if (!isExistingItem(fixedItemId, InvoiceItemType.FIXED, subscriptionId, allItems, newItemIds)) {
+                return false;
+            }
+        }
+
+        for (final UUID newItemId : newItemIds) {
+            final InvoiceItem newItem = allItems.get(newItemId);
+            if (newItem == null ||
+                (newItem.getInvoiceItemType() != InvoiceItemType.REPAIR_ADJ && newItem.getInvoiceItemType() != InvoiceItemType.ITEM_ADJ)) {
+                continue;
+            }
+            final InvoiceItem linkedItem = allItems.get(newItem.getLinkedItemId());
+            if (linkedItem == null || !subscriptionId.equals(linkedItem.getSubscriptionId()) || newItemIds.contains(linkedItem.getId())) {
+                continue;
+            }
+            final ItemSnapshot piece = pieces.get(linkedItem.getId());
+            if (piece == null ||
+                splitItemIds.contains(linkedItem.getId()) ||
+                piece.getStartDate().compareTo(linkedItem.getStartDate()) != 0 ||
+                piece.getEndDate().compareTo(linkedItem.getEndDate()) != 0 ||
+                piece.getAmount().compareTo(linkedItem.getAmount().abs()) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isExistingItem(final UUID itemId, final InvoiceItemType expectedType, final UUID subscriptionId, final Map<UUID, InvoiceItem> allItems, final Set<UUID> newItemIds) {
+        final InvoiceItem item = allItems.get(itemId);
+        return item != null &&
+               item.getInvoiceItemType() == expectedType &&
+               subscriptionId.equals(item.getSubscriptionId()) &&
+               !newItemIds.contains(itemId);
+    }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.invoice.tree;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Snapshots of the <tt>SubscriptionItemTree</tt> built during a previous generation for a given account, along with
+ * the ids of the invoice items created since then.
+ * <p/>
+ * <p>Once the generation is done, the snapshots of the trees built during that generation are available through
+ * {@link #getBuiltSnapshots()}, so they can be stored for the next one.
+ */
+public class AccountItemTreeSnapshot {
+
+    private final List<SubscriptionItemTreeSnapshot> subscriptionSnapshots;
+    private final Set<UUID> newItemIds;
+
+    private List<SubscriptionItemTreeSnapshot> builtSnapshots;
+
+    public AccountItemTreeSnapshot(final Collection<SubscriptionItemTreeSnapshot> subscriptionSnapshots, final Collection<UUID> newItemIds) {
+        this.subscriptionSnapshots = ImmutableList.<SubscriptionItemTreeSnapshot>copyOf(subscriptionSnapshots);
+        this.newItemIds = ImmutableSet.<UUID>copyOf(newItemIds);
+    }
+
+    public List<SubscriptionItemTreeSnapshot> getSubscriptionSnapshots() {
+        return subscriptionSnapshots;
+    }
+
+    public Set<UUID> getNewItemIds() {
+        return newItemIds;
+    }
+
+    @Nullable
+    public List<SubscriptionItemTreeSnapshot> getBuiltSnapshots() {
+        return builtSnapshots;
+    }
+
+    public void setBuiltSnapshots(final List<SubscriptionItemTreeSnapshot> builtSnapshots) {
+        this.builtSnapshots = ImmutableList.<SubscriptionItemTreeSnapshot>copyOf(builtSnapshots);
+    }
+}
@@ -174,6 +174,10 @@ public class Item {
         return currency;
     }
 
+    public BigDecimal getAdjustedAmount() {
+        return adjustedAmount;
+    }
+
     /**
      * Compare two items to check whether there are the same kind; that is whether or not they build for the same product/plan.
      *
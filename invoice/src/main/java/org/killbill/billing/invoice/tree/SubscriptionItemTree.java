@@ -16,6 +16,7 @@
 
 package org.killbill.billing.invoice.tree;
 
+import java.math.BigDecimal;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -28,7 +29,9 @@ import javax.annotation.Nullable;
 import org.joda.time.LocalDate;
 
 import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.model.RecurringInvoiceItem;
 import org.killbill.billing.invoice.tree.Item.ItemAction;
+import org.killbill.billing.invoice.tree.SubscriptionItemTreeSnapshot.ItemSnapshot;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
@@ -153,6 +156,50 @@ public class SubscriptionItemTree {
         }
     }
 
+    /**
+     * Populate the tree from the snapshot of a previous build, instead of the existing items it was built from. Items created
+     * since that snapshot can then be added as usual.
+     *
+     * @param snapshot      snapshot of the tree, as returned by {@link #getSnapshot()}
+     * @param existingItems existing invoice items on disk, indexed by id
+     */
+    public void addSnapshot(final SubscriptionItemTreeSnapshot snapshot, final Map<UUID, InvoiceItem> existingItems) {
+
+        Preconditions.checkState(!isBuilt);
+        for (final ItemSnapshot itemSnapshot : snapshot.getItems()) {
+            final InvoiceItem existingItem = existingItems.get(itemSnapshot.getId());
+            final InvoiceItem piece = new RecurringInvoiceItem(existingItem.getId(), existingItem.getCreatedDate(), existingItem.getInvoiceId(), existingItem.getAccountId(),
+                                                               existingItem.getBundleId(), existingItem.getSubscriptionId(), existingItem.getPlanName(), existingItem.getPhaseName(),
+                                                               itemSnapshot.getStartDate(), itemSnapshot.getEndDate(), itemSnapshot.getAmount(), existingItem.getRate(), existingItem.getCurrency());
+            final Item item = new Item(piece, targetInvoiceId, ItemAction.ADD);
+            if (itemSnapshot.getAdjustedAmount().compareTo(BigDecimal.ZERO) > 0) {
+                item.incrementAdjustedAmount(itemSnapshot.getAdjustedAmount());
+            }
+            root.addExistingItem(new ItemsNodeInterval(root, targetInvoiceId, item));
+        }
+        for (final UUID fixedItemId : snapshot.getFixedItemIds()) {
+            existingFixedItems.add(existingItems.get(fixedItemId));
+        }
+    }
+
+    /**
+     * @return a snapshot of the built tree, from which it can be populated again with {@link #addSnapshot(SubscriptionItemTreeSnapshot, Map)}
+     */
+    public SubscriptionItemTreeSnapshot getSnapshot() {
+
+        Preconditions.checkState(isBuilt);
+        final List<ItemSnapshot> itemSnapshots = new LinkedList<ItemSnapshot>();
+        for (final Item item : items) {
+            Preconditions.checkState(item.getAction() == ItemAction.ADD);
+            itemSnapshots.add(new ItemSnapshot(item.getId(), item.getStartDate(), item.getEndDate(), item.getAmount(), item.getAdjustedAmount()));
+        }
+        final List<UUID> fixedItemIds = new LinkedList<UUID>();
+        for (final InvoiceItem fixedItem : existingFixedItems) {
+            fixedItemIds.add(fixedItem.getId());
+        }
+        return new SubscriptionItemTreeSnapshot(subscriptionId, itemSnapshots, fixedItemIds);
+    }
+
     /**
      * Merge a new proposed ietm in the tree.
      *
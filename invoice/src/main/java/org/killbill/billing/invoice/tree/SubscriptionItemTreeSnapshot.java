@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.tree;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Compact view of a built <tt>SubscriptionItemTree</tt>.
+ * <p/>
+ * <p>Once the tree has been built, what remains of the existing items on disk is a flat list of non overlapping (and
+ * potentially prorated) recurring pieces, along with the fixed items. The snapshot only keeps what cannot be read from
+ * the original items: the dates and amount of each piece, and how much of it has been adjusted.
+ */
+public class SubscriptionItemTreeSnapshot {
+
+    private final UUID subscriptionId;
+    private final List<ItemSnapshot> items;
+    private final List<UUID> fixedItemIds;
+
+    @JsonCreator
+    public SubscriptionItemTreeSnapshot(@JsonProperty("subscriptionId") final UUID subscriptionId,
+                                        @JsonProperty("items") final List<ItemSnapshot> items,
+                                        @JsonProperty("fixedItemIds") final List<UUID> fixedItemIds) {
+        this.subscriptionId = subscriptionId;
+        this.items = items != null ? ImmutableList.<ItemSnapshot>copyOf(items) : ImmutableList.<ItemSnapshot>of();
+        this.fixedItemIds = fixedItemIds != null ? ImmutableList.<UUID>copyOf(fixedItemIds) : ImmutableList.<UUID>of();
+    }
+
+    public UUID getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public List<ItemSnapshot> getItems() {
+        return items;
+    }
+
+    public List<UUID> getFixedItemIds() {
+        return fixedItemIds;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final SubscriptionItemTreeSnapshot that = (SubscriptionItemTreeSnapshot) o;
+
+        if (subscriptionId != null ? !subscriptionId.equals(that.subscriptionId) : that.subscriptionId != null) {
+            return false;
+        }
+        if (!items.equals(that.items)) {
+            return false;
+        }
+        return fixedItemIds.equals(that.fixedItemIds);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = subscriptionId != null ? subscriptionId.hashCode() : 0;
+        result = 31 * result + items.hashCode();
+        result = 31 * result + fixedItemIds.hashCode();
+        return result;
+    }
+
+    public static class ItemSnapshot {
+
+        private final UUID id;
+        private final LocalDate startDate;
+        private final LocalDate endDate;
+        private final BigDecimal amount;
+        private final BigDecimal adjustedAmount;
+
+        @JsonCreator
+        public ItemSnapshot(@JsonProperty("id") final UUID id,
+                            @JsonProperty("startDate") final LocalDate startDate,
+                            @JsonProperty("endDate") final LocalDate endDate,
+                            @JsonProperty("amount") final BigDecimal amount,
+                            @JsonProperty("adjustedAmount") final BigDecimal adjustedAmount) {
+            this.id = id;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.amount = amount;
+            this.adjustedAmount = adjustedAmount;
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public LocalDate getStartDate() {
+            return startDate;
+        }
+
+        public LocalDate getEndDate() {
+            return endDate;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public BigDecimal getAdjustedAmount() {
+            return adjustedAmount;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final ItemSnapshot that = (ItemSnapshot) o;
+
+            if (id != null ? !id.equals(that.id) : that.id != null) {
+                return false;
+            }
+            if (startDate != null ? startDate.compareTo(that.startDate) != 0 : that.startDate != null) {
+                return false;
+            }
+            if (endDate != null ? endDate.compareTo(that.endDate) != 0 : that.endDate != null) {
+                return false;
+            }
+            if (amount != null ? amount.compareTo(that.amount) != 0 : that.amount != null) {
+                return false;
+            }
+            return adjustedAmount != null ? adjustedAmount.compareTo(that.adjustedAmount) == 0 : that.adjustedAmount == null;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = id != null ? id.hashCode() : 0;
+            result = 31 * result + (startDate != null ? startDate.hashCode() : 0);
+            result = 31 * result + (endDate != null ? endDate.hashCode() : 0);
+            return result;
+        }
+    }
+}
@@ -17,9 +17,11 @@
 package org.killbill.billing.invoice.usage;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -35,10 +37,12 @@ import org.killbill.billing.invoice.api.InvoiceItemType;
 import org.killbill.billing.invoice.generator.BillingIntervalDetail;
 import org.killbill.billing.invoice.model.UsageInvoiceItem;
 import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.usage.RawUsage;
 import org.killbill.billing.usage.api.RolledUpUnit;
 import org.killbill.billing.usage.api.RolledUpUsage;
-import org.killbill.billing.usage.api.UsageUserApi;
-import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.usage.DefaultRolledUpUnit;
+import org.killbill.billing.util.usage.DefaultRolledUpUsage;
+import org.killbill.billing.util.usage.UsageIntervals;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,21 +68,22 @@ public class ContiguousIntervalConsumableInArrear {
 
     private final Usage usage;
     private final Set<String> unitTypes;
-    private final UsageUserApi usageApi;
+    private final List<RawUsage> rawSubscriptionUsage;
     private final LocalDate targetDate;
     private final UUID invoiceId;
-    private final TenantContext context;
     private final AtomicBoolean isBuilt;
     private final boolean insertZeroAmountItems;
 
-    public ContiguousIntervalConsumableInArrear(final Usage usage, final UUID invoiceId, final UsageUserApi usageApi, final boolean insertZeroAmountItems, final LocalDate targetDate, final TenantContext context) {
+    /**
+     * @param rawSubscriptionUsage usage of the subscription, from the account usage loaded once for the whole invoice run
+     */
+    public ContiguousIntervalConsumableInArrear(final Usage usage, final UUID invoiceId, final List<RawUsage> rawSubscriptionUsage, final boolean insertZeroAmountItems, final LocalDate targetDate) {
         this.usage = usage;
         this.invoiceId = invoiceId;
         this.unitTypes = getConsumableInArrearUnitTypes(usage);
-        this.usageApi = usageApi;
+        this.rawSubscriptionUsage = rawSubscriptionUsage;
         this.insertZeroAmountItems = insertZeroAmountItems;
         this.targetDate = targetDate;
-        this.context = context;
         this.billingEvents = Lists.newLinkedList();
         this.transitionTimes = Lists.newLinkedList();
         this.isBuilt = new AtomicBoolean(false);
@@ -176,7 +181,32 @@ public class ContiguousIntervalConsumableInArrear {
         if (transitionTimes.size() <= 1) {
             return Collections.emptyList();
         }
-        return usageApi.getAllUsageForSubscription(getSubscriptionId(), transitionTimes, context);
+
+        // Copy the transition times for random access
+        final List<LocalDate> transitions = new ArrayList<LocalDate>(transitionTimes);
+        final List<Map<String, Long>> amountsPerInterval = new ArrayList<Map<String, Long>>(transitions.size() - 1);
+        for (int i = 0; i < transitions.size() - 1; i++) {
+            amountsPerInterval.add(new HashMap<String, Long>());
+        }
+        for (final RawUsage cur : rawSubscriptionUsage) {
+            final int intervalIndex = UsageIntervals.findIntervalIndex(transitions, cur.getRecordDate());
+            if (intervalIndex < 0) {
+                continue;
+            }
+            final Map<String, Long> amounts = amountsPerInterval.get(intervalIndex);
+            final Long currentAmount = amounts.get(cur.getUnitType());
+            amounts.put(cur.getUnitType(), currentAmount != null ? currentAmount + cur.getAmount() : cur.getAmount());
+        }
+
+        final List<RolledUpUsage> result = new ArrayList<RolledUpUsage>(transitions.size() - 1);
+        for (int i = 0; i < transitions.size() - 1; i++) {
+            final List<RolledUpUnit> rolledUpUnits = new ArrayList<RolledUpUnit>();
+            for (final Map.Entry<String, Long> entry : amountsPerInterval.get(i).entrySet()) {
+                rolledUpUnits.add(new DefaultRolledUpUnit(entry.getKey(), entry.getValue()));
+            }
+            result.add(new DefaultRolledUpUsage(getSubscriptionId(), transitions.get(i), transitions.get(i + 1), rolledUpUnits));
+        }
+        return result;
     }
 
     /**
@@ -290,5 +320,4 @@ public class ContiguousIntervalConsumableInArrear {
     public DateTimeZone getAccountTimeZone() {
         return billingEvents.get(0).getTimeZone();
     }
-
 }
@@ -31,8 +31,7 @@ import org.killbill.billing.catalog.api.Usage;
 import org.killbill.billing.catalog.api.UsageType;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.junction.BillingEvent;
-import org.killbill.billing.usage.api.UsageUserApi;
-import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.usage.RawUsage;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
@@ -46,18 +45,16 @@ public class SubscriptionConsumableInArrear {
 
     private final UUID invoiceId;
     private final List<BillingEvent> subscriptionBillingEvents;
-    private final UsageUserApi usageApi;
+    private final List<RawUsage> rawSubscriptionUsage;
     private final LocalDate targetDate;
-    private final TenantContext context;
     private final boolean insertZeroAmountItems;
 
-    public SubscriptionConsumableInArrear(final UUID invoiceId, final List<BillingEvent> subscriptionBillingEvents, final UsageUserApi usageApi, final boolean insertZeroAmountItems, LocalDate targetDate, final TenantContext context) {
+    public SubscriptionConsumableInArrear(final UUID invoiceId, final List<BillingEvent> subscriptionBillingEvents, final List<RawUsage> rawSubscriptionUsage, final boolean insertZeroAmountItems, LocalDate targetDate) {
         this.invoiceId = invoiceId;
         this.subscriptionBillingEvents = subscriptionBillingEvents;
-        this.usageApi = usageApi;
+        this.rawSubscriptionUsage = rawSubscriptionUsage;
         this.insertZeroAmountItems = insertZeroAmountItems;
         this.targetDate = targetDate;
-        this.context = context;
     }
 
     /**
@@ -106,7 +103,7 @@ public class SubscriptionConsumableInArrear {
                 // Add inflight usage interval if non existent
                 ContiguousIntervalConsumableInArrear existingInterval = inFlightInArrearUsageIntervals.get(usage.getName());
                 if (existingInterval == null) {
-                    existingInterval = new ContiguousIntervalConsumableInArrear(usage, invoiceId, usageApi, insertZeroAmountItems, targetDate, context);
+                    existingInterval = new ContiguousIntervalConsumableInArrear(usage, invoiceId, rawSubscriptionUsage, insertZeroAmountItems, targetDate);
                     inFlightInArrearUsageIntervals.put(usage.getName(), existingInterval);
                 }
                 // Add billing event for that usage interval
@@ -40,6 +40,10 @@ CREATE TABLE invoices (
     target_date date NOT NULL,
     currency char(3) NOT NULL,
     migrated bool NOT NULL,
+    amount_charged numeric(15,9) default null,
+    amount_credited numeric(15,9) default null,
+    amount_paid numeric(15,9) default null,
+    balance numeric(15,9) default null,
     created_by varchar(50) NOT NULL,
     created_date datetime NOT NULL,
     account_record_id int(11) unsigned default null,
@@ -49,6 +53,7 @@ CREATE TABLE invoices (
 CREATE UNIQUE INDEX invoices_id ON invoices(id);
 CREATE INDEX invoices_account_target ON invoices(account_id ASC, target_date);
 CREATE INDEX invoices_tenant_account_record_id ON invoices(tenant_record_id, account_record_id);
+CREATE INDEX invoices_account_record_id_balance ON invoices(account_record_id, balance);
 
 DROP TABLE IF EXISTS invoice_payments;
 CREATE TABLE invoice_payments (
@@ -74,3 +79,33 @@ CREATE UNIQUE INDEX invoice_payments ON invoice_payments(payment_id, type);
 CREATE INDEX invoice_payments_invoice_id ON invoice_payments(invoice_id);
 CREATE INDEX invoice_payments_reversals ON invoice_payments(linked_invoice_payment_id);
 CREATE INDEX invoice_payments_tenant_account_record_id ON invoice_payments(tenant_record_id, account_record_id);
+
+DROP TABLE IF EXISTS invoice_tree_snapshots;
+CREATE TABLE invoice_tree_snapshots (
+    record_id int(11) unsigned NOT NULL AUTO_INCREMENT,
+    subscription_id char(36) NOT NULL,
+    item_ids mediumtext NOT NULL,
+    snapshot mediumtext NOT NULL,
+    created_date datetime NOT NULL,
+    account_record_id int(11) unsigned default null,
+    tenant_record_id int(11) unsigned default null,
+    PRIMARY KEY(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE INDEX invoice_tree_snapshots_tenant_account_record_id ON invoice_tree_snapshots(tenant_record_id, account_record_id);
+
+DROP TABLE IF EXISTS invoice_account_balances;
+CREATE TABLE invoice_account_balances (
+    record_id int(11) unsigned NOT NULL AUTO_INCREMENT,
+    currency char(3) DEFAULT NULL,
+    charged_amount numeric(24,9) NOT NULL,
+    cba_amount numeric(24,9) NOT NULL,
+    paid_amount numeric(24,9) NOT NULL,
+    version bigint NOT NULL,
+    created_date datetime NOT NULL,
+    updated_date datetime NOT NULL,
+    account_record_id int(11) unsigned default null,
+    tenant_record_id int(11) unsigned default null,
+    PRIMARY KEY(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE UNIQUE INDEX invoice_account_balances_account_record_id ON invoice_account_balances(account_record_id);
+CREATE INDEX invoice_account_balances_tenant_account_record_id ON invoice_account_balances(tenant_record_id, account_record_id);
@@ -48,7 +48,12 @@ import org.killbill.billing.invoice.api.InvoiceItemType;
 import org.killbill.billing.invoice.api.InvoiceNotifier;
 import org.killbill.billing.invoice.dao.InvoiceItemModelDao;
 import org.killbill.billing.invoice.dao.InvoiceModelDao;
+import org.killbill.billing.invoice.model.DefaultInvoice;
+import org.killbill.billing.invoice.model.RecurringInvoiceItem;
 import org.killbill.billing.invoice.notification.NullInvoiceNotifier;
+import org.killbill.billing.invoice.tree.AccountItemTreeSnapshot;
+import org.killbill.billing.invoice.tree.SubscriptionItemTreeSnapshot;
+import org.killbill.billing.invoice.tree.SubscriptionItemTreeSnapshot.ItemSnapshot;
 import org.killbill.billing.junction.BillingEventSet;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
@@ -60,6 +65,9 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
 public class TestInvoiceDispatcher extends InvoiceTestSuiteWithEmbeddedDB {
 
     private Account account;
@@ -96,7 +104,7 @@ public class TestInvoiceDispatcher extends InvoiceTestSuiteWithEmbeddedDB {
         final InvoiceNotifier invoiceNotifier = new NullInvoiceNotifier();
         final InvoiceDispatcher dispatcher = new InvoiceDispatcher(pluginRegistry, generator, accountApi, billingApi, subscriptionApi, invoiceDao,
                                                                    nonEntityDao, invoiceNotifier, locker, busService.getBus(),
-                                                                   clock, controllerDispatcher);
+                                                                   clock, controllerDispatcher, invoiceConfig);
 
         Invoice invoice = dispatcher.processAccount(accountId, target, new DryRunFutureDateArguments(), context);
         Assert.assertNotNull(invoice);
@@ -149,7 +157,7 @@ public class TestInvoiceDispatcher extends InvoiceTestSuiteWithEmbeddedDB {
         final InvoiceNotifier invoiceNotifier = new NullInvoiceNotifier();
         final InvoiceDispatcher dispatcher = new InvoiceDispatcher(pluginRegistry, generator, accountApi, billingApi, subscriptionApi, invoiceDao,
                                                                    nonEntityDao, invoiceNotifier, locker, busService.getBus(),
-                                                                   clock, controllerDispatcher);
+                                                                   clock, controllerDispatcher, invoiceConfig);
 
         final Invoice invoice = dispatcher.processAccount(account.getId(), new DateTime("2012-07-30T00:00:00.000Z"), null, context);
         Assert.assertNotNull(invoice);
@@ -207,7 +215,7 @@ public class TestInvoiceDispatcher extends InvoiceTestSuiteWithEmbeddedDB {
         final InvoiceNotifier invoiceNotifier = new NullInvoiceNotifier();
         final InvoiceDispatcher dispatcher = new InvoiceDispatcher(pluginRegistry, generator, accountApi, billingApi, subscriptionApi, invoiceDao,
                                                                    nonEntityDao, invoiceNotifier, locker, busService.getBus(),
-                                                                   clock, controllerDispatcher);
+                                                                   clock, controllerDispatcher, invoiceConfig);
 
         final Map<UUID, List<DateTime>> result = dispatcher.createNextFutureNotificationDate(Collections.singletonList(item), null, dateAndTimeZoneContext);
 
@@ -221,4 +229,55 @@ public class TestInvoiceDispatcher extends InvoiceTestSuiteWithEmbeddedDB {
 
         Assert.assertTrue(receivedDates.get(0).compareTo(new DateTime(2012, 11, 27, 1, 12, 23, DateTimeZone.UTC)) <= 0);
     }
+
+    @Test(groups = "slow")
+    public void testInvoiceTreeSnapshotNewItems() throws Exception {
+        final UUID accountId = account.getId();
+        final Invoice invoice = new DefaultInvoice(accountId, clock.getUTCToday(), clock.getUTCToday(), Currency.USD);
+        invoiceUtil.createInvoice(invoice, true, context);
+
+        final UUID bundleId = UUID.randomUUID();
+        final BigDecimal rate = new BigDecimal("10.00");
+        final RecurringInvoiceItem item1 = new RecurringInvoiceItem(invoice.getId(), accountId, bundleId, subscription.getId(), "plan", "phase",
+                                                                    new LocalDate(2012, 5, 1), new LocalDate(2012, 6, 1), rate, rate, Currency.USD);
+        invoiceUtil.createInvoiceItem(item1, context);
+        final RecurringInvoiceItem item2 = new RecurringInvoiceItem(invoice.getId(), accountId, bundleId, subscription.getId(), "plan", "phase",
+                                                                    new LocalDate(2012, 6, 1), new LocalDate(2012, 7, 1), rate, rate, Currency.USD);
+        invoiceUtil.createInvoiceItem(item2, context);
+
+        final InvoiceNotifier invoiceNotifier = new NullInvoiceNotifier();
+        final InvoiceDispatcher dispatcher = new InvoiceDispatcher(pluginRegistry, generator, accountApi, billingApi, subscriptionApi, invoiceDao,
+                                                                   nonEntityDao, invoiceNotifier, locker, busService.getBus(),
+                                                                   clock, controllerDispatcher, invoiceConfig);
+
+        // No snapshot yet
+        final List<InvoiceModelDao> invoiceModelDaos = invoiceDao.getInvoicesByAccount(context);
+        Assert.assertEquals(dispatcher.getAccountItemTreeSnapshot(invoiceModelDaos, context).getSubscriptionSnapshots().size(), 0);
+
+        // Snapshot built while item1 wasn't visible yet, although its record_id is lower than the one of item2
+        final InvoiceModelDao invoiceWithoutItem1 = new InvoiceModelDao(invoice);
+        for (final InvoiceItemModelDao invoiceItemModelDao : invoiceModelDaos.get(0).getInvoiceItems()) {
+            if (!invoiceItemModelDao.getId().equals(item1.getId())) {
+                invoiceWithoutItem1.addInvoiceItem(invoiceItemModelDao);
+            }
+        }
+        final SubscriptionItemTreeSnapshot builtSnapshot = new SubscriptionItemTreeSnapshot(subscription.getId(),
+                                                                                            ImmutableList.<ItemSnapshot>of(new ItemSnapshot(item2.getId(), item2.getStartDate(), item2.getEndDate(), rate, BigDecimal.ZERO)),
+                                                                                            ImmutableList.<UUID>of());
+        final AccountItemTreeSnapshot treeSnapshot = new AccountItemTreeSnapshot(ImmutableList.<SubscriptionItemTreeSnapshot>of(), ImmutableList.<UUID>of());
+        treeSnapshot.setBuiltSnapshots(ImmutableList.<SubscriptionItemTreeSnapshot>of(builtSnapshot));
+        dispatcher.saveAccountItemTreeSnapshot(treeSnapshot, ImmutableList.<InvoiceModelDao>of(invoiceWithoutItem1), context);
+        Assert.assertEquals(invoiceDao.getInvoiceTreeSnapshots(context).size(), 1);
+
+        // Only item1 needs to be applied on top of the snapshot
+        final AccountItemTreeSnapshot nextTreeSnapshot = dispatcher.getAccountItemTreeSnapshot(invoiceDao.getInvoicesByAccount(context), context);
+        Assert.assertEquals(nextTreeSnapshot.getSubscriptionSnapshots(), ImmutableList.<SubscriptionItemTreeSnapshot>of(builtSnapshot));
+        Assert.assertEquals(nextTreeSnapshot.getNewItemIds(), ImmutableSet.<UUID>of(item1.getId()));
+
+        // Once a snapshot accounting for both items is saved, nothing is new anymore
+        final AccountItemTreeSnapshot lastTreeSnapshot = new AccountItemTreeSnapshot(nextTreeSnapshot.getSubscriptionSnapshots(), nextTreeSnapshot.getNewItemIds());
+        lastTreeSnapshot.setBuiltSnapshots(ImmutableList.<SubscriptionItemTreeSnapshot>of(builtSnapshot));
+        dispatcher.saveAccountItemTreeSnapshot(lastTreeSnapshot, invoiceDao.getInvoicesByAccount(context), context);
+        Assert.assertEquals(dispatcher.getAccountItemTreeSnapshot(invoiceDao.getInvoicesByAccount(context), context).getNewItemIds().size(), 0);
+    }
 }
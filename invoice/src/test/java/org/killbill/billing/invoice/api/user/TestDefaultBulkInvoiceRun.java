@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010-2013 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.invoice.api.user;
+
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.killbill.billing.invoice.InvoiceTestSuiteNoDB;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestDefaultBulkInvoiceRun extends InvoiceTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testProgress() throws Exception {
+        final DateTime startDate = new DateTime(2014, 5, 1, 0, 0, 0, DateTimeZone.UTC);
+        final DefaultBulkInvoiceRun run = new DefaultBulkInvoiceRun(UUID.randomUUID(), UUID.randomUUID(), new LocalDate(2014, 5, 1), startDate);
+        run.onAccountScheduled();
+        run.onAccountScheduled();
+        run.onAccountScheduled();
+        run.onAllAccountsScheduled(startDate);
+        Assert.assertFalse(run.isCompleted());
+        Assert.assertEquals(run.getNbAccounts(), 3);
+        Assert.assertEquals(run.getThroughput(), 0.0);
+
+        run.onAccountInvoiced(true, startDate.plusSeconds(1));
+        run.onAccountInvoiced(false, startDate.plusSeconds(2));
+        Assert.assertFalse(run.isCompleted());
+        Assert.assertNull(run.getEndDate());
+        Assert.assertEquals(run.getNbProcessedAccounts(), 2);
+        Assert.assertEquals(run.getThroughput(), 1.0);
+
+        final UUID failedAccountId = UUID.randomUUID();
+        run.onAccountFailed(failedAccountId, startDate.plusSeconds(3));
+        Assert.assertTrue(run.isCompleted());
+        Assert.assertEquals(run.getEndDate().compareTo(startDate.plusSeconds(3)), 0);
+        Assert.assertEquals(run.getNbProcessedAccounts(), 3);
+        Assert.assertEquals(run.getNbInvoicedAccounts(), 1);
+        Assert.assertEquals(run.getNbFailedAccounts(), 1);
+        Assert.assertEquals(run.getFailedAccountIds(), ImmutableList.<UUID>of(failedAccountId));
+        Assert.assertEquals(run.getThroughput(), 1.0);
+    }
+
+    @Test(groups = "fast")
+    public void testNoAccount() throws Exception {
+        final DateTime startDate = new DateTime(2014, 5, 1, 0, 0, 0, DateTimeZone.UTC);
+        final DefaultBulkInvoiceRun run = new DefaultBulkInvoiceRun(UUID.randomUUID(), UUID.randomUUID(), new LocalDate(2014, 5, 1), startDate);
+        Assert.assertFalse(run.isCompleted());
+        run.onAllAccountsScheduled(startDate);
+        Assert.assertTrue(run.isCompleted());
+        Assert.assertEquals(run.getThroughput(), 0.0);
+    }
+
+    @Test(groups = "fast")
+    public void testAccountsProcessedWhileScheduling() throws Exception {
+        final DateTime startDate = new DateTime(2014, 5, 1, 0, 0, 0, DateTimeZone.UTC);
+        final DefaultBulkInvoiceRun run = new DefaultBulkInvoiceRun(UUID.randomUUID(), UUID.randomUUID(), new LocalDate(2014, 5, 1), startDate);
+
+        // All scheduled accounts are processed, but the next page hasn't been scheduled yet
+        run.onAccountScheduled();
+        run.onAccountInvoiced(true, startDate.plusSeconds(1));
+        Assert.assertFalse(run.isCompleted());
+
+        run.onAccountScheduled();
+        run.onAllAccountsScheduled(startDate.plusSeconds(2));
+        Assert.assertFalse(run.isCompleted());
+
+        run.onAccountInvoiced(true, startDate.plusSeconds(3));
+        Assert.assertTrue(run.isCompleted());
+        Assert.assertEquals(run.getEndDate().compareTo(startDate.plusSeconds(3)), 0);
+        Assert.assertEquals(run.getNbAccounts(), 2);
+        Assert.assertEquals(run.getNbInvoicedAccounts(), 2);
+    }
+}
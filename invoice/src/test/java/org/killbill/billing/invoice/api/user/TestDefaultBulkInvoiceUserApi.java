@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.invoice.api.user;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.account.api.AccountInternalApi;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.invoice.InvoiceDispatcher;
+import org.killbill.billing.invoice.InvoiceTestSuiteNoDB;
+import org.killbill.billing.invoice.api.BulkInvoiceRun;
+import org.killbill.billing.invoice.api.DryRunArguments;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.config.InvoiceConfig;
+import org.killbill.commons.locker.LockFailedException;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestDefaultBulkInvoiceUserApi extends InvoiceTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testAccountLockFailure() throws Exception {
+        final UUID invoicedAccountId = UUID.randomUUID();
+        final UUID lockedAccountId = UUID.randomUUID();
+
+        final InvoiceDispatcher dispatcher = Mockito.mock(InvoiceDispatcher.class);
+        Mockito.when(dispatcher.processAccountOrFailOnLock(Mockito.eq(invoicedAccountId), Mockito.<DateTime>any(), Mockito.<DryRunArguments>any(), Mockito.<InternalCallContext>any()))
+               .thenReturn(Mockito.mock(Invoice.class));
+        Mockito.when(dispatcher.processAccountOrFailOnLock(Mockito.eq(lockedAccountId), Mockito.<DateTime>any(), Mockito.<DryRunArguments>any(), Mockito.<InternalCallContext>any()))
+               .thenThrow(new LockFailedException());
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final ExecutorService producerExecutor = Executors.newSingleThreadExecutor();
+        final BulkInvoiceRun run = createBulkInvoiceUserApi(dispatcher, executor, producerExecutor, 10).triggerInvoiceGeneration(ImmutableList.<UUID>of(invoicedAccountId, lockedAccountId), clock.getUTCToday(), callContext);
+        awaitTermination(producerExecutor, executor);
+
+        // The account which could not be locked wasn't invoiced: it is reported as failed, not as having nothing to invoice
+        Assert.assertTrue(run.isCompleted());
+        Assert.assertEquals(run.getNbInvoicedAccounts(), 1);
+        Assert.assertEquals(run.getNbFailedAccounts(), 1);
+        Assert.assertEquals(run.getFailedAccountIds(), ImmutableList.<UUID>of(lockedAccountId));
+    }
+
+    @Test(groups = "fast")
+    public void testRejectedAccounts() throws Exception {
+        final UUID accountId1 = UUID.randomUUID();
+        final UUID accountId2 = UUID.randomUUID();
+
+        final InvoiceDispatcher dispatcher = Mockito.mock(InvoiceDispatcher.class);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        final ExecutorService producerExecutor = Executors.newSingleThreadExecutor();
+        final BulkInvoiceRun run = createBulkInvoiceUserApi(dispatcher, executor, producerExecutor, 10).triggerInvoiceGeneration(ImmutableList.<UUID>of(accountId1, accountId2), clock.getUTCToday(), callContext);
+        awaitTermination(producerExecutor, executor);
+
+        // Accounts which could not be queued because the executor is stopped are reported as failed, so that the run still completes
+        Assert.assertTrue(run.isCompleted());
+        Assert.assertEquals(run.getNbInvoicedAccounts(), 0);
+        Assert.assertEquals(run.getFailedAccountIds(), ImmutableList.<UUID>of(accountId1, accountId2));
+        Mockito.verifyZeroInteractions(dispatcher);
+    }
+
+    @Test(groups = "fast")
+    public void testQueueFull() throws Exception {
+        final List<UUID> accountIds = new ArrayList<UUID>();
+        for (int i = 0; i < 20; i++) {
+            accountIds.add(UUID.randomUUID());
+        }
+
+        final InvoiceDispatcher dispatcher = Mockito.mock(InvoiceDispatcher.class);
+        Mockito.when(dispatcher.processAccountOrFailOnLock(Mockito.<UUID>any(), Mockito.<DateTime>any(), Mockito.<DryRunArguments>any(), Mockito.<InternalCallContext>any()))
+               .thenReturn(Mockito.mock(Invoice.class));
+
+        // Many more accounts than the queue can hold: the producer waits for the queue to free up instead of failing the accounts
+        final ExecutorService executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(2));
+        final ExecutorService producerExecutor = Executors.newSingleThreadExecutor();
+        final BulkInvoiceRun run = createBulkInvoiceUserApi(dispatcher, executor, producerExecutor, 2).triggerInvoiceGeneration(accountIds, clock.getUTCToday(), callContext);
+        awaitTermination(producerExecutor, executor);
+
+        Assert.assertTrue(run.isCompleted());
+        Assert.assertEquals(run.getNbAccounts(), 20);
+        Assert.assertEquals(run.getNbInvoicedAccounts(), 20);
+        Assert.assertEquals(run.getNbFailedAccounts(), 0);
+    }
+
+    private void awaitTermination(final ExecutorService producerExecutor, final ExecutorService executor) throws InterruptedException {
+        // All accounts are scheduled once the producer is done
+        producerExecutor.shutdown();
+        Assert.assertTrue(producerExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private DefaultBulkInvoiceUserApi createBulkInvoiceUserApi(final InvoiceDispatcher dispatcher, final ExecutorService executor,
+                                                               final ExecutorService producerExecutor, final int queueSize) throws Exception {
+        final Account account = Mockito.mock(Account.class);
+        Mockito.when(account.getTimeZone()).thenReturn(DateTimeZone.UTC);
+        final AccountInternalApi accountInternalApi = Mockito.mock(AccountInternalApi.class);
+        Mockito.when(accountInternalApi.getAccountById(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenReturn(account);
+        final InvoiceConfig config = Mockito.mock(InvoiceConfig.class);
+        Mockito.when(config.getBulkInvoiceQueueSize()).thenReturn(queueSize);
+
+        return new DefaultBulkInvoiceUserApi(dispatcher, accountInternalApi, Mockito.mock(InternalCallContextFactory.class), executor, producerExecutor, config, clock);
+    }
+}
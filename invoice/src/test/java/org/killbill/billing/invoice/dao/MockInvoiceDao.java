@@ -51,6 +51,7 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
     private final Map<UUID, InvoiceItemModelDao> items = new LinkedHashMap<UUID, InvoiceItemModelDao>();
     private final Map<UUID, InvoicePaymentModelDao> payments = new LinkedHashMap<UUID, InvoicePaymentModelDao>();
     private final BiMap<UUID, Long> accountRecordIds = HashBiMap.create();
+    private final Map<Long, List<InvoiceTreeSnapshotModelDao>> treeSnapshots = new LinkedHashMap<Long, List<InvoiceTreeSnapshotModelDao>>();
 
     @Inject
     public MockInvoiceDao(final PersistentBus eventBus) {
@@ -133,6 +134,12 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
         return invoicesForAccount;
     }
 
+    @Override
+    public List<InvoiceModelDao> getInvoicesByAccountForGeneration(final LocalDate cutoffDate, final InternalTenantContext context) {
+        // The generator filters the items itself
+        return getInvoicesByAccount(context);
+    }
+
     @Override
     public List<InvoiceModelDao> getInvoicesBySubscription(final UUID subscriptionId, final InternalTenantContext context) {
         final List<InvoiceModelDao> result = new ArrayList<InvoiceModelDao>();
@@ -165,6 +172,11 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
         return DefaultPagination.<InvoiceModelDao>build(offset, limit, results);
     }
 
+    @Override
+    public Pagination<InvoiceModelDao> searchInvoicesByRecordIdCursor(final String searchKey, final Long recordIdCursor, final Long limit, final boolean withCount, final InternalTenantContext context) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public void test(final InternalTenantContext context) {
     }
@@ -333,6 +345,11 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
         return null;
     }
 
+    @Override
+    public Long getAccountBalanceVersion(final UUID accountId, final InternalTenantContext context) {
+        return null;
+    }
+
     @Override
     public InvoicePaymentModelDao createRefund(final UUID paymentId, final BigDecimal amount, final boolean isInvoiceAdjusted,
                                                final Map<UUID, BigDecimal> invoiceItemIdsWithAmounts, final String transactionExternalKey,
@@ -345,4 +362,29 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
     public void deleteCBA(final UUID accountId, final UUID invoiceId, final UUID invoiceItemId, final InternalCallContext context) throws InvoiceApiException {
         throw new UnsupportedOperationException();
     }
+
+    @Override
+    public List<InvoiceTreeSnapshotModelDao> getInvoiceTreeSnapshots(final InternalTenantContext context) {
+        synchronized (monitor) {
+            final List<InvoiceTreeSnapshotModelDao> result = treeSnapshots.get(context.getAccountRecordId());
+            return result != null ? new ArrayList<InvoiceTreeSnapshotModelDao>(result) : new ArrayList<InvoiceTreeSnapshotModelDao>();
+        }
+    }
+
+    @Override
+    public void setInvoiceTreeSnapshots(final List<InvoiceTreeSnapshotModelDao> snapshots, final InternalCallContext context) {
+        synchronized (monitor) {
+            treeSnapshots.put(context.getAccountRecordId(), new ArrayList<InvoiceTreeSnapshotModelDao>(snapshots));
+        }
+    }
+
+    @Override
+    public List<InvoiceAccountBalanceModelDao> getAccountBalancesAfterRecordId(final Long recordIdCursor, final Long limit) {
+        return new ArrayList<InvoiceAccountBalanceModelDao>();
+    }
+
+    @Override
+    public boolean reconcileAccountBalance(final InternalCallContext context) {
+        return true;
+    }
 }
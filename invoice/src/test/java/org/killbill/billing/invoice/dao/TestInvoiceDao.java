@@ -66,6 +66,7 @@ import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
 import org.killbill.billing.util.currency.KillBillMoney;
 import org.killbill.clock.ClockMock;
 import org.mockito.Mockito;
+import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.exceptions.TransactionFailedException;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -495,6 +496,41 @@ public class TestInvoiceDao extends InvoiceTestSuiteWithEmbeddedDB {
         assertEquals(invoices.size(), 0);
     }
 
+    @Test(groups = "slow")
+    public void testGetInvoicesByAccountForGeneration() throws EntityPersistenceException {
+        final UUID accountId = account.getId();
+        final UUID bundleId = UUID.randomUUID();
+        final UUID subscriptionId = UUID.randomUUID();
+
+        final Invoice invoice1 = new DefaultInvoice(accountId, clock.getUTCToday(), new LocalDate(2011, 10, 1), Currency.USD);
+        invoiceUtil.createInvoice(invoice1, true, context);
+        final RecurringInvoiceItem item1 = new RecurringInvoiceItem(invoice1.getId(), accountId, bundleId, subscriptionId, "test plan", "test phase", new LocalDate(2011, 10, 1),
+                                                                    new LocalDate(2011, 11, 1), TEN, TEN, Currency.USD);
+        invoiceUtil.createInvoiceItem(item1, context);
+
+        final Invoice invoice2 = new DefaultInvoice(accountId, clock.getUTCToday(), new LocalDate(2011, 11, 1), Currency.USD);
+        invoiceUtil.createInvoice(invoice2, true, context);
+        final RecurringInvoiceItem item2 = new RecurringInvoiceItem(invoice2.getId(), accountId, bundleId, subscriptionId, "test plan", "test phase", new LocalDate(2011, 11, 1),
+                                                                    new LocalDate(2011, 12, 1), TEN, TEN, Currency.USD);
+        invoiceUtil.createInvoiceItem(item2, context);
+
+        // Repair of the second item, on a third invoice targeted before the cutoff date
+        final Invoice invoice3 = new DefaultInvoice(accountId, clock.getUTCToday(), new LocalDate(2011, 11, 10), Currency.USD);
+        invoiceUtil.createInvoice(invoice3, true, context);
+        final RepairAdjInvoiceItem repairItem = new RepairAdjInvoiceItem(invoice3.getId(), accountId, new LocalDate(2011, 11, 20), new LocalDate(2011, 12, 1),
+                                                                         new BigDecimal("-3.0"), Currency.USD, item2.getId());
+        invoiceUtil.createInvoiceItem(repairItem, context);
+
+        final List<InvoiceModelDao> invoices = invoiceDao.getInvoicesByAccountForGeneration(new LocalDate(2011, 11, 15), context);
+        assertEquals(invoices.size(), 2);
+        assertEquals(invoices.get(0).getId(), invoice2.getId());
+        assertEquals(invoices.get(0).getInvoiceItems().size(), 1);
+        assertEquals(invoices.get(0).getInvoiceItems().get(0).getId(), item2.getId());
+        assertEquals(invoices.get(1).getId(), invoice3.getId());
+        assertEquals(invoices.get(1).getInvoiceItems().size(), 1);
+        assertEquals(invoices.get(1).getInvoiceItems().get(0).getId(), repairItem.getId());
+    }
+
     @Test(groups = "slow")
     public void testAccountBalance() throws EntityPersistenceException {
         final UUID accountId = account.getId();
@@ -923,6 +959,93 @@ public class TestInvoiceDao extends InvoiceTestSuiteWithEmbeddedDB {
         assertEquals(cba.compareTo(new BigDecimal("0.00")), 0);
     }
 
+    @Test(groups = "slow")
+    public void testAccountBalanceLedgerReconciliation() throws InvoiceApiException {
+        final UUID accountId = account.getId();
+        final Invoice invoice = new DefaultInvoice(accountId, clock.getUTCToday(), clock.getUTCToday(), Currency.USD);
+        final InvoiceItem invoiceItem = new RecurringInvoiceItem(invoice.getId(), accountId, UUID.randomUUID(), UUID.randomUUID(), "test plan", "test phase",
+                                                                 new LocalDate(2010, 1, 1), new LocalDate(2010, 4, 1), new BigDecimal("21.00"), new BigDecimal("7.00"), Currency.USD);
+        invoice.addInvoiceItem(invoiceItem);
+        invoiceUtil.createInvoice(invoice, true, context);
+        final Long versionAfterInvoice = invoiceDao.getAccountBalanceVersion(accountId, context);
+        Assert.assertNotNull(versionAfterInvoice);
+
+        final DefaultInvoicePayment invoicePayment = new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, UUID.randomUUID(), invoice.getId(), clock.getUTCNow(), new BigDecimal("11.00"), Currency.USD, Currency.USD);
+        invoiceDao.notifyOfPayment(new InvoicePaymentModelDao(invoicePayment), context);
+
+        // The ledger was maintained by the writes
+        assertTrue(invoiceDao.getAccountBalanceVersion(accountId, context) > versionAfterInvoice);
+        assertEquals(invoiceDao.getAccountBalance(accountId, context).compareTo(new BigDecimal("10.00")), 0);
+        assertTrue(invoiceDao.reconcileAccountBalance(context));
+
+        // Corrupt the ledger: the reads see it, until the reconciliation rebuilds it
+        final Handle handle = dbi.open();
+        try {
+            handle.execute("update invoice_account_balances set paid_amount = 0 where account_record_id = ?", context.getAccountRecordId());
+        } finally {
+            handle.close();
+        }
+        assertEquals(invoiceDao.getAccountBalance(accountId, context).compareTo(new BigDecimal("21.00")), 0);
+
+        Assert.assertFalse(invoiceDao.reconcileAccountBalance(context));
+        assertEquals(invoiceDao.getAccountBalance(accountId, context).compareTo(new BigDecimal("10.00")), 0);
+        assertTrue(invoiceDao.reconcileAccountBalance(context));
+    }
+
+    @Test(groups = "slow")
+    public void testAccountBalanceLedgerCreatedOnce() {
+        final InvoiceAccountBalanceSqlDao invoiceAccountBalanceSqlDao = dbi.onDemand(InvoiceAccountBalanceSqlDao.class);
+        assertEquals(invoiceAccountBalanceSqlDao.createAccountBalance("USD", new BigDecimal("10.00"), BigDecimal.ZERO, BigDecimal.ZERO, context), 1);
+
+        // A concurrent first write doesn't fail on the unique key: the row is left untouched, for the caller to update it
+        assertEquals(invoiceAccountBalanceSqlDao.createAccountBalance("USD", new BigDecimal("5.00"), BigDecimal.ZERO, BigDecimal.ZERO, context), 0);
+        assertEquals(invoiceAccountBalanceSqlDao.getAccountBalance(context).getChargedAmount().compareTo(new BigDecimal("10.00")), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testInvoiceBalanceColumns() throws InvoiceApiException {
+        final UUID accountId = account.getId();
+        final Invoice paidInvoice = new DefaultInvoice(accountId, clock.getUTCToday(), clock.getUTCToday(), Currency.USD);
+        paidInvoice.addInvoiceItem(new FixedPriceInvoiceItem(paidInvoice.getId(), accountId, UUID.randomUUID(), UUID.randomUUID(), "test plan", "test phase A",
+                                                             new LocalDate(2010, 1, 1), new BigDecimal("21.00"), Currency.USD));
+        invoiceUtil.createInvoice(paidInvoice, true, context);
+        final Invoice unpaidInvoice = new DefaultInvoice(accountId, clock.getUTCToday(), clock.getUTCToday(), Currency.USD);
+        unpaidInvoice.addInvoiceItem(new FixedPriceInvoiceItem(unpaidInvoice.getId(), accountId, UUID.randomUUID(), UUID.randomUUID(), "test plan", "test phase B",
+                                                               new LocalDate(2010, 1, 1), new BigDecimal("7.00"), Currency.USD));
+        invoiceUtil.createInvoice(unpaidInvoice, true, context);
+
+        final DefaultInvoicePayment invoicePayment = new DefaultInvoicePayment(InvoicePaymentType.ATTEMPT, UUID.randomUUID(), paidInvoice.getId(), clock.getUTCNow(), new BigDecimal("21.00"), Currency.USD, Currency.USD);
+        invoiceDao.notifyOfPayment(new InvoicePaymentModelDao(invoicePayment), context);
+
+        // The columns are maintained by the writes
+        final InvoiceModelDao paidInvoiceModelDao = invoiceDao.getById(paidInvoice.getId(), context);
+        assertEquals(paidInvoiceModelDao.getAmountCharged().compareTo(new BigDecimal("21.00")), 0);
+        assertEquals(paidInvoiceModelDao.getAmountPaid().compareTo(new BigDecimal("21.00")), 0);
+        assertEquals(paidInvoiceModelDao.getBalance().compareTo(BigDecimal.ZERO), 0);
+        assertEquals(invoiceDao.getById(unpaidInvoice.getId(), context).getBalance().compareTo(new BigDecimal("7.00")), 0);
+
+        List<InvoiceModelDao> unpaidInvoices = invoiceDao.getUnpaidInvoicesByAccountId(accountId, null, context);
+        assertEquals(unpaidInvoices.size(), 1);
+        assertEquals(unpaidInvoices.get(0).getId(), unpaidInvoice.getId());
+        assertEquals(unpaidInvoices.get(0).getInvoiceItems().size(), 1);
+
+        // Invoices which were never computed are still checked
+        final Handle handle = dbi.open();
+        try {
+            handle.execute("update invoices set amount_charged = null, amount_credited = null, amount_paid = null, balance = null where account_record_id = ?", context.getAccountRecordId());
+        } finally {
+            handle.close();
+        }
+        unpaidInvoices = invoiceDao.getUnpaidInvoicesByAccountId(accountId, null, context);
+        assertEquals(unpaidInvoices.size(), 1);
+        assertEquals(unpaidInvoices.get(0).getId(), unpaidInvoice.getId());
+
+        // ...until the reconciliation populates them
+        Assert.assertFalse(invoiceDao.reconcileAccountBalance(context));
+        assertEquals(invoiceDao.getById(paidInvoice.getId(), context).getBalance().compareTo(BigDecimal.ZERO), 0);
+        assertTrue(invoiceDao.reconcileAccountBalance(context));
+    }
+
     @Test(groups = "slow")
     public void testAccountCredit() {
         final UUID accountId = account.getId();
@@ -1600,4 +1723,36 @@ public class TestInvoiceDao extends InvoiceTestSuiteWithEmbeddedDB {
         Assert.assertEquals(invoiceDao.getAccountCBA(accountId, context).doubleValue(), 10.00);
         invoiceUtil.verifyInvoice(invoice1.getId(), 0.00, 10.00, context);
     }
+
+    @Test(groups = "slow")
+    public void testInvoiceTreeSnapshots() throws Exception {
+        Assert.assertEquals(invoiceDao.getInvoiceTreeSnapshots(context).size(), 0);
+
+        final UUID subscriptionId1 = UUID.randomUUID();
+        final UUID subscriptionId2 = UUID.randomUUID();
+        invoiceDao.setInvoiceTreeSnapshots(ImmutableList.<InvoiceTreeSnapshotModelDao>of(new InvoiceTreeSnapshotModelDao(subscriptionId1, "[\"ids1\"]", "{\"snapshot\":1}"),
+                                                                                         new InvoiceTreeSnapshotModelDao(subscriptionId2, "[\"ids2\"]", "{\"snapshot\":2}")),
+                                           context);
+        final List<InvoiceTreeSnapshotModelDao> snapshots = invoiceDao.getInvoiceTreeSnapshots(context);
+        Assert.assertEquals(snapshots.size(), 2);
+        Assert.assertEquals(snapshots.get(0).getSubscriptionId(), subscriptionId1);
+        Assert.assertEquals(snapshots.get(0).getItemIds(), "[\"ids1\"]");
+        Assert.assertEquals(snapshots.get(0).getSnapshot(), "{\"snapshot\":1}");
+        Assert.assertEquals(snapshots.get(1).getSubscriptionId(), subscriptionId2);
+
+        // The snapshots of the account are replaced as a whole
+        invoiceDao.setInvoiceTreeSnapshots(ImmutableList.<InvoiceTreeSnapshotModelDao>of(new InvoiceTreeSnapshotModelDao(subscriptionId2, "[\"ids3\"]", "{\"snapshot\":3}")), context);
+        final List<InvoiceTreeSnapshotModelDao> newSnapshots = invoiceDao.getInvoiceTreeSnapshots(context);
+        Assert.assertEquals(newSnapshots.size(), 1);
+        Assert.assertEquals(newSnapshots.get(0).getSubscriptionId(), subscriptionId2);
+        Assert.assertEquals(newSnapshots.get(0).getItemIds(), "[\"ids3\"]");
+        Assert.assertEquals(newSnapshots.get(0).getSnapshot(), "{\"snapshot\":3}");
+
+        // Other accounts are not affected
+        final Account otherAccount = invoiceUtil.createAccount(callContext);
+        final InternalCallContext otherContext = internalCallContextFactory.createInternalCallContext(otherAccount.getId(), callContext);
+        Assert.assertEquals(invoiceDao.getInvoiceTreeSnapshots(otherContext).size(), 0);
+        invoiceDao.setInvoiceTreeSnapshots(ImmutableList.<InvoiceTreeSnapshotModelDao>of(), otherContext);
+        Assert.assertEquals(invoiceDao.getInvoiceTreeSnapshots(context).size(), 1);
+    }
 }
@@ -63,6 +63,7 @@ import org.killbill.billing.util.currency.KillBillMoney;
 import org.killbill.clock.Clock;
 import org.killbill.clock.DefaultClock;
 import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
@@ -111,8 +112,53 @@ public class TestDefaultInvoiceGenerator extends InvoiceTestSuiteNoDB {
             public boolean isInsertZeroUsageItems() {
                 return true;
             }
+
+            @Override
+            public boolean isIncrementalGenerationEnabled() {
+                return false;
+            }
+
+            @Override
+            public boolean isIncrementalGenerationVerified() {
+                return false;
+            }
+
+            @Override
+            public boolean isInvoiceTreeSnapshotEnabled() {
+                return false;
+            }
+
+            @Override
+            public int getBulkInvoiceThreadNb() {
+                return 10;
+            }
+
+            @Override
+            public int getBulkInvoiceQueueSize() {
+                return 10000;
+            }
+
+            @Override
+            public boolean isAccountBalanceLedgerEnabled() {
+                return true;
+            }
+
+            @Override
+            public boolean isAccountBalanceReconciliationEnabled() {
+                return false;
+            }
+
+            @Override
+            public TimeSpan getAccountBalanceReconciliationRate() {
+                return new TimeSpan("1d");
+            }
+
+            @Override
+            public int getAccountBalanceReconciliationBatchSize() {
+                return 100;
+            }
         };
-        this.generator = new DefaultInvoiceGenerator(clock, null, invoiceConfig, null, controllerDispatcher);
+        this.generator = new DefaultInvoiceGenerator(clock, null, invoiceConfig);
     }
 
     @Test(groups = "fast")
@@ -339,6 +385,43 @@ public class TestDefaultInvoiceGenerator extends InvoiceTestSuiteNoDB {
         assertEquals(invoice.getBalance(), KillBillMoney.of(rate1.add(rate2).add(TWO.multiply(rate3)), invoice.getCurrency()));
     }
 
+    @Test(groups = "fast")
+    public void testIncrementalGeneration() throws InvoiceApiException, CatalogApiException {
+        final BillingEventSet events = new MockBillingEventSet();
+
+        final Plan plan1 = new MockPlan();
+        final PlanPhase phase1 = createMockMonthlyPlanPhase(FIVE);
+
+        final SubscriptionBase sub = createSubscription();
+        final BillingEvent event1 = createBillingEvent(sub.getId(), sub.getBundleId(), invoiceUtil.buildDate(2011, 9, 1), plan1, phase1, 1);
+        events.add(event1);
+
+        final UUID accountId = UUID.randomUUID();
+        final List<Invoice> existingInvoices = new ArrayList<Invoice>();
+        for (int i = 0; i < 4; i++) {
+            final Invoice invoice = generator.generateInvoice(accountId, events, existingInvoices, invoiceUtil.buildDate(2011, 9 + i, 1), Currency.USD, internalCallContext);
+            assertNotNull(invoice);
+            existingInvoices.add(invoice);
+        }
+
+        // Change immediate in the middle of the last billed period
+        final LocalDate changeDate = invoiceUtil.buildDate(2011, 12, 15);
+        final PlanPhase phase2 = createMockMonthlyPlanPhase(TEN);
+        final BillingEvent event2 = createBillingEvent(sub.getId(), sub.getBundleId(), changeDate, plan1, phase2, 1);
+        events.add(event2);
+
+        final Invoice fullInvoice = generator.generateInvoice(accountId, events, existingInvoices, changeDate, Currency.USD, internalCallContext);
+        final Invoice incrementalInvoice = generator.generateInvoice(accountId, events, existingInvoices, changeDate, Currency.USD, changeDate, internalCallContext);
+
+        assertNotNull(fullInvoice);
+        assertNotNull(incrementalInvoice);
+        assertEquals(incrementalInvoice.getNumberOfItems(), fullInvoice.getNumberOfItems());
+        assertEquals(incrementalInvoice.getBalance().compareTo(fullInvoice.getBalance()), 0);
+        for (final InvoiceItem item : incrementalInvoice.getInvoiceItems()) {
+            assertTrue(item.getEndDate() == null || item.getEndDate().isAfter(changeDate));
+        }
+    }
+
     @Test(groups = "fast")
     public void testSingleEventWithExistingInvoice() throws InvoiceApiException, CatalogApiException {
         final BillingEventSet events = new MockBillingEventSet();
@@ -35,11 +35,11 @@ import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.model.FixedPriceInvoiceItem;
 import org.killbill.billing.invoice.model.UsageInvoiceItem;
 import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.usage.RawUsage;
 import org.killbill.billing.usage.api.RolledUpUnit;
 import org.killbill.billing.usage.api.RolledUpUsage;
-import org.killbill.billing.usage.api.user.DefaultRolledUpUsage;
+import org.killbill.billing.usage.api.svcs.DefaultRawUsage;
 import org.testng.annotations.BeforeClass;
-import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableList;
@@ -55,13 +55,6 @@ public class TestContiguousIntervalConsumableInArrear extends TestUsageInArrearB
         super.beforeClass();
     }
 
-    @BeforeMethod(groups = "fast")
-    public void beforeMethod() {
-        super.beforeMethod();
-        // Default invoice test binding;
-        this.mockUsageUserApi = usageUserApi;
-    }
-
     @Test(groups = "fast")
     public void testComputeToBeBilledUsage() {
 
@@ -73,7 +66,7 @@ public class TestContiguousIntervalConsumableInArrear extends TestUsageInArrearB
         final DefaultUsage usage = createDefaultUsage(usageName, tier);
 
         final LocalDate targetDate = startDate.plusDays(1);
-        final ContiguousIntervalConsumableInArrear intervalConsumableInArrear = createContiguousIntervalConsumableInArrear(usage, targetDate, false,
+        final ContiguousIntervalConsumableInArrear intervalConsumableInArrear = createContiguousIntervalConsumableInArrear(usage, ImmutableList.<RawUsage>of(), targetDate, false,
                                                                                                                            createMockBillingEvent(targetDate.toDateTimeAtStartOfDay(DateTimeZone.UTC),
                                                                                                                                                   Collections.<Usage>emptyList())
                                                                                                                           );
@@ -111,7 +104,7 @@ public class TestContiguousIntervalConsumableInArrear extends TestUsageInArrearB
         final DefaultUsage usage = createDefaultUsage(usageName, tier1, tier2);
 
         final LocalDate targetDate = new LocalDate(2014, 03, 20);
-        final ContiguousIntervalConsumableInArrear intervalConsumableInArrear = createContiguousIntervalConsumableInArrear(usage, targetDate, false,
+        final ContiguousIntervalConsumableInArrear intervalConsumableInArrear = createContiguousIntervalConsumableInArrear(usage, ImmutableList.<RawUsage>of(), targetDate, false,
                                                                                                                            createMockBillingEvent(targetDate.toDateTimeAtStartOfDay(DateTimeZone.UTC),
                                                                                                                                                   Collections.<Usage>emptyList())
                                                                                                                           );
@@ -129,19 +122,12 @@ public class TestContiguousIntervalConsumableInArrear extends TestUsageInArrearB
         final LocalDate firstBCDDate = new LocalDate(2014, 04, 15);
         final LocalDate endDate = new LocalDate(2014, 05, 15);
 
+        final List<RawUsage> rawUsages = new ArrayList<RawUsage>();
         // 2 items for startDate - firstBCDDate
-        final List<RolledUpUnit> units1 = new ArrayList<RolledUpUnit>();
-        units1.add(createRolledUpUnit("unit", 130L));
-        units1.add(createRolledUpUnit("unit", 271L));
-        final RolledUpUsage usage1 = new DefaultRolledUpUsage(subscriptionId, startDate, firstBCDDate, units1);
-
+        rawUsages.add(new DefaultRawUsage(subscriptionId, startDate, "unit", 130L));
+        rawUsages.add(new DefaultRawUsage(subscriptionId, new LocalDate(2014, 04, 01), "unit", 271L));
         // 1 items for firstBCDDate - endDate
-        final List<RolledUpUnit> units2 = new ArrayList<RolledUpUnit>();
-        units2.add(createRolledUpUnit("unit", 199L));
-        final RolledUpUsage usage3 = new DefaultRolledUpUsage(subscriptionId, firstBCDDate, endDate, units2);
-
-        final List<RolledUpUsage> usages = ImmutableList.<RolledUpUsage>builder().add(usage1).add(usage3).build();
-        this.mockUsageUserApi = createMockUsageUserApi(usages);
+        rawUsages.add(new DefaultRawUsage(subscriptionId, firstBCDDate, "unit", 199L));
 
         final DefaultTieredBlock block = createDefaultTieredBlock("unit", 100, 10, BigDecimal.ONE);
         final DefaultTier tier = createDefaultTier(block);
@@ -152,7 +138,7 @@ public class TestContiguousIntervalConsumableInArrear extends TestUsageInArrearB
         final BillingEvent event1 = createMockBillingEvent(startDate.toDateTimeAtStartOfDay(DateTimeZone.UTC), Collections.<Usage>emptyList());
         final BillingEvent event2 = createMockBillingEvent(endDate.toDateTimeAtStartOfDay(DateTimeZone.UTC), Collections.<Usage>emptyList());
 
-        final ContiguousIntervalConsumableInArrear intervalConsumableInArrear = createContiguousIntervalConsumableInArrear(usage, targetDate, true, event1, event2);
+        final ContiguousIntervalConsumableInArrear intervalConsumableInArrear = createContiguousIntervalConsumableInArrear(usage, rawUsages, targetDate, true, event1, event2);
 
         final List<InvoiceItem> invoiceItems = new ArrayList<InvoiceItem>();
         final InvoiceItem ii1 = new UsageInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, planName, phaseName, usage.getName(), startDate, firstBCDDate, BigDecimal.ONE, currency);
@@ -188,16 +174,46 @@ public class TestContiguousIntervalConsumableInArrear extends TestUsageInArrearB
         assertTrue(result.get(1).getEndDate().compareTo(endDate) == 0);
     }
 
-    private RolledUpUnit createRolledUpUnit(final String unit, final Long amount) {
-        return new RolledUpUnit() {
-            @Override
-            public String getUnitType() {
-                return unit;
-            }
-            @Override
-            public Long getAmount() {
-                return amount;
-            }
-        };
+    @Test(groups = "fast")
+    public void testGetRolledUpUsage() {
+
+        final LocalDate startDate = new LocalDate(2014, 03, 20);
+        final LocalDate firstBCDDate = new LocalDate(2014, 04, 15);
+        final LocalDate endDate = new LocalDate(2014, 05, 15);
+
+        final List<RawUsage> rawUsages = new ArrayList<RawUsage>();
+        // Before the first transition, ignored
+        rawUsages.add(new DefaultRawUsage(subscriptionId, startDate.minusDays(1), "unit", 1000L));
+        rawUsages.add(new DefaultRawUsage(subscriptionId, startDate, "unit", 10L));
+        rawUsages.add(new DefaultRawUsage(subscriptionId, firstBCDDate.minusDays(1), "unit", 20L));
+        rawUsages.add(new DefaultRawUsage(subscriptionId, firstBCDDate.minusDays(1), "other", 5L));
+        rawUsages.add(new DefaultRawUsage(subscriptionId, firstBCDDate, "unit", 30L));
+        // On the last transition, ignored
+        rawUsages.add(new DefaultRawUsage(subscriptionId, endDate, "unit", 1000L));
+
+        final DefaultTieredBlock block = createDefaultTieredBlock("unit", 100, 10, BigDecimal.ONE);
+        final DefaultTier tier = createDefaultTier(block);
+        final DefaultUsage usage = createDefaultUsage(usageName, tier);
+
+        final BillingEvent event1 = createMockBillingEvent(startDate.toDateTimeAtStartOfDay(DateTimeZone.UTC), Collections.<Usage>emptyList());
+        final BillingEvent event2 = createMockBillingEvent(endDate.toDateTimeAtStartOfDay(DateTimeZone.UTC), Collections.<Usage>emptyList());
+
+        final ContiguousIntervalConsumableInArrear intervalConsumableInArrear = createContiguousIntervalConsumableInArrear(usage, rawUsages, endDate, true, event1, event2);
+
+        final List<RolledUpUsage> result = intervalConsumableInArrear.getRolledUpUsage();
+        assertEquals(result.size(), 2);
+
+        assertEquals(result.get(0).getStart(), startDate);
+        assertEquals(result.get(0).getEnd(), firstBCDDate);
+        assertEquals(result.get(0).getRolledUpUnits().size(), 2);
+        for (final RolledUpUnit cur : result.get(0).getRolledUpUnits()) {
+            assertEquals(cur.getAmount(), "unit".equals(cur.getUnitType()) ? (Long) 30L : (Long) 5L);
+        }
+
+        assertEquals(result.get(1).getStart(), firstBCDDate);
+        assertEquals(result.get(1).getEnd(), endDate);
+        assertEquals(result.get(1).getRolledUpUnits().size(), 1);
+        assertEquals(result.get(1).getRolledUpUnits().get(0).getUnitType(), "unit");
+        assertEquals(result.get(1).getRolledUpUnits().get(0).getAmount(), (Long) 30L);
     }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.jaxrs.json;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.killbill.billing.invoice.api.BulkInvoiceRun;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+public class BulkInvoiceRunJson {
+
+    @ApiModelProperty(dataType = "java.util.UUID")
+    private final String runId;
+    private final LocalDate targetDate;
+    private final DateTime startDate;
+    private final DateTime endDate;
+    private final Integer nbAccounts;
+    private final Integer nbProcessedAccounts;
+    private final Integer nbInvoicedAccounts;
+    private final Integer nbFailedAccounts;
+    @ApiModelProperty(dataType = "java.util.List<java.util.UUID>")
+    private final List<String> failedAccountIds;
+    private final Double throughput;
+    private final Boolean completed;
+
+    @JsonCreator
+    public BulkInvoiceRunJson(@JsonProperty("runId") final String runId,
+                              @JsonProperty("targetDate") final LocalDate targetDate,
+                              @JsonProperty("startDate") final DateTime startDate,
+                              @JsonProperty("endDate") final DateTime endDate,
+                              @JsonProperty("nbAccounts") final Integer nbAccounts,
+                              @JsonProperty("nbProcessedAccounts") final Integer nbProcessedAccounts,
+                              @JsonProperty("nbInvoicedAccounts") final Integer nbInvoicedAccounts,
+                              @JsonProperty("nbFailedAccounts") final Integer nbFailedAccounts,
+                              @JsonProperty("failedAccountIds") final List<String> failedAccountIds,
+                              @JsonProperty("throughput") final Double throughput,
+                              @JsonProperty("completed") final Boolean completed) {
+        this.runId = runId;
+        this.targetDate = targetDate;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.nbAccounts = nbAccounts;
+        this.nbProcessedAccounts = nbProcessedAccounts;
+        this.nbInvoicedAccounts = nbInvoicedAccounts;
+        this.nbFailedAccounts = nbFailedAccounts;
+        this.failedAccountIds = failedAccountIds;
+        this.throughput = throughput;
+        this.completed = completed;
+    }
+
+    public BulkInvoiceRunJson(final BulkInvoiceRun input) {
+        this(input.getId().toString(),
+             input.getTargetDate(),
+             input.getStartDate(),
+             input.getEndDate(),
+             input.getNbAccounts(),
+             input.getNbProcessedAccounts(),
+             input.getNbInvoicedAccounts(),
+             input.getNbFailedAccounts(),
+             toStrings(input.getFailedAccountIds()),
+             input.getThroughput(),
+             input.isCompleted());
+    }
+
+    private static List<String> toStrings(final List<UUID> ids) {
+        final List<String> result = new ArrayList<String>(ids.size());
+        for (final UUID id : ids) {
+            result.add(id.toString());
+        }
+        return result;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public LocalDate getTargetDate() {
+        return targetDate;
+    }
+
+    public DateTime getStartDate() {
+        return startDate;
+    }
+
+    public DateTime getEndDate() {
+        return endDate;
+    }
+
+    public Integer getNbAccounts() {
+        return nbAccounts;
+    }
+
+    public Integer getNbProcessedAccounts() {
+        return nbProcessedAccounts;
+    }
+
+    public Integer getNbInvoicedAccounts() {
+        return nbInvoicedAccounts;
+    }
+
+    public Integer getNbFailedAccounts() {
+        return nbFailedAccounts;
+    }
+
+    public List<String> getFailedAccountIds() {
+        return failedAccountIds;
+    }
+
+    public Double getThroughput() {
+        return throughput;
+    }
+
+    public Boolean getCompleted() {
+        return completed;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.jaxrs.json;
+
+import org.killbill.billing.usage.api.SubscriptionUsageRecordResult;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+public class SubscriptionUsageRecordResultJson {
+
+    @ApiModelProperty(dataType = "java.util.UUID")
+    private final String subscriptionId;
+    private final Integer nbRecordedRows;
+    private final Boolean success;
+    private final String errorMessage;
+
+    @JsonCreator
+    public SubscriptionUsageRecordResultJson(@JsonProperty("subscriptionId") final String subscriptionId,
+                                             @JsonProperty("nbRecordedRows") final Integer nbRecordedRows,
+                                             @JsonProperty("success") final Boolean success,
+                                             @JsonProperty("errorMessage") final String errorMessage) {
+        this.subscriptionId = subscriptionId;
+        this.nbRecordedRows = nbRecordedRows;
+        this.success = success;
+        this.errorMessage = errorMessage;
+    }
+
+    public SubscriptionUsageRecordResultJson(final SubscriptionUsageRecordResult input) {
+        this(input.getSubscriptionId() != null ? input.getSubscriptionId().toString() : null, input.getNbRecordedRows(), input.isSuccess(), input.getErrorMessage());
+    }
+
+    public String getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public Integer getNbRecordedRows() {
+        return nbRecordedRows;
+    }
+
+    public Boolean getSuccess() {
+        return success;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.servlet.http.HttpServletRequest;
@@ -47,6 +48,7 @@ import org.killbill.billing.ErrorCode;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
+import org.killbill.billing.account.api.AccountCursorUserApi;
 import org.killbill.billing.account.api.AccountData;
 import org.killbill.billing.account.api.AccountEmail;
 import org.killbill.billing.account.api.AccountUserApi;
@@ -122,6 +124,7 @@ public class AccountResource extends JaxRsResourceBase {
 
     private static final String ID_PARAM_NAME = "accountId";
 
+    private final AccountCursorUserApi accountCursorApi;
     private final SubscriptionApi subscriptionApi;
     private final InvoiceUserApi invoiceApi;
     private final InvoicePaymentApi invoicePaymentApi;
@@ -130,6 +133,7 @@ public class AccountResource extends JaxRsResourceBase {
     @Inject
     public AccountResource(final JaxrsUriBuilder uriBuilder,
                            final AccountUserApi accountApi,
+                           final AccountCursorUserApi accountCursorApi,
                            final InvoiceUserApi invoiceApi,
                            final InvoicePaymentApi invoicePaymentApi,
                            final PaymentApi paymentApi,
@@ -141,6 +145,7 @@ public class AccountResource extends JaxRsResourceBase {
                            final Clock clock,
                            final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountApi, paymentApi, clock, context);
+        this.accountCursorApi = accountCursorApi;
         this.subscriptionApi = subscriptionApi;
         this.invoiceApi = invoiceApi;
         this.invoicePaymentApi = invoicePaymentApi;
@@ -174,15 +179,24 @@ public class AccountResource extends JaxRsResourceBase {
     @ApiResponses(value = {})
     public Response getAccounts(@QueryParam(QUERY_SEARCH_OFFSET) @DefaultValue("0") final Long offset,
                                 @QueryParam(QUERY_SEARCH_LIMIT) @DefaultValue("100") final Long limit,
+                                @QueryParam(QUERY_SEARCH_CURSOR) final String cursor,
+                                @QueryParam(QUERY_SEARCH_WITH_COUNT) @DefaultValue("false") final Boolean withCount,
                                 @QueryParam(QUERY_ACCOUNT_WITH_BALANCE) @DefaultValue("false") final Boolean accountWithBalance,
                                 @QueryParam(QUERY_ACCOUNT_WITH_BALANCE_AND_CBA) @DefaultValue("false") final Boolean accountWithBalanceAndCBA,
                                 @QueryParam(QUERY_AUDIT) @DefaultValue("NONE") final AuditMode auditMode,
                                 @javax.ws.rs.core.Context final HttpServletRequest request) throws AccountApiException {
         final TenantContext tenantContext = context.createContext(request);
-        final Pagination<Account> accounts = accountUserApi.getAccounts(offset, limit, tenantContext);
-        final URI nextPageUri = uriBuilder.nextPage(AccountResource.class, "getAccounts", accounts.getNextOffset(), limit, ImmutableMap.<String, String>of(QUERY_ACCOUNT_WITH_BALANCE, accountWithBalance.toString(),
-                                                                                                                                                           QUERY_ACCOUNT_WITH_BALANCE_AND_CBA, accountWithBalanceAndCBA.toString(),
-                                                                                                                                                           QUERY_AUDIT, auditMode.getLevel().toString()));
+        // Keyset pagination if a cursor is specified (empty for the first page), offset based otherwise
+        final boolean cursorBased = cursor != null;
+        final Pagination<Account> accounts = cursorBased ?
+                                             accountCursorApi.getAccounts(JaxrsUriBuilder.decodeCursor(cursor), limit, withCount, tenantContext) :
+                                             accountUserApi.getAccounts(offset, limit, tenantContext);
+        final Map<String, String> nextPageParams = ImmutableMap.<String, String>of(QUERY_ACCOUNT_WITH_BALANCE, accountWithBalance.toString(),
+                                                                                   QUERY_ACCOUNT_WITH_BALANCE_AND_CBA, accountWithBalanceAndCBA.toString(),
+                                                                                   QUERY_AUDIT, auditMode.getLevel().toString());
+        final URI nextPageUri = cursorBased ?
+                                uriBuilder.nextPageFromCursor(AccountResource.class, "getAccounts", accounts.getNextOffset(), limit, withCount, nextPageParams) :
+                                uriBuilder.nextPage(AccountResource.class, "getAccounts", accounts.getNextOffset(), limit, nextPageParams);
         return buildStreamingPaginationResponse(accounts,
                                                 new Function<Account, AccountJson>() {
                                                     @Override
@@ -191,7 +205,8 @@ public class AccountResource extends JaxRsResourceBase {
                                                         return getAccount(account, accountWithBalance, accountWithBalanceAndCBA, accountAuditLogs, tenantContext);
                                                     }
                                                 },
-                                                nextPageUri
+                                                nextPageUri,
+                                                cursorBased
                                                );
     }
 
@@ -204,16 +219,25 @@ public class AccountResource extends JaxRsResourceBase {
     public Response searchAccounts(@PathParam("searchKey") final String searchKey,
                                    @QueryParam(QUERY_SEARCH_OFFSET) @DefaultValue("0") final Long offset,
                                    @QueryParam(QUERY_SEARCH_LIMIT) @DefaultValue("100") final Long limit,
+                                   @QueryParam(QUERY_SEARCH_CURSOR) final String cursor,
+                                   @QueryParam(QUERY_SEARCH_WITH_COUNT) @DefaultValue("false") final Boolean withCount,
                                    @QueryParam(QUERY_ACCOUNT_WITH_BALANCE) @DefaultValue("false") final Boolean accountWithBalance,
                                    @QueryParam(QUERY_ACCOUNT_WITH_BALANCE_AND_CBA) @DefaultValue("false") final Boolean accountWithBalanceAndCBA,
                                    @QueryParam(QUERY_AUDIT) @DefaultValue("NONE") final AuditMode auditMode,
                                    @javax.ws.rs.core.Context final HttpServletRequest request) throws AccountApiException {
         final TenantContext tenantContext = context.createContext(request);
-        final Pagination<Account> accounts = accountUserApi.searchAccounts(searchKey, offset, limit, tenantContext);
-        final URI nextPageUri = uriBuilder.nextPage(AccountResource.class, "searchAccounts", accounts.getNextOffset(), limit, ImmutableMap.<String, String>of("searchKey", searchKey,
-                                                                                                                                                              QUERY_ACCOUNT_WITH_BALANCE, accountWithBalance.toString(),
-                                                                                                                                                              QUERY_ACCOUNT_WITH_BALANCE_AND_CBA, accountWithBalanceAndCBA.toString(),
-                                                                                                                                                              QUERY_AUDIT, auditMode.getLevel().toString()));
+        // Keyset pagination if a cursor is specified (empty for the first page), offset based otherwise
+        final boolean cursorBased = cursor != null;
+        final Pagination<Account> accounts = cursorBased ?
+                                             accountCursorApi.searchAccounts(searchKey, JaxrsUriBuilder.decodeCursor(cursor), limit, withCount, tenantContext) :
+                                             accountUserApi.searchAccounts(searchKey, offset, limit, tenantContext);
+        final Map<String, String> nextPageParams = ImmutableMap.<String, String>of("searchKey", searchKey,
+                                                                                   QUERY_ACCOUNT_WITH_BALANCE, accountWithBalance.toString(),
+                                                                                   QUERY_ACCOUNT_WITH_BALANCE_AND_CBA, accountWithBalanceAndCBA.toString(),
+                                                                                   QUERY_AUDIT, auditMode.getLevel().toString());
+        final URI nextPageUri = cursorBased ?
+                                uriBuilder.nextPageFromCursor(AccountResource.class, "searchAccounts", accounts.getNextOffset(), limit, withCount, nextPageParams) :
+                                uriBuilder.nextPage(AccountResource.class, "searchAccounts", accounts.getNextOffset(), limit, nextPageParams);
         return buildStreamingPaginationResponse(accounts,
                                                 new Function<Account, AccountJson>() {
                                                     @Override
@@ -222,7 +246,8 @@ public class AccountResource extends JaxRsResourceBase {
                                                         return getAccount(account, accountWithBalance, accountWithBalanceAndCBA, accountAuditLogs, tenantContext);
                                                     }
                                                 },
-                                                nextPageUri
+                                                nextPageUri,
+                                                cursorBased
                                                );
     }
 
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -62,13 +63,17 @@ import org.killbill.billing.catalog.api.PlanPhaseSpecifier;
 import org.killbill.billing.catalog.api.ProductCategory;
 import org.killbill.billing.entitlement.api.SubscriptionApiException;
 import org.killbill.billing.entitlement.api.SubscriptionEventType;
+import org.killbill.billing.invoice.api.BulkInvoiceRun;
+import org.killbill.billing.invoice.api.BulkInvoiceUserApi;
 import org.killbill.billing.invoice.api.DryRunArguments;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceApiException;
+import org.killbill.billing.invoice.api.InvoiceCursorUserApi;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoiceNotifier;
 import org.killbill.billing.invoice.api.InvoicePayment;
 import org.killbill.billing.invoice.api.InvoiceUserApi;
+import org.killbill.billing.jaxrs.json.BulkInvoiceRunJson;
 import org.killbill.billing.jaxrs.json.CustomFieldJson;
 import org.killbill.billing.jaxrs.json.InvoiceDryRunJson;
 import org.killbill.billing.jaxrs.json.InvoiceItemJson;
@@ -98,6 +103,7 @@ import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.annotation.Timed;
 import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
@@ -117,15 +123,20 @@ public class InvoiceResource extends JaxRsResourceBase {
 
     private static final Logger log = LoggerFactory.getLogger(InvoiceResource.class);
     private static final String ID_PARAM_NAME = "invoiceId";
+    private static final long BULK_INVOICE_ACCOUNTS_PAGE_SIZE = 1000L;
 
     private final InvoiceUserApi invoiceApi;
+    private final InvoiceCursorUserApi invoiceCursorApi;
     private final InvoiceNotifier invoiceNotifier;
+    private final BulkInvoiceUserApi bulkInvoiceApi;
 
     @Inject
     public InvoiceResource(final AccountUserApi accountUserApi,
                            final InvoiceUserApi invoiceApi,
+                           final InvoiceCursorUserApi invoiceCursorApi,
                            final PaymentApi paymentApi,
                            final InvoiceNotifier invoiceNotifier,
+                           final BulkInvoiceUserApi bulkInvoiceApi,
                            final Clock clock,
                            final JaxrsUriBuilder uriBuilder,
                            final TagUserApi tagUserApi,
@@ -134,7 +145,9 @@ public class InvoiceResource extends JaxRsResourceBase {
                            final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, clock, context);
         this.invoiceApi = invoiceApi;
+        this.invoiceCursorApi = invoiceCursorApi;
         this.invoiceNotifier = invoiceNotifier;
+        this.bulkInvoiceApi = bulkInvoiceApi;
     }
 
     @Timed
@@ -201,13 +214,22 @@ public class InvoiceResource extends JaxRsResourceBase {
     @ApiResponses(value = {})
     public Response getInvoices(@QueryParam(QUERY_SEARCH_OFFSET) @DefaultValue("0") final Long offset,
                                 @QueryParam(QUERY_SEARCH_LIMIT) @DefaultValue("100") final Long limit,
+                                @QueryParam(QUERY_SEARCH_CURSOR) final String cursor,
+                                @QueryParam(QUERY_SEARCH_WITH_COUNT) @DefaultValue("false") final Boolean withCount,
                                 @QueryParam(QUERY_INVOICE_WITH_ITEMS) @DefaultValue("false") final Boolean withItems,
                                 @QueryParam(QUERY_AUDIT) @DefaultValue("NONE") final AuditMode auditMode,
                                 @javax.ws.rs.core.Context final HttpServletRequest request) throws InvoiceApiException {
         final TenantContext tenantContext = context.createContext(request);
-        final Pagination<Invoice> invoices = invoiceApi.getInvoices(offset, limit, tenantContext);
-        final URI nextPageUri = uriBuilder.nextPage(InvoiceResource.class, "getInvoices", invoices.getNextOffset(), limit, ImmutableMap.<String, String>of(QUERY_INVOICE_WITH_ITEMS, withItems.toString(),
-                                                                                                                                                           QUERY_AUDIT, auditMode.getLevel().toString()));
+        // Keyset pagination if a cursor is specified (empty for the first page), offset based otherwise
+        final boolean cursorBased = cursor != null;
+        final Pagination<Invoice> invoices = cursorBased ?
+                                             invoiceCursorApi.getInvoices(JaxrsUriBuilder.decodeCursor(cursor), limit, withCount, tenantContext) :
+                                             invoiceApi.getInvoices(offset, limit, tenantContext);
+        final Map<String, String> nextPageParams = ImmutableMap.<String, String>of(QUERY_INVOICE_WITH_ITEMS, withItems.toString(),
+                                                                                   QUERY_AUDIT, auditMode.getLevel().toString());
+        final URI nextPageUri = cursorBased ?
+                                uriBuilder.nextPageFromCursor(InvoiceResource.class, "getInvoices", invoices.getNextOffset(), limit, withCount, nextPageParams) :
+                                uriBuilder.nextPage(InvoiceResource.class, "getInvoices", invoices.getNextOffset(), limit, nextPageParams);
 
         final AtomicReference<Map<UUID, AccountAuditLogs>> accountsAuditLogs = new AtomicReference<Map<UUID, AccountAuditLogs>>(new HashMap<UUID, AccountAuditLogs>());
         return buildStreamingPaginationResponse(invoices,
@@ -221,7 +243,8 @@ public class InvoiceResource extends JaxRsResourceBase {
                                                         return new InvoiceJson(invoice, withItems, accountsAuditLogs.get().get(invoice.getAccountId()));
                                                     }
                                                 },
-                                                nextPageUri
+                                                nextPageUri,
+                                                cursorBased
                                                );
     }
 
@@ -234,14 +257,23 @@ public class InvoiceResource extends JaxRsResourceBase {
     public Response searchInvoices(@PathParam("searchKey") final String searchKey,
                                    @QueryParam(QUERY_SEARCH_OFFSET) @DefaultValue("0") final Long offset,
                                    @QueryParam(QUERY_SEARCH_LIMIT) @DefaultValue("100") final Long limit,
+                                   @QueryParam(QUERY_SEARCH_CURSOR) final String cursor,
+                                   @QueryParam(QUERY_SEARCH_WITH_COUNT) @DefaultValue("false") final Boolean withCount,
                                    @QueryParam(QUERY_INVOICE_WITH_ITEMS) @DefaultValue("false") final Boolean withItems,
                                    @QueryParam(QUERY_AUDIT) @DefaultValue("NONE") final AuditMode auditMode,
                                    @javax.ws.rs.core.Context final HttpServletRequest request) throws SubscriptionApiException {
         final TenantContext tenantContext = context.createContext(request);
-        final Pagination<Invoice> invoices = invoiceApi.searchInvoices(searchKey, offset, limit, tenantContext);
-        final URI nextPageUri = uriBuilder.nextPage(InvoiceResource.class, "searchInvoices", invoices.getNextOffset(), limit, ImmutableMap.<String, String>of("searchKey", searchKey,
-                                                                                                                                                              QUERY_INVOICE_WITH_ITEMS, withItems.toString(),
-                                                                                                                                                              QUERY_AUDIT, auditMode.getLevel().toString()));
+        // Keyset pagination if a cursor is specified (empty for the first page), offset based otherwise
+        final boolean cursorBased = cursor != null;
+        final Pagination<Invoice> invoices = cursorBased ?
+                                             invoiceCursorApi.searchInvoices(searchKey, JaxrsUriBuilder.decodeCursor(cursor), limit, withCount, tenantContext) :
+                                             invoiceApi.searchInvoices(searchKey, offset, limit, tenantContext);
+        final Map<String, String> nextPageParams = ImmutableMap.<String, String>of("searchKey", searchKey,
+                                                                                   QUERY_INVOICE_WITH_ITEMS, withItems.toString(),
+                                                                                   QUERY_AUDIT, auditMode.getLevel().toString());
+        final URI nextPageUri = cursorBased ?
+                                uriBuilder.nextPageFromCursor(InvoiceResource.class, "searchInvoices", invoices.getNextOffset(), limit, withCount, nextPageParams) :
+                                uriBuilder.nextPage(InvoiceResource.class, "searchInvoices", invoices.getNextOffset(), limit, nextPageParams);
         final AtomicReference<Map<UUID, AccountAuditLogs>> accountsAuditLogs = new AtomicReference<Map<UUID, AccountAuditLogs>>(new HashMap<UUID, AccountAuditLogs>());
         return buildStreamingPaginationResponse(invoices,
                                                 new Function<Invoice, InvoiceJson>() {
@@ -254,7 +286,8 @@ public class InvoiceResource extends JaxRsResourceBase {
                                                         return new InvoiceJson(invoice, withItems, accountsAuditLogs.get().get(invoice.getAccountId()));
                                                     }
                                                 },
-                                                nextPageUri
+                                                nextPageUri,
+                                                cursorBased
                                                );
     }
 
@@ -286,6 +319,82 @@ public class InvoiceResource extends JaxRsResourceBase {
         }
     }
 
+    @Timed
+    @POST
+    @Path("/" + BULK)
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    @ApiOperation(value = "Trigger an invoice generation for multiple accounts (all accounts of the tenant by default)", response = BulkInvoiceRunJson.class)
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid account id or target date supplied")})
+    public Response createBulkInvoices(final List<String> accountIds,
+                                       @QueryParam(QUERY_TARGET_DATE) final String targetDate,
+                                       @HeaderParam(HDR_CREATED_BY) final String createdBy,
+                                       @HeaderParam(HDR_REASON) final String reason,
+                                       @HeaderParam(HDR_COMMENT) final String comment,
+                                       @javax.ws.rs.core.Context final HttpServletRequest request,
+                                       @javax.ws.rs.core.Context final UriInfo uriInfo) {
+        final CallContext callContext = context.createContext(createdBy, reason, comment, request);
+        final LocalDate inputDate = targetDate != null ? LocalDate.parse(targetDate) : clock.getUTCToday();
+
+        final Iterable<UUID> ids;
+        if (accountIds != null && !accountIds.isEmpty()) {
+            final List<UUID> requestedIds = new ArrayList<UUID>();
+            for (final String accountId : accountIds) {
+                requestedIds.add(UUID.fromString(accountId));
+            }
+            ids = requestedIds;
+        } else {
+            ids = getAllAccountIds(callContext);
+        }
+
+        final BulkInvoiceRun run = bulkInvoiceApi.triggerInvoiceGeneration(ids, inputDate, callContext);
+        return uriBuilder.buildResponse(uriInfo, InvoiceResource.class, "getBulkInvoiceRun", run.getId());
+    }
+
+    // The accounts are paged as the bulk invoice run iterates through them, so that the ids of all the accounts of the tenant are never loaded at once
+    private Iterable<UUID> getAllAccountIds(final TenantContext tenantContext) {
+        return new Iterable<UUID>() {
+            @Override
+            public Iterator<UUID> iterator() {
+                return new AbstractIterator<UUID>() {
+
+                    private Long nextOffset = 0L;
+                    private Iterator<Account> currentPage = ImmutableList.<Account>of().iterator();
+
+                    @Override
+                    protected UUID computeNext() {
+                        while (!currentPage.hasNext()) {
+                            if (nextOffset == null) {
+                                return endOfData();
+                            }
+                            final Pagination<Account> accounts = accountUserApi.getAccounts(nextOffset, BULK_INVOICE_ACCOUNTS_PAGE_SIZE, tenantContext);
+                            currentPage = accounts.iterator();
+                            nextOffset = accounts.getNextOffset();
+                        }
+                        return currentPage.next().getId();
+                    }
+                };
+            }
+        };
+    }
+
+    @Timed
+    @GET
+    @Path("/" + BULK + "/{runId:" + UUID_PATTERN + "}/")
+    @Produces(APPLICATION_JSON)
+    @ApiOperation(value = "Retrieve the progress of a bulk invoice generation", response = BulkInvoiceRunJson.class)
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid run id supplied"),
+                           @ApiResponse(code = 404, message = "Bulk invoice run not found")})
+    public Response getBulkInvoiceRun(@PathParam("runId") final String runId,
+                                      @javax.ws.rs.core.Context final HttpServletRequest request) {
+        final TenantContext tenantContext = context.createContext(request);
+        final BulkInvoiceRun run = bulkInvoiceApi.getBulkInvoiceRun(UUID.fromString(runId), tenantContext);
+        if (run == null) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        return Response.status(Status.OK).entity(new BulkInvoiceRunJson(run)).build();
+    }
+
     @Timed
     @POST
     @Path("/" + DRY_RUN)
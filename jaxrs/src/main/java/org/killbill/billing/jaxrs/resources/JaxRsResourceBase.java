@@ -252,6 +252,14 @@ public abstract class JaxRsResourceBase implements JaxrsResource {
     protected <E extends Entity, J extends JsonBase> Response buildStreamingPaginationResponse(final Pagination<E> entities,
                                                                                                final Function<E, J> toJson,
                                                                                                final URI nextPageUri) {
+        return buildStreamingPaginationResponse(entities, toJson, nextPageUri, false);
+    }
+
+    // For keyset pagination (cursorBased), the offsets are record_id cursors: these are not exposed, clients should follow the next page uri instead
+    protected <E extends Entity, J extends JsonBase> Response buildStreamingPaginationResponse(final Pagination<E> entities,
+                                                                                               final Function<E, J> toJson,
+                                                                                               final URI nextPageUri,
+                                                                                               final boolean cursorBased) {
         final StreamingOutput json = new StreamingOutput() {
             @Override
             public void write(final OutputStream output) throws IOException, WebApplicationException {
@@ -270,10 +278,11 @@ public abstract class JaxRsResourceBase implements JaxrsResource {
             }
         };
 
+        // Note: the counts are null (hence the headers omitted) when they haven't been computed
         return Response.status(Status.OK)
                        .entity(json)
-                       .header(HDR_PAGINATION_CURRENT_OFFSET, entities.getCurrentOffset())
-                       .header(HDR_PAGINATION_NEXT_OFFSET, entities.getNextOffset())
+                       .header(HDR_PAGINATION_CURRENT_OFFSET, cursorBased ? null : entities.getCurrentOffset())
+                       .header(HDR_PAGINATION_NEXT_OFFSET, cursorBased ? null : entities.getNextOffset())
                        .header(HDR_PAGINATION_TOTAL_NB_RECORDS, entities.getTotalNbRecords())
                        .header(HDR_PAGINATION_MAX_NB_RECORDS, entities.getMaxNbRecords())
                        .header(HDR_PAGINATION_NEXT_PAGE_URI, nextPageUri)
@@ -70,6 +70,8 @@ public interface JaxrsResource {
     public static final String QUERY_ENTITLEMENT_POLICY = "entitlementPolicy";
     public static final String QUERY_SEARCH_OFFSET = "offset";
     public static final String QUERY_SEARCH_LIMIT = "limit";
+    public static final String QUERY_SEARCH_CURSOR = "cursor";
+    public static final String QUERY_SEARCH_WITH_COUNT = "withCount";
 
     public static final String QUERY_ACCOUNT_WITH_BALANCE = "accountWithBalance";
     public static final String QUERY_ACCOUNT_WITH_BALANCE_AND_CBA = "accountWithBalanceAndCBA";
@@ -183,6 +185,7 @@ public interface JaxrsResource {
 
     public static final String USAGES = "usages";
     public static final String USAGES_PATH = PREFIX + "/" + USAGES;
+    public static final String BULK = "bulk";
 
     public static final String EXPORT = "export";
     public static final String EXPORT_PATH = PREFIX + "/" + EXPORT;
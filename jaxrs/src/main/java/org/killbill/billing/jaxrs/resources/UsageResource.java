@@ -16,7 +16,12 @@
 
 package org.killbill.billing.jaxrs.resources;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -42,11 +47,14 @@ import org.killbill.billing.entitlement.api.EntitlementApi;
 import org.killbill.billing.entitlement.api.EntitlementApiException;
 import org.killbill.billing.jaxrs.json.RolledUpUsageJson;
 import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordJson;
+import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordResultJson;
 import org.killbill.billing.jaxrs.util.Context;
 import org.killbill.billing.jaxrs.util.JaxrsUriBuilder;
 import org.killbill.billing.payment.api.PaymentApi;
+import org.killbill.billing.usage.api.BulkUsageUserApi;
 import org.killbill.billing.usage.api.RolledUpUsage;
 import org.killbill.billing.usage.api.SubscriptionUsageRecord;
+import org.killbill.billing.usage.api.SubscriptionUsageRecordResult;
 import org.killbill.billing.usage.api.UsageUserApi;
 import org.killbill.billing.util.api.AuditUserApi;
 import org.killbill.billing.util.api.CustomFieldUserApi;
@@ -56,6 +64,7 @@ import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.clock.Clock;
 
 import com.codahale.metrics.annotation.Timed;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Singleton;
@@ -72,6 +81,7 @@ import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 public class UsageResource extends JaxRsResourceBase {
 
     private final UsageUserApi usageUserApi;
+    private final BulkUsageUserApi bulkUsageUserApi;
     private final EntitlementApi entitlementApi;
 
     @Inject
@@ -81,12 +91,14 @@ public class UsageResource extends JaxRsResourceBase {
                          final AuditUserApi auditUserApi,
                          final AccountUserApi accountUserApi,
                          final UsageUserApi usageUserApi,
+                         final BulkUsageUserApi bulkUsageUserApi,
                          final PaymentApi paymentApi,
                          final EntitlementApi entitlementApi,
                          final Clock clock,
                          final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, clock, context);
         this.usageUserApi = usageUserApi;
+        this.bulkUsageUserApi = bulkUsageUserApi;
         this.entitlementApi = entitlementApi;
     }
 
@@ -119,6 +131,82 @@ public class UsageResource extends JaxRsResourceBase {
         return Response.status(Status.CREATED).build();
     }
 
+    @Timed
+    @POST
+    @Path("/" + BULK)
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    @ApiOperation(value = "Record usage for multiple subscriptions", response = SubscriptionUsageRecordResultJson.class, responseContainer = "List")
+    @ApiResponses(value = {@ApiResponse(code = 400, message = "Invalid usage records")})
+    public Response recordBulkUsage(final List<SubscriptionUsageRecordJson> json,
+                                    @HeaderParam(HDR_CREATED_BY) final String createdBy,
+                                    @HeaderParam(HDR_REASON) final String reason,
+                                    @HeaderParam(HDR_COMMENT) final String comment,
+                                    @javax.ws.rs.core.Context final HttpServletRequest request,
+                                    @javax.ws.rs.core.Context final UriInfo uriInfo) {
+        verifyNonNullOrEmpty(json, "SubscriptionUsageRecordJson body should be specified");
+        Preconditions.checkArgument(!json.isEmpty());
+
+        final CallContext callContext = context.createContext(createdBy, reason, comment, request);
+
+        // Verify each subscription exists and is active, only once per subscription
+        final Map<String, String> subscriptionErrors = new HashMap<String, String>();
+        final List<SubscriptionUsageRecord> records = new ArrayList<SubscriptionUsageRecord>();
+        final List<SubscriptionUsageRecordResultJson> result = new ArrayList<SubscriptionUsageRecordResultJson>();
+        for (final SubscriptionUsageRecordJson cur : json) {
+            if (cur.getSubscriptionId() == null || cur.getUnitUsageRecords() == null || cur.getUnitUsageRecords().isEmpty()) {
+                result.add(new SubscriptionUsageRecordResultJson(cur.getSubscriptionId(), 0, false, "SubscriptionUsageRecordJson subscriptionId and unitUsageRecords need to be set"));
+                continue;
+            }
+
+            if (!subscriptionErrors.containsKey(cur.getSubscriptionId())) {
+                subscriptionErrors.put(cur.getSubscriptionId(), validateSubscriptionForUsage(cur.getSubscriptionId(), callContext));
+            }
+            final String error = subscriptionErrors.get(cur.getSubscriptionId());
+            if (error != null) {
+                result.add(new SubscriptionUsageRecordResultJson(cur.getSubscriptionId(), 0, false, error));
+                continue;
+            }
+
+            records.add(cur.toSubscriptionUsageRecord());
+            // Placeholder, filled in below with the result of the bulk call
+            result.add(null);
+        }
+
+        final List<SubscriptionUsageRecordResult> recordResults = bulkUsageUserApi.recordRolledUpUsage(records, callContext);
+        fillBulkUsageResults(result, recordResults);
+
+        return Response.status(Status.CREATED).entity(result).build();
+    }
+
+    // Replace the placeholders (records which were submitted) with the results of the bulk call, in order
+    @VisibleForTesting
+    static void fillBulkUsageResults(final List<SubscriptionUsageRecordResultJson> result, final Iterable<SubscriptionUsageRecordResult> recordResults) {
+        final Iterator<SubscriptionUsageRecordResult> recordResultsIterator = recordResults.iterator();
+        final ListIterator<SubscriptionUsageRecordResultJson> resultIterator = result.listIterator();
+        while (resultIterator.hasNext()) {
+            if (resultIterator.next() == null) {
+                Preconditions.checkState(recordResultsIterator.hasNext(), "Missing result for submitted usage record");
+                resultIterator.set(new SubscriptionUsageRecordResultJson(recordResultsIterator.next()));
+            }
+        }
+        Preconditions.checkState(!recordResultsIterator.hasNext(), "Unexpected result for usage record");
+    }
+
+    private String validateSubscriptionForUsage(final String subscriptionId, final CallContext callContext) {
+        try {
+            final Entitlement entitlement = entitlementApi.getEntitlementForId(UUID.fromString(subscriptionId), callContext);
+            if (entitlement.getState() != EntitlementState.ACTIVE) {
+                return "Subscription " + subscriptionId + " is not active";
+            }
+            return null;
+        } catch (final IllegalArgumentException e) {
+            return "Invalid subscriptionId " + subscriptionId;
+        } catch (final EntitlementApiException e) {
+            return e.getMessage();
+        }
+    }
+
     @Timed
     @GET
     @Path("/{subscriptionId:" + UUID_PATTERN + "}/{unitType}")
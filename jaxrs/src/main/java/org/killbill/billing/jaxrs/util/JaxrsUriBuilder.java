@@ -19,6 +19,7 @@ package org.killbill.billing.jaxrs.util;
 import java.net.URI;
 import java.util.Map;
 
+import javax.annotation.Nullable;
 import javax.ws.rs.Path;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
@@ -27,6 +28,9 @@ import javax.ws.rs.core.UriInfo;
 import org.killbill.billing.jaxrs.resources.JaxRsResourceBase;
 import org.killbill.billing.jaxrs.resources.JaxrsResource;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+
 public class JaxrsUriBuilder {
 
     public Response buildResponse(final UriInfo uriInfo, final Class<? extends JaxrsResource> theClass, final String getMethodName, final Object objectId) {
@@ -52,6 +56,40 @@ public class JaxrsUriBuilder {
         return uriBuilder.build();
     }
 
+    public URI nextPageFromCursor(final Class<? extends JaxrsResource> theClass, final String getMethodName, @Nullable final Long nextRecordIdCursor, final Long limit, final Boolean withCount, final Map<String, String> params) {
+        if (nextRecordIdCursor == null || limit == null) {
+            // End of pagination
+            return null;
+        }
+
+        final UriBuilder uriBuilder = getUriBuilder(theClass, getMethodName).queryParam(JaxRsResourceBase.QUERY_SEARCH_CURSOR, encodeCursor(nextRecordIdCursor))
+                                                                            .queryParam(JaxRsResourceBase.QUERY_SEARCH_LIMIT, limit)
+                                                                            .queryParam(JaxRsResourceBase.QUERY_SEARCH_WITH_COUNT, withCount);
+        for (final String key : params.keySet()) {
+            uriBuilder.queryParam(key, params.get(key));
+        }
+        return uriBuilder.build();
+    }
+
+    // The cursor is opaque to clients: they should only pass back what was returned in the next page uri
+    public static String encodeCursor(final Long recordIdCursor) {
+        return BaseEncoding.base64Url().omitPadding().encode(recordIdCursor.toString().getBytes(Charsets.UTF_8));
+    }
+
+    // An empty cursor starts the keyset pagination from the beginning
+    public static Long decodeCursor(final String cursor) {
+        if (cursor.isEmpty()) {
+            return 0L;
+        }
+
+        try {
+            return Long.valueOf(new String(BaseEncoding.base64Url().omitPadding().decode(cursor), Charsets.UTF_8));
+        } catch (final IllegalArgumentException e) {
+            // Includes NumberFormatException
+            throw new IllegalArgumentException("Invalid pagination cursor " + cursor, e);
+        }
+    }
+
     public Response buildResponse(final Class<? extends JaxrsResource> theClass, final String getMethodName, final Object objectId, final String baseUri) {
 
         // Let's build a n absolute location for cross resources
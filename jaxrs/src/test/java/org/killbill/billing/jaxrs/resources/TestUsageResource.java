@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.jaxrs.resources;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.killbill.billing.jaxrs.JaxrsTestSuiteNoDB;
+import org.killbill.billing.jaxrs.json.SubscriptionUsageRecordResultJson;
+import org.killbill.billing.usage.api.SubscriptionUsageRecordResult;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestUsageResource extends JaxrsTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testFillBulkUsageResults() {
+        final String invalidSubscriptionId = UUID.randomUUID().toString();
+        final SubscriptionUsageRecordResult first = createResult(UUID.randomUUID(), 3, null);
+        final SubscriptionUsageRecordResult second = createResult(UUID.randomUUID(), 0, "Database failure");
+        final SubscriptionUsageRecordResult third = createResult(UUID.randomUUID(), 1, null);
+
+        // Records rejected by the resource keep their position, the others are filled in order
+        final List<SubscriptionUsageRecordResultJson> result = new ArrayList<SubscriptionUsageRecordResultJson>();
+        result.add(null);
+        result.add(new SubscriptionUsageRecordResultJson(invalidSubscriptionId, 0, false, "Subscription is not active"));
+        result.add(null);
+        result.add(null);
+
+        UsageResource.fillBulkUsageResults(result, ImmutableList.<SubscriptionUsageRecordResult>of(first, second, third));
+
+        Assert.assertEquals(result.size(), 4);
+        Assert.assertEquals(result.get(0).getSubscriptionId(), first.getSubscriptionId().toString());
+        Assert.assertEquals(result.get(0).getNbRecordedRows(), (Integer) 3);
+        Assert.assertTrue(result.get(0).getSuccess());
+        Assert.assertEquals(result.get(1).getSubscriptionId(), invalidSubscriptionId);
+        Assert.assertFalse(result.get(1).getSuccess());
+        Assert.assertEquals(result.get(2).getSubscriptionId(), second.getSubscriptionId().toString());
+        Assert.assertFalse(result.get(2).getSuccess());
+        Assert.assertEquals(result.get(2).getErrorMessage(), "Database failure");
+        Assert.assertEquals(result.get(3).getSubscriptionId(), third.getSubscriptionId().toString());
+        Assert.assertTrue(result.get(3).getSuccess());
+    }
+
+    @Test(groups = "fast", expectedExceptions = IllegalStateException.class)
+    public void testFillBulkUsageResultsWithMissingResult() {
+        final List<SubscriptionUsageRecordResultJson> result = new ArrayList<SubscriptionUsageRecordResultJson>();
+        result.add(null);
+        result.add(null);
+
+        UsageResource.fillBulkUsageResults(result, ImmutableList.<SubscriptionUsageRecordResult>of(createResult(UUID.randomUUID(), 1, null)));
+    }
+
+    private SubscriptionUsageRecordResult createResult(final UUID subscriptionId, final int nbRecordedRows, final String errorMessage) {
+        final SubscriptionUsageRecordResult result = Mockito.mock(SubscriptionUsageRecordResult.class);
+        Mockito.when(result.getSubscriptionId()).thenReturn(subscriptionId);
+        Mockito.when(result.getNbRecordedRows()).thenReturn(nbRecordedRows);
+        Mockito.when(result.isSuccess()).thenReturn(errorMessage == null);
+        Mockito.when(result.getErrorMessage()).thenReturn(errorMessage);
+        return result;
+    }
+}
@@ -19,6 +19,8 @@ package org.killbill.billing.junction.plumbing.billing;
 import java.util.List;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.killbill.billing.catalog.api.BillingPeriod;
@@ -61,7 +63,11 @@ public class BillCycleDayCalculator {
         this.subscriptionApi = subscriptionApi;
     }
 
-    protected int calculateBcd(final UUID bundleId, final SubscriptionBase subscription, final EffectiveSubscriptionInternalEvent transition, final Account account, final InternalCallContext context)
+    /**
+     * @param baseSubscription the base subscription of the bundle, if already loaded by the caller (it is retrieved otherwise, for BUNDLE alignments)
+     */
+    protected int calculateBcd(final UUID bundleId, @Nullable final SubscriptionBase baseSubscription, final SubscriptionBase subscription,
+                               final EffectiveSubscriptionInternalEvent transition, final Account account, final InternalCallContext context)
             throws CatalogApiException, AccountApiException, SubscriptionBaseApiException {
 
         final Catalog catalog = catalogService.getFullCatalog();
@@ -86,12 +92,17 @@ public class BillCycleDayCalculator {
                                        phase.getPhaseType()),
                 transition.getRequestedTransitionTime());
 
-        return calculateBcdForAlignment(alignment, bundleId, subscription, account, catalog, plan, context);
+        return calculateBcdForAlignment(alignment, bundleId, baseSubscription, subscription, account, catalog, plan, context);
     }
 
     @VisibleForTesting
     int calculateBcdForAlignment(final BillingAlignment alignment, final UUID bundleId, final SubscriptionBase subscription,
                                  final Account account, final Catalog catalog, final Plan plan, final InternalCallContext context) throws AccountApiException, SubscriptionBaseApiException, CatalogApiException {
+        return calculateBcdForAlignment(alignment, bundleId, null, subscription, account, catalog, plan, context);
+    }
+
+    private int calculateBcdForAlignment(final BillingAlignment alignment, final UUID bundleId, @Nullable final SubscriptionBase baseSubscription, final SubscriptionBase subscription,
+                                         final Account account, final Catalog catalog, final Plan plan, final InternalCallContext context) throws AccountApiException, SubscriptionBaseApiException, CatalogApiException {
         int result = 0;
         switch (alignment) {
             case ACCOUNT:
@@ -101,7 +112,7 @@ public class BillCycleDayCalculator {
                 }
                 break;
             case BUNDLE:
-                final SubscriptionBase baseSub = subscriptionApi.getBaseSubscription(bundleId, context);
+                final SubscriptionBase baseSub = baseSubscription != null ? baseSubscription : subscriptionApi.getBaseSubscription(bundleId, context);
                 Plan basePlan = baseSub.getCurrentPlan();
                 if (basePlan == null) {
                     // The BP has been cancelled
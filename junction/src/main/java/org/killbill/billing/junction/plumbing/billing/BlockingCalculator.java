@@ -18,8 +18,10 @@ package org.killbill.billing.junction.plumbing.billing;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.UUID;
@@ -75,6 +77,79 @@ public class BlockingCalculator {
         }
     }
 
+    /**
+     * Billing events of a single subscription, in ascending order, indexed for binary search on their effective date:
+     * the events within a disabled duration, or preceding a given date, are found without scanning all the events.
+     */
+    protected static class SubscriptionBillingEvents {
+
+        private final List<BillingEvent> events;
+
+        // The billing events are expected to be sorted and to all belong to the same subscription
+        public SubscriptionBillingEvents(final Collection<BillingEvent> events) {
+            this.events = new ArrayList<BillingEvent>(events);
+        }
+
+        // Events strictly within the duration (ignoring its bounds)
+        public List<BillingEvent> eventsWithin(final DisabledDuration duration) {
+            final List<BillingEvent> result = new ArrayList<BillingEvent>();
+            for (int i = firstIndexAfter(duration.getStart()); i < events.size(); i++) {
+                final BillingEvent event = events.get(i);
+                if (duration.getEnd() != null && !event.getEffectiveDate().isBefore(duration.getEnd())) {
+                    break;
+                }
+                result.add(event);
+            }
+            return result;
+        }
+
+        // Last event strictly before the date, or the first event if it is effective exactly at that date
+        public BillingEvent precedingEvent(final DateTime datetime) {
+            if (events.isEmpty()) {
+                return null;
+            }
+
+            final int index = firstIndexNotBefore(datetime);
+            if (index > 0) {
+                return events.get(index - 1);
+            }
+
+            final BillingEvent first = events.get(0);
+            //This case can happen, for example, if we have an add on and the bundle goes into disabled before the add on is created
+            return datetime.isBefore(first.getEffectiveDate()) ? null : first;
+        }
+
+        // Index of the first event effective at or after the date
+        private int firstIndexNotBefore(final DateTime datetime) {
+            int low = 0;
+            int high = events.size();
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (events.get(middle).getEffectiveDate().isBefore(datetime)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // Index of the first event effective strictly after the date
+        private int firstIndexAfter(final DateTime datetime) {
+            int low = 0;
+            int high = events.size();
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (events.get(middle).getEffectiveDate().isAfter(datetime)) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+    }
+
     @Inject
     public BlockingCalculator(final BlockingInternalApi blockingApi) {
         this.blockingApi = blockingApi;
@@ -90,20 +165,18 @@ public class BlockingCalculator {
             return;
         }
 
-        final Account account = billingEvents.first().getAccount();
-
-        final Hashtable<UUID, List<SubscriptionBase>> bundleMap = createBundleSubscriptionMap(billingEvents);
-
         final SortedSet<BillingEvent> billingEventsToAdd = new TreeSet<BillingEvent>();
         final SortedSet<BillingEvent> billingEventsToRemove = new TreeSet<BillingEvent>();
 
         final List<BlockingState> blockingEvents = blockingApi.getBlockingAllForAccount(context);
         final List<DisabledDuration> blockingDurations = createBlockingDurations(blockingEvents);
-        for (final UUID bundleId : bundleMap.keySet()) {
-            for (final SubscriptionBase subscription : bundleMap.get(bundleId)) {
-                billingEventsToAdd.addAll(createNewEvents(blockingDurations, billingEvents, account, subscription));
-                billingEventsToRemove.addAll(eventsToRemove(blockingDurations, billingEvents, subscription));
-            }
+        if (blockingDurations.isEmpty()) {
+            return;
+        }
+
+        for (final SubscriptionBillingEvents subscriptionBillingEvents : createSubscriptionBillingEvents(billingEvents)) {
+            billingEventsToAdd.addAll(createNewEvents(blockingDurations, subscriptionBillingEvents));
+            billingEventsToRemove.addAll(eventsToRemove(blockingDurations, subscriptionBillingEvents));
         }
 
         for (final BillingEvent eventToAdd : billingEventsToAdd) {
@@ -117,30 +190,28 @@ public class BlockingCalculator {
 
     protected SortedSet<BillingEvent> eventsToRemove(final List<DisabledDuration> disabledDuration,
                                                      final SortedSet<BillingEvent> billingEvents, final SubscriptionBase subscription) {
-        final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
+        return eventsToRemove(disabledDuration, new SubscriptionBillingEvents(filter(billingEvents, subscription)));
+    }
 
-        final SortedSet<BillingEvent> filteredBillingEvents = filter(billingEvents, subscription);
+    protected SortedSet<BillingEvent> eventsToRemove(final List<DisabledDuration> disabledDuration, final SubscriptionBillingEvents subscriptionBillingEvents) {
+        final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
         for (final DisabledDuration duration : disabledDuration) {
-            for (final BillingEvent event : filteredBillingEvents) {
-                if (duration.getEnd() == null || event.getEffectiveDate().isBefore(duration.getEnd())) {
-                    if (event.getEffectiveDate().isAfter(duration.getStart())) { //between the pair
-                        result.add(event);
-                    }
-                } else { //after the last event of the pair no need to keep checking
-                    break;
-                }
-            }
+            result.addAll(subscriptionBillingEvents.eventsWithin(duration));
         }
         return result;
     }
 
     protected SortedSet<BillingEvent> createNewEvents(final List<DisabledDuration> disabledDuration, final SortedSet<BillingEvent> billingEvents, final Account account, final SubscriptionBase subscription) {
+        return createNewEvents(disabledDuration, new SubscriptionBillingEvents(filter(billingEvents, subscription)));
+    }
+
+    protected SortedSet<BillingEvent> createNewEvents(final List<DisabledDuration> disabledDuration, final SubscriptionBillingEvents subscriptionBillingEvents) {
         final SortedSet<BillingEvent> result = new TreeSet<BillingEvent>();
         for (final DisabledDuration duration : disabledDuration) {
             // The first one before the blocked duration
-            final BillingEvent precedingInitialEvent = precedingBillingEventForSubscription(duration.getStart(), billingEvents, subscription);
+            final BillingEvent precedingInitialEvent = precedingBillingEventForSubscription(duration.getStart(), subscriptionBillingEvents);
             // The last one during of before the duration
-            final BillingEvent precedingFinalEvent = precedingBillingEventForSubscription(duration.getEnd(), billingEvents, subscription);
+            final BillingEvent precedingFinalEvent = precedingBillingEventForSubscription(duration.getEnd(), subscriptionBillingEvents);
 
             if (precedingInitialEvent != null) { // there is a preceding billing event
                 result.add(createNewDisableEvent(duration.getStart(), precedingInitialEvent));
@@ -156,26 +227,14 @@ public class BlockingCalculator {
     }
 
     protected BillingEvent precedingBillingEventForSubscription(final DateTime datetime, final SortedSet<BillingEvent> billingEvents, final SubscriptionBase subscription) {
-        if (datetime == null) { //second of a pair can be null if there's no re-enabling
-            return null;
-        }
-
-        final SortedSet<BillingEvent> filteredBillingEvents = filter(billingEvents, subscription);
-        BillingEvent result = filteredBillingEvents.first();
+        return precedingBillingEventForSubscription(datetime, new SubscriptionBillingEvents(filter(billingEvents, subscription)));
+    }
 
-        if (datetime.isBefore(result.getEffectiveDate())) {
-            //This case can happen, for example, if we have an add on and the bundle goes into disabled before the add on is created
+    protected BillingEvent precedingBillingEventForSubscription(@Nullable final DateTime datetime, final SubscriptionBillingEvents subscriptionBillingEvents) {
+        if (datetime == null) { //second of a pair can be null if there's no re-enabling
             return null;
         }
-
-        for (final BillingEvent event : filteredBillingEvents) {
-            if (!event.getEffectiveDate().isBefore(datetime)) { // found it its the previous event
-                return result;
-            } else { // still looking
-                result = event;
-            }
-        }
-        return result;
+        return subscriptionBillingEvents.precedingEvent(datetime);
     }
 
     protected SortedSet<BillingEvent> filter(final SortedSet<BillingEvent> billingEvents, final SubscriptionBase subscription) {
@@ -239,18 +298,22 @@ public class BlockingCalculator {
                                        description, totalOrdering, type, tz);
     }
 
-    protected Hashtable<UUID, List<SubscriptionBase>> createBundleSubscriptionMap(final SortedSet<BillingEvent> billingEvents) {
-        final Hashtable<UUID, List<SubscriptionBase>> result = new Hashtable<UUID, List<SubscriptionBase>>();
+    // Single pass: the billing events are ordered by subscription first, and by effective date within a subscription
+    protected Collection<SubscriptionBillingEvents> createSubscriptionBillingEvents(final SortedSet<BillingEvent> billingEvents) {
+        final Map<UUID, List<BillingEvent>> eventsPerSubscription = new LinkedHashMap<UUID, List<BillingEvent>>();
         for (final BillingEvent event : billingEvents) {
-            final UUID bundleId = event.getSubscription().getBundleId();
-            List<SubscriptionBase> subs = result.get(bundleId);
-            if (subs == null) {
-                subs = new ArrayList<SubscriptionBase>();
-                result.put(bundleId, subs);
-            }
-            if (!result.get(bundleId).contains(event.getSubscription())) {
-                subs.add(event.getSubscription());
+            final UUID subscriptionId = event.getSubscription().getId();
+            List<BillingEvent> events = eventsPerSubscription.get(subscriptionId);
+            if (events == null) {
+                events = new ArrayList<BillingEvent>();
+                eventsPerSubscription.put(subscriptionId, events);
             }
+            events.add(event);
+        }
+
+        final List<SubscriptionBillingEvents> result = new ArrayList<SubscriptionBillingEvents>(eventsPerSubscription.size());
+        for (final List<BillingEvent> events : eventsPerSubscription.values()) {
+            result.add(new SubscriptionBillingEvents(events));
         }
         return result;
     }
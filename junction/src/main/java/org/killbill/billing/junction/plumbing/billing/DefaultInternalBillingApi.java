@@ -17,6 +17,7 @@
 package org.killbill.billing.junction.plumbing.billing;
 
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.UUID;
 
@@ -30,6 +31,7 @@ import org.killbill.billing.account.api.MutableAccountData;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.catalog.api.CatalogApiException;
 import org.killbill.billing.catalog.api.CatalogService;
+import org.killbill.billing.catalog.api.ProductCategory;
 import org.killbill.billing.entitlement.EntitlementTransitionType;
 import org.killbill.billing.entitlement.api.SubscriptionEventType;
 import org.killbill.billing.events.EffectiveSubscriptionInternalEvent;
@@ -49,7 +51,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 
 public class DefaultInternalBillingApi implements BillingInternalApi {
@@ -89,15 +95,18 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
         try {
             final Account account = accountApi.getAccountById(accountId, context);
 
+            // Retrieve all the tags of the account (account and bundle level) at once
+            final List<Tag> tagsForAccount = tagApi.getTagsForAccount(false, context);
+
             // Check to see if billing is off for the account
-            final List<Tag> accountTags = tagApi.getTags(accountId, ObjectType.ACCOUNT, context);
+            final List<Tag> accountTags = filterTags(tagsForAccount, accountId, ObjectType.ACCOUNT);
             final boolean found_AUTO_INVOICING_OFF = is_AUTO_INVOICING_OFF(accountTags);
             if (found_AUTO_INVOICING_OFF) {
                 result.setAccountAutoInvoiceIsOff(true);
                 return result; // billing is off, we are done
             }
 
-            addBillingEventsForBundles(bundles, account, dryRunArguments, context, result);
+            addBillingEventsForBundles(bundles, account, dryRunArguments, tagsForAccount, context, result);
         } catch (AccountApiException e) {
             log.warn("Failed while getting BillingEvent", e);
         } catch (SubscriptionBaseApiException e) {
@@ -121,7 +130,8 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
         }
     }
 
-    private void addBillingEventsForBundles(final List<SubscriptionBaseBundle> bundles, final Account account, final DryRunArguments dryRunArguments, final InternalCallContext context,
+    private void addBillingEventsForBundles(final List<SubscriptionBaseBundle> bundles, final Account account, final DryRunArguments dryRunArguments,
+                                            final List<Tag> tagsForAccount, final InternalCallContext context,
                                             final DefaultBillingEventSet result) throws SubscriptionBaseApiException {
 
         final boolean dryRunMode = dryRunArguments != null;
@@ -134,31 +144,42 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
             final UUID fakeBundleId = UUID.randomUUID();
             final List<SubscriptionBase> subscriptions = subscriptionApi.getSubscriptionsForBundle(fakeBundleId, dryRunArguments, context);
 
-            addBillingEventsForSubscription(subscriptions, fakeBundleId, account, dryRunMode, context, result);
+            addBillingEventsForSubscription(subscriptions, fakeBundleId, null, account, dryRunMode, context, result);
 
         }
 
+        // Load the subscriptions (and their events) of all the bundles at once, rather than bundle per bundle
+        final Map<UUID, List<SubscriptionBase>> subscriptionsForAccount = subscriptionApi.getSubscriptionsForAccount(context);
+
         for (final SubscriptionBaseBundle bundle : bundles) {
-            final DryRunArguments dryRunArgumentsForBundle = (dryRunArguments != null &&
-                                                             dryRunArguments.getBundleId() != null &&
-                                                             dryRunArguments.getBundleId().equals(bundle.getId())) ?
-                                                             dryRunArguments : null;
-            final List<SubscriptionBase> subscriptions = subscriptionApi.getSubscriptionsForBundle(bundle.getId(), dryRunArgumentsForBundle, context);
+            final boolean isDryRunBundle = dryRunArguments != null &&
+                                           dryRunArguments.getBundleId() != null &&
+                                           dryRunArguments.getBundleId().equals(bundle.getId());
+            final List<SubscriptionBase> subscriptions;
+            final SubscriptionBase baseSubscription;
+            if (isDryRunBundle) {
+                // The dryRun events only apply to that bundle, which we need to re-build with them
+                subscriptions = subscriptionApi.getSubscriptionsForBundle(bundle.getId(), dryRunArguments, context);
+                baseSubscription = null;
+            } else {
+                subscriptions = Objects.firstNonNull(subscriptionsForAccount.get(bundle.getId()), ImmutableList.<SubscriptionBase>of());
+                baseSubscription = findBaseSubscription(subscriptions);
+            }
 
             //Check if billing is off for the bundle
-            final List<Tag> bundleTags = tagApi.getTags(bundle.getId(), ObjectType.BUNDLE, context);
+            final List<Tag> bundleTags = filterTags(tagsForAccount, bundle.getId(), ObjectType.BUNDLE);
             boolean found_AUTO_INVOICING_OFF = is_AUTO_INVOICING_OFF(bundleTags);
             if (found_AUTO_INVOICING_OFF) {
                 for (final SubscriptionBase subscription : subscriptions) { // billing is off so list sub ids in set to be excluded
                     result.getSubscriptionIdsWithAutoInvoiceOff().add(subscription.getId());
                 }
             } else { // billing is not off
-                addBillingEventsForSubscription(subscriptions, bundle.getId(), account, dryRunMode, context, result);
+                addBillingEventsForSubscription(subscriptions, bundle.getId(), baseSubscription, account, dryRunMode, context, result);
             }
         }
     }
 
-    private void addBillingEventsForSubscription(final List<SubscriptionBase> subscriptions, final UUID bundleId, final Account account,
+    private void addBillingEventsForSubscription(final List<SubscriptionBase> subscriptions, final UUID bundleId, @Nullable final SubscriptionBase baseSubscription, final Account account,
                                                  final boolean dryRunMode,
                                                  final InternalCallContext context,
                                                  final DefaultBillingEventSet result) {
@@ -174,7 +195,7 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
 
             for (final EffectiveSubscriptionInternalEvent transition : subscriptionApi.getBillingTransitions(subscription, context)) {
                 try {
-                    final int bcdLocal = bcdCalculator.calculateBcd(bundleId, subscription, transition, account, context);
+                    final int bcdLocal = bcdCalculator.calculateBcd(bundleId, baseSubscription, subscription, transition, account, context);
 
                     if (account.getBillCycleDayLocal() == 0 && !updatedAccountBCD) {
                         final MutableAccountData modifiedData = account.toMutableAccountData();
@@ -195,6 +216,24 @@ public class DefaultInternalBillingApi implements BillingInternalApi {
         }
     }
 
+    private SubscriptionBase findBaseSubscription(final List<SubscriptionBase> subscriptions) {
+        return Iterables.<SubscriptionBase>tryFind(subscriptions, new Predicate<SubscriptionBase>() {
+            @Override
+            public boolean apply(final SubscriptionBase input) {
+                return input.getCategory() == ProductCategory.BASE;
+            }
+        }).orNull();
+    }
+
+    private List<Tag> filterTags(final List<Tag> tags, final UUID objectId, final ObjectType objectType) {
+        return ImmutableList.<Tag>copyOf(Iterables.<Tag>filter(tags, new Predicate<Tag>() {
+            @Override
+            public boolean apply(final Tag input) {
+                return input.getObjectType() == objectType && objectId.equals(input.getObjectId());
+            }
+        }));
+    }
+
     private final boolean is_AUTO_INVOICING_OFF(final List<Tag> tags) {
         return ControlTagType.isAutoInvoicingOff(Collections2.transform(tags, new Function<Tag, UUID>() {
             @Nullable
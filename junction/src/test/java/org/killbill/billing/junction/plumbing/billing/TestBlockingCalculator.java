@@ -18,7 +18,7 @@ package org.killbill.billing.junction.plumbing.billing;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.SortedSet;
@@ -615,20 +615,64 @@ public class TestBlockingCalculator extends JunctionTestSuiteNoDB {
     }
 
     @Test(groups = "fast")
-    public void testCreateBundleSubscriptionMap() {
+    public void testCreateSubscriptionBillingEvents() {
         final SortedSet<BillingEvent> events = new TreeSet<BillingEvent>();
         events.add(createBillingEvent(subscription1));
+        events.add(createBillingEvent(subscription1));
         events.add(createBillingEvent(subscription2));
         events.add(createBillingEvent(subscription3));
         events.add(createBillingEvent(subscription4));
 
-        final Hashtable<UUID, List<SubscriptionBase>> map = blockingCalculator.createBundleSubscriptionMap(events);
+        final Collection<BlockingCalculator.SubscriptionBillingEvents> subscriptionBillingEvents = blockingCalculator.createSubscriptionBillingEvents(events);
+
+        assertNotNull(subscriptionBillingEvents);
+        assertEquals(subscriptionBillingEvents.size(), 4);
+    }
+
+    // Overdue-heavy account: thousands of block / unblock cycles on a subscription with regular phase events
+    @Test(groups = "fast")
+    public void testBlockingEventsWithManyDisabledDurations() {
+        final DateTime now = clock.getUTCNow();
+        final int nbCycles = 2000;
 
-        assertNotNull(map);
-        assertEquals(map.keySet().size(), 2);
-        assertEquals(map.get(bundleId1).size(), 3);
-        assertEquals(map.get(bundleId2).size(), 1);
+        final List<BlockingState> blockingStates = new ArrayList<BlockingState>();
+        final SortedSet<BillingEvent> billingEvents = new TreeSet<BillingEvent>();
+        billingEvents.add(createRealEvent(now.minusDays(1), subscription1, SubscriptionBaseTransitionType.CREATE));
+        for (int i = 0; i < nbCycles; i++) {
+            blockingStates.add(new DefaultBlockingState(bundleId1, BlockingStateType.SUBSCRIPTION_BUNDLE, DISABLED_BUNDLE, "test", true, true, true, now.plusDays(2 * i)));
+            blockingStates.add(new DefaultBlockingState(bundleId1, BlockingStateType.SUBSCRIPTION_BUNDLE, CLEAR_BUNDLE, "test", false, false, false, now.plusDays(2 * i + 1)));
+            if (i % 10 == 0) {
+                // Phase event during the blocked period
+                billingEvents.add(createRealEvent(now.plusDays(2 * i).plusHours(12), subscription1, SubscriptionBaseTransitionType.PHASE));
+            }
+        }
 
+        final List<DisabledDuration> disabledDurations = blockingCalculator.createBlockingDurations(blockingStates);
+        assertEquals(disabledDurations.size(), nbCycles);
+
+        final Collection<BlockingCalculator.SubscriptionBillingEvents> subscriptionBillingEvents = blockingCalculator.createSubscriptionBillingEvents(billingEvents);
+        assertEquals(subscriptionBillingEvents.size(), 1);
+
+        final BlockingCalculator.SubscriptionBillingEvents subscription1BillingEvents = subscriptionBillingEvents.iterator().next();
+        final SortedSet<BillingEvent> eventsToAdd = blockingCalculator.createNewEvents(disabledDurations, subscription1BillingEvents);
+        final SortedSet<BillingEvent> eventsToRemove = blockingCalculator.eventsToRemove(disabledDurations, subscription1BillingEvents);
+        assertEquals(eventsToAdd.size(), 2 * nbCycles);
+        assertEquals(eventsToRemove.size(), nbCycles / 10);
+
+        billingEvents.addAll(eventsToAdd);
+        billingEvents.removeAll(eventsToRemove);
+        assertEquals(billingEvents.size(), 1 + 2 * nbCycles);
+
+        final Iterator<BillingEvent> it = billingEvents.iterator();
+        assertEquals(it.next().getTransitionType(), SubscriptionBaseTransitionType.CREATE);
+        for (int i = 0; i < nbCycles; i++) {
+            final BillingEvent disableEvent = it.next();
+            assertEquals(disableEvent.getTransitionType(), SubscriptionBaseTransitionType.START_BILLING_DISABLED);
+            assertEquals(disableEvent.getEffectiveDate(), now.plusDays(2 * i));
+            final BillingEvent reenableEvent = it.next();
+            assertEquals(reenableEvent.getTransitionType(), SubscriptionBaseTransitionType.END_BILLING_DISABLED);
+            assertEquals(reenableEvent.getEffectiveDate(), now.plusDays(2 * i + 1));
+        }
     }
 
     private BillingEvent createBillingEvent(final SubscriptionBase subscription) {
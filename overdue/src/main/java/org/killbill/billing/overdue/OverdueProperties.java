@@ -19,6 +19,7 @@ package org.killbill.billing.overdue;
 import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 import org.killbill.billing.util.config.KillbillConfig;
 
@@ -28,4 +29,19 @@ public interface OverdueProperties extends KillbillConfig {
     @Default("NoOverdueConfig.xml")
     @Description("Overdue configuration location. Either in the classpath or in the filesystem")
     public String getConfigURI();
+
+    @Config("org.killbill.overdue.billingState.summary.enabled")
+    @Default("true")
+    @Description("Whether to reuse the last billing state computed for an account while its invoice items and payments are unchanged")
+    public boolean isBillingStateSummaryEnabled();
+
+    @Config("org.killbill.overdue.billingState.summary.maxAge")
+    @Default("1h")
+    @Description("Maximum age of a reused billing state, after which it is fully recomputed")
+    public TimeSpan getBillingStateSummaryMaxAge();
+
+    @Config("org.killbill.overdue.billingState.summary.maxSize")
+    @Default("10000")
+    @Description("Maximum number of accounts for which a billing state is kept")
+    public int getBillingStateSummaryMaxSize();
 }
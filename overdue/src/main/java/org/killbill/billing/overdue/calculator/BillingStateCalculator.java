@@ -23,6 +23,9 @@ import java.util.NoSuchElementException;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
 
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
@@ -35,14 +38,39 @@ import org.killbill.billing.overdue.config.api.OverdueException;
 import org.killbill.billing.overdue.config.api.PaymentResponse;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.invoice.api.InvoiceInternalApi;
+import org.killbill.billing.overdue.OverdueProperties;
 import org.killbill.billing.util.tag.Tag;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
 
 public class BillingStateCalculator {
 
     private final InvoiceInternalApi invoiceApi;
     private final Clock clock;
+    private final OverdueProperties overdueProperties;
+    // Last billing state computed per account, see calculateBillingState
+    private final Cache<UUID, BillingStateSummary> billingStateSummaries;
+
+    // Compact billing state of an account, along with the version of the invoice balance ledger entry it was computed against
+    private static final class BillingStateSummary {
+
+        private final BillingState billingState;
+        private final LocalDate today;
+        private final long accountBalanceVersion;
+
+        private BillingStateSummary(final BillingState billingState, final LocalDate today, final long accountBalanceVersion) {
+            this.billingState = billingState;
+            this.today = today;
+            this.accountBalanceVersion = accountBalanceVersion;
+        }
+
+        private boolean matches(final LocalDate today, @Nullable final Long accountBalanceVersion) {
+            return this.today.equals(today) &&
+                   accountBalanceVersion != null && this.accountBalanceVersion == accountBalanceVersion;
+        }
+    }
 
     protected class InvoiceDateComparator implements Comparator<Invoice> {
 
@@ -58,12 +86,46 @@ public class BillingStateCalculator {
     }
 
     @Inject
-    public BillingStateCalculator(final InvoiceInternalApi invoiceApi, final Clock clock) {
+    public BillingStateCalculator(final InvoiceInternalApi invoiceApi, final Clock clock, final OverdueProperties overdueProperties) {
         this.invoiceApi = invoiceApi;
         this.clock = clock;
+        this.overdueProperties = overdueProperties;
+        this.billingStateSummaries = CacheBuilder.newBuilder()
+                                                 .maximumSize(overdueProperties.getBillingStateSummaryMaxSize())
+                                                 .expireAfterWrite(overdueProperties.getBillingStateSummaryMaxAge().getMillis(), TimeUnit.MILLISECONDS)
+                                                 .build();
     }
 
+    /**
+     * The unpaid invoices of an account only change when its invoice items or payments do, and every such write bumps
+     * the version of the account entry in the invoice balance ledger. The last billing state computed for the account is
+     * therefore reused as long as that version is unchanged (e.g. on payment errors or periodic overdue checks). It is
+     * fully recomputed otherwise, on a new day, and at least every org.killbill.overdue.billingState.summary.maxAge.
+     */
     public BillingState calculateBillingState(final Account account, final InternalTenantContext context) throws OverdueException {
+        if (!overdueProperties.isBillingStateSummaryEnabled()) {
+            return computeBillingState(account, context);
+        }
+
+        // Retrieve the version before computing the billing state, so that concurrent changes are detected next time
+        final LocalDate today = clock.getToday(account.getTimeZone());
+        final Long accountBalanceVersion = invoiceApi.getAccountBalanceVersion(account.getId(), context);
+
+        final BillingStateSummary summary = billingStateSummaries.getIfPresent(account.getId());
+        if (summary != null && summary.matches(today, accountBalanceVersion)) {
+            return summary.billingState;
+        }
+
+        final BillingState billingState = computeBillingState(account, context);
+        if (accountBalanceVersion != null) {
+            billingStateSummaries.put(account.getId(), new BillingStateSummary(billingState, today, accountBalanceVersion));
+        } else {
+            billingStateSummaries.invalidate(account.getId());
+        }
+        return billingState;
+    }
+
+    private BillingState computeBillingState(final Account account, final InternalTenantContext context) throws OverdueException {
         final SortedSet<Invoice> unpaidInvoices = unpaidInvoicesForAccount(account.getId(), account.getTimeZone(), context);
 
         final int numberOfUnpaidInvoices = unpaidInvoices.size();
@@ -32,6 +32,7 @@ import org.testng.annotations.Test;
 
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.api.InvoiceInternalApi;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.overdue.OverdueTestSuiteNoDB;
 import org.killbill.billing.overdue.config.api.BillingState;
@@ -59,7 +60,7 @@ public class TestBillingStateCalculator extends OverdueTestSuiteNoDB {
 
         Mockito.when(invoiceApi.getUnpaidInvoicesByAccountId(Mockito.<UUID>any(), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any())).thenReturn(invoices);
 
-        return new BillingStateCalculator(invoiceApi, clock) {
+        return new BillingStateCalculator(invoiceApi, clock, overdueProperties) {
             @Override
             public BillingState calculateBillingState(final Account overdueable,
                                                       final InternalTenantContext context) {
@@ -101,4 +102,66 @@ public class TestBillingStateCalculator extends OverdueTestSuiteNoDB {
         final SortedSet<Invoice> invoices = calc.unpaidInvoicesForAccount(new UUID(0L, 0L), DateTimeZone.UTC, internalCallContext);
         Assert.assertEquals(calc.earliest(invoices).getInvoiceDate(), now);
     }
+
+    @Test(groups = "fast")
+    public void testBillingStateSummary() throws Exception {
+        final Account account = Mockito.mock(Account.class);
+        Mockito.when(account.getId()).thenReturn(UUID.randomUUID());
+        Mockito.when(account.getTimeZone()).thenReturn(DateTimeZone.UTC);
+
+        final InvoiceInternalApi invoiceInternalApi = Mockito.mock(InvoiceInternalApi.class);
+        final Collection<Invoice> invoices = new ArrayList<Invoice>();
+        invoices.add(createInvoice(clock.getUTCToday().minusDays(10), BigDecimal.TEN, null));
+        Mockito.when(invoiceInternalApi.getUnpaidInvoicesByAccountId(Mockito.<UUID>any(), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any())).thenReturn(invoices);
+        Mockito.when(invoiceInternalApi.getAccountBalanceVersion(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenReturn(1L);
+
+        final BillingStateCalculator calc = new BillingStateCalculator(invoiceInternalApi, clock, overdueProperties);
+
+        final BillingState billingState = calc.calculateBillingState(account, internalCallContext);
+        Assert.assertEquals(billingState.getNumberOfUnpaidInvoices(), 1);
+        Assert.assertEquals(billingState.getBalanceOfUnpaidInvoices().compareTo(BigDecimal.TEN), 0);
+
+        // Ledger unchanged: the unpaid invoices aren't loaded again
+        Assert.assertSame(calc.calculateBillingState(account, internalCallContext), billingState);
+        Mockito.verify(invoiceInternalApi, Mockito.times(1)).getUnpaidInvoicesByAccountId(Mockito.<UUID>any(), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any());
+
+        // The invoice is paid
+        invoices.clear();
+        Mockito.when(invoiceInternalApi.getAccountBalanceVersion(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenReturn(2L);
+
+        final BillingState billingStateAfterPayment = calc.calculateBillingState(account, internalCallContext);
+        Assert.assertEquals(billingStateAfterPayment.getNumberOfUnpaidInvoices(), 0);
+        Assert.assertEquals(billingStateAfterPayment.getBalanceOfUnpaidInvoices().compareTo(BigDecimal.ZERO), 0);
+        Mockito.verify(invoiceInternalApi, Mockito.times(2)).getUnpaidInvoicesByAccountId(Mockito.<UUID>any(), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any());
+    }
+
+    @Test(groups = "fast")
+    public void testBillingStateSummaryWithSameBalanceButDifferentInvoices() throws Exception {
+        final Account account = Mockito.mock(Account.class);
+        Mockito.when(account.getId()).thenReturn(UUID.randomUUID());
+        Mockito.when(account.getTimeZone()).thenReturn(DateTimeZone.UTC);
+
+        final InvoiceInternalApi invoiceInternalApi = Mockito.mock(InvoiceInternalApi.class);
+        final Collection<Invoice> invoices = new ArrayList<Invoice>();
+        invoices.add(createInvoice(clock.getUTCToday().minusDays(10), BigDecimal.TEN, null));
+        Mockito.when(invoiceInternalApi.getUnpaidInvoicesByAccountId(Mockito.<UUID>any(), Mockito.<LocalDate>any(), Mockito.<InternalTenantContext>any())).thenReturn(invoices);
+        Mockito.when(invoiceInternalApi.getAccountBalance(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenReturn(BigDecimal.TEN);
+        Mockito.when(invoiceInternalApi.getAccountBalanceVersion(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenReturn(1L);
+
+        final BillingStateCalculator calc = new BillingStateCalculator(invoiceInternalApi, clock, overdueProperties);
+
+        final BillingState billingState = calc.calculateBillingState(account, internalCallContext);
+        Assert.assertEquals(billingState.getNumberOfUnpaidInvoices(), 1);
+        Assert.assertEquals(billingState.getDateOfEarliestUnpaidInvoice(), clock.getUTCToday().minusDays(10));
+
+        // The old invoice is paid and a new one, for the same amount, is generated: the account balance is unchanged
+        invoices.clear();
+        invoices.add(createInvoice(clock.getUTCToday().minusDays(1), BigDecimal.TEN, null));
+        Mockito.when(invoiceInternalApi.getAccountBalanceVersion(Mockito.<UUID>any(), Mockito.<InternalTenantContext>any())).thenReturn(3L);
+
+        final BillingState newBillingState = calc.calculateBillingState(account, internalCallContext);
+        Assert.assertEquals(newBillingState.getNumberOfUnpaidInvoices(), 1);
+        Assert.assertEquals(newBillingState.getBalanceOfUnpaidInvoices().compareTo(BigDecimal.TEN), 0);
+        Assert.assertEquals(newBillingState.getDateOfEarliestUnpaidInvoice(), clock.getUTCToday().minusDays(1));
+    }
 }
@@ -56,6 +56,7 @@ CREATE TABLE payment_attempt_history (
     tenant_record_id int(11) unsigned DEFAULT NULL,
     PRIMARY KEY(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE INDEX payment_attempt_history_id ON payment_attempt_history(id);
 CREATE INDEX payment_attempt_history_target_record_id ON payment_attempt_history(target_record_id);
 CREATE INDEX payment_attempt_history_tenant_account_record_id ON payment_attempt_history(tenant_record_id, account_record_id);
 
@@ -99,6 +100,7 @@ CREATE TABLE payment_method_history (
     tenant_record_id int(11) unsigned DEFAULT NULL,
     PRIMARY KEY(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE INDEX payment_method_history_id ON payment_method_history(id);
 CREATE INDEX payment_method_history_target_record_id ON payment_method_history(target_record_id);
 CREATE INDEX payment_method_history_tenant_account_record_id ON payment_method_history(tenant_record_id, account_record_id);
 
@@ -145,6 +147,7 @@ CREATE TABLE payment_history (
     tenant_record_id int(11) unsigned DEFAULT NULL,
     PRIMARY KEY(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE INDEX payment_history_id ON payment_history(id);
 CREATE INDEX payment_history_target_record_id ON payment_history(target_record_id);
 CREATE INDEX payment_history_tenant_account_record_id ON payment_history(tenant_record_id, account_record_id);
 
@@ -205,6 +208,7 @@ CREATE TABLE payment_transaction_history (
     tenant_record_id int(11) unsigned DEFAULT NULL,
     PRIMARY KEY (record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE INDEX payment_transaction_history_id ON payment_transaction_history(id);
 CREATE INDEX transaction_history_target_record_id ON payment_transaction_history(target_record_id);
 CREATE INDEX transaction_history_tenant_account_record_id ON payment_transaction_history(tenant_record_id, account_record_id);
 
@@ -24,9 +24,12 @@ import javax.inject.Named;
 import org.killbill.billing.lifecycle.glue.BusModule;
 import org.killbill.billing.platform.api.LifecycleHandlerType;
 import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
+import org.killbill.billing.server.notifications.PushNotificationDeliveryEngine;
 import org.killbill.billing.server.notifications.PushNotificationListener;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.bus.api.PersistentBus.EventBusException;
+import org.killbill.notificationq.api.NotificationQueueService.NoSuchNotificationQueue;
+import org.killbill.notificationq.api.NotificationQueueService.NotificationQueueAlreadyExists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,11 +41,15 @@ public class DefaultServerService implements ServerService {
 
     private final PersistentBus bus;
     private final PushNotificationListener pushNotificationListener;
+    private final PushNotificationDeliveryEngine pushNotificationDeliveryEngine;
 
     @Inject
-    public DefaultServerService(@Named(BusModule.EXTERNAL_BUS_NAMED) final PersistentBus bus, final PushNotificationListener pushNotificationListener) {
+    public DefaultServerService(@Named(BusModule.EXTERNAL_BUS_NAMED) final PersistentBus bus,
+                                final PushNotificationListener pushNotificationListener,
+                                final PushNotificationDeliveryEngine pushNotificationDeliveryEngine) {
         this.bus = bus;
         this.pushNotificationListener = pushNotificationListener;
+        this.pushNotificationDeliveryEngine = pushNotificationDeliveryEngine;
     }
 
     @Override
@@ -53,18 +60,30 @@ public class DefaultServerService implements ServerService {
     @LifecycleHandlerType(LifecycleLevel.INIT_SERVICE)
     public void registerForNotifications() {
         try {
+            pushNotificationDeliveryEngine.initialize();
             bus.register(pushNotificationListener);
+        } catch (final NotificationQueueAlreadyExists e) {
+            log.warn("Failed to initialize Server service :", e);
         } catch (final EventBusException e) {
             log.warn("Failed to initialize Server service :", e);
         }
     }
 
+    @LifecycleHandlerType(LifecycleLevel.START_SERVICE)
+    public void startPushNotifications() {
+        pushNotificationDeliveryEngine.start();
+    }
+
     @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
     public void unregisterForNotifications() {
         try {
             bus.unregister(pushNotificationListener);
+            // Pending notifications are persisted for retry
+            pushNotificationDeliveryEngine.stop();
         } catch (final EventBusException e) {
             log.warn("Failed to stop Server service :", e);
+        } catch (final NoSuchNotificationQueue e) {
+            log.warn("Failed to stop Server service :", e);
         }
     }
 }
@@ -52,10 +52,12 @@ import org.killbill.billing.server.DefaultServerService;
 import org.killbill.billing.server.ServerService;
 import org.killbill.billing.server.config.KillbillServerConfig;
 import org.killbill.billing.server.filters.ResponseCorsFilter;
+import org.killbill.billing.server.notifications.PushNotificationDeliveryEngine;
 import org.killbill.billing.server.notifications.PushNotificationListener;
 import org.killbill.billing.subscription.glue.DefaultSubscriptionModule;
 import org.killbill.billing.tenant.glue.TenantModule;
 import org.killbill.billing.usage.glue.UsageModule;
+import org.killbill.billing.util.config.PushNotificationConfig;
 import org.killbill.billing.util.dao.AuditLogModelDaoMapper;
 import org.killbill.billing.util.dao.RecordIdIdMappingsMapper;
 import org.killbill.billing.util.email.EmailModule;
@@ -76,6 +78,7 @@ import org.killbill.billing.util.glue.TagStoreModule;
 import org.killbill.clock.Clock;
 import org.killbill.clock.ClockMock;
 import org.killbill.commons.embeddeddb.EmbeddedDB;
+import org.skife.config.ConfigurationObjectFactory;
 
 public class KillbillServerModule extends KillbillPlatformModule {
 
@@ -178,6 +181,9 @@ public class KillbillServerModule extends KillbillPlatformModule {
 
     protected void configurePushNotification() {
         bind(ServerService.class).to(DefaultServerService.class).asEagerSingleton();
+        final PushNotificationConfig pushNotificationConfig = new ConfigurationObjectFactory(skifeConfigSource).build(PushNotificationConfig.class);
+        bind(PushNotificationConfig.class).toInstance(pushNotificationConfig);
+        bind(PushNotificationDeliveryEngine.class).asEagerSingleton();
         bind(PushNotificationListener.class).asEagerSingleton();
     }
 }
@@ -0,0 +1,487 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.server.notifications;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.jaxrs.json.NotificationJson;
+import org.killbill.billing.tenant.api.TenantApiException;
+import org.killbill.billing.tenant.api.TenantKV.TenantKey;
+import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.util.callcontext.CallContextFactory;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.config.PushNotificationConfig;
+import org.killbill.clock.Clock;
+import org.killbill.notificationq.api.NotificationEvent;
+import org.killbill.notificationq.api.NotificationQueue;
+import org.killbill.notificationq.api.NotificationQueueService;
+import org.killbill.notificationq.api.NotificationQueueService.NoSuchNotificationQueue;
+import org.killbill.notificationq.api.NotificationQueueService.NotificationQueueAlreadyExists;
+import org.killbill.notificationq.api.NotificationQueueService.NotificationQueueHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.ning.http.client.AsyncCompletionHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
+
+/**
+ * Delivers the push notifications to the tenant callbacks, away from the bus dispatch thread.
+ * <p/>
+ * <p>Each tenant has its own bounded queue and a cap on the number of callbacks in flight, so that a slow tenant endpoint
+ * only delays the notifications of that tenant. Callbacks are completed asynchronously, the delivery threads only
+ * resolve the callbacks and fire the requests. Failed callbacks (and events which couldn't be queued) are persisted
+ * in a notification queue and retried with a backoff: retries go through the tenant queue as well, and are subject
+ * to the same cap. The number of failed attempts of a notification follows it through the queues, so that retries
+ * stop after the configured delays, including when the callback lookup itself keeps failing.
+ * <p/>
+ * <p>Events are acknowledged to the bus once they are in the tenant queue, which lives in memory: a clean stop persists
+ * the pending ones for retry, but the ones still queued when the process crashes are lost (at most once delivery).
+ */
+public class PushNotificationDeliveryEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(PushNotificationDeliveryEngine.class);
+
+    public static final String PUSH_NOTIFICATION_SERVICE_NAME = "push-notification-service";
+    public static final String PUSH_NOTIFICATION_RETRY_QUEUE = "push-notification-retry-queue";
+
+    private final PushNotificationConfig config;
+    private final TenantUserApi tenantApi;
+    private final CallContextFactory contextFactory;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final NotificationQueueService notificationQueueService;
+    private final Clock clock;
+    private final ObjectMapper mapper;
+    private final AsyncHttpClient httpClient;
+    private final ExecutorService deliveryExecutor;
+    private final ConcurrentMap<UUID, TenantDeliveryQueue> tenantQueues = new ConcurrentHashMap<UUID, TenantDeliveryQueue>();
+
+    private final Timer callbackLatency;
+    private final Meter deliveredCallbacks;
+    private final Meter failedCallbacks;
+    private final Meter deferredNotifications;
+    private final Meter droppedNotifications;
+
+    private NotificationQueue retryQueue;
+    // Retries can only be recorded between start() and stop(): callbacks completing after that are dropped
+    private volatile boolean isStarted;
+
+    @Inject
+    public PushNotificationDeliveryEngine(final PushNotificationConfig config,
+                                          final TenantUserApi tenantApi,
+                                          final CallContextFactory contextFactory,
+                                          final InternalCallContextFactory internalCallContextFactory,
+                                          final NotificationQueueService notificationQueueService,
+                                          final Clock clock,
+                                          final ObjectMapper mapper,
+                                          final MetricRegistry metricRegistry) {
+        this(config, tenantApi, contextFactory, internalCallContextFactory, notificationQueueService, clock, mapper, metricRegistry,
+             new AsyncHttpClient(new AsyncHttpClientConfig.Builder().setRequestTimeoutInMs((int) config.getTimeout().getMillis()).build()),
+             Executors.newFixedThreadPool(config.getDeliveryThreadNb(),
+                                          new ThreadFactory() {
+
+                                              private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                                              @Override
+                                              public Thread newThread(final Runnable r) {
+                                                  final Thread th = new Thread(r, "Push-notification-th-" + threadNumber.getAndIncrement());
+                                                  th.setDaemon(true);
+                                                  return th;
+                                              }
+                                          }));
+    }
+
+    @VisibleForTesting
+    PushNotificationDeliveryEngine(final PushNotificationConfig config,
+                                   final TenantUserApi tenantApi,
+                                   final CallContextFactory contextFactory,
+                                   final InternalCallContextFactory internalCallContextFactory,
+                                   final NotificationQueueService notificationQueueService,
+                                   final Clock clock,
+                                   final ObjectMapper mapper,
+                                   final MetricRegistry metricRegistry,
+                                   final AsyncHttpClient httpClient,
+                                   final ExecutorService deliveryExecutor) {
+        this.config = config;
+        this.tenantApi = tenantApi;
+        this.contextFactory = contextFactory;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.notificationQueueService = notificationQueueService;
+        this.clock = clock;
+        this.mapper = mapper;
+        this.httpClient = httpClient;
+        this.deliveryExecutor = deliveryExecutor;
+        this.isStarted = false;
+
+        this.callbackLatency = metricRegistry.timer(MetricRegistry.name(PushNotificationDeliveryEngine.class, "callbackLatency"));
+        this.deliveredCallbacks = metricRegistry.meter(MetricRegistry.name(PushNotificationDeliveryEngine.class, "deliveredCallbacks"));
+        this.failedCallbacks = metricRegistry.meter(MetricRegistry.name(PushNotificationDeliveryEngine.class, "failedCallbacks"));
+        this.deferredNotifications = metricRegistry.meter(MetricRegistry.name(PushNotificationDeliveryEngine.class, "deferredNotifications"));
+        this.droppedNotifications = metricRegistry.meter(MetricRegistry.name(PushNotificationDeliveryEngine.class, "droppedNotifications"));
+        registerGauge(metricRegistry, "backlog", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                int backlog = 0;
+                for (final TenantDeliveryQueue tenantQueue : tenantQueues.values()) {
+                    backlog += tenantQueue.pendingNotifications.size() + tenantQueue.pendingRetries.size();
+                }
+                return backlog;
+            }
+        });
+        registerGauge(metricRegistry, "inFlightCallbacks", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                int inFlight = 0;
+                for (final TenantDeliveryQueue tenantQueue : tenantQueues.values()) {
+                    inFlight += tenantQueue.inFlightCallbacks.get();
+                }
+                return inFlight;
+            }
+        });
+    }
+
+    public void initialize() throws NotificationQueueAlreadyExists {
+        final NotificationQueueHandler notificationQueueHandler = new NotificationQueueHandler() {
+            @Override
+            public void handleReadyNotification(final NotificationEvent notificationKey, final DateTime eventDate, final UUID userToken, final Long accountRecordId, final Long tenantRecordId) {
+                if (!(notificationKey instanceof PushNotificationKey)) {
+                    log.error("Push notification service received an unexpected event type {}", notificationKey.getClass().getName());
+                    return;
+                }
+
+                final PushNotificationKey key = (PushNotificationKey) notificationKey;
+                if (key.getUrl() == null) {
+                    enqueue(key.getTenantId(), key.getNotification(), key.getAttemptNumber());
+                } else {
+                    enqueueRetry(key.getTenantId(), key.getUrl(), key.getNotification(), key.getAttemptNumber());
+                }
+            }
+        };
+
+        retryQueue = notificationQueueService.createNotificationQueue(PUSH_NOTIFICATION_SERVICE_NAME,
+                                                                      PUSH_NOTIFICATION_RETRY_QUEUE,
+                                                                      notificationQueueHandler);
+    }
+
+    public void start() {
+        isStarted = true;
+        retryQueue.startQueue();
+    }
+
+    public void stop() throws NoSuchNotificationQueue {
+        // No more retries handed over (recording them only inserts rows, which are picked up after a restart)
+        if (retryQueue != null) {
+            retryQueue.stopQueue();
+        }
+
+        deliveryExecutor.shutdown();
+        try {
+            deliveryExecutor.awaitTermination(config.getTimeout().getMillis(), TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Don't lose what hasn't been dispatched yet
+        for (final TenantDeliveryQueue tenantQueue : tenantQueues.values()) {
+            final List<PendingNotification> pendingNotifications = new LinkedList<PendingNotification>();
+            tenantQueue.pendingNotifications.drainTo(pendingNotifications);
+            tenantQueue.pendingRetries.drainTo(pendingNotifications);
+            for (final PendingNotification pendingNotification : pendingNotifications) {
+                // Not an additional failure, but the first retry needs a delay
+                scheduleRetry(tenantQueue.tenantId, pendingNotification.url, pendingNotification.notification, Math.max(pendingNotification.nbFailedAttempts, 1));
+            }
+        }
+
+        // Aborts the callbacks in flight: their retries are still recorded, up until the flag is reset
+        httpClient.close();
+        isStarted = false;
+
+        if (retryQueue != null) {
+            notificationQueueService.deleteNotificationQueue(retryQueue.getServiceName(), retryQueue.getQueueName());
+        }
+    }
+
+    // Called from the bus dispatch thread: never blocks
+    public void submit(final UUID tenantId, final NotificationJson notification) {
+        enqueue(tenantId, notification, 0);
+    }
+
+    private void enqueue(final UUID tenantId, final NotificationJson notification, final int nbFailedAttempts) {
+        final TenantDeliveryQueue tenantQueue = getTenantQueue(tenantId);
+        if (tenantQueue.pendingNotifications.offer(new PendingNotification(null, notification, nbFailedAttempts))) {
+            scheduleDelivery(tenantQueue);
+        } else {
+            // The tenant is too far behind: defer the event to the retry queue
+            deferredNotifications.mark();
+            scheduleRetry(tenantId, null, notification, nbFailedAttempts + 1);
+        }
+    }
+
+    private void enqueueRetry(final UUID tenantId, final String url, final NotificationJson notification, final int nbFailedAttempts) {
+        final TenantDeliveryQueue tenantQueue = getTenantQueue(tenantId);
+        if (tenantQueue.pendingRetries.offer(new PendingNotification(url, notification, nbFailedAttempts))) {
+            scheduleDelivery(tenantQueue);
+        } else {
+            deferredNotifications.mark();
+            scheduleRetry(tenantId, url, notification, nbFailedAttempts + 1);
+        }
+    }
+
+    private TenantDeliveryQueue getTenantQueue(final UUID tenantId) {
+        final TenantDeliveryQueue tenantQueue = tenantQueues.get(tenantId);
+        if (tenantQueue != null) {
+            return tenantQueue;
+        }
+
+        final TenantDeliveryQueue newTenantQueue = new TenantDeliveryQueue(tenantId, config.getTenantQueueSize());
+        final TenantDeliveryQueue existingTenantQueue = tenantQueues.putIfAbsent(tenantId, newTenantQueue);
+        return existingTenantQueue != null ? existingTenantQueue : newTenantQueue;
+    }
+
+    private void scheduleDelivery(final TenantDeliveryQueue tenantQueue) {
+        if (!tenantQueue.scheduled.compareAndSet(false, true)) {
+            // A delivery round is already pending for that tenant
+            return;
+        }
+
+        try {
+            deliveryExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(tenantQueue);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // Shutting down, pending notifications will be persisted
+            tenantQueue.scheduled.set(false);
+        }
+    }
+
+    private void deliver(final TenantDeliveryQueue tenantQueue) {
+        try {
+            // Retries first, they have been waiting the longest
+            PendingNotification pendingRetry;
+            while (tenantQueue.inFlightCallbacks.get() < config.getMaxInFlightPerTenant() && (pendingRetry = tenantQueue.pendingRetries.poll()) != null) {
+                post(tenantQueue, pendingRetry.url, ImmutableList.<PendingNotification>of(pendingRetry));
+            }
+
+            if (tenantQueue.inFlightCallbacks.get() < config.getMaxInFlightPerTenant()) {
+                final List<PendingNotification> notifications = new LinkedList<PendingNotification>();
+                tenantQueue.pendingNotifications.drainTo(notifications, config.getMaxEventsPerCallback());
+                if (!notifications.isEmpty()) {
+                    dispatch(tenantQueue, notifications);
+                }
+            }
+        } finally {
+            tenantQueue.scheduled.set(false);
+        }
+
+        // Go back to the end of the line, so that all tenants are served in turn. If the tenant has too many callbacks
+        // in flight, the next round will be scheduled as they complete.
+        if (tenantQueue.hasPendingWork() && tenantQueue.inFlightCallbacks.get() < config.getMaxInFlightPerTenant()) {
+            scheduleDelivery(tenantQueue);
+        }
+    }
+
+    private void dispatch(final TenantDeliveryQueue tenantQueue, final List<PendingNotification> notifications) {
+        final List<String> callbacks;
+        try {
+            callbacks = getCallbacksForTenant(tenantQueue.tenantId);
+        } catch (final TenantApiException e) {
+            log.warn("Failed to retrieve push notification callback for tenant {}", tenantQueue.tenantId);
+            for (final PendingNotification pendingNotification : notifications) {
+                scheduleRetry(tenantQueue.tenantId, null, pendingNotification.notification, pendingNotification.nbFailedAttempts + 1);
+            }
+            return;
+        }
+
+        for (final String url : callbacks) {
+            post(tenantQueue, url, notifications);
+        }
+    }
+
+    private void post(final TenantDeliveryQueue tenantQueue, final String url, final List<PendingNotification> notifications) {
+        final List<NotificationJson> notificationJsons = new LinkedList<NotificationJson>();
+        for (final PendingNotification pendingNotification : notifications) {
+            notificationJsons.add(pendingNotification.notification);
+        }
+
+        final String body;
+        try {
+            // Several events are coalesced into a JSON array
+            body = notificationJsons.size() == 1 ? mapper.writeValueAsString(notificationJsons.get(0)) : mapper.writeValueAsString(notificationJsons);
+        } catch (final IOException e) {
+            log.warn("Failed to serialize push notification for tenant {}", tenantQueue.tenantId);
+            return;
+        }
+
+        tenantQueue.inFlightCallbacks.incrementAndGet();
+        final long startNanos = System.nanoTime();
+        try {
+            httpClient.preparePost(url)
+                      .setBody(body)
+                      .execute(new AsyncCompletionHandler<Response>() {
+                          @Override
+                          public Response onCompleted(final Response response) throws Exception {
+                              final boolean success = response.getStatusCode() >= 200 && response.getStatusCode() < 300;
+                              onCallbackCompleted(tenantQueue, url, notifications, startNanos, success, null);
+                              return response;
+                          }
+
+                          @Override
+                          public void onThrowable(final Throwable t) {
+                              onCallbackCompleted(tenantQueue, url, notifications, startNanos, false, t);
+                          }
+                      });
+        } catch (final IOException e) {
+            onCallbackCompleted(tenantQueue, url, notifications, startNanos, false, e);
+        }
+    }
+
+    private void onCallbackCompleted(final TenantDeliveryQueue tenantQueue, final String url, final List<PendingNotification> notifications,
+                                     final long startNanos, final boolean success, @Nullable final Throwable error) {
+        callbackLatency.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        tenantQueue.inFlightCallbacks.decrementAndGet();
+
+        if (success) {
+            deliveredCallbacks.mark();
+        } else {
+            failedCallbacks.mark();
+            log.warn(String.format("Failed to push notification %s for the tenant %s", url, tenantQueue.tenantId), error);
+
+            // Called from the http client threads: persist the retries from a delivery thread
+            runOnDeliveryThread(new Runnable() {
+                @Override
+                public void run() {
+                    for (final PendingNotification pendingNotification : notifications) {
+                        scheduleRetry(tenantQueue.tenantId, url, pendingNotification.notification, pendingNotification.nbFailedAttempts + 1);
+                    }
+                }
+            });
+        }
+
+        if (tenantQueue.hasPendingWork()) {
+            scheduleDelivery(tenantQueue);
+        }
+    }
+
+    private void scheduleRetry(final UUID tenantId, @Nullable final String url, final NotificationJson notification, final int nbFailedAttempts) {
+        if (!isStarted) {
+            droppedNotifications.mark();
+            log.warn("Dropping push notification {} for the tenant {}: the service is stopped", notification.getObjectId(), tenantId);
+            return;
+        }
+
+        final List<Integer> retryDelaysSec = config.getRetryDelaysSec();
+        if (nbFailedAttempts > retryDelaysSec.size()) {
+            droppedNotifications.mark();
+            log.warn("Giving up on push notification {} for the tenant {} after {} attempts", notification.getObjectId(), tenantId, nbFailedAttempts);
+            return;
+        }
+
+        final DateTime effectiveDate = clock.getUTCNow().plusSeconds(retryDelaysSec.get(nbFailedAttempts - 1));
+        try {
+            final InternalTenantContext context = internalCallContextFactory.createInternalTenantContext(contextFactory.createTenantContext(tenantId));
+            retryQueue.recordFutureNotification(effectiveDate, new PushNotificationKey(tenantId, url, notification, nbFailedAttempts), null, null, context.getTenantRecordId());
+        } catch (final IOException e) {
+            droppedNotifications.mark();
+            log.error("Failed to serialize push notification retry for tenant {}", tenantId);
+        }
+    }
+
+    private void runOnDeliveryThread(final Runnable runnable) {
+        try {
+            deliveryExecutor.execute(runnable);
+        } catch (final RejectedExecutionException e) {
+            // Shutting down
+            runnable.run();
+        }
+    }
+
+    private List<String> getCallbacksForTenant(final UUID tenantId) throws TenantApiException {
+        return tenantApi.getTenantValueForKey(TenantKey.PUSH_NOTIFICATION_CB.toString(), contextFactory.createTenantContext(tenantId));
+    }
+
+    private void registerGauge(final MetricRegistry metricRegistry, final String name, final Gauge<Integer> gauge) {
+        final String metricName = MetricRegistry.name(PushNotificationDeliveryEngine.class, name);
+        // The registry may outlive this instance (e.g. server restarts in tests)
+        metricRegistry.remove(metricName);
+        metricRegistry.register(metricName, gauge);
+    }
+
+    private static final class TenantDeliveryQueue {
+
+        private final UUID tenantId;
+        // Notifications to send to all the callbacks of the tenant
+        private final BlockingQueue<PendingNotification> pendingNotifications;
+        // Notifications to send again to the callback which failed
+        private final BlockingQueue<PendingNotification> pendingRetries;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private final AtomicInteger inFlightCallbacks = new AtomicInteger(0);
+
+        private TenantDeliveryQueue(final UUID tenantId, final int capacity) {
+            this.tenantId = tenantId;
+            this.pendingNotifications = new LinkedBlockingQueue<PendingNotification>(capacity);
+            this.pendingRetries = new LinkedBlockingQueue<PendingNotification>(capacity);
+        }
+
+        private boolean hasPendingWork() {
+            return !pendingNotifications.isEmpty() || !pendingRetries.isEmpty();
+        }
+    }
+
+    private static final class PendingNotification {
+
+        // Null until the callbacks of the tenant have been looked up
+        private final String url;
+        private final NotificationJson notification;
+        private final int nbFailedAttempts;
+
+        private PendingNotification(@Nullable final String url, final NotificationJson notification, final int nbFailedAttempts) {
+            this.url = url;
+            this.notification = notification;
+            this.nbFailedAttempts = nbFailedAttempts;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.server.notifications;
+
+import java.util.UUID;
+
+import org.killbill.billing.jaxrs.json.NotificationJson;
+import org.killbill.notificationq.api.NotificationEvent;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// Push notification waiting for a retry (events sent together in a single callback are retried one by one).
+// When the url is null, the callbacks haven't been resolved yet, i.e. the event couldn't even be queued for delivery.
+public class PushNotificationKey implements NotificationEvent {
+
+    private final UUID tenantId;
+    private final String url;
+    private final NotificationJson notification;
+    private final int attemptNumber;
+
+    @JsonCreator
+    public PushNotificationKey(@JsonProperty("tenantId") final UUID tenantId,
+                               @JsonProperty("url") final String url,
+                               @JsonProperty("notification") final NotificationJson notification,
+                               @JsonProperty("attemptNumber") final int attemptNumber) {
+        this.tenantId = tenantId;
+        this.url = url;
+        this.notification = notification;
+        this.attemptNumber = attemptNumber;
+    }
+
+    public UUID getTenantId() {
+        return tenantId;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public NotificationJson getNotification() {
+        return notification;
+    }
+
+    public int getAttemptNumber() {
+        return attemptNumber;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("PushNotificationKey{");
+        sb.append("tenantId=").append(tenantId);
+        sb.append(", url='").append(url).append('\'');
+        sb.append(", attemptNumber=").append(attemptNumber);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.server.notifications;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.KillbillTestSuite;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.jaxrs.json.NotificationJson;
+import org.killbill.billing.tenant.api.TenantApiException;
+import org.killbill.billing.tenant.api.TenantUserApi;
+import org.killbill.billing.util.callcontext.CallContextFactory;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.PushNotificationConfig;
+import org.killbill.clock.DefaultClock;
+import org.killbill.notificationq.api.NotificationEvent;
+import org.killbill.notificationq.api.NotificationQueue;
+import org.killbill.notificationq.api.NotificationQueueService;
+import org.killbill.notificationq.api.NotificationQueueService.NotificationQueueHandler;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.ning.http.client.AsyncCompletionHandler;
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClient.BoundRequestBuilder;
+import com.ning.http.client.Response;
+
+public class TestPushNotificationDeliveryEngine extends KillbillTestSuite {
+
+    private static final String CALLBACK_URL = "http://127.0.0.1:8080/callmeback";
+    private static final int TENANT_QUEUE_SIZE = 2;
+    private static final int MAX_IN_FLIGHT_PER_TENANT = 1;
+
+    private final UUID tenantId = UUID.randomUUID();
+
+    private TenantUserApi tenantApi;
+    private NotificationQueue retryQueue;
+    private NotificationQueueHandler retryQueueHandler;
+    private List<AsyncCompletionHandler<Response>> inFlightCallbacks;
+    private PushNotificationDeliveryEngine engine;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        final PushNotificationConfig config = Mockito.mock(PushNotificationConfig.class);
+        Mockito.when(config.getTimeout()).thenReturn(new TimeSpan("1s"));
+        Mockito.when(config.getTenantQueueSize()).thenReturn(TENANT_QUEUE_SIZE);
+        Mockito.when(config.getMaxInFlightPerTenant()).thenReturn(MAX_IN_FLIGHT_PER_TENANT);
+        Mockito.when(config.getMaxEventsPerCallback()).thenReturn(1);
+        Mockito.when(config.getRetryDelaysSec()).thenReturn(ImmutableList.<Integer>of(60, 300));
+
+        tenantApi = Mockito.mock(TenantUserApi.class);
+        Mockito.when(tenantApi.getTenantValueForKey(Mockito.anyString(), Mockito.<TenantContext>any())).thenReturn(ImmutableList.<String>of(CALLBACK_URL));
+        final InternalCallContextFactory internalCallContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(internalCallContextFactory.createInternalTenantContext(Mockito.<TenantContext>any())).thenReturn(new InternalTenantContext(1L, null));
+
+        retryQueue = Mockito.mock(NotificationQueue.class);
+        final NotificationQueueService notificationQueueService = Mockito.mock(NotificationQueueService.class);
+        Mockito.when(notificationQueueService.createNotificationQueue(Mockito.anyString(), Mockito.anyString(), Mockito.<NotificationQueueHandler>any())).thenAnswer(new Answer<NotificationQueue>() {
+            @Override
+            public NotificationQueue answer(final InvocationOnMock invocation) throws Throwable {
+                retryQueueHandler = (NotificationQueueHandler) invocation.getArguments()[2];
+                return retryQueue;
+            }
+        });
+
+        // Callbacks stay in flight until the test completes them
+        inFlightCallbacks = new ArrayList<AsyncCompletionHandler<Response>>();
+        final AsyncHttpClient httpClient = Mockito.mock(AsyncHttpClient.class);
+        final BoundRequestBuilder requestBuilder = Mockito.mock(BoundRequestBuilder.class);
+        Mockito.when(httpClient.preparePost(Mockito.anyString())).thenReturn(requestBuilder);
+        Mockito.when(requestBuilder.setBody(Mockito.anyString())).thenReturn(requestBuilder);
+        Mockito.when(requestBuilder.execute(Mockito.<AsyncHandler<Response>>any())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                inFlightCallbacks.add((AsyncCompletionHandler<Response>) invocation.getArguments()[0]);
+                return null;
+            }
+        });
+
+        engine = new PushNotificationDeliveryEngine(config, tenantApi, Mockito.mock(CallContextFactory.class), internalCallContextFactory, notificationQueueService,
+                                                    new DefaultClock(), new ObjectMapper(), new MetricRegistry(), httpClient, new SameThreadExecutorService());
+        engine.initialize();
+        engine.start();
+    }
+
+    @Test(groups = "fast")
+    public void testInFlightCap() throws Exception {
+        engine.submit(tenantId, createNotification());
+        engine.submit(tenantId, createNotification());
+        Assert.assertEquals(inFlightCallbacks.size(), MAX_IN_FLIGHT_PER_TENANT);
+
+        // The next notification is sent as the callback completes
+        complete(0, true);
+        Assert.assertEquals(inFlightCallbacks.size(), 2);
+        Mockito.verify(retryQueue, Mockito.never()).recordFutureNotification(Mockito.<DateTime>any(), Mockito.<NotificationEvent>any(), Mockito.<UUID>any(), Mockito.<Long>any(), Mockito.<Long>any());
+    }
+
+    @Test(groups = "fast")
+    public void testQueueOverflow() throws Exception {
+        // One in flight, two queued
+        for (int i = 0; i < MAX_IN_FLIGHT_PER_TENANT + TENANT_QUEUE_SIZE; i++) {
+            engine.submit(tenantId, createNotification());
+        }
+        Mockito.verify(retryQueue, Mockito.never()).recordFutureNotification(Mockito.<DateTime>any(), Mockito.<NotificationEvent>any(), Mockito.<UUID>any(), Mockito.<Long>any(), Mockito.<Long>any());
+
+        // The tenant is too far behind: the event is deferred to the retry queue
+        final NotificationJson deferredNotification = createNotification();
+        engine.submit(tenantId, deferredNotification);
+        final PushNotificationKey key = getRecordedRetries().get(0);
+        Assert.assertNull(key.getUrl());
+        Assert.assertEquals(key.getAttemptNumber(), 1);
+        Assert.assertEquals(key.getNotification().getObjectId(), deferredNotification.getObjectId());
+        Assert.assertEquals(inFlightCallbacks.size(), MAX_IN_FLIGHT_PER_TENANT);
+    }
+
+    @Test(groups = "fast")
+    public void testRetryScheduling() throws Exception {
+        final NotificationJson notification = createNotification();
+        engine.submit(tenantId, notification);
+        complete(0, false);
+
+        // The failed callback is retried for that url only
+        final PushNotificationKey key = getRecordedRetries().get(0);
+        Assert.assertEquals(key.getUrl(), CALLBACK_URL);
+        Assert.assertEquals(key.getAttemptNumber(), 1);
+        Assert.assertEquals(key.getNotification().getObjectId(), notification.getObjectId());
+
+        // When the retry is due, it waits for its turn like any other callback
+        engine.submit(tenantId, createNotification());
+        Assert.assertEquals(inFlightCallbacks.size(), 2);
+        retryQueueHandler.handleReadyNotification(key, new DateTime(), null, null, 1L);
+        Assert.assertEquals(inFlightCallbacks.size(), 2);
+
+        complete(1, true);
+        Assert.assertEquals(inFlightCallbacks.size(), 3);
+
+        // Give up after the last retry delay
+        complete(2, false);
+        Assert.assertEquals(getRecordedRetries().size(), 2);
+        Assert.assertEquals(getRecordedRetries().get(1).getAttemptNumber(), 2);
+        retryQueueHandler.handleReadyNotification(getRecordedRetries().get(1), new DateTime(), null, null, 1L);
+        complete(3, false);
+        Assert.assertEquals(getRecordedRetries().size(), 2);
+    }
+
+    @Test(groups = "fast")
+    public void testCallbackLookupFailures() throws Exception {
+        Mockito.when(tenantApi.getTenantValueForKey(Mockito.anyString(), Mockito.<TenantContext>any())).thenThrow(new TenantApiException(ErrorCode.TENANT_DOES_NOT_EXIST_FOR_API_KEY, "key"));
+
+        engine.submit(tenantId, createNotification());
+        Assert.assertEquals(getRecordedRetries().size(), 1);
+        Assert.assertNull(getRecordedRetries().get(0).getUrl());
+        Assert.assertEquals(getRecordedRetries().get(0).getAttemptNumber(), 1);
+
+        // The attempts are counted through the retries
+        retryQueueHandler.handleReadyNotification(getRecordedRetries().get(0), new DateTime(), null, null, 1L);
+        Assert.assertEquals(getRecordedRetries().size(), 2);
+        Assert.assertEquals(getRecordedRetries().get(1).getAttemptNumber(), 2);
+
+        // Give up after the last retry delay
+        retryQueueHandler.handleReadyNotification(getRecordedRetries().get(1), new DateTime(), null, null, 1L);
+        Assert.assertEquals(getRecordedRetries().size(), 2);
+        Assert.assertTrue(inFlightCallbacks.isEmpty());
+    }
+
+    @Test(groups = "fast")
+    public void testShutdown() throws Exception {
+        engine.submit(tenantId, createNotification());
+        final NotificationJson pendingNotification = createNotification();
+        engine.submit(tenantId, pendingNotification);
+
+        // What hasn't been dispatched yet is persisted
+        engine.stop();
+        Mockito.verify(retryQueue).stopQueue();
+        Assert.assertEquals(getRecordedRetries().size(), 1);
+        Assert.assertNull(getRecordedRetries().get(0).getUrl());
+        Assert.assertEquals(getRecordedRetries().get(0).getNotification().getObjectId(), pendingNotification.getObjectId());
+
+        // Callbacks completing after the service is stopped don't touch the retry queue
+        complete(0, false);
+        Assert.assertEquals(getRecordedRetries().size(), 1);
+        Assert.assertEquals(inFlightCallbacks.size(), 1);
+    }
+
+    private void complete(final int callbackIndex, final boolean success) throws Exception {
+        final AsyncCompletionHandler<Response> callback = inFlightCallbacks.get(callbackIndex);
+        if (success) {
+            final Response response = Mockito.mock(Response.class);
+            Mockito.when(response.getStatusCode()).thenReturn(200);
+            callback.onCompleted(response);
+        } else {
+            callback.onThrowable(new IOException("Connection refused"));
+        }
+    }
+
+    private List<PushNotificationKey> getRecordedRetries() throws IOException {
+        final ArgumentCaptor<NotificationEvent> keyCaptor = ArgumentCaptor.forClass(NotificationEvent.class);
+        Mockito.verify(retryQueue, Mockito.atLeastOnce()).recordFutureNotification(Mockito.<DateTime>any(), keyCaptor.capture(), Mockito.<UUID>any(), Mockito.<Long>any(), Mockito.<Long>any());
+        final List<PushNotificationKey> keys = new ArrayList<PushNotificationKey>();
+        for (final NotificationEvent key : keyCaptor.getAllValues()) {
+            keys.add((PushNotificationKey) key);
+        }
+        return keys;
+    }
+
+    private NotificationJson createNotification() {
+        return new NotificationJson("ACCOUNT_CREATION", UUID.randomUUID().toString(), "ACCOUNT", UUID.randomUUID().toString());
+    }
+
+    // Runs the deliveries on the caller thread, to keep the tests deterministic
+    private static final class SameThreadExecutorService extends AbstractExecutorService {
+
+        private volatile boolean isShutdown = false;
+
+        @Override
+        public void execute(final Runnable command) {
+            if (isShutdown) {
+                throw new RejectedExecutionException();
+            }
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            isShutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            isShutdown = true;
+            return ImmutableList.<Runnable>of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return isShutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return isShutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -54,7 +54,6 @@ public class TestPlanAligner extends SubscriptionTestSuiteNoDB {
         super.beforeClass();
 
         /*
-        final VersionedCatalogLoader versionedCatalogLoader = new VersionedCatalogLoader(clock);
         final CatalogConfig config = new ConfigurationObjectFactory(new ConfigSource() {
             final Map<String, String> properties = ImmutableMap.<String, String>of("org.killbill.catalog.uri", "file:src/test/resources/testInput.xml");
 
@@ -63,6 +62,7 @@ public class TestPlanAligner extends SubscriptionTestSuiteNoDB {
                 return properties.get(propertyName);
             }
         }).build(CatalogConfig.class);
+        final VersionedCatalogLoader versionedCatalogLoader = new VersionedCatalogLoader(config, clock);
 
         catalogService = new DefaultCatalogService(config, versionedCatalogLoader);
         */
@@ -14,14 +14,37 @@
  * under the License.
  */
 
+
 package org.killbill.billing.tenant.api;
 
+import org.killbill.billing.platform.api.LifecycleHandlerType;
+import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
+
+import com.google.inject.Inject;
+
 public class DefaultTenantService implements TenantService {
 
     private static final String TENANT_SERVICE_NAME = "tenant-service";
 
+    private final TenantCacheInvalidationListener cacheInvalidationListener;
+
+    @Inject
+    public DefaultTenantService(final TenantCacheInvalidationListener cacheInvalidationListener) {
+        this.cacheInvalidationListener = cacheInvalidationListener;
+    }
+
     @Override
     public String getName() {
         return TENANT_SERVICE_NAME;
     }
+
+    @LifecycleHandlerType(LifecycleLevel.INIT_SERVICE)
+    public void initialize() {
+        cacheInvalidationListener.register();
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
+    public void stop() {
+        cacheInvalidationListener.unregister();
+    }
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.tenant.api;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.events.BusInternalEvent.BusInternalEventType;
+import org.killbill.billing.tenant.dao.TenantDao;
+import org.killbill.billing.util.broadcast.BroadcastListener;
+import org.killbill.billing.util.broadcast.BroadcastService;
+
+import com.google.inject.Inject;
+
+// Evicts the cached tenant values when they are modified by another node (see DefaultTenantDao#broadcastTenantConfigChange)
+public class TenantCacheInvalidationListener implements BroadcastListener {
+
+    private final BroadcastService broadcastService;
+    private final TenantDao tenantDao;
+
+    @Inject
+    public TenantCacheInvalidationListener(final BroadcastService broadcastService, final TenantDao tenantDao) {
+        this.broadcastService = broadcastService;
+        this.tenantDao = tenantDao;
+    }
+
+    public void register() {
+        broadcastService.registerListener(BusInternalEventType.TENANT_CONFIG_CHANGE.name(), this);
+    }
+
+    public void unregister() {
+        broadcastService.unregisterListener(BusInternalEventType.TENANT_CONFIG_CHANGE.name(), this);
+    }
+
+    @Override
+    public void onBroadcast(final String eventKey, @Nullable final Long tenantRecordId) {
+        tenantDao.invalidateTenantValueForKey(eventKey, new InternalTenantContext(tenantRecordId, null));
+    }
+}
@@ -29,10 +29,18 @@ import org.apache.shiro.util.ByteSource;
 import org.skife.jdbi.v2.IDBI;
 
 import org.killbill.billing.ErrorCode;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.events.BusInternalEvent.BusInternalEventType;
 import org.killbill.billing.tenant.api.Tenant;
 import org.killbill.billing.tenant.api.TenantApiException;
 import org.killbill.billing.tenant.security.KillbillCredentialsMatcher;
+import org.killbill.billing.util.broadcast.BroadcastModelDao;
+import org.killbill.billing.util.broadcast.BroadcastSqlDao;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.TenantKVCacheLoader;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.clock.Clock;
@@ -53,9 +61,19 @@ public class DefaultTenantDao extends EntityDaoBase<TenantModelDao, Tenant, Tena
 
     private final RandomNumberGenerator rng = new SecureRandomNumberGenerator();
 
+    private final CacheControllerDispatcher cacheControllerDispatcher;
+
+    private final TenantKVCacheLoader.LoaderCallback tenantKVLoaderCallback = new TenantKVCacheLoader.LoaderCallback() {
+        @Override
+        public List<String> loadTenantValues(final String tenantKey, final InternalTenantContext context) {
+            return getTenantValueForKeyFromDb(tenantKey, context);
+        }
+    };
+
     @Inject
     public DefaultTenantDao(final IDBI dbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
         super(new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, cacheControllerDispatcher, nonEntityDao), TenantSqlDao.class);
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
     }
 
     @Override
@@ -110,6 +128,24 @@ public class DefaultTenantDao extends EntityDaoBase<TenantModelDao, Tenant, Tena
 
     @Override
     public List<String> getTenantValueForKey(final String key, final InternalTenantContext context) {
+        final CacheController<Object, Object> tenantKVCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_KV);
+        if (tenantKVCache == null) {
+            return getTenantValueForKeyFromDb(key, context);
+        }
+
+        final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(ObjectType.TENANT_KVS, new Object[]{key, tenantKVLoaderCallback}, context);
+        return (List<String>) tenantKVCache.get(getTenantKVCacheKey(key, context), cacheLoaderArgument);
+    }
+
+    @Override
+    public void invalidateTenantValueForKey(final String key, final InternalTenantContext context) {
+        final CacheController<Object, Object> tenantKVCache = cacheControllerDispatcher.getCacheController(CacheType.TENANT_KV);
+        if (tenantKVCache != null) {
+            tenantKVCache.remove(getTenantKVCacheKey(key, context));
+        }
+    }
+
+    private List<String> getTenantValueForKeyFromDb(final String key, final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<List<String>>() {
             @Override
             public List<String> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
@@ -131,9 +167,11 @@ public class DefaultTenantDao extends EntityDaoBase<TenantModelDao, Tenant, Tena
             public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
                 final TenantKVModelDao tenantKVModelDao = new TenantKVModelDao(UUID.randomUUID(), context.getCreatedDate(), context.getUpdatedDate(), key, value);
                 entitySqlDaoWrapperFactory.become(TenantKVSqlDao.class).create(tenantKVModelDao, context);
+                broadcastTenantConfigChange(key, entitySqlDaoWrapperFactory, context);
                 return null;
             }
         });
+        invalidateTenantValueForKey(key, context);
     }
 
     @Override
@@ -147,8 +185,20 @@ public class DefaultTenantDao extends EntityDaoBase<TenantModelDao, Tenant, Tena
                         entitySqlDaoWrapperFactory.become(TenantKVSqlDao.class).markTenantKeyAsDeleted(cur.getId().toString(), context);
                     }
                 }
+                broadcastTenantConfigChange(key, entitySqlDaoWrapperFactory, context);
                 return null;
             }
         });
+        invalidateTenantValueForKey(key, context);
+    }
+
+    // This node invalidates its own cache right after the commit, the other nodes when they poll the broadcast (see TenantCacheInvalidationListener)
+    private void broadcastTenantConfigChange(final String key, final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory, final InternalCallContext context) {
+        final BroadcastModelDao broadcast = new BroadcastModelDao(BusInternalEventType.TENANT_CONFIG_CHANGE.name(), key, context.getTenantRecordId(), context.getCreatedDate());
+        entitySqlDaoWrapperFactory.transmogrify(BroadcastSqlDao.class).create(broadcast);
+    }
+
+    private String getTenantKVCacheKey(final String key, final InternalTenantContext context) {
+        return context.getTenantRecordId() + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + key;
     }
 }
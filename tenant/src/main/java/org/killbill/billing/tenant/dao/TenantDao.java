@@ -33,4 +33,6 @@ public interface TenantDao extends EntityDao<TenantModelDao, Tenant, TenantApiEx
     public void addTenantKeyValue(final String key, final String value, final InternalCallContext context);
 
     public void deleteTenantKey(final String key, final InternalCallContext context);
+
+    public void invalidateTenantValueForKey(final String key, final InternalTenantContext context);
 }
@@ -20,6 +20,7 @@ package org.killbill.billing.tenant.glue;
 
 import org.killbill.billing.platform.api.KillbillConfigSource;
 import org.killbill.billing.tenant.api.DefaultTenantService;
+import org.killbill.billing.tenant.api.TenantCacheInvalidationListener;
 import org.killbill.billing.tenant.api.TenantService;
 import org.killbill.billing.tenant.api.TenantUserApi;
 import org.killbill.billing.tenant.api.user.DefaultTenantUserApi;
@@ -46,6 +47,7 @@ public class TenantModule extends KillBillModule {
 
     private void installTenantService() {
         bind(TenantService.class).to(DefaultTenantService.class).asEagerSingleton();
+        bind(TenantCacheInvalidationListener.class).asEagerSingleton();
     }
 
     @Override
@@ -23,6 +23,7 @@ import org.testng.annotations.BeforeMethod;
 import org.killbill.billing.GuicyKillbillTestSuiteWithEmbeddedDB;
 import org.killbill.billing.tenant.dao.DefaultTenantDao;
 import org.killbill.billing.tenant.glue.TestTenantModuleWithEmbeddedDB;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
 
 import com.google.inject.Guice;
 import com.google.inject.Inject;
@@ -32,6 +33,8 @@ public class TenantTestSuiteWithEmbeddedDb extends GuicyKillbillTestSuiteWithEmb
 
     @Inject
     protected DefaultTenantDao tenantDao;
+    @Inject
+    protected CacheControllerDispatcher controllerDispatcher;
 
     @BeforeClass(groups = "slow")
     protected void beforeClass() throws Exception {
@@ -42,6 +45,7 @@ public class TenantTestSuiteWithEmbeddedDb extends GuicyKillbillTestSuiteWithEmb
     @BeforeMethod(groups = "slow")
     public void beforeMethod() throws Exception {
         super.beforeMethod();
+        controllerDispatcher.clearAll();
     }
 
     @AfterMethod(groups = "slow")
@@ -26,9 +26,16 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import org.killbill.billing.events.BusInternalEvent.BusInternalEventType;
 import org.killbill.billing.tenant.TenantTestSuiteWithEmbeddedDb;
 import org.killbill.billing.tenant.api.DefaultTenant;
+import org.killbill.billing.tenant.api.TenantCacheInvalidationListener;
 import org.killbill.billing.tenant.security.KillbillCredentialsMatcher;
+import org.killbill.billing.util.broadcast.BroadcastModelDao;
+import org.killbill.billing.util.broadcast.BroadcastService;
+import org.killbill.billing.util.broadcast.BroadcastSqlDao;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.mockito.Mockito;
 
 public class TestDefaultTenantDao extends TenantTestSuiteWithEmbeddedDb {
 
@@ -64,6 +71,7 @@ public class TestDefaultTenantDao extends TenantTestSuiteWithEmbeddedDb {
         List<String> value = tenantDao.getTenantValueForKey("TheKey", internalCallContext);
         Assert.assertEquals(value.size(), 1);
         Assert.assertEquals(value.get(0), "TheValue");
+        Assert.assertEquals(controllerDispatcher.getCacheController(CacheType.TENANT_KV).size(), 1);
 
         tenantDao.addTenantKeyValue("TheKey", "TheSecondValue", internalCallContext);
         value = tenantDao.getTenantValueForKey("TheKey", internalCallContext);
@@ -73,4 +81,32 @@ public class TestDefaultTenantDao extends TenantTestSuiteWithEmbeddedDb {
         value = tenantDao.getTenantValueForKey("TheKey", internalCallContext);
         Assert.assertEquals(value.size(), 0);
     }
+
+    @Test(groups = "slow")
+    public void testTenantKeyValueInvalidationBroadcast() throws Exception {
+        final DefaultTenant tenant = new DefaultTenant(UUID.randomUUID(), null, null, UUID.randomUUID().toString(),
+                                                       UUID.randomUUID().toString(), UUID.randomUUID().toString());
+        tenantDao.create(new TenantModelDao(tenant), internalCallContext);
+
+        tenantDao.addTenantKeyValue("TheBroadcastKey", "TheValue", internalCallContext);
+
+        // The change is broadcast to the other nodes
+        int nbBroadcasts = 0;
+        for (final BroadcastModelDao broadcast : dbi.onDemand(BroadcastSqlDao.class).getEntriesCreatedAfter(clock.getUTCNow().minusDays(1))) {
+            if ("TheBroadcastKey".equals(broadcast.getEventKey())) {
+                Assert.assertEquals(broadcast.getEventType(), BusInternalEventType.TENANT_CONFIG_CHANGE.name());
+                Assert.assertEquals(broadcast.getTenantRecordId(), internalCallContext.getTenantRecordId());
+                nbBroadcasts++;
+            }
+        }
+        Assert.assertEquals(nbBroadcasts, 1);
+
+        // Which evict their entry when they poll it
+        Assert.assertEquals(tenantDao.getTenantValueForKey("TheBroadcastKey", internalCallContext).size(), 1);
+        Assert.assertEquals(controllerDispatcher.getCacheController(CacheType.TENANT_KV).size(), 1);
+
+        final TenantCacheInvalidationListener listener = new TenantCacheInvalidationListener(Mockito.mock(BroadcastService.class), tenantDao);
+        listener.onBroadcast("TheBroadcastKey", internalCallContext.getTenantRecordId());
+        Assert.assertEquals(controllerDispatcher.getCacheController(CacheType.TENANT_KV).size(), 0);
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage.api.user;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.inject.Inject;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.usage.api.BulkUsageUserApi;
+import org.killbill.billing.usage.api.SubscriptionUsageRecord;
+import org.killbill.billing.usage.api.SubscriptionUsageRecordResult;
+import org.killbill.billing.usage.api.UnitUsageRecord;
+import org.killbill.billing.usage.api.UsageRecord;
+import org.killbill.billing.usage.dao.RolledUpUsageDao;
+import org.killbill.billing.usage.dao.RolledUpUsageModelDao;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+
+public class DefaultBulkUsageUserApi implements BulkUsageUserApi {
+
+    private final RolledUpUsageDao rolledUpUsageDao;
+    private final InternalCallContextFactory internalCallContextFactory;
+
+    @Inject
+    public DefaultBulkUsageUserApi(final RolledUpUsageDao rolledUpUsageDao,
+                                   final InternalCallContextFactory internalCallContextFactory) {
+        this.rolledUpUsageDao = rolledUpUsageDao;
+        this.internalCallContextFactory = internalCallContextFactory;
+    }
+
+    @Override
+    public List<SubscriptionUsageRecordResult> recordRolledUpUsage(final List<SubscriptionUsageRecord> records, final CallContext callContext) {
+        // Resolve the context (and validate) each subscription only once, even if it appears in multiple records
+        final Map<UUID, InternalCallContext> contexts = new HashMap<UUID, InternalCallContext>();
+
+        final List<SubscriptionUsageRecordResult> result = new ArrayList<SubscriptionUsageRecordResult>(records.size());
+        for (final SubscriptionUsageRecord record : records) {
+            final UUID subscriptionId = record.getSubscriptionId();
+
+            final String validationError = validate(record);
+            if (validationError != null) {
+                result.add(new DefaultSubscriptionUsageRecordResult(subscriptionId, 0, validationError));
+                continue;
+            }
+
+            InternalCallContext internalCallContext = contexts.get(subscriptionId);
+            if (internalCallContext == null && !contexts.containsKey(subscriptionId)) {
+                internalCallContext = internalCallContextFactory.createInternalCallContext(subscriptionId, ObjectType.SUBSCRIPTION, callContext);
+                if (internalCallContext.getAccountRecordId() == null) {
+                    internalCallContext = null;
+                }
+                contexts.put(subscriptionId, internalCallContext);
+            }
+            if (internalCallContext == null) {
+                result.add(new DefaultSubscriptionUsageRecordResult(subscriptionId, 0, "Unknown subscription " + subscriptionId));
+                continue;
+            }
+
+            result.add(record(record, internalCallContext));
+        }
+        return result;
+    }
+
+    private SubscriptionUsageRecordResult record(final SubscriptionUsageRecord record, final InternalCallContext internalCallContext) {
+        final List<RolledUpUsageModelDao> rolledUpUsages = DefaultUsageUserApi.toRolledUpUsageModelDaos(record);
+        try {
+            final int nbRecordedRows = rolledUpUsageDao.record(rolledUpUsages, internalCallContext);
+            return new DefaultSubscriptionUsageRecordResult(record.getSubscriptionId(), nbRecordedRows, null);
+        } catch (final RuntimeException e) {
+            // Note: chunks previously committed for that record (if any) are not rolled back
+            return new DefaultSubscriptionUsageRecordResult(record.getSubscriptionId(), 0, e.getMessage());
+        }
+    }
+
+    private String validate(final SubscriptionUsageRecord record) {
+        if (record.getSubscriptionId() == null) {
+            return "subscriptionId needs to be set";
+        }
+        if (record.getUnitUsageRecord() == null || record.getUnitUsageRecord().isEmpty()) {
+            return "unitUsageRecords needs to be set";
+        }
+        for (final UnitUsageRecord unitUsageRecord : record.getUnitUsageRecord()) {
+            if (unitUsageRecord.getUnitType() == null) {
+                return "unitType needs to be set";
+            }
+            for (final UsageRecord usageRecord : unitUsageRecord.getDailyAmount()) {
+                if (usageRecord.getDate() == null || usageRecord.getAmount() == null) {
+                    return "recordDate and amount need to be set for unitType " + unitUsageRecord.getUnitType();
+                }
+            }
+        }
+        return null;
+    }
+}
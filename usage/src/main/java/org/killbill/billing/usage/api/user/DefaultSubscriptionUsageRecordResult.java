@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage.api.user;
+
+import java.util.UUID;
+
+import org.killbill.billing.usage.api.SubscriptionUsageRecordResult;
+
+public class DefaultSubscriptionUsageRecordResult implements SubscriptionUsageRecordResult {
+
+    private final UUID subscriptionId;
+    private final int nbRecordedRows;
+    private final String errorMessage;
+
+    public DefaultSubscriptionUsageRecordResult(final UUID subscriptionId, final int nbRecordedRows, final String errorMessage) {
+        this.subscriptionId = subscriptionId;
+        this.nbRecordedRows = nbRecordedRows;
+        this.errorMessage = errorMessage;
+    }
+
+    @Override
+    public UUID getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    @Override
+    public int getNbRecordedRows() {
+        return nbRecordedRows;
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return errorMessage == null;
+    }
+
+    @Override
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DefaultSubscriptionUsageRecordResult{");
+        sb.append("subscriptionId=").append(subscriptionId);
+        sb.append(", nbRecordedRows=").append(nbRecordedRows);
+        sb.append(", errorMessage='").append(errorMessage).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -18,6 +18,7 @@ package org.killbill.billing.usage.api.user;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -39,6 +40,9 @@ import org.killbill.billing.usage.dao.RolledUpUsageModelDao;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.usage.DefaultRolledUpUnit;
+import org.killbill.billing.util.usage.DefaultRolledUpUsage;
+import org.killbill.billing.util.usage.UsageIntervals;
 
 public class DefaultUsageUserApi implements UsageUserApi {
 
@@ -55,11 +59,17 @@ public class DefaultUsageUserApi implements UsageUserApi {
     @Override
     public void recordRolledUpUsage(final SubscriptionUsageRecord record, final CallContext callContext) {
         final InternalCallContext internalCallContext = internalCallContextFactory.createInternalCallContext(record.getSubscriptionId(), ObjectType.SUBSCRIPTION, callContext);
-        for (UnitUsageRecord unitUsageRecord : record.getUnitUsageRecord()) {
-            for (UsageRecord usageRecord : unitUsageRecord.getDailyAmount()) {
-                rolledUpUsageDao.record(record.getSubscriptionId(), unitUsageRecord.getUnitType(), usageRecord.getDate(), usageRecord.getAmount(), internalCallContext);
+        rolledUpUsageDao.record(toRolledUpUsageModelDaos(record), internalCallContext);
+    }
+
+    static List<RolledUpUsageModelDao> toRolledUpUsageModelDaos(final SubscriptionUsageRecord record) {
+        final List<RolledUpUsageModelDao> result = new LinkedList<RolledUpUsageModelDao>();
+        for (final UnitUsageRecord unitUsageRecord : record.getUnitUsageRecord()) {
+            for (final UsageRecord usageRecord : unitUsageRecord.getDailyAmount()) {
+                result.add(new RolledUpUsageModelDao(record.getSubscriptionId(), unitUsageRecord.getUnitType(), usageRecord.getDate(), usageRecord.getAmount()));
             }
         }
+        return result;
     }
 
     @Override
@@ -71,16 +81,34 @@ public class DefaultUsageUserApi implements UsageUserApi {
 
     @Override
     public List<RolledUpUsage> getAllUsageForSubscription(final UUID subscriptionId, final List<LocalDate> transitionTimes, final TenantContext tenantContext) {
+        final List<RolledUpUsage> result = new ArrayList<RolledUpUsage>();
+        if (transitionTimes.size() <= 1) {
+            return result;
+        }
+
+        // Retrieve the usage for the whole [first, last) range at once (pre-summed per unit type and day), and bucket it in memory
+        // Copy the transition times for random access (the list passed by the caller is usually a LinkedList)
+        final List<LocalDate> transitions = new ArrayList<LocalDate>(transitionTimes);
         final InternalTenantContext internalCallContext = internalCallContextFactory.createInternalTenantContext(subscriptionId, ObjectType.SUBSCRIPTION, tenantContext);
-        List<RolledUpUsage> result = new ArrayList<RolledUpUsage>();
-        LocalDate prevDate = null;
-        for (LocalDate curDate : transitionTimes) {
-            if (prevDate != null) {
-                final List<RolledUpUsageModelDao> usageForSubscription = rolledUpUsageDao.getAllUsageForSubscription(subscriptionId, prevDate, curDate, internalCallContext);
-                final List<RolledUpUnit> rolledUpAmount = getRolledUpUnits(usageForSubscription);
-                result.add(new DefaultRolledUpUsage(subscriptionId, prevDate, curDate, rolledUpAmount));
+        final List<RolledUpUsageModelDao> usageForSubscription = rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId,
+                                                                                                                  transitions.get(0),
+                                                                                                                  transitions.get(transitions.size() - 1),
+                                                                                                                  internalCallContext);
+
+        final List<List<RolledUpUsageModelDao>> usagePerInterval = new ArrayList<List<RolledUpUsageModelDao>>(transitions.size() - 1);
+        for (int i = 0; i < transitions.size() - 1; i++) {
+            usagePerInterval.add(new LinkedList<RolledUpUsageModelDao>());
+        }
+        for (final RolledUpUsageModelDao cur : usageForSubscription) {
+            final int intervalIndex = UsageIntervals.findIntervalIndex(transitions, cur.getRecordDate());
+            if (intervalIndex >= 0) {
+                usagePerInterval.get(intervalIndex).add(cur);
             }
-            prevDate = curDate;
+        }
+
+        for (int i = 0; i < transitions.size() - 1; i++) {
+            final List<RolledUpUnit> rolledUpAmount = getRolledUpUnits(usagePerInterval.get(i));
+            result.add(new DefaultRolledUpUsage(subscriptionId, transitions.get(i), transitions.get(i + 1), rolledUpAmount));
         }
         return result;
     }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage.compaction;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.killbill.billing.usage.dao.RolledUpUsageDao;
+import org.killbill.billing.usage.glue.UsageModule;
+import org.killbill.billing.util.config.UsageConfig;
+import org.killbill.clock.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Folds the raw rolled_up_usage rows into the rolled_up_usage_daily aggregates, so that reads only need to
+ * look at the raw rows which have not been compacted yet.
+ */
+public class UsageCompactor implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(UsageCompactor.class);
+
+    private static final int TERMINATION_TIMEOUT_SEC = 5;
+
+    private final RolledUpUsageDao rolledUpUsageDao;
+    private final UsageConfig usageConfig;
+    private final Clock clock;
+    private final ScheduledExecutorService compactionExecutor;
+
+    private volatile boolean isStopped;
+
+    @Inject
+    public UsageCompactor(final RolledUpUsageDao rolledUpUsageDao,
+                          final UsageConfig usageConfig,
+                          final Clock clock,
+                          @Named(UsageModule.COMPACTION_EXECUTOR_NAMED) final ScheduledExecutorService compactionExecutor) {
+        this.rolledUpUsageDao = rolledUpUsageDao;
+        this.usageConfig = usageConfig;
+        this.clock = clock;
+        this.compactionExecutor = compactionExecutor;
+        this.isStopped = false;
+    }
+
+    public void start() {
+        if (!usageConfig.isCompactionEnabled()) {
+            log.info("Usage compaction is disabled");
+            return;
+        }
+        if (isStopped) {
+            log.warn("UsageCompactor is not a restartable service, and was already started, aborting");
+            return;
+        }
+
+        final TimeUnit rateUnit = usageConfig.getCompactionRunningRate().getUnit();
+        final long period = usageConfig.getCompactionRunningRate().getPeriod();
+        compactionExecutor.scheduleAtFixedRate(this, period, period, rateUnit);
+    }
+
+    public void stop() {
+        if (isStopped) {
+            log.warn("UsageCompactor is already in a stopped state");
+            return;
+        }
+        try {
+            compactionExecutor.shutdown();
+            final boolean success = compactionExecutor.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS);
+            if (!success) {
+                log.warn("UsageCompactor failed to complete termination within " + TERMINATION_TIMEOUT_SEC + "sec");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("UsageCompactor stop sequence got interrupted");
+        } finally {
+            isStopped = true;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            int nbCompacted;
+            do {
+                if (isStopped) {
+                    return;
+                }
+                nbCompacted = compact();
+            } while (nbCompacted > 0);
+        } catch (final RuntimeException e) {
+            // Don't let the exception kill the scheduled task
+            log.warn("Failed to compact usage", e);
+        }
+    }
+
+    /**
+     * Compact the next batch of raw usage rows
+     *
+     * @return the number of raw rows compacted (0 if there was nothing to compact)
+     */
+    public int compact() {
+        return rolledUpUsageDao.compact(usageConfig.getCompactionBatchSize(), clock.getUTCNow());
+    }
+}
@@ -16,19 +16,34 @@
 
 package org.killbill.billing.usage.dao;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.inject.Inject;
 
+import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.entity.Entity;
+import org.killbill.billing.util.entity.dao.EntitySqlDao;
 import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.Transaction;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.TransactionStatus;
+
+import com.google.common.collect.Iterables;
 
 public class DefaultRolledUpUsageDao implements RolledUpUsageDao {
 
+    // Number of rows sent per JDBC batch (each chunk is written in its own transaction)
+    static final int BATCH_CHUNK_SIZE = 500;
+
     private final RolledUpUsageSqlDao rolledUpUsageSqlDao;
 
     @Inject
@@ -42,6 +57,16 @@ public class DefaultRolledUpUsageDao implements RolledUpUsageDao {
         rolledUpUsageSqlDao.create(rolledUpUsageModelDao, context);
     }
 
+    @Override
+    public int record(final Iterable<RolledUpUsageModelDao> rolledUpUsages, final InternalCallContext context) {
+        int nbRecorded = 0;
+        for (final List<RolledUpUsageModelDao> chunk : Iterables.partition(rolledUpUsages, BATCH_CHUNK_SIZE)) {
+            rolledUpUsageSqlDao.batchCreate(chunk, context);
+            nbRecorded += chunk.size();
+        }
+        return nbRecorded;
+    }
+
     @Override
     public List<RolledUpUsageModelDao> getUsageForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final String unitType, final InternalTenantContext context) {
         return rolledUpUsageSqlDao.getUsageForSubscription(subscriptionId, startDate.toDate(), endDate.toDate(), unitType, context);
@@ -51,4 +76,82 @@ public class DefaultRolledUpUsageDao implements RolledUpUsageDao {
     public List<RolledUpUsageModelDao> getAllUsageForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
         return rolledUpUsageSqlDao.getAllUsageForSubscription(subscriptionId, startDate.toDate(), endDate.toDate(), context);
     }
+
+    @Override
+    public List<RolledUpUsageModelDao> getAggregatedUsageForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
+        return rolledUpUsageSqlDao.getAggregatedUsageForSubscription(subscriptionId, startDate.toDate(), endDate.toDate(), context);
+    }
+
+    @Override
+    public List<RolledUpUsageModelDao> getAggregatedUsageForAccount(final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
+        return rolledUpUsageSqlDao.getAggregatedUsageForAccount(startDate.toDate(), endDate.toDate(), context);
+    }
+
+    @Override
+    public int compact(final int batchSize, final DateTime now) {
+        return rolledUpUsageSqlDao.inTransaction(TransactionIsolationLevel.READ_COMMITTED, new Transaction<Integer, EntitySqlDao<RolledUpUsageModelDao, Entity>>() {
+            @Override
+            public Integer inTransaction(final EntitySqlDao<RolledUpUsageModelDao, Entity> entitySqlDao, final TransactionStatus status) throws Exception {
+                final RolledUpUsageSqlDao transactional = entitySqlDao.become(RolledUpUsageSqlDao.class);
+
+                // Lock the compaction state, to make sure only one node compacts at a time
+                if (transactional.getCompactionStateForUpdate() == null) {
+                    transactional.createCompactionState(now.toDate());
+                    transactional.getCompactionStateForUpdate();
+                }
+
+                final List<RolledUpUsageModelDao> rowsToCompact = transactional.getRowsToCompact((long) batchSize);
+                if (rowsToCompact.isEmpty()) {
+                    return 0;
+                }
+
+                final Collection<RolledUpUsageModelDao> dailyUsages = sumPerDay(rowsToCompact);
+                final int[] updatedRows = transactional.updateDailyUsage(dailyUsages, now.toDate());
+                final List<RolledUpUsageModelDao> newDailyUsages = new LinkedList<RolledUpUsageModelDao>();
+                int i = 0;
+                for (final RolledUpUsageModelDao dailyUsage : dailyUsages) {
+                    if (updatedRows[i++] == 0) {
+                        newDailyUsages.add(dailyUsage);
+                    }
+                }
+                if (!newDailyUsages.isEmpty()) {
+                    transactional.createDailyUsage(newDailyUsages, now.toDate());
+                }
+
+                // Flag exactly the rows which were summed above
+                final List<Long> recordIds = new ArrayList<Long>(rowsToCompact.size());
+                for (final RolledUpUsageModelDao rowToCompact : rowsToCompact) {
+                    recordIds.add(rowToCompact.getRecordId());
+                }
+                final int[] markedRows = transactional.markCompacted(recordIds);
+                for (int j = 0; j < markedRows.length; j++) {
+                    if (markedRows[j] != 1) {
+                        // Should never happen as the compaction state is locked, but don't count the row twice
+                        throw new IllegalStateException("Usage row recordId=" + recordIds.get(j) + " was already compacted");
+                    }
+                }
+
+                transactional.updateCompactionState(now.toDate());
+                return rowsToCompact.size();
+            }
+        });
+    }
+
+    private Collection<RolledUpUsageModelDao> sumPerDay(final Iterable<RolledUpUsageModelDao> rows) {
+        // Same key as the unique index on the daily aggregates
+        final Map<String, RolledUpUsageModelDao> dailyUsages = new LinkedHashMap<String, RolledUpUsageModelDao>();
+        for (final RolledUpUsageModelDao row : rows) {
+            final String key = row.getSubscriptionId() + "|" + row.getUnitType() + "|" + row.getRecordDate();
+            final RolledUpUsageModelDao dailyUsage = dailyUsages.get(key);
+            if (dailyUsage == null) {
+                final RolledUpUsageModelDao newDailyUsage = new RolledUpUsageModelDao(row.getSubscriptionId(), row.getUnitType(), row.getRecordDate(), row.getAmount());
+                newDailyUsage.setAccountRecordId(row.getAccountRecordId());
+                newDailyUsage.setTenantRecordId(row.getTenantRecordId());
+                dailyUsages.put(key, newDailyUsage);
+            } else {
+                dailyUsage.setAmount(dailyUsage.getAmount() + row.getAmount());
+            }
+        }
+        return dailyUsages.values();
+    }
 }
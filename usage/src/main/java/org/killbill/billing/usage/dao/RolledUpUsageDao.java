@@ -19,6 +19,7 @@ package org.killbill.billing.usage.dao;
 import java.util.List;
 import java.util.UUID;
 
+import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
@@ -28,7 +29,37 @@ public interface RolledUpUsageDao {
     void record(UUID subscriptionId, String unitType, LocalDate date,
                 Long amount, InternalCallContext context);
 
+    /**
+     * Record many usage rows for the same subscription, using JDBC batches (one transaction per chunk)
+     *
+     * @param rolledUpUsages usage rows to persist
+     * @param context        call context, associated with the subscription
+     * @return the number of rows persisted
+     */
+    int record(Iterable<RolledUpUsageModelDao> rolledUpUsages, InternalCallContext context);
+
     List<RolledUpUsageModelDao> getUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, String unitType, InternalTenantContext context);
 
     List<RolledUpUsageModelDao> getAllUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, InternalTenantContext context);
+
+    /**
+     * Retrieve the usage for a subscription, pre-summed per unit type and record date
+     */
+    List<RolledUpUsageModelDao> getAggregatedUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, InternalTenantContext context);
+
+    /**
+     * Retrieve the usage for all the subscriptions of the account, pre-summed per subscription, unit type and record date
+     */
+    List<RolledUpUsageModelDao> getAggregatedUsageForAccount(LocalDate startDate, LocalDate endDate, InternalTenantContext context);
+
+    /**
+     * Fold the next batch of raw usage rows into the daily aggregates (cross-tenants)
+     *
+     * Compacted rows are flagged individually: rows committed after a run, even with a lower record id, are picked up by the next one.
+     *
+     * @param batchSize maximum number of raw rows to compact
+     * @param now       current time
+     * @return the number of raw rows compacted (0 if there was nothing to compact)
+     */
+    int compact(int batchSize, DateTime now);
 }
@@ -28,6 +28,7 @@ import org.killbill.billing.util.entity.dao.EntitySqlDao;
 import org.killbill.billing.util.entity.dao.EntitySqlDaoStringTemplate;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.BindBean;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 
@@ -38,6 +39,10 @@ public interface RolledUpUsageSqlDao extends EntitySqlDao<RolledUpUsageModelDao,
     public void create(@BindBean RolledUpUsageModelDao rolledUpUsage,
                        @InternalTenantContextBinder final InternalCallContext context);
 
+    @SqlBatch
+    public void batchCreate(@BindBean Iterable<RolledUpUsageModelDao> rolledUpUsages,
+                            @InternalTenantContextBinder final InternalCallContext context);
+
     @SqlQuery
     public List<RolledUpUsageModelDao> getUsageForSubscription(@Bind("subscriptionId") final UUID subscriptionId,
                                                                @Bind("startDate") final Date startDate,
@@ -50,4 +55,38 @@ public interface RolledUpUsageSqlDao extends EntitySqlDao<RolledUpUsageModelDao,
                                                                   @Bind("startDate") final Date startDate,
                                                                   @Bind("endDate") final Date endDate,
                                                                   @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlQuery
+    public List<RolledUpUsageModelDao> getAggregatedUsageForSubscription(@Bind("subscriptionId") final UUID subscriptionId,
+                                                                         @Bind("startDate") final Date startDate,
+                                                                         @Bind("endDate") final Date endDate,
+                                                                         @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlQuery
+    public List<RolledUpUsageModelDao> getAggregatedUsageForAccount(@Bind("startDate") final Date startDate,
+                                                                    @Bind("endDate") final Date endDate,
+                                                                    @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlQuery
+    public Long getCompactionStateForUpdate();
+
+    @SqlUpdate
+    public void createCompactionState(@Bind("updatedDate") final Date updatedDate);
+
+    @SqlUpdate
+    public void updateCompactionState(@Bind("updatedDate") final Date updatedDate);
+
+    @SqlQuery
+    public List<RolledUpUsageModelDao> getRowsToCompact(@Bind("rowCount") final Long rowCount);
+
+    @SqlBatch
+    public int[] markCompacted(@Bind("recordId") final Iterable<Long> recordIds);
+
+    @SqlBatch
+    public int[] updateDailyUsage(@BindBean final Iterable<RolledUpUsageModelDao> dailyUsages,
+                                  @Bind("compactionDate") final Date compactionDate);
+
+    @SqlBatch
+    public void createDailyUsage(@BindBean final Iterable<RolledUpUsageModelDao> dailyUsages,
+                                 @Bind("compactionDate") final Date compactionDate);
 }
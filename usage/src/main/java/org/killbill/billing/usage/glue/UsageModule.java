@@ -18,19 +18,39 @@
 
 package org.killbill.billing.usage.glue;
 
+import java.util.concurrent.ScheduledExecutorService;
+
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.usage.DefaultUsageService;
+import org.killbill.billing.usage.UsageInternalApi;
+import org.killbill.billing.usage.api.BulkUsageUserApi;
+import org.killbill.billing.usage.api.UsageService;
 import org.killbill.billing.usage.api.UsageUserApi;
+import org.killbill.billing.usage.api.svcs.DefaultUsageInternalApi;
+import org.killbill.billing.usage.api.user.DefaultBulkUsageUserApi;
 import org.killbill.billing.usage.api.user.DefaultUsageUserApi;
+import org.killbill.billing.usage.compaction.UsageCompactor;
 import org.killbill.billing.usage.dao.DefaultRolledUpUsageDao;
 import org.killbill.billing.usage.dao.RolledUpUsageDao;
+import org.killbill.billing.util.config.UsageConfig;
 import org.killbill.billing.util.glue.KillBillModule;
+import org.skife.config.ConfigurationObjectFactory;
+
+import com.google.inject.name.Names;
 
 public class UsageModule extends KillBillModule {
 
+    public static final String COMPACTION_EXECUTOR_NAMED = "UsageCompactionExecutor";
+
     public UsageModule(final KillbillConfigSource configSource) {
         super(configSource);
     }
 
+    protected void installConfig() {
+        final UsageConfig config = new ConfigurationObjectFactory(skifeConfigSource).build(UsageConfig.class);
+        bind(UsageConfig.class).toInstance(config);
+    }
+
     protected void installRolledUpUsageDao() {
         bind(RolledUpUsageDao.class).to(DefaultRolledUpUsageDao.class).asEagerSingleton();
     }
@@ -39,9 +59,33 @@ public class UsageModule extends KillBillModule {
         bind(UsageUserApi.class).to(DefaultUsageUserApi.class).asEagerSingleton();
     }
 
+    protected void installBulkUsageUserApi() {
+        bind(BulkUsageUserApi.class).to(DefaultBulkUsageUserApi.class).asEagerSingleton();
+    }
+
+    protected void installUsageInternalApi() {
+        bind(UsageInternalApi.class).to(DefaultUsageInternalApi.class).asEagerSingleton();
+    }
+
+    protected void installUsageCompactor() {
+        final ScheduledExecutorService compactionExecutor = org.killbill.commons.concurrent.Executors.newSingleThreadScheduledExecutor("UsageCompactor");
+        bind(ScheduledExecutorService.class).annotatedWith(Names.named(COMPACTION_EXECUTOR_NAMED)).toInstance(compactionExecutor);
+
+        bind(UsageCompactor.class).asEagerSingleton();
+    }
+
+    protected void installUsageService() {
+        bind(UsageService.class).to(DefaultUsageService.class).asEagerSingleton();
+    }
+
     @Override
     protected void configure() {
+        installConfig();
         installRolledUpUsageDao();
         installUsageUserApi();
+        installBulkUsageUserApi();
+        installUsageInternalApi();
+        installUsageCompactor();
+        installUsageService();
     }
 }
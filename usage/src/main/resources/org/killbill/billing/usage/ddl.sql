@@ -8,6 +8,7 @@ CREATE TABLE rolled_up_usage (
     unit_type varchar(50),
     record_date date NOT NULL,
     amount bigint NOT NULL,
+    compacted bool NOT NULL DEFAULT false,
     created_by varchar(50) NOT NULL,
     created_date datetime NOT NULL,
     account_record_id int(11) unsigned default null,
@@ -17,3 +18,28 @@ CREATE TABLE rolled_up_usage (
 CREATE UNIQUE INDEX rolled_up_usage_id ON rolled_up_usage(id);
 CREATE INDEX rolled_up_usage_subscription_id ON rolled_up_usage(subscription_id ASC);
 CREATE INDEX rolled_up_usage_tenant_account_record_id ON rolled_up_usage(tenant_record_id, account_record_id);
+CREATE INDEX rolled_up_usage_account_record_id_record_date ON rolled_up_usage(account_record_id, record_date);
+CREATE INDEX rolled_up_usage_compacted_record_id ON rolled_up_usage(compacted, record_id);
+
+DROP TABLE IF EXISTS rolled_up_usage_daily;
+CREATE TABLE rolled_up_usage_daily (
+    record_id int(11) unsigned NOT NULL AUTO_INCREMENT,
+    subscription_id char(36) NOT NULL,
+    unit_type varchar(50) NOT NULL,
+    record_date date NOT NULL,
+    amount bigint NOT NULL,
+    updated_date datetime NOT NULL,
+    account_record_id int(11) unsigned default null,
+    tenant_record_id int(11) unsigned default null,
+    PRIMARY KEY(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE UNIQUE INDEX rolled_up_usage_daily_subscription_unit_date ON rolled_up_usage_daily(subscription_id, unit_type, record_date);
+CREATE INDEX rolled_up_usage_daily_tenant_account_record_id ON rolled_up_usage_daily(tenant_record_id, account_record_id);
+CREATE INDEX rolled_up_usage_daily_account_record_id_record_date ON rolled_up_usage_daily(account_record_id, record_date);
+
+DROP TABLE IF EXISTS rolled_up_usage_compaction;
+CREATE TABLE rolled_up_usage_compaction (
+    record_id int(11) unsigned NOT NULL AUTO_INCREMENT,
+    updated_date datetime NOT NULL,
+    PRIMARY KEY(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.usage.api.user;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.usage.UsageTestSuiteNoDB;
+import org.killbill.billing.usage.api.SubscriptionUsageRecord;
+import org.killbill.billing.usage.api.SubscriptionUsageRecordResult;
+import org.killbill.billing.usage.api.UnitUsageRecord;
+import org.killbill.billing.usage.api.UsageRecord;
+import org.killbill.billing.usage.dao.RolledUpUsageDao;
+import org.killbill.billing.usage.dao.RolledUpUsageModelDao;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestDefaultBulkUsageUserApi extends UsageTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testPartialFailuresAndOrdering() {
+        final UUID knownSubscriptionId = UUID.randomUUID();
+        final UUID failingSubscriptionId = UUID.randomUUID();
+        final UUID unknownSubscriptionId = UUID.randomUUID();
+
+        final InternalCallContext knownContext = Mockito.mock(InternalCallContext.class);
+        Mockito.when(knownContext.getAccountRecordId()).thenReturn(1L);
+        final InternalCallContext failingContext = Mockito.mock(InternalCallContext.class);
+        Mockito.when(failingContext.getAccountRecordId()).thenReturn(2L);
+        final InternalCallContext unknownContext = Mockito.mock(InternalCallContext.class);
+
+        final InternalCallContextFactory internalCallContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(internalCallContextFactory.createInternalCallContext(Mockito.eq(knownSubscriptionId), Mockito.eq(ObjectType.SUBSCRIPTION), Mockito.<CallContext>any())).thenReturn(knownContext);
+        Mockito.when(internalCallContextFactory.createInternalCallContext(Mockito.eq(failingSubscriptionId), Mockito.eq(ObjectType.SUBSCRIPTION), Mockito.<CallContext>any())).thenReturn(failingContext);
+        Mockito.when(internalCallContextFactory.createInternalCallContext(Mockito.eq(unknownSubscriptionId), Mockito.eq(ObjectType.SUBSCRIPTION), Mockito.<CallContext>any())).thenReturn(unknownContext);
+
+        final RolledUpUsageDao rolledUpUsageDao = Mockito.mock(RolledUpUsageDao.class);
+        Mockito.when(rolledUpUsageDao.record(Mockito.<Iterable<RolledUpUsageModelDao>>any(), Mockito.eq(knownContext))).thenReturn(2);
+        Mockito.when(rolledUpUsageDao.record(Mockito.<Iterable<RolledUpUsageModelDao>>any(), Mockito.eq(failingContext))).thenThrow(new IllegalStateException("Database failure"));
+
+        final DefaultBulkUsageUserApi bulkUsageUserApi = new DefaultBulkUsageUserApi(rolledUpUsageDao, internalCallContextFactory);
+        final List<SubscriptionUsageRecordResult> results = bulkUsageUserApi.recordRolledUpUsage(ImmutableList.<SubscriptionUsageRecord>of(createRecord(knownSubscriptionId, "tracks", 2),
+                                                                                                                                             createRecord(failingSubscriptionId, "tracks", 1),
+                                                                                                                                             createRecord(unknownSubscriptionId, "tracks", 1),
+                                                                                                                                             createRecord(knownSubscriptionId, null, 1),
+                                                                                                                                             createRecord(knownSubscriptionId, "minutes", 2)),
+                                                                                                     callContext);
+
+        // One result per record, in the order of the records
+        assertEquals(results.size(), 5);
+
+        assertEquals(results.get(0).getSubscriptionId(), knownSubscriptionId);
+        assertTrue(results.get(0).isSuccess());
+        assertNull(results.get(0).getErrorMessage());
+        assertEquals(results.get(0).getNbRecordedRows(), 2);
+
+        assertEquals(results.get(1).getSubscriptionId(), failingSubscriptionId);
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(results.get(1).getErrorMessage(), "Database failure");
+        assertEquals(results.get(1).getNbRecordedRows(), 0);
+
+        assertEquals(results.get(2).getSubscriptionId(), unknownSubscriptionId);
+        assertFalse(results.get(2).isSuccess());
+        assertEquals(results.get(2).getErrorMessage(), "Unknown subscription " + unknownSubscriptionId);
+
+        assertEquals(results.get(3).getSubscriptionId(), knownSubscriptionId);
+        assertFalse(results.get(3).isSuccess());
+        assertEquals(results.get(3).getErrorMessage(), "unitType needs to be set");
+
+        assertEquals(results.get(4).getSubscriptionId(), knownSubscriptionId);
+        assertTrue(results.get(4).isSuccess());
+        assertEquals(results.get(4).getNbRecordedRows(), 2);
+
+        // The context of each subscription is only resolved once
+        Mockito.verify(internalCallContextFactory, Mockito.times(1)).createInternalCallContext(Mockito.eq(knownSubscriptionId), Mockito.eq(ObjectType.SUBSCRIPTION), Mockito.<CallContext>any());
+        Mockito.verify(rolledUpUsageDao, Mockito.never()).record(Mockito.<Iterable<RolledUpUsageModelDao>>any(), Mockito.eq(unknownContext));
+    }
+
+    private SubscriptionUsageRecord createRecord(final UUID subscriptionId, final String unitType, final int nbDays) {
+        final ImmutableList.Builder<UsageRecord> usageRecords = ImmutableList.<UsageRecord>builder();
+        for (int i = 0; i < nbDays; i++) {
+            usageRecords.add(new UsageRecord(new LocalDate(2014, 3, 1 + i), 10L));
+        }
+        final List<UnitUsageRecord> unitUsageRecords = ImmutableList.<UnitUsageRecord>of(new UnitUsageRecord(unitType, usageRecords.build()));
+        return new SubscriptionUsageRecord(subscriptionId, unitUsageRecords);
+    }
+}
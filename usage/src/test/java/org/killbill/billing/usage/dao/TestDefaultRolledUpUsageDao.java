@@ -16,15 +16,18 @@
 
 package org.killbill.billing.usage.dao;
 
+import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 
 import org.joda.time.LocalDate;
 import org.killbill.billing.usage.UsageTestSuiteWithEmbeddedDB;
+import org.skife.jdbi.v2.Handle;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 public class TestDefaultRolledUpUsageDao extends UsageTestSuiteWithEmbeddedDB {
 
@@ -89,7 +92,161 @@ public class TestDefaultRolledUpUsageDao extends UsageTestSuiteWithEmbeddedDB {
         assertEquals(result.get(2).getAmount().compareTo(amount3), 0);
     }
 
+    @Test(groups = "slow")
+    public void testAggregatedUsage() {
+        final UUID subscriptionId = UUID.randomUUID();
+        final String unitType1 = "foo";
+        final String unitType2 = "bar";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate endDate = new LocalDate(2013, 2, 1);
+
+        rolledUpUsageDao.record(subscriptionId, unitType1, startDate, 10L, internalCallContext);
+        rolledUpUsageDao.record(subscriptionId, unitType1, startDate, 5L, internalCallContext);
+        rolledUpUsageDao.record(subscriptionId, unitType2, startDate, 7L, internalCallContext);
+        rolledUpUsageDao.record(subscriptionId, unitType1, startDate.plusDays(1), 3L, internalCallContext);
+        // Outside of the range
+        rolledUpUsageDao.record(subscriptionId, unitType1, endDate, 100L, internalCallContext);
+
+        final List<RolledUpUsageModelDao> result = rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId, startDate, endDate, internalCallContext);
+        assertEquals(result.size(), 3);
+        assertEquals(result.get(0).getRecordDate().compareTo(startDate), 0);
+        assertEquals(result.get(0).getUnitType(), unitType2);
+        assertEquals(result.get(0).getAmount().compareTo(7L), 0);
+        assertEquals(result.get(1).getRecordDate().compareTo(startDate), 0);
+        assertEquals(result.get(1).getUnitType(), unitType1);
+        assertEquals(result.get(1).getAmount().compareTo(15L), 0);
+        assertEquals(result.get(2).getRecordDate().compareTo(startDate.plusDays(1)), 0);
+        assertEquals(result.get(2).getUnitType(), unitType1);
+        assertEquals(result.get(2).getAmount().compareTo(3L), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testAggregatedUsageForAccount() {
+        final UUID subscriptionId1 = UUID.randomUUID();
+        final UUID subscriptionId2 = UUID.randomUUID();
+        final String unitType = "foo";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate endDate = new LocalDate(2013, 2, 1);
+
+        rolledUpUsageDao.record(subscriptionId1, unitType, startDate, 10L, internalCallContext);
+        rolledUpUsageDao.record(subscriptionId1, unitType, startDate, 5L, internalCallContext);
+        rolledUpUsageDao.record(subscriptionId2, unitType, startDate.plusDays(1), 3L, internalCallContext);
+        // Outside of the range
+        rolledUpUsageDao.record(subscriptionId2, unitType, endDate, 100L, internalCallContext);
+
+        final List<RolledUpUsageModelDao> result = rolledUpUsageDao.getAggregatedUsageForAccount(startDate, endDate, internalCallContext);
+        assertEquals(result.size(), 2);
+        assertEquals(result.get(0).getSubscriptionId(), subscriptionId1);
+        assertEquals(result.get(0).getRecordDate().compareTo(startDate), 0);
+        assertEquals(result.get(0).getAmount().compareTo(15L), 0);
+        assertEquals(result.get(1).getSubscriptionId(), subscriptionId2);
+        assertEquals(result.get(1).getRecordDate().compareTo(startDate.plusDays(1)), 0);
+        assertEquals(result.get(1).getAmount().compareTo(3L), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testAggregatedUsageWithCompaction() {
+        final UUID subscriptionId = UUID.randomUUID();
+        final String unitType = "foo";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate endDate = new LocalDate(2013, 2, 1);
+
+        rolledUpUsageDao.record(subscriptionId, unitType, startDate, 10L, internalCallContext);
+        rolledUpUsageDao.record(subscriptionId, unitType, startDate, 5L, internalCallContext);
 
+        // Compact everything
+        while (rolledUpUsageDao.compact(1, clock.getUTCNow()) > 0) {
+        }
+
+        // Not compacted yet
+        rolledUpUsageDao.record(subscriptionId, unitType, startDate, 3L, internalCallContext);
+        rolledUpUsageDao.record(subscriptionId, unitType, startDate.plusDays(1), 7L, internalCallContext);
+
+        final List<RolledUpUsageModelDao> result = rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId, startDate, endDate, internalCallContext);
+        assertEquals(result.size(), 2);
+        assertEquals(result.get(0).getRecordDate().compareTo(startDate), 0);
+        assertEquals(result.get(0).getAmount().compareTo(18L), 0);
+        assertEquals(result.get(1).getRecordDate().compareTo(startDate.plusDays(1)), 0);
+        assertEquals(result.get(1).getAmount().compareTo(7L), 0);
+
+        // Compacting the remaining rows should not change the result
+        assertTrue(rolledUpUsageDao.compact(100, clock.getUTCNow()) > 0);
+        final List<RolledUpUsageModelDao> resultAfterCompaction = rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId, startDate, endDate, internalCallContext);
+        assertEquals(resultAfterCompaction.size(), 2);
+        assertEquals(resultAfterCompaction.get(0).getAmount().compareTo(18L), 0);
+        assertEquals(resultAfterCompaction.get(1).getAmount().compareTo(7L), 0);
+
+        // Nothing left to compact
+        assertEquals(rolledUpUsageDao.compact(100, clock.getUTCNow()), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testCompactionWithLateCommit() {
+        final UUID subscriptionId = UUID.randomUUID();
+        final String unitType = "foo";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate endDate = new LocalDate(2013, 2, 1);
+
+        // In-flight transaction: its record id is allocated before the rows recorded below, but it commits after the compaction
+        final Handle handle = dbi.open();
+        try {
+            handle.begin();
+            handle.execute("insert into rolled_up_usage (id, subscription_id, unit_type, record_date, amount, created_by, created_date, account_record_id, tenant_record_id) values (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                           UUID.randomUUID().toString(), subscriptionId.toString(), unitType, startDate.toDate(), 4L, "test", clock.getUTCNow().toDate(),
+                           internalCallContext.getAccountRecordId(), internalCallContext.getTenantRecordId());
+
+            rolledUpUsageDao.record(subscriptionId, unitType, startDate, 10L, internalCallContext);
+            rolledUpUsageDao.record(subscriptionId, unitType, startDate, 5L, internalCallContext);
+
+            // Only the committed rows are compacted
+            while (rolledUpUsageDao.compact(100, clock.getUTCNow()) > 0) {
+            }
+            List<RolledUpUsageModelDao> result = rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId, startDate, endDate, internalCallContext);
+            assertEquals(result.size(), 1);
+            assertEquals(result.get(0).getAmount().compareTo(15L), 0);
+
+            handle.commit();
+
+            // The late row is visible right away, from the raw table...
+            result = rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId, startDate, endDate, internalCallContext);
+            assertEquals(result.size(), 1);
+            assertEquals(result.get(0).getAmount().compareTo(19L), 0);
+        } finally {
+            handle.close();
+        }
+
+        // ...and is folded into the daily aggregates by the next run, even though its record id is lower
+        assertEquals(rolledUpUsageDao.compact(100, clock.getUTCNow()), 1);
+        final List<RolledUpUsageModelDao> resultAfterCompaction = rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId, startDate, endDate, internalCallContext);
+        assertEquals(resultAfterCompaction.size(), 1);
+        assertEquals(resultAfterCompaction.get(0).getAmount().compareTo(19L), 0);
+        assertEquals(rolledUpUsageDao.compact(100, clock.getUTCNow()), 0);
+    }
+
+    @Test(groups = "slow")
+    public void testBatchRecord() {
+        final UUID subscriptionId = UUID.randomUUID();
+        final String unitType = "foo";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        // Span multiple chunks
+        final int nbDays = DefaultRolledUpUsageDao.BATCH_CHUNK_SIZE + 10;
+
+        final List<RolledUpUsageModelDao> rolledUpUsages = new LinkedList<RolledUpUsageModelDao>();
+        for (int i = 0; i < nbDays; i++) {
+            rolledUpUsages.add(new RolledUpUsageModelDao(subscriptionId, unitType, startDate.plusDays(i), (long) i));
+        }
+
+        final int nbRecorded = rolledUpUsageDao.record(rolledUpUsages, internalCallContext);
+        assertEquals(nbRecorded, nbDays);
+
+        final List<RolledUpUsageModelDao> result = rolledUpUsageDao.getUsageForSubscription(subscriptionId, startDate, startDate.plusDays(nbDays), unitType, internalCallContext);
+        assertEquals(result.size(), nbDays);
+        for (int i = 0; i < nbDays; i++) {
+            assertEquals(result.get(i).getSubscriptionId(), subscriptionId);
+            assertEquals(result.get(i).getRecordDate().compareTo(startDate.plusDays(i)), 0);
+            assertEquals(result.get(i).getAmount().compareTo((long) i), 0);
+        }
+    }
 
     @Test(groups = "slow")
     public void testNoEntries() {
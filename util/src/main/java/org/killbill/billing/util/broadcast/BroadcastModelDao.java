@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.util.broadcast;
+
+import org.joda.time.DateTime;
+
+public class BroadcastModelDao {
+
+    private final Long recordId;
+    private final String eventType;
+    private final String eventKey;
+    private final Long tenantRecordId;
+    private final DateTime createdDate;
+
+    public BroadcastModelDao(final String eventType, final String eventKey, final Long tenantRecordId, final DateTime createdDate) {
+        this(null, eventType, eventKey, tenantRecordId, createdDate);
+    }
+
+    public BroadcastModelDao(final Long recordId, final String eventType, final String eventKey, final Long tenantRecordId, final DateTime createdDate) {
+        this.recordId = recordId;
+        this.eventType = eventType;
+        this.eventKey = eventKey;
+        this.tenantRecordId = tenantRecordId;
+        this.createdDate = createdDate;
+    }
+
+    public Long getRecordId() {
+        return recordId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getEventKey() {
+        return eventKey;
+    }
+
+    public Long getTenantRecordId() {
+        return tenantRecordId;
+    }
+
+    public DateTime getCreatedDate() {
+        return createdDate;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("BroadcastModelDao{");
+        sb.append("recordId=").append(recordId);
+        sb.append(", eventType='").append(eventType).append('\'');
+        sb.append(", eventKey='").append(eventKey).append('\'');
+        sb.append(", tenantRecordId=").append(tenantRecordId);
+        sb.append(", createdDate=").append(createdDate);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.util.broadcast;
+
+import org.killbill.billing.platform.api.KillbillService;
+
+/**
+ * Propagates events to every node, as opposed to the bus which only delivers them to the node which posted them.
+ * <p/>
+ * The events are rows in the broadcasts table, inserted in the transaction of the change (see {@link BroadcastSqlDao})
+ * and polled by each node. The event types are the names of the matching BusInternalEventType.
+ */
+public interface BroadcastService extends KillbillService {
+
+    public void registerListener(String eventType, BroadcastListener listener);
+
+    public void unregisterListener(String eventType, BroadcastListener listener);
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.util.broadcast;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.util.dao.MapperBase;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.BindBean;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+@UseStringTemplate3StatementLocator
+@RegisterMapper(BroadcastSqlDao.BroadcastModelDaoMapper.class)
+public interface BroadcastSqlDao extends Transactional<BroadcastSqlDao> {
+
+    // Use EntitySqlDaoWrapperFactory#transmogrify to insert the event in the transaction of the change
+    @SqlUpdate
+    public void create(@BindBean final BroadcastModelDao broadcast);
+
+    // Polled over a sliding window rather than after the last record_id seen, as entries don't commit in record_id order
+    @SqlQuery
+    public List<BroadcastModelDao> getEntriesCreatedAfter(@Bind("createdAfter") final DateTime createdAfter);
+
+    @SqlUpdate
+    public int deleteEntriesCreatedBefore(@Bind("createdBefore") final DateTime createdBefore);
+
+    public class BroadcastModelDaoMapper extends MapperBase implements ResultSetMapper<BroadcastModelDao> {
+
+        @Override
+        public BroadcastModelDao map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException {
+            final long recordId = r.getLong("record_id");
+            final String eventType = r.getString("event_type");
+            final String eventKey = r.getString("event_key");
+            final long tenantRecordIdValue = r.getLong("tenant_record_id");
+            final Long tenantRecordId = r.wasNull() ? null : tenantRecordIdValue;
+            final DateTime createdDate = getDateTime(r, "created_date");
+            return new BroadcastModelDao(recordId, eventType, eventKey, tenantRecordId, createdDate);
+        }
+    }
+}
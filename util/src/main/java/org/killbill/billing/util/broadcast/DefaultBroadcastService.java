@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.util.broadcast;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.platform.api.LifecycleHandlerType;
+import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
+import org.killbill.billing.util.config.CacheConfig;
+import org.killbill.clock.Clock;
+import org.killbill.commons.concurrent.Executors;
+import org.skife.jdbi.v2.IDBI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+public class DefaultBroadcastService implements BroadcastService {
+
+    public static final String BROADCAST_SERVICE_NAME = "broadcast-service";
+
+    private static final Logger log = LoggerFactory.getLogger(DefaultBroadcastService.class);
+
+    private static final int TERMINATION_TIMEOUT_SEC = 5;
+
+    private final BroadcastSqlDao broadcastSqlDao;
+    private final CacheConfig cacheConfig;
+    private final Clock clock;
+    private final Map<String, List<BroadcastListener>> listeners = new ConcurrentHashMap<String, List<BroadcastListener>>();
+    // Entries of the current window already dispatched, by record id
+    private final Map<Long, DateTime> dispatchedEntries = new HashMap<Long, DateTime>();
+
+    private ScheduledExecutorService pollingExecutor;
+    private DateTime lastPurge;
+
+    @Inject
+    public DefaultBroadcastService(final IDBI dbi, final CacheConfig cacheConfig, final Clock clock) {
+        this.broadcastSqlDao = dbi.onDemand(BroadcastSqlDao.class);
+        this.cacheConfig = cacheConfig;
+        this.clock = clock;
+    }
+
+    @Override
+    public String getName() {
+        return BROADCAST_SERVICE_NAME;
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.INIT_SERVICE)
+    public void initialize() {
+        final long period = cacheConfig.getCacheInvalidationPollingRate().getPeriod();
+        if (period <= 0) {
+            log.info("Broadcast polling is disabled");
+            return;
+        }
+
+        pollingExecutor = Executors.newSingleThreadScheduledExecutor("BroadcastPoller");
+        pollingExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll();
+                } catch (final RuntimeException e) {
+                    // Don't let the exception kill the scheduled task
+                    log.warn("Failed to poll the broadcast events", e);
+                }
+            }
+        }, period, period, cacheConfig.getCacheInvalidationPollingRate().getUnit());
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
+    public void stop() {
+        if (pollingExecutor == null) {
+            return;
+        }
+        try {
+            pollingExecutor.shutdown();
+            final boolean success = pollingExecutor.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS);
+            if (!success) {
+                log.warn("BroadcastPoller failed to complete termination within " + TERMINATION_TIMEOUT_SEC + "sec");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("BroadcastPoller stop sequence got interrupted");
+        } finally {
+            pollingExecutor = null;
+        }
+    }
+
+    @Override
+    public synchronized void registerListener(final String eventType, final BroadcastListener listener) {
+        if (listeners.get(eventType) == null) {
+            listeners.put(eventType, new CopyOnWriteArrayList<BroadcastListener>());
+        }
+        listeners.get(eventType).add(listener);
+    }
+
+    @Override
+    public synchronized void unregisterListener(final String eventType, final BroadcastListener listener) {
+        if (listeners.get(eventType) != null) {
+            listeners.get(eventType).remove(listener);
+        }
+    }
+
+    /**
+     * Dispatch the entries created within the invalidation window which have not been dispatched yet. The window needs to
+     * cover the time between the creation of an entry and its commit, and the clock skew between the nodes.
+     */
+    @VisibleForTesting
+    synchronized void poll() {
+        final DateTime now = clock.getUTCNow();
+        final DateTime windowStart = now.minus(cacheConfig.getCacheInvalidationWindow().getMillis());
+
+        for (final BroadcastModelDao entry : broadcastSqlDao.getEntriesCreatedAfter(windowStart)) {
+            if (dispatchedEntries.put(entry.getRecordId(), entry.getCreatedDate()) != null) {
+                continue;
+            }
+
+            final List<BroadcastListener> eventListeners = listeners.get(entry.getEventType());
+            if (eventListeners == null) {
+                continue;
+            }
+            for (final BroadcastListener listener : eventListeners) {
+                try {
+                    listener.onBroadcast(entry.getEventKey(), entry.getTenantRecordId());
+                } catch (final RuntimeException e) {
+                    log.warn("Failed to dispatch broadcast event " + entry, e);
+                }
+            }
+        }
+
+        final Iterator<DateTime> iterator = dispatchedEntries.values().iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().isAfter(windowStart)) {
+                iterator.remove();
+            }
+        }
+
+        // Every node purges, the entries only need to outlive the window
+        if (lastPurge == null || !lastPurge.isAfter(windowStart)) {
+            broadcastSqlDao.deleteEntriesCreatedBefore(windowStart.minus(cacheConfig.getCacheInvalidationWindow().getMillis()));
+            lastPurge = now;
+        }
+    }
+}
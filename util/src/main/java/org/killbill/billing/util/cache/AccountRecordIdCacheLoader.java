@@ -16,8 +16,6 @@
 
 package org.killbill.billing.util.cache;
 
-import java.util.UUID;
-
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -43,7 +41,7 @@ public class AccountRecordIdCacheLoader extends BaseIdCacheLoader implements Cac
     }
 
     @Override
-    protected Object doRetrieveOperation(final String rawKey, final ObjectType objectType) {
-        return  nonEntityDao.retrieveAccountRecordIdFromObject(UUID.fromString(rawKey), objectType, null);
+    protected Object doRetrieveOperation(final IdCacheKey key, final ObjectType objectType) {
+        return nonEntityDao.retrieveAccountRecordIdFromObject(key.getObjectId(), objectType, null);
     }
 }
@@ -32,27 +32,20 @@ public abstract class BaseIdCacheLoader extends BaseCacheLoader {
     public abstract CacheType getCacheType();
 
 
-    protected abstract Object doRetrieveOperation(final String rawKey, final ObjectType objectType);
+    protected abstract Object doRetrieveOperation(final IdCacheKey key, final ObjectType objectType);
 
     @Override
     public Object load(final Object key, final Object argument) {
         checkCacheLoaderStatus();
 
-        if (!(key instanceof String)) {
+        if (!(key instanceof IdCacheKey)) {
             throw new IllegalArgumentException("Unexpected key type of " + key.getClass().getName());
         }
         if (!(argument instanceof CacheLoaderArgument)) {
             throw new IllegalArgumentException("Unexpected key type of " + argument.getClass().getName());
         }
 
-        final String rawKey;
-        if (getCacheType().isKeyPrefixedWithTableName()) {
-            String [] parts = ((String) key).split(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
-            rawKey = parts[1];
-        } else {
-            rawKey = (String) key;
-        }
         final ObjectType objectType = ((CacheLoaderArgument) argument).getObjectType();
-        return doRetrieveOperation(rawKey, objectType);
+        return doRetrieveOperation((IdCacheKey) key, objectType);
     }
 }
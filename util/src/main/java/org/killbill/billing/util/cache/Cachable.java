@@ -31,6 +31,8 @@ public @interface Cachable {
     public final String OBJECT_ID_CACHE_NAME = "object-id";
     public final String AUDIT_LOG_CACHE_NAME = "audit-log";
     public final String AUDIT_LOG_VIA_HISTORY_CACHE_NAME = "audit-log-via-history";
+    public final String TENANT_KV_CACHE_NAME = "tenant-kv";
+    public final String ACCOUNT_CACHE_NAME = "account";
 
     public CacheType value();
 
@@ -51,7 +53,13 @@ public @interface Cachable {
         AUDIT_LOG(AUDIT_LOG_CACHE_NAME, true),
 
         /* Mapping from object 'tableName::historyTableName::targetRecordId' -> matching objects 'Iterable<AuditLog>' */
-        AUDIT_LOG_VIA_HISTORY(AUDIT_LOG_VIA_HISTORY_CACHE_NAME, true);
+        AUDIT_LOG_VIA_HISTORY(AUDIT_LOG_VIA_HISTORY_CACHE_NAME, true),
+
+        /* Mapping from 'tenantRecordId::tenantKey' -> matching tenant values 'List<String>' */
+        TENANT_KV(TENANT_KV_CACHE_NAME, false),
+
+        /* Mapping from 'tenantRecordId::accountId' -> account snapshot and 'tenantRecordId::key::externalKey' -> account 'id (UUID)' */
+        ACCOUNT(ACCOUNT_CACHE_NAME, false);
 
         private final String cacheName;
         private final boolean isKeyPrefixedWithTableName;
@@ -24,6 +24,9 @@ public interface CacheController<K, V> {
 
     public V get(K key, CacheLoaderArgument objectType);
 
+    // Does not invoke the cache loader: returns null on a miss
+    public V getIfPresent(K key);
+
     public boolean remove(K key);
 
     public int size();
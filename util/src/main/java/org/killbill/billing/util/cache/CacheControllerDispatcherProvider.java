@@ -16,56 +16,21 @@
 
 package org.killbill.billing.util.cache;
 
-import java.util.Collection;
-import java.util.LinkedHashMap;
-import java.util.Map;
-
 import javax.inject.Inject;
 import javax.inject.Provider;
 
-import org.killbill.billing.util.cache.Cachable.CacheType;
-
-import com.google.common.base.Function;
-import com.google.common.collect.Collections2;
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Element;
-import net.sf.ehcache.loader.CacheLoader;
-
-// Build the abstraction layer between EhCache and Kill Bill
+// Build the abstraction layer between the cache backend and Kill Bill
 public class CacheControllerDispatcherProvider implements Provider<CacheControllerDispatcher> {
 
-    private final CacheManager cacheManager;
+    private final CacheControllerProvider cacheControllerProvider;
 
     @Inject
-    public CacheControllerDispatcherProvider(final CacheManager cacheManager) {
-        this.cacheManager = cacheManager;
+    public CacheControllerDispatcherProvider(final CacheControllerProvider cacheControllerProvider) {
+        this.cacheControllerProvider = cacheControllerProvider;
     }
 
     @Override
     public CacheControllerDispatcher get() {
-        final Map<CacheType, CacheController<Object, Object>> cacheControllers = new LinkedHashMap<CacheType, CacheController<Object, Object>>();
-        for (final String cacheName : cacheManager.getCacheNames()) {
-            final CacheType cacheType = CacheType.findByName(cacheName);
-
-            final Collection<EhCacheBasedCacheController<Object, Object>> cacheControllersForCacheName = getCacheControllersForCacheName(cacheName, cacheType);
-            // EhCache supports multiple cache loaders per type, but not Kill Bill - take the first one
-            if (cacheControllersForCacheName.size() > 0) {
-                final EhCacheBasedCacheController<Object, Object> ehCacheBasedCacheController = cacheControllersForCacheName.iterator().next();
-                cacheControllers.put(cacheType, ehCacheBasedCacheController);
-            }
-        }
-        return new CacheControllerDispatcher(cacheControllers);
-    }
-
-    private Collection<EhCacheBasedCacheController<Object, Object>> getCacheControllersForCacheName(final String name, final CacheType cacheType) {
-        final Cache cache = cacheManager.getCache(name);
-        // The CacheLoaders were registered in EhCacheCacheManagerProvider
-        return Collections2.transform(cache.getRegisteredCacheLoaders(), new Function<CacheLoader, EhCacheBasedCacheController<Object, Object>>() {
-            @Override
-            public EhCacheBasedCacheController<Object, Object> apply(final CacheLoader input) {
-                return new EhCacheBasedCacheController<Object, Object>(cache, cacheType);
-            }
-        });
+        return new CacheControllerDispatcher(cacheControllerProvider.getCacheControllers());
     }
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.Map;
+
+import org.killbill.billing.util.cache.Cachable.CacheType;
+
+// SPI between the Kill Bill caches and the library backing them (see CacheModule)
+public interface CacheControllerProvider {
+
+    /**
+     * Build the controllers for the caches which have a registered loader
+     *
+     * @return the controllers, by cache type
+     */
+    public Map<CacheType, CacheController<Object, Object>> getCacheControllers();
+
+    /**
+     * Release the resources of the backend (e.g. threads), once the caches aren't used anymore
+     */
+    public void close();
+}
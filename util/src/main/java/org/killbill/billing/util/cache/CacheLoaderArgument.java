@@ -16,6 +16,9 @@
 
 package org.killbill.billing.util.cache;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import javax.annotation.Nullable;
 
 import org.killbill.billing.ObjectType;
@@ -23,12 +26,23 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 
 public class CacheLoaderArgument {
 
+    private static final Object[] NO_ARGS = new Object[]{};
+
+    // The id caches only need the object type: share the arguments instead of allocating them on each lookup
+    private static final Map<ObjectType, CacheLoaderArgument> OBJECT_TYPE_ARGUMENTS = new EnumMap<ObjectType, CacheLoaderArgument>(ObjectType.class);
+
+    static {
+        for (final ObjectType objectType : ObjectType.values()) {
+            OBJECT_TYPE_ARGUMENTS.put(objectType, new CacheLoaderArgument(objectType));
+        }
+    }
+
     private final ObjectType objectType;
     private final Object[] args;
     private final InternalTenantContext internalTenantContext;
 
     public CacheLoaderArgument(final ObjectType objectType) {
-        this(objectType, new Object[]{}, null);
+        this(objectType, NO_ARGS, null);
     }
 
     public CacheLoaderArgument(final ObjectType objectType, final Object[] args, @Nullable final InternalTenantContext internalTenantContext) {
@@ -37,6 +51,10 @@ public class CacheLoaderArgument {
         this.internalTenantContext = internalTenantContext;
     }
 
+    public static CacheLoaderArgument forObjectType(final ObjectType objectType) {
+        return OBJECT_TYPE_ARGUMENTS.get(objectType);
+    }
+
     public ObjectType getObjectType() {
         return objectType;
     }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.util.cache;
+
+import javax.inject.Inject;
+
+import org.killbill.billing.platform.api.LifecycleHandlerType;
+import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
+
+public class DefaultCacheService implements CacheService {
+
+    public static final String CACHE_SERVICE_NAME = "cache-service";
+
+    private final CacheControllerProvider cacheControllerProvider;
+
+    @Inject
+    public DefaultCacheService(final CacheControllerProvider cacheControllerProvider) {
+        this.cacheControllerProvider = cacheControllerProvider;
+    }
+
+    @Override
+    public String getName() {
+        return CACHE_SERVICE_NAME;
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
+    public void stop() {
+        cacheControllerProvider.close();
+    }
+}
@@ -45,6 +45,15 @@ public class EhCacheBasedCacheController<K, V> implements CacheController<K, V>
         return (V) element.getObjectValue();
     }
 
+    @Override
+    public V getIfPresent(final K key) {
+        final Element element = cache.get(key);
+        if (element == null) {
+            return null;
+        }
+        return (V) element.getObjectValue();
+    }
+
     @Override
     public boolean remove(final K key) {
         return cache.remove(key);
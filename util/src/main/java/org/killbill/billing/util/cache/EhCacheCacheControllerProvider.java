@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.killbill.billing.util.cache.Cachable.CacheType;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Collections2;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.loader.CacheLoader;
+
+// Default backend: the caches are the EhCache ones, as configured in ehcache.xml
+public class EhCacheCacheControllerProvider implements CacheControllerProvider {
+
+    private final CacheManager cacheManager;
+
+    @Inject
+    public EhCacheCacheControllerProvider(final CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public Map<CacheType, CacheController<Object, Object>> getCacheControllers() {
+        final Map<CacheType, CacheController<Object, Object>> cacheControllers = new LinkedHashMap<CacheType, CacheController<Object, Object>>();
+        for (final String cacheName : cacheManager.getCacheNames()) {
+            final CacheType cacheType = CacheType.findByName(cacheName);
+
+            final Collection<EhCacheBasedCacheController<Object, Object>> cacheControllersForCacheName = getCacheControllersForCacheName(cacheName, cacheType);
+            // EhCache supports multiple cache loaders per type, but not Kill Bill - take the first one
+            if (cacheControllersForCacheName.size() > 0) {
+                final EhCacheBasedCacheController<Object, Object> ehCacheBasedCacheController = cacheControllersForCacheName.iterator().next();
+                cacheControllers.put(cacheType, ehCacheBasedCacheController);
+            }
+        }
+        return cacheControllers;
+    }
+
+    @Override
+    public void close() {
+        // The CacheManager is shared with Shiro
+    }
+
+    private Collection<EhCacheBasedCacheController<Object, Object>> getCacheControllersForCacheName(final String name, final CacheType cacheType) {
+        final Cache cache = cacheManager.getCache(name);
+        // The CacheLoaders were registered in EhCacheCacheManagerProvider
+        return Collections2.transform(cache.getRegisteredCacheLoaders(), new Function<CacheLoader, EhCacheBasedCacheController<Object, Object>>() {
+            @Override
+            public EhCacheBasedCacheController<Object, Object> apply(final CacheLoader input) {
+                return new EhCacheBasedCacheController<Object, Object>(cache, cacheType);
+            }
+        });
+    }
+}
@@ -45,7 +45,9 @@ public class EhCacheCacheManagerProvider implements Provider<CacheManager> {
                                        final TenantRecordIdCacheLoader tenantRecordIdCacheLoader,
                                        final ObjectIdCacheLoader objectIdCacheLoader,
                                        final AuditLogCacheLoader auditLogCacheLoader,
-                                       final AuditLogViaHistoryCacheLoader auditLogViaHistoryCacheLoader) {
+                                       final AuditLogViaHistoryCacheLoader auditLogViaHistoryCacheLoader,
+                                       final TenantKVCacheLoader tenantKVCacheLoader,
+                                       final AccountCacheLoader accountCacheLoader) {
         this.cacheConfig = cacheConfig;
         cacheLoaders.add(recordIdCacheLoader);
         cacheLoaders.add(accountRecordIdCacheLoader);
@@ -53,6 +55,8 @@ public class EhCacheCacheManagerProvider implements Provider<CacheManager> {
         cacheLoaders.add(objectIdCacheLoader);
         cacheLoaders.add(auditLogCacheLoader);
         cacheLoaders.add(auditLogViaHistoryCacheLoader);
+        cacheLoaders.add(tenantKVCacheLoader);
+        cacheLoaders.add(accountCacheLoader);
     }
 
     @Override
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.util.cache.Cachable.CacheType;
+
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * On-heap cache, backed by a Guava cache.
+ * <p/>
+ * Lookups don't take a global lock and concurrent misses on the same key trigger a single load. Each entry weighs 1, plus the size
+ * of the value for collections (e.g. audit logs), and the least recently used entries are evicted above the maximum weight.
+ * When a refresh interval is set, an entry older than that interval is reloaded in the background on its next read, while the
+ * current value keeps being served by the refresh executor (only required in that case): hot entries don't cause a synchronous miss.
+ */
+public class GuavaCacheBasedCacheController<K, V> implements CacheController<K, V> {
+
+    private final LoadingCache<K, CacheEntry> cache;
+    private final net.sf.ehcache.loader.CacheLoader cacheLoader;
+    private final CacheType cacheType;
+
+    public GuavaCacheBasedCacheController(final CacheType cacheType,
+                                          final net.sf.ehcache.loader.CacheLoader cacheLoader,
+                                          final long maximumWeight,
+                                          final long timeToLiveSeconds,
+                                          final long timeToIdleSeconds,
+                                          final long refreshAfterWriteSeconds,
+                                          @Nullable final Executor refreshExecutor,
+                                          final Ticker ticker) {
+        this.cacheType = cacheType;
+        this.cacheLoader = cacheLoader;
+
+        // A value of 0 means no limit, as in ehcache.xml
+        final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder()
+                                                                      .ticker(ticker)
+                                                                      .recordStats();
+        if (maximumWeight > 0) {
+            cacheBuilder.maximumWeight(maximumWeight)
+                        .weigher(new Weigher<Object, Object>() {
+                            @Override
+                            public int weigh(final Object key, final Object entry) {
+                                final Object value = ((CacheEntry) entry).getValue();
+                                return value instanceof Collection ? 1 + ((Collection) value).size() : 1;
+                            }
+                        });
+        }
+        if (timeToLiveSeconds > 0) {
+            cacheBuilder.expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS);
+        }
+        if (timeToIdleSeconds > 0) {
+            cacheBuilder.expireAfterAccess(timeToIdleSeconds, TimeUnit.SECONDS);
+        }
+        if (refreshAfterWriteSeconds > 0) {
+            cacheBuilder.refreshAfterWrite(refreshAfterWriteSeconds, TimeUnit.SECONDS);
+        }
+
+        this.cache = cacheBuilder.build(new CacheLoader<K, CacheEntry>() {
+            @Override
+            public CacheEntry load(final K key) {
+                // Entries are always loaded through get(key, cacheLoaderArgument)
+                throw new UnsupportedOperationException("Cache " + cacheType.getCacheName() + " requires a CacheLoaderArgument");
+            }
+
+            @Override
+            public ListenableFuture<CacheEntry> reload(final K key, final CacheEntry oldEntry) {
+                // Entries added directly (see add) cannot be reloaded: keep them until they expire
+                if (oldEntry.getCacheLoaderArgument() == null) {
+                    return Futures.immediateFuture(oldEntry);
+                }
+
+                final ListenableFutureTask<CacheEntry> task = ListenableFutureTask.create(new Callable<CacheEntry>() {
+                    @Override
+                    public CacheEntry call() {
+                        final Object value = GuavaCacheBasedCacheController.this.cacheLoader.load(key, oldEntry.getCacheLoaderArgument());
+                        return value == null ? oldEntry : new CacheEntry(value, oldEntry.getCacheLoaderArgument());
+                    }
+                });
+                refreshExecutor.execute(task);
+                return task;
+            }
+        });
+    }
+
+    @Override
+    public void add(final K key, final V value) {
+        cache.asMap().putIfAbsent(key, new CacheEntry(value, null));
+    }
+
+    @Override
+    public V get(final K key, final CacheLoaderArgument cacheLoaderArgument) {
+        try {
+            final CacheEntry entry = cache.get(key, new Callable<CacheEntry>() {
+                @Override
+                public CacheEntry call() {
+                    final Object value = cacheLoader.load(key, cacheLoaderArgument);
+                    // Returning null tells Guava there is nothing to cache
+                    return value == null ? null : new CacheEntry(value, cacheLoaderArgument);
+                }
+            });
+            return (V) entry.getValue();
+        } catch (final InvalidCacheLoadException e) {
+            return null;
+        } catch (final ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (final UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    @Override
+    public V getIfPresent(final K key) {
+        final CacheEntry entry = cache.getIfPresent(key);
+        return entry == null ? null : (V) entry.getValue();
+    }
+
+    @Override
+    public boolean remove(final K key) {
+        return cache.asMap().remove(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return (int) cache.size();
+    }
+
+    @Override
+    public void removeAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public CacheType getCacheType() {
+        return cacheType;
+    }
+
+    // Hits, misses, load time and evictions since the cache was created
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    private static final class CacheEntry {
+
+        private final Object value;
+        // Required to refresh the entry
+        private final CacheLoaderArgument cacheLoaderArgument;
+
+        private CacheEntry(final Object value, final CacheLoaderArgument cacheLoaderArgument) {
+            this.value = value;
+            this.cacheLoaderArgument = cacheLoaderArgument;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public CacheLoaderArgument getCacheLoaderArgument() {
+            return cacheLoaderArgument;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.config.CacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.loader.CacheLoader;
+
+// On-heap backend: the caches are sized from their ehcache.xml definition, and loaded by the CacheLoaders registered in EhCacheCacheManagerProvider
+public class GuavaCacheControllerProvider implements CacheControllerProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(GuavaCacheControllerProvider.class);
+
+    private static final String REFRESH_THREAD_NAME_FORMAT = "killbill-cache-refresh-%d";
+    private static final int TERMINATION_TIMEOUT_SEC = 5;
+
+    private final CacheManager cacheManager;
+    private final CacheConfig cacheConfig;
+    private final MetricRegistry metricRegistry;
+
+    // Only created if a cache is refreshed, shut down by DefaultCacheService
+    private ExecutorService refreshExecutor;
+
+    @Inject
+    public GuavaCacheControllerProvider(final CacheManager cacheManager, final CacheConfig cacheConfig, final MetricRegistry metricRegistry) {
+        this.cacheManager = cacheManager;
+        this.cacheConfig = cacheConfig;
+        this.metricRegistry = metricRegistry;
+    }
+
+    @Override
+    public synchronized Map<CacheType, CacheController<Object, Object>> getCacheControllers() {
+        final long refreshAfterWriteSeconds = cacheConfig.getCacheRefreshAfterWrite().getMillis() / 1000;
+
+        final Map<CacheType, CacheController<Object, Object>> cacheControllers = new LinkedHashMap<CacheType, CacheController<Object, Object>>();
+        for (final String cacheName : cacheManager.getCacheNames()) {
+            final Cache cache = cacheManager.getCache(cacheName);
+            // EhCache supports multiple cache loaders per type, but not Kill Bill - take the first one
+            final List<CacheLoader> cacheLoaders = cache.getRegisteredCacheLoaders();
+            if (cacheLoaders.isEmpty()) {
+                continue;
+            }
+
+            final CacheType cacheType = CacheType.findByName(cacheName);
+            final CacheConfiguration configuration = cache.getCacheConfiguration();
+            final long timeToLiveSeconds = configuration.isEternal() ? 0 : configuration.getTimeToLiveSeconds();
+            final long timeToIdleSeconds = configuration.isEternal() ? 0 : configuration.getTimeToIdleSeconds();
+            // Entries of caches with a time to live are loaded again once expired: refreshing them in the background
+            // as well would only hit the database for entries about to be evicted
+            final long cacheRefreshAfterWriteSeconds = timeToLiveSeconds > 0 ? 0 : refreshAfterWriteSeconds;
+
+            final GuavaCacheBasedCacheController<Object, Object> cacheController = new GuavaCacheBasedCacheController<Object, Object>(cacheType,
+                                                                                                                                      cacheLoaders.get(0),
+                                                                                                                                      configuration.getMaxEntriesLocalHeap(),
+                                                                                                                                      timeToLiveSeconds,
+                                                                                                                                      timeToIdleSeconds,
+                                                                                                                                      cacheRefreshAfterWriteSeconds,
+                                                                                                                                      cacheRefreshAfterWriteSeconds > 0 ? getRefreshExecutor() : null,
+                                                                                                                                      Ticker.systemTicker());
+            cacheControllers.put(cacheType, cacheController);
+            registerStatsGauges(cacheName, cacheController);
+        }
+        return cacheControllers;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (refreshExecutor == null) {
+            return;
+        }
+        try {
+            refreshExecutor.shutdown();
+            final boolean success = refreshExecutor.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS);
+            if (!success) {
+                log.warn("Cache refresh threads failed to complete termination within " + TERMINATION_TIMEOUT_SEC + "sec");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Cache refresh threads stop sequence got interrupted");
+        } finally {
+            refreshExecutor = null;
+        }
+    }
+
+    // Published as org.killbill.billing.util.cache.GuavaCacheBasedCacheController.<cache name>.<statistic>
+    private void registerStatsGauges(final String cacheName, final GuavaCacheBasedCacheController<Object, Object> cacheController) {
+        registerGauge(cacheName, "size", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return (long) cacheController.size();
+            }
+        });
+        registerGauge(cacheName, "hitCount", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return cacheController.getStats().hitCount();
+            }
+        });
+        registerGauge(cacheName, "missCount", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return cacheController.getStats().missCount();
+            }
+        });
+        registerGauge(cacheName, "evictionCount", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return cacheController.getStats().evictionCount();
+            }
+        });
+        registerGauge(cacheName, "loadExceptionCount", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return cacheController.getStats().loadExceptionCount();
+            }
+        });
+        registerGauge(cacheName, "averageLoadPenaltyNanos", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return cacheController.getStats().averageLoadPenalty();
+            }
+        });
+    }
+
+    private void registerGauge(final String cacheName, final String name, final Gauge<?> gauge) {
+        final String metricName = MetricRegistry.name(GuavaCacheBasedCacheController.class, cacheName, name);
+        // The registry may outlive the caches (e.g. when the injector is re-created in tests)
+        metricRegistry.remove(metricName);
+        metricRegistry.register(metricName, gauge);
+    }
+
+    private ExecutorService getRefreshExecutor() {
+        if (refreshExecutor == null) {
+            refreshExecutor = Executors.newFixedThreadPool(cacheConfig.getCacheRefreshThreads(),
+                                                           new ThreadFactoryBuilder().setNameFormat(REFRESH_THREAD_NAME_FORMAT)
+                                                                                     .setDaemon(true)
+                                                                                     .build());
+        }
+        return refreshExecutor;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.dao.TableName;
+
+/**
+ * Key of the id caches (RECORD_ID, ACCOUNT_RECORD_ID, TENANT_RECORD_ID and OBJECT_ID).
+ * <p/>
+ * These lookups run on every DAO call: the key holds the table ordinal and the raw id, with a precomputed hash, instead of
+ * a "tableName::id" String which would be concatenated, upper cased and parsed back by the loader.
+ */
+public final class IdCacheKey {
+
+    // For caches which are not keyed by table (see CacheType#isKeyPrefixedWithTableName)
+    private static final int NO_TABLE = -1;
+
+    private final int tableOrdinal;
+    // Either the two halves of the object id (UUID), or the record id and 0
+    private final long high;
+    private final long low;
+    private final int hashCode;
+
+    private IdCacheKey(final int tableOrdinal, final long high, final long low) {
+        this.tableOrdinal = tableOrdinal;
+        this.high = high;
+        this.low = low;
+        this.hashCode = computeHashCode(tableOrdinal, high, low);
+    }
+
+    public static IdCacheKey forObjectId(final UUID objectId) {
+        return new IdCacheKey(NO_TABLE, objectId.getMostSignificantBits(), objectId.getLeastSignificantBits());
+    }
+
+    public static IdCacheKey forObjectId(final String objectId) {
+        return forObjectId(UUID.fromString(objectId));
+    }
+
+    public static IdCacheKey forRecordId(final TableName tableName, final Long recordId) {
+        return new IdCacheKey(tableName.ordinal(), recordId, 0L);
+    }
+
+    public static IdCacheKey forCacheType(final CacheType cacheType, final TableName tableName, final Object objectOrRecordId) {
+        if (cacheType.isKeyPrefixedWithTableName()) {
+            return forRecordId(tableName, (Long) objectOrRecordId);
+        } else {
+            return forObjectId((UUID) objectOrRecordId);
+        }
+    }
+
+    public UUID getObjectId() {
+        return new UUID(high, low);
+    }
+
+    public Long getRecordId() {
+        return high;
+    }
+
+    @Nullable
+    public TableName getTableName() {
+        return tableOrdinal == NO_TABLE ? null : TableName.values()[tableOrdinal];
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final IdCacheKey that = (IdCacheKey) o;
+        return hashCode == that.hashCode && tableOrdinal == that.tableOrdinal && high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return tableOrdinal == NO_TABLE ? getObjectId().toString() : getTableName() + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + high;
+    }
+
+    private static int computeHashCode(final int tableOrdinal, final long high, final long low) {
+        int result = tableOrdinal;
+        result = 31 * result + (int) (high ^ (high >>> 32));
+        result = 31 * result + (int) (low ^ (low >>> 32));
+        return result;
+    }
+}
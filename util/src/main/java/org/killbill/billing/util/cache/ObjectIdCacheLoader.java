@@ -42,8 +42,7 @@ public class ObjectIdCacheLoader extends BaseIdCacheLoader implements CacheLoade
     }
 
     @Override
-    protected Object doRetrieveOperation(final String rawKey, final ObjectType objectType) {
-        final Long recordId = Long.valueOf(rawKey);
-        return nonEntityDao.retrieveIdFromObject(recordId, objectType, null);
+    protected Object doRetrieveOperation(final IdCacheKey key, final ObjectType objectType) {
+        return nonEntityDao.retrieveIdFromObject(key.getRecordId(), objectType, null);
     }
 }
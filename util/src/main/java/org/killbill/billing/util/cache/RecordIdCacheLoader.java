@@ -16,8 +16,6 @@
 
 package org.killbill.billing.util.cache;
 
-import java.util.UUID;
-
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -44,7 +42,7 @@ public class RecordIdCacheLoader extends BaseIdCacheLoader implements CacheLoade
     }
 
     @Override
-    protected Object doRetrieveOperation(final String rawKey, final ObjectType objectType) {
-        return nonEntityDao.retrieveRecordIdFromObject(UUID.fromString(rawKey), objectType, null);
+    protected Object doRetrieveOperation(final IdCacheKey key, final ObjectType objectType) {
+        return nonEntityDao.retrieveRecordIdFromObject(key.getObjectId(), objectType, null);
     }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.dao.NonEntityDao;
+import org.skife.jdbi.v2.IDBI;
+
+import net.sf.ehcache.loader.CacheLoader;
+
+@Singleton
+public class TenantKVCacheLoader extends BaseCacheLoader implements CacheLoader {
+
+    @Inject
+    public TenantKVCacheLoader(final IDBI dbi, final NonEntityDao nonEntityDao) {
+        super(dbi, nonEntityDao);
+    }
+
+    @Override
+    public CacheType getCacheType() {
+        return CacheType.TENANT_KV;
+    }
+
+    @Override
+    public Object load(final Object key, final Object argument) {
+        checkCacheLoaderStatus();
+
+        if (!(key instanceof String)) {
+            throw new IllegalArgumentException("Unexpected key type of " + key.getClass().getName());
+        }
+        if (!(argument instanceof CacheLoaderArgument)) {
+            throw new IllegalArgumentException("Unexpected key type of " + argument.getClass().getName());
+        }
+
+        // The tenant_kvs table is owned by the tenant module, which provides the retrieval
+        final Object[] args = ((CacheLoaderArgument) argument).getArgs();
+        final String tenantKey = (String) args[0];
+        final LoaderCallback callback = (LoaderCallback) args[1];
+        final InternalTenantContext internalTenantContext = ((CacheLoaderArgument) argument).getInternalTenantContext();
+
+        return callback.loadTenantValues(tenantKey, internalTenantContext);
+    }
+
+    public interface LoaderCallback {
+
+        public List<String> loadTenantValues(final String tenantKey, final InternalTenantContext context);
+    }
+}
@@ -16,8 +16,6 @@
 
 package org.killbill.billing.util.cache;
 
-import java.util.UUID;
-
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -43,7 +41,7 @@ public class TenantRecordIdCacheLoader extends BaseIdCacheLoader implements Cach
     }
 
     @Override
-    protected Object doRetrieveOperation(final String rawKey, final ObjectType objectType) {
-        return nonEntityDao.retrieveTenantRecordIdFromObject(UUID.fromString(rawKey), objectType, null);
+    protected Object doRetrieveOperation(final IdCacheKey key, final ObjectType objectType) {
+        return nonEntityDao.retrieveTenantRecordIdFromObject(key.getObjectId(), objectType, null);
     }
 }
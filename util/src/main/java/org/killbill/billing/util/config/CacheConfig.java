@@ -19,6 +19,7 @@ package org.killbill.billing.util.config;
 import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 public interface CacheConfig extends KillbillConfig {
 
@@ -27,4 +28,29 @@ public interface CacheConfig extends KillbillConfig {
     @Description("Path to Ehcache XML configuration")
     public String getCacheConfigLocation();
 
+    @Config("org.killbill.cache.provider")
+    @Default("ehcache")
+    @Description("Backend for the Kill Bill caches: ehcache, or guava for an on-heap cache sized from the Ehcache XML configuration")
+    public String getCacheProvider();
+
+    @Config("org.killbill.cache.refreshAfterWrite")
+    @Default("0s")
+    @Description("Age after which an entry is reloaded in the background on its next read, for caches without a time to live (guava provider only, 0s to disable)")
+    public TimeSpan getCacheRefreshAfterWrite();
+
+    @Config("org.killbill.cache.refresh.threads")
+    @Default("2")
+    @Description("Number of threads reloading the cache entries in the background (guava provider only)")
+    public int getCacheRefreshThreads();
+
+    @Config("org.killbill.cache.invalidation.pollingRate")
+    @Default("5s")
+    @Description("Rate at which each node polls the cache invalidations broadcast by the other nodes (0s to disable)")
+    public TimeSpan getCacheInvalidationPollingRate();
+
+    @Config("org.killbill.cache.invalidation.window")
+    @Default("5m")
+    @Description("How far back each poll looks for broadcast cache invalidations: longer than the longest transaction plus the clock skew between the nodes")
+    public TimeSpan getCacheInvalidationWindow();
+
 }
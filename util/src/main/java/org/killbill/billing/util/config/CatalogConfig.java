@@ -18,6 +18,7 @@ package org.killbill.billing.util.config;
 
 import org.skife.config.Config;
 import org.skife.config.Default;
+import org.skife.config.DefaultNull;
 import org.skife.config.Description;
 
 public interface CatalogConfig extends KillbillConfig {
@@ -26,4 +27,9 @@ public interface CatalogConfig extends KillbillConfig {
     @Default("SpyCarBasic.xml")
     @Description("Catalog location. Either in the classpath or in the filesystem")
     String getCatalogURI();
+
+    @Config("org.killbill.catalog.snapshot.path")
+    @DefaultNull
+    @Description("File where the parsed catalog is cached between restarts (disabled if not set)")
+    String getCatalogSnapshotPath();
 }
@@ -19,6 +19,7 @@ package org.killbill.billing.util.config;
 import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 public interface InvoiceConfig extends KillbillConfig {
 
@@ -37,4 +38,49 @@ public interface InvoiceConfig extends KillbillConfig {
     @Description("Whether to insert usage items with a zero amount")
     public boolean isInsertZeroUsageItems();
 
+    @Config("org.killbill.invoice.incremental.enabled")
+    @Default("false")
+    @Description("Whether to only load the invoice items which can overlap the subscription transition being invoiced")
+    public boolean isIncrementalGenerationEnabled();
+
+    @Config("org.killbill.invoice.incremental.verify")
+    @Default("false")
+    @Description("Whether to check incremental invoice generation against the full invoice history (the latter is used on mismatch)")
+    public boolean isIncrementalGenerationVerified();
+
+    @Config("org.killbill.invoice.treeSnapshot.enabled")
+    @Default("false")
+    @Description("Whether to store a snapshot of the invoice item trees, to only apply the new invoice items at the next generation")
+    public boolean isInvoiceTreeSnapshotEnabled();
+
+    @Config("org.killbill.invoice.bulk.threads.nb")
+    @Default("10")
+    @Description("Number of threads used to invoice accounts during bulk invoice runs")
+    public int getBulkInvoiceThreadNb();
+
+    @Config("org.killbill.invoice.bulk.queue.size")
+    @Default("10000")
+    @Description("Maximum number of accounts waiting to be invoiced across all bulk invoice runs (accounts over the limit wait to be scheduled)")
+    public int getBulkInvoiceQueueSize();
+
+    @Config("org.killbill.invoice.balanceLedger.enabled")
+    @Default("true")
+    @Description("Whether to read the account balance and credit from the account balance ledger instead of recomputing them from all invoices")
+    public boolean isAccountBalanceLedgerEnabled();
+
+    @Config("org.killbill.invoice.balanceLedger.reconciliation.enabled")
+    @Default("true")
+    @Description("Whether to periodically verify the account balance ledger against the invoice items and payments, and rebuild the entries which drifted (e.g. after writes bypassing the invoice DAO)")
+    public boolean isAccountBalanceReconciliationEnabled();
+
+    @Config("org.killbill.invoice.balanceLedger.reconciliation.rate")
+    @Default("1d")
+    @Description("Rate at which the account balance reconciliation job runs")
+    public TimeSpan getAccountBalanceReconciliationRate();
+
+    @Config("org.killbill.invoice.balanceLedger.reconciliation.batchSize")
+    @Default("100")
+    @Description("Number of account balance ledger entries verified per batch")
+    public int getAccountBalanceReconciliationBatchSize();
+
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.config;
+
+import java.util.List;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+import org.skife.config.TimeSpan;
+
+public interface PushNotificationConfig extends KillbillConfig {
+
+    @Config("org.killbill.server.notifications.timeout")
+    @Default("15s")
+    @Description("Timeout for each push notification callback")
+    public TimeSpan getTimeout();
+
+    @Config("org.killbill.server.notifications.threads.nb")
+    @Default("4")
+    @Description("Number of threads used to dispatch push notifications (callbacks are completed asynchronously)")
+    public int getDeliveryThreadNb();
+
+    @Config("org.killbill.server.notifications.queue.size")
+    @Default("1000")
+    @Description("Maximum number of push notifications waiting for delivery per tenant (overflow is deferred to the retry queue)")
+    public int getTenantQueueSize();
+
+    @Config("org.killbill.server.notifications.inflight.max")
+    @Default("10")
+    @Description("Maximum number of push notification callbacks in flight per tenant")
+    public int getMaxInFlightPerTenant();
+
+    @Config("org.killbill.server.notifications.coalesce.max")
+    @Default("1")
+    @Description("Maximum number of events sent in a single callback (as a JSON array when greater than one event)")
+    public int getMaxEventsPerCallback();
+
+    @Config("org.killbill.server.notifications.retries")
+    @Default("60,300,900,3600,21600")
+    @Description("Delays in seconds between push notification retries")
+    public List<Integer> getRetryDelaysSec();
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.config;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+import org.skife.config.TimeSpan;
+
+public interface UsageConfig extends KillbillConfig {
+
+    @Config("org.killbill.usage.compaction.enabled")
+    @Default("true")
+    @Description("Whether to periodically fold raw usage rows into the daily aggregates")
+    public boolean isCompactionEnabled();
+
+    @Config("org.killbill.usage.compaction.rate")
+    @Default("1m")
+    @Description("Rate at which the usage compaction job runs")
+    public TimeSpan getCompactionRunningRate();
+
+    @Config("org.killbill.usage.compaction.batchSize")
+    @Default("10000")
+    @Description("Maximum number of raw usage rows compacted per transaction")
+    public int getCompactionBatchSize();
+}
@@ -16,13 +16,18 @@
 
 package org.killbill.billing.util.dao;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 import org.killbill.billing.callcontext.InternalCallContext;
-import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.commons.profiling.Profiling;
 import org.killbill.commons.profiling.Profiling.WithProfilingCallback;
@@ -32,9 +37,15 @@ import org.skife.jdbi.v2.IDBI;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.IdCacheKey;
+
+import com.google.common.collect.Iterables;
 
 public class DefaultNonEntityDao implements NonEntityDao {
 
+    // Bound the size of the IN clause of the bulk lookups
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
     private final NonEntitySqlDao nonEntitySqlDao;
     private final WithCaching<UUID, Long> withCachingObjectId;
     private final WithCaching<Long, UUID> withCachingRecordId;
@@ -95,6 +106,41 @@ public class DefaultNonEntityDao implements NonEntityDao {
         }, objectId, objectType, tableName, cache);
     }
 
+    @Override
+    public Map<UUID, Long> retrieveRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType, @Nullable final CacheController<Object, Object> cache) {
+        final TableName tableName = TableName.fromObjectType(objectType);
+        return retrieveRecordIdsWithCaching(objectIds, tableName, "record_id", cache);
+    }
+
+    @Override
+    public Map<UUID, Long> retrieveAccountRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType, @Nullable final CacheController<Object, Object> cache) {
+        final TableName tableName = TableName.fromObjectType(objectType);
+        switch (tableName) {
+            case TENANT:
+            case TAG_DEFINITIONS:
+            case TAG_DEFINITION_HISTORY:
+                return new HashMap<UUID, Long>();
+
+            case ACCOUNT:
+                return retrieveRecordIdsWithCaching(objectIds, tableName, "record_id", cache);
+
+            default:
+                return retrieveRecordIdsWithCaching(objectIds, tableName, "account_record_id", cache);
+        }
+    }
+
+    @Override
+    public Map<UUID, Long> retrieveTenantRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType, @Nullable final CacheController<Object, Object> cache) {
+        final TableName tableName = TableName.fromObjectType(objectType);
+        switch (tableName) {
+            case TENANT:
+                return retrieveRecordIdsWithCaching(objectIds, tableName, "record_id", cache);
+
+            default:
+                return retrieveRecordIdsWithCaching(objectIds, tableName, "tenant_record_id", cache);
+        }
+    }
+
     @Override
     public UUID retrieveIdFromObject(final Long recordId, final ObjectType objectType, @Nullable final CacheController<Object, Object> cache) {
         if (objectType == ObjectType.TENANT && recordId == InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID) {
@@ -116,12 +162,52 @@ public class DefaultNonEntityDao implements NonEntityDao {
         return transactional.getLastHistoryRecordId(targetRecordId, tableName.getTableName());
     }
 
+    @Override
+    public Map<UUID, Long> retrieveHistoryRecordIdsFromTransaction(final Collection<String> historyIds, final TableName historyTableName, final NonEntitySqlDao transactional) {
+        final Map<UUID, Long> historyRecordIds = new HashMap<UUID, Long>();
+        if (historyIds.isEmpty()) {
+            return historyRecordIds;
+        }
+
+        for (final RecordIdIdMappings mapping : transactional.getHistoryRecordIdIdMappingsForIds(historyIds, historyTableName.getTableName())) {
+            historyRecordIds.put(mapping.getId(), mapping.getRecordId());
+        }
+        return historyRecordIds;
+    }
+
     @Override
     public Long retrieveHistoryTargetRecordId(@Nullable final Long recordId, final TableName tableName) {
         return nonEntitySqlDao.getHistoryTargetRecordId(recordId, tableName.getTableName());
     }
 
 
+    private Map<UUID, Long> retrieveRecordIdsWithCaching(final Collection<UUID> objectIds, final TableName tableName, final String recordIdColumn, @Nullable final CacheController<Object, Object> cache) {
+        final Map<UUID, Long> recordIds = new HashMap<UUID, Long>();
+
+        final Set<String> idsToRetrieve = new LinkedHashSet<String>();
+        for (final UUID objectId : objectIds) {
+            if (objectId == null) {
+                continue;
+            }
+            final Long cachedRecordId = cache != null ? (Long) cache.getIfPresent(IdCacheKey.forCacheType(cache.getCacheType(), tableName, objectId)) : null;
+            if (cachedRecordId != null) {
+                recordIds.put(objectId, cachedRecordId);
+            } else {
+                idsToRetrieve.add(objectId.toString());
+            }
+        }
+
+        for (final List<String> ids : Iterables.partition(idsToRetrieve, MAX_IDS_PER_QUERY)) {
+            for (final RecordIdIdMappings mapping : nonEntitySqlDao.getRecordIdIdMappingsForIds(ids, tableName.getTableName(), recordIdColumn)) {
+                recordIds.put(mapping.getId(), mapping.getRecordId());
+                if (cache != null) {
+                    cache.add(IdCacheKey.forCacheType(cache.getCacheType(), tableName, mapping.getId()), mapping.getRecordId());
+                }
+            }
+        }
+        return recordIds;
+    }
+
     private interface OperationRetrieval<TypeIn, TypeOut> {
         public TypeOut doRetrieve(final TypeIn objectOrRecordId, final ObjectType objectType);
     }
@@ -131,16 +217,14 @@ public class DefaultNonEntityDao implements NonEntityDao {
 
         private TypeOut withCaching(final OperationRetrieval<TypeIn, TypeOut> op, @Nullable final TypeIn objectOrRecordId, final ObjectType objectType, final TableName tableName, @Nullable final CacheController<Object, Object> cache) {
 
-            final Profiling<TypeOut> prof = new Profiling<TypeOut>();
             if (objectOrRecordId == null) {
                 return null;
             }
             if (cache != null) {
-                final String key = (cache.getCacheType().isKeyPrefixedWithTableName()) ?
-                                   tableName + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + objectOrRecordId.toString() :
-                                   objectOrRecordId.toString();
-                return (TypeOut) cache.get(key, new CacheLoaderArgument(objectType));
+                final IdCacheKey key = IdCacheKey.forCacheType(cache.getCacheType(), tableName, objectOrRecordId);
+                return (TypeOut) cache.get(key, CacheLoaderArgument.forObjectType(objectType));
             }
+            final Profiling<TypeOut> prof = new Profiling<TypeOut>();
             final TypeOut result;
             try {
                 result = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS,  "NonEntityDao (type = " +  objectType + ") cache miss", new WithProfilingCallback<TypeOut>() {
@@ -16,6 +16,7 @@
 
 package org.killbill.billing.util.dao;
 
+import java.util.Collection;
 import java.util.UUID;
 
 import org.skife.jdbi.v2.sqlobject.Bind;
@@ -27,6 +28,7 @@ import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
 
 import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.tag.dao.UUIDCollectionBinder;
 
 @UseStringTemplate3StatementLocator
 public interface NonEntitySqlDao extends Transactional<NonEntitySqlDao>, CloseMe {
@@ -52,9 +54,19 @@ public interface NonEntitySqlDao extends Transactional<NonEntitySqlDao>, CloseMe
     @SqlQuery
     public Long getTenantRecordIdFromObjectOtherThanTenant(@Bind("id") String id, @Define("tableName") final String tableName);
 
+    // The record id returned in each mapping is the value of recordIdColumn (record_id, account_record_id or tenant_record_id)
+    @SqlQuery
+    public Iterable<RecordIdIdMappings> getRecordIdIdMappingsForIds(@UUIDCollectionBinder final Collection<String> ids,
+                                                                    @Define("tableName") final String tableName,
+                                                                    @Define("recordIdColumn") final String recordIdColumn);
+
     @SqlQuery
     public Long getLastHistoryRecordId(@Bind("targetRecordId") Long targetRecordId, @Define("tableName") final String tableName);
 
+    @SqlQuery
+    public Iterable<RecordIdIdMappings> getHistoryRecordIdIdMappingsForIds(@UUIDCollectionBinder final Collection<String> ids,
+                                                                           @Define("historyTableName") final String historyTableName);
+
     @SqlQuery
     public Long getHistoryTargetRecordId(@Bind("recordId") Long recordId, @Define("tableName") final String tableName);
 
@@ -31,6 +31,7 @@ public class DefaultPagination<T> implements Pagination<T> {
     private final Long limit;
     private final Long totalNbRecords;
     private final Long maxNbRecords;
+    private final Long nextOffset;
     private final Iterator<T> delegateIterator;
 
     // Builder when the streaming API can't be used (should only be used for tests)
@@ -51,7 +52,7 @@ public class DefaultPagination<T> implements Pagination<T> {
 
     // Constructor for DAO -> API bridge
     public DefaultPagination(final Pagination original, final Long limit, final Iterator<T> delegate) {
-        this(original.getCurrentOffset(), limit, original.getTotalNbRecords(), original.getMaxNbRecords(), delegate);
+        this(original.getCurrentOffset(), limit, original.getTotalNbRecords(), original.getMaxNbRecords(), original.getNextOffset(), delegate);
     }
 
     // Constructor for DAO getAll calls
@@ -62,13 +63,35 @@ public class DefaultPagination<T> implements Pagination<T> {
     public DefaultPagination(final Long currentOffset, final Long limit,
                              @Nullable final Long totalNbRecords, @Nullable final Long maxNbRecords,
                              final Iterator<T> delegateIterator) {
+        this(currentOffset, limit, totalNbRecords, maxNbRecords, computeNextOffset(currentOffset, limit, totalNbRecords), delegateIterator);
+    }
+
+    // Constructor for keyset pagination, where the offsets are record_id cursors and the next one is known upfront
+    public DefaultPagination(final Long currentOffset, final Long limit,
+                             @Nullable final Long totalNbRecords, @Nullable final Long maxNbRecords,
+                             @Nullable final Long nextOffset, final Iterator<T> delegateIterator) {
         this.currentOffset = currentOffset;
         this.limit = limit;
         this.totalNbRecords = totalNbRecords;
         this.maxNbRecords = maxNbRecords;
+        this.nextOffset = nextOffset;
         this.delegateIterator = delegateIterator;
     }
 
+    private static Long computeNextOffset(final Long currentOffset, final Long limit, @Nullable final Long totalNbRecords) {
+        final long candidate = currentOffset + limit;
+        if (totalNbRecords != null && candidate >= totalNbRecords) {
+            // No more results
+            return null;
+        } else {
+            // When we don't know the total number of records, the next offset
+            // returned here won't make sense once the last result is returned.
+            // It is the responsibility of the client to handle the pagination stop condition
+            // in that case (i.e. check if there is no more results).
+            return candidate;
+        }
+    }
+
     @Override
     public Iterator<T> iterator() {
         return delegateIterator;
@@ -81,17 +104,7 @@ public class DefaultPagination<T> implements Pagination<T> {
 
     @Override
     public Long getNextOffset() {
-        final long candidate = currentOffset + limit;
-        if (totalNbRecords != null && candidate >= totalNbRecords) {
-            // No more results
-            return null;
-        } else {
-            // When we don't know the total number of records, the next offset
-            // returned here won't make sense once the last result is returned.
-            // It is the responsibility of the client to handle the pagination stop condition
-            // in that case (i.e. check if there is no more results).
-            return candidate;
-        }
+        return nextOffset;
     }
 
     @Override
@@ -17,12 +17,17 @@
 package org.killbill.billing.util.entity.dao;
 
 import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.Nullable;
 
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.entity.DefaultPagination;
 import org.killbill.billing.util.entity.Entity;
 import org.killbill.billing.util.entity.Pagination;
 
+import com.google.common.collect.ImmutableList;
+
 public class DefaultPaginationSqlDaoHelper {
 
     private final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao;
@@ -57,6 +62,41 @@ public class DefaultPaginationSqlDaoHelper {
         return new DefaultPagination<M>(offset, limit, count, totalCount, results);
     }
 
+    // Keyset pagination: the page is seeked from the record_id cursor (i.e. the record_id of the last record returned
+    // by the previous page, 0 for the first page), so the cost of a page doesn't depend on how deep we are.
+    // The counts are optional: the cursor alone is enough to walk the full table.
+    public <E extends Entity, M extends EntityModelDao<E>, S extends EntitySqlDao<M, E>> Pagination<M> getPaginationFromRecordIdCursor(final Class<? extends EntitySqlDao<M, E>> sqlDaoClazz,
+                                                                                                                                      final PaginationIteratorBuilder<M, E, S> paginationIteratorBuilder,
+                                                                                                                                      final Long recordIdCursor,
+                                                                                                                                      final Long limit,
+                                                                                                                                      final boolean withCount,
+                                                                                                                                      final InternalTenantContext context) {
+        // The next cursor needs to be known before the results are streamed out (e.g. for the pagination headers),
+        // so the page is fetched eagerly. This is bounded by the limit.
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Pagination<M>>() {
+            @Override
+            public Pagination<M> inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final EntitySqlDao<M, E> sqlDao = entitySqlDaoWrapperFactory.become(sqlDaoClazz);
+
+                final Long count = withCount ? paginationIteratorBuilder.getCount((S) sqlDao, context) : null;
+                final Long totalCount = withCount ? sqlDao.getCount(context) : null;
+                final List<M> results = ImmutableList.<M>copyOf(paginationIteratorBuilder.build((S) sqlDao, limit, context));
+
+                return new DefaultPagination<M>(recordIdCursor, limit, count, totalCount, getNextRecordIdCursor(results, limit), results.iterator());
+            }
+        });
+    }
+
+    @Nullable
+    private <E extends Entity, M extends EntityModelDao<E>> Long getNextRecordIdCursor(final List<M> results, final Long limit) {
+        if (results.isEmpty() || results.size() < limit) {
+            // No more results
+            return null;
+        } else {
+            return results.get(results.size() - 1).getRecordId();
+        }
+    }
+
     public abstract static class PaginationIteratorBuilder<M extends EntityModelDao<E>, E extends Entity, S extends EntitySqlDao<M, E>> {
 
         public abstract Long getCount(final S sqlDao, final InternalTenantContext context);
@@ -38,6 +38,8 @@ public interface EntityDao<M extends EntityModelDao<E>, E extends Entity, U exte
 
     public Pagination<M> get(Long offset, Long limit, InternalTenantContext context);
 
+    public Pagination<M> getByRecordIdCursor(Long recordIdCursor, Long limit, boolean withCount, InternalTenantContext context);
+
     public Long getCount(InternalTenantContext context);
 
     public void test(InternalTenantContext context);
@@ -150,6 +150,26 @@ public abstract class EntityDaoBase<M extends EntityModelDao<E>, E extends Entit
                                               context);
     }
 
+    @Override
+    public Pagination<M> getByRecordIdCursor(final Long recordIdCursor, final Long limit, final boolean withCount, final InternalTenantContext context) {
+        return paginationHelper.getPaginationFromRecordIdCursor(realSqlDao,
+                                                                new PaginationIteratorBuilder<M, E, EntitySqlDao<M, E>>() {
+                                                                    @Override
+                                                                    public Long getCount(final EntitySqlDao<M, E> sqlDao, final InternalTenantContext context) {
+                                                                        return sqlDao.getCount(context);
+                                                                    }
+
+                                                                    @Override
+                                                                    public Iterator<M> build(final EntitySqlDao<M, E> sqlDao, final Long limit, final InternalTenantContext context) {
+                                                                        return sqlDao.getByRecordIdCursor(recordIdCursor, limit, context);
+                                                                    }
+                                                                },
+                                                                recordIdCursor,
+                                                                limit,
+                                                                withCount,
+                                                                context);
+    }
+
     @Override
     public Long getCount(final InternalTenantContext context) {
         return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Long>() {
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.util.entity.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.util.audit.ChangeType;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.dao.EntityAudit;
+import org.killbill.billing.util.dao.EntityHistoryModelDao;
+import org.killbill.billing.util.dao.NonEntityDao;
+import org.killbill.billing.util.dao.NonEntitySqlDao;
+import org.killbill.billing.util.dao.TableName;
+import org.killbill.billing.util.entity.Entity;
+
+import com.google.common.base.Objects;
+
+/**
+ * Collects the history and audit rows of a transaction, to insert them as JDBC batches right before the commit
+ * (instead of a history insert, a history record id lookup and an audit insert per audited statement).
+ * <p/>
+ * Note that history and audit rows aren't visible from within the transaction until the buffer is flushed.
+ */
+class EntityHistoryAndAuditBuffer {
+
+    private final CacheControllerDispatcher cacheControllerDispatcher;
+    private final NonEntityDao nonEntityDao;
+
+    // Rows are batched per SqlDao class (the history and audit templates depend on the entity) and per context
+    private final Map<BatchKey, List<PendingRow>> pendingRows = new LinkedHashMap<BatchKey, List<PendingRow>>();
+    // All SqlDao instances share the transaction handle: any of them can be used for the flush
+    private final Map<BatchKey, EntitySqlDao> sqlDaos = new HashMap<BatchKey, EntitySqlDao>();
+
+    EntityHistoryAndAuditBuffer(final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
+        this.nonEntityDao = nonEntityDao;
+    }
+
+    <M extends EntityModelDao<E>, E extends Entity> void add(final Class<? extends EntitySqlDao<M, E>> sqlDaoClass, final EntitySqlDao<M, E> sqlDao,
+                                                             final M entity, final Long entityRecordId, final ChangeType changeType,
+                                                             final InternalCallContext context, final DateTime changeDate) {
+        final BatchKey key = new BatchKey(sqlDaoClass, context);
+        if (pendingRows.get(key) == null) {
+            pendingRows.put(key, new LinkedList<PendingRow>());
+            sqlDaos.put(key, sqlDao);
+        }
+
+        final TableName tableName = entity.getTableName();
+        final EntityHistoryModelDao<M, E> history = tableName.getHistoryTableName() != null ?
+                                                    new EntityHistoryModelDao<M, E>(entity, entityRecordId, changeType, changeDate) :
+                                                    null;
+        pendingRows.get(key).add(new PendingRow(tableName, history, entityRecordId, changeType, changeDate));
+    }
+
+    void flush() {
+        for (final BatchKey key : pendingRows.keySet()) {
+            flush(sqlDaos.get(key), pendingRows.get(key), key.getContext());
+        }
+        pendingRows.clear();
+        sqlDaos.clear();
+    }
+
+    private void flush(final EntitySqlDao sqlDao, final List<PendingRow> rows, final InternalCallContext context) {
+        final TableName tableName = rows.get(0).getTableName();
+
+        // Note: audit entries point to the history record id
+        final Map<UUID, Long> historyRecordIds;
+        if (tableName.getHistoryTableName() != null) {
+            final List<EntityHistoryModelDao> histories = new ArrayList<EntityHistoryModelDao>(rows.size());
+            final List<String> historyIds = new ArrayList<String>(rows.size());
+            for (final PendingRow row : rows) {
+                histories.add(row.getHistory());
+                historyIds.add(row.getHistory().getId().toString());
+            }
+            sqlDao.addHistoriesFromTransaction(histories, context);
+
+            final NonEntitySqlDao transactional = (NonEntitySqlDao) sqlDao.become(NonEntitySqlDao.class);
+            historyRecordIds = nonEntityDao.retrieveHistoryRecordIdsFromTransaction(historyIds, tableName.getHistoryTableName(), transactional);
+        } else {
+            historyRecordIds = null;
+        }
+
+        final TableName destinationTableName = Objects.firstNonNull(tableName.getHistoryTableName(), tableName);
+        final List<EntityAudit> audits = new ArrayList<EntityAudit>(rows.size());
+        for (final PendingRow row : rows) {
+            final Long targetRecordId = historyRecordIds != null ? historyRecordIds.get(row.getHistory().getId()) : row.getEntityRecordId();
+            audits.add(new EntityAudit(destinationTableName, targetRecordId, row.getChangeType(), row.getChangeDate()));
+        }
+        sqlDao.insertAuditsFromTransaction(audits, context);
+
+        for (final PendingRow row : rows) {
+            EntitySqlDaoWrapperInvocationHandler.invalidateAuditCache(cacheControllerDispatcher, tableName, row.getEntityRecordId());
+        }
+    }
+
+    private static final class BatchKey {
+
+        private final Class sqlDaoClass;
+        private final InternalCallContext context;
+
+        private BatchKey(final Class sqlDaoClass, final InternalCallContext context) {
+            this.sqlDaoClass = sqlDaoClass;
+            this.context = context;
+        }
+
+        public InternalCallContext getContext() {
+            return context;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final BatchKey that = (BatchKey) o;
+
+            if (!sqlDaoClass.equals(that.sqlDaoClass)) {
+                return false;
+            }
+            return context != null ? context.equals(that.context) : that.context == null;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = sqlDaoClass.hashCode();
+            result = 31 * result + (context != null ? context.hashCode() : 0);
+            return result;
+        }
+    }
+
+    private static final class PendingRow {
+
+        private final TableName tableName;
+        private final EntityHistoryModelDao history;
+        private final Long entityRecordId;
+        private final ChangeType changeType;
+        private final DateTime changeDate;
+
+        private PendingRow(final TableName tableName, final EntityHistoryModelDao history, final Long entityRecordId, final ChangeType changeType, final DateTime changeDate) {
+            this.tableName = tableName;
+            this.history = history;
+            this.entityRecordId = entityRecordId;
+            this.changeType = changeType;
+            this.changeDate = changeDate;
+        }
+
+        public TableName getTableName() {
+            return tableName;
+        }
+
+        public EntityHistoryModelDao getHistory() {
+            return history;
+        }
+
+        public Long getEntityRecordId() {
+            return entityRecordId;
+        }
+
+        public ChangeType getChangeType() {
+            return changeType;
+        }
+
+        public DateTime getChangeDate() {
+            return changeDate;
+        }
+    }
+}
@@ -31,16 +31,27 @@ import org.killbill.billing.util.entity.Entity;
  */
 public class EntitySqlDaoTransactionalJdbiWrapper {
 
+    // Buffer the history and audit rows of each transaction and insert them as batches before the commit (off by default:
+    // the rows aren't visible from within the transaction, and the flush looks up the history rows by id, see the <table>_history_id indexes)
+    private static final boolean BATCH_HISTORY_AND_AUDIT = Boolean.parseBoolean(System.getProperty("killbill.jdbi.allow.batchHistoryAndAudit", "false"));
+
     private final IDBI dbi;
     private final Clock clock;
     private final CacheControllerDispatcher cacheControllerDispatcher;
     private final NonEntityDao nonEntityDao;
+    private final boolean batchHistoryAndAudit;
 
     public EntitySqlDaoTransactionalJdbiWrapper(final IDBI dbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
+        this(dbi, clock, cacheControllerDispatcher, nonEntityDao, BATCH_HISTORY_AND_AUDIT);
+    }
+
+    public EntitySqlDaoTransactionalJdbiWrapper(final IDBI dbi, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao,
+                                                final boolean batchHistoryAndAudit) {
         this.dbi = dbi;
         this.clock = clock;
         this.cacheControllerDispatcher = cacheControllerDispatcher;
         this.nonEntityDao = nonEntityDao;
+        this.batchHistoryAndAudit = batchHistoryAndAudit;
     }
 
     class JdbiTransaction<ReturnType, M extends EntityModelDao<E>, E extends Entity> implements Transaction<ReturnType, EntitySqlDao<M, E>> {
@@ -53,8 +64,15 @@ public class EntitySqlDaoTransactionalJdbiWrapper {
 
         @Override
         public ReturnType inTransaction(final EntitySqlDao<M, E> transactionalSqlDao, final TransactionStatus status) throws Exception {
-            final EntitySqlDaoWrapperFactory<EntitySqlDao> factoryEntitySqlDao = new EntitySqlDaoWrapperFactory<EntitySqlDao>(transactionalSqlDao, clock, cacheControllerDispatcher, nonEntityDao);
-            return entitySqlDaoTransactionWrapper.inTransaction(factoryEntitySqlDao);
+            final EntityHistoryAndAuditBuffer historyAndAuditBuffer = batchHistoryAndAudit ? new EntityHistoryAndAuditBuffer(cacheControllerDispatcher, nonEntityDao) : null;
+            final EntitySqlDaoWrapperFactory<EntitySqlDao> factoryEntitySqlDao = new EntitySqlDaoWrapperFactory<EntitySqlDao>(transactionalSqlDao, clock, cacheControllerDispatcher, nonEntityDao, historyAndAuditBuffer);
+            final ReturnType result = entitySqlDaoTransactionWrapper.inTransaction(factoryEntitySqlDao);
+
+            // Part of the same transaction: nothing is written if the flush fails
+            if (historyAndAuditBuffer != null) {
+                historyAndAuditBuffer.flush();
+            }
+            return result;
         }
     }
 
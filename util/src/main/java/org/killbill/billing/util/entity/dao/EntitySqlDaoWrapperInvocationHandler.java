@@ -25,10 +25,15 @@ import java.sql.SQLException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
@@ -40,6 +45,7 @@ import org.killbill.billing.util.cache.CachableKey;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.cache.CacheLoaderArgument;
+import org.killbill.billing.util.cache.IdCacheKey;
 import org.killbill.billing.util.dao.EntityAudit;
 import org.killbill.billing.util.dao.EntityHistoryModelDao;
 import org.killbill.billing.util.dao.NonEntityDao;
@@ -56,15 +62,14 @@ import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.exceptions.DBIException;
 import org.skife.jdbi.v2.exceptions.StatementException;
 import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Objects;
-import com.google.common.base.Predicate;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
 
 /**
  * Wraps an instance of EntitySqlDao, performing extra work around each method (Sql query)
@@ -78,20 +83,33 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
 
     private final Logger logger = LoggerFactory.getLogger(EntitySqlDaoWrapperInvocationHandler.class);
 
+    // Reading the parameter annotations copies them: resolve the @CachableKey arguments once per method
+    private static final ConcurrentMap<Method, int[]> CACHABLE_KEY_ARGS = new ConcurrentHashMap<Method, int[]>();
+    // Resolving the ObjectType instantiates a model object: do it once per SqlDao class
+    private static final ConcurrentMap<Class<?>, Optional<ObjectType>> OBJECT_TYPES = new ConcurrentHashMap<Class<?>, Optional<ObjectType>>();
+
     private final Class<S> sqlDaoClass;
     private final S sqlDao;
 
     private final CacheControllerDispatcher cacheControllerDispatcher;
     private final Clock clock;
     private final NonEntityDao nonEntityDao;
+    // Null when history and audit rows are inserted right after each statement
+    private final EntityHistoryAndAuditBuffer historyAndAuditBuffer;
     private final Profiling prof;
 
     public EntitySqlDaoWrapperInvocationHandler(final Class<S> sqlDaoClass, final S sqlDao, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final NonEntityDao nonEntityDao) {
+        this(sqlDaoClass, sqlDao, clock, cacheControllerDispatcher, nonEntityDao, null);
+    }
+
+    public EntitySqlDaoWrapperInvocationHandler(final Class<S> sqlDaoClass, final S sqlDao, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher,
+                                                final NonEntityDao nonEntityDao, @Nullable final EntityHistoryAndAuditBuffer historyAndAuditBuffer) {
         this.sqlDaoClass = sqlDaoClass;
         this.sqlDao = sqlDao;
         this.clock = clock;
         this.cacheControllerDispatcher = cacheControllerDispatcher;
         this.nonEntityDao = nonEntityDao;
+        this.historyAndAuditBuffer = historyAndAuditBuffer;
         this.prof = new Profiling<Object>();
     }
 
@@ -209,29 +227,16 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(cacheType);
         Object result = null;
         if (cache != null) {
-            // Find all arguments marked with @CachableKey
-            final Map<Integer, Object> keyPieces = new LinkedHashMap<Integer, Object>();
-            final Annotation[][] annotations = method.getParameterAnnotations();
-            for (int i = 0; i < annotations.length; i++) {
-                for (int j = 0; j < annotations[i].length; j++) {
-                    final Annotation annotation = annotations[i][j];
-                    if (CachableKey.class.equals(annotation.annotationType())) {
-                        // CachableKey position starts at 1
-                        keyPieces.put(((CachableKey) annotation).value() - 1, args[i]);
-                        break;
-                    }
-                }
-            }
-
             // Build the Cache key
-            final String cacheKey = buildCacheKey(keyPieces);
+            final Object cacheKey = buildCacheKey(cacheType, method, args);
 
-            final InternalTenantContext internalTenantContext = (InternalTenantContext) Iterables.find(ImmutableList.copyOf(args), new Predicate<Object>() {
-                @Override
-                public boolean apply(final Object input) {
-                    return input instanceof InternalTenantContext;
+            InternalTenantContext internalTenantContext = null;
+            for (final Object arg : args) {
+                if (arg instanceof InternalTenantContext) {
+                    internalTenantContext = (InternalTenantContext) arg;
+                    break;
                 }
-            }, null);
+            }
             final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(objectType, args, internalTenantContext);
             return cache.get(cacheKey, cacheLoaderArgument);
         }
@@ -256,6 +261,15 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
      * @throws ClassNotFoundException
      */
     private ObjectType getObjectType() throws InstantiationException, IllegalAccessException, ClassNotFoundException {
+        Optional<ObjectType> objectType = OBJECT_TYPES.get(sqlDaoClass);
+        if (objectType == null) {
+            objectType = Optional.fromNullable(computeObjectType());
+            OBJECT_TYPES.putIfAbsent(sqlDaoClass, objectType);
+        }
+        return objectType.orNull();
+    }
+
+    private ObjectType computeObjectType() throws InstantiationException, IllegalAccessException, ClassNotFoundException {
 
         int foundIndexForEntitySqlDao = -1;
         // If the sqlDaoClass implements multiple interfaces, first figure out which one is the EntitySqlDao
@@ -296,6 +310,10 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
     }
 
     private Object invokeWithAuditAndHistory(final Audited auditedAnnotation, final Method method, final Object[] args) throws Throwable {
+        if (ChangeType.INSERT.equals(auditedAnnotation.value()) && method.getAnnotation(SqlBatch.class) != null) {
+            return invokeWithBatchAuditAndHistory(method, args);
+        }
+
         InternalCallContext context = null;
         List<String> entityIds = null;
         final Map<String, M> entities = new HashMap<String, M>();
@@ -327,31 +345,67 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         return obj;
     }
 
+    private Object invokeWithBatchAuditAndHistory(final Method method, final Object[] args) throws Throwable {
+        // The entities don't exist yet: unlike invokeWithAuditAndHistory, there is nothing to fetch before the statement
+        final InternalCallContext context = retrieveContextFromArguments(args);
+        final List<String> entityIds = retrieveEntityIdsFromArguments(method, args);
+
+        // Real jdbc call
+        final Object obj = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, sqlDaoClass.getSimpleName() + " (raw) :", new WithProfilingCallback() {
+            @Override
+            public Object execute() throws Throwable {
+                return method.invoke(sqlDao, args);
+            }
+        });
+
+        if (entityIds != null && !entityIds.isEmpty()) {
+            insertHistoryAndAuditsForBatch(entityIds, ChangeType.INSERT, context);
+        }
+        return obj;
+    }
+
+    // Batch version of updateHistoryAndAudit: one query to re-hydrate the entities, then the history and audit rows are
+    // inserted as batches (at the end of the transaction if the rows are buffered, right away otherwise)
+    private void insertHistoryAndAuditsForBatch(final List<String> entityIds, final ChangeType changeType, final InternalCallContext context) throws Throwable {
+        prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, sqlDaoClass.getSimpleName() + " (batch history/audit) :", new WithProfilingCallback() {
+            @Override
+            public Object execute() {
+                final EntityHistoryAndAuditBuffer buffer = historyAndAuditBuffer != null ? historyAndAuditBuffer : new EntityHistoryAndAuditBuffer(cacheControllerDispatcher, nonEntityDao);
+
+                final DateTime now = clock.getUTCNow();
+                for (final M entity : sqlDao.getByIdsFromTransaction(entityIds, context)) {
+                    buffer.add(sqlDaoClass, sqlDao, entity, entity.getRecordId(), changeType, getAuditContext(entity.getTableName(), entity.getRecordId(), changeType, context), now);
+                    // Callers don't need to fetch each entity after a batch create to populate the caches
+                    populateCacheOnGetByIdInvocation(entity);
+                }
+
+                if (historyAndAuditBuffer == null) {
+                    buffer.flush();
+                }
+                return null;
+            }
+        });
+    }
+
     private void populateCacheOnGetByIdInvocation(M model) {
 
         final CacheController<Object, Object> cacheRecordId = cacheControllerDispatcher.getCacheController(CacheType.RECORD_ID);
-        cacheRecordId.add(getKey(model.getId().toString(), CacheType.RECORD_ID, model.getTableName()), model.getRecordId());
+        cacheRecordId.add(IdCacheKey.forObjectId(model.getId()), model.getRecordId());
 
         final CacheController<Object, Object> cacheObjectId = cacheControllerDispatcher.getCacheController(CacheType.OBJECT_ID);
-        cacheObjectId.add(getKey(model.getRecordId().toString(), CacheType.OBJECT_ID, model.getTableName()), model.getId());
+        cacheObjectId.add(IdCacheKey.forRecordId(model.getTableName(), model.getRecordId()), model.getId());
 
         if (model.getTenantRecordId() != null) {
             final CacheController<Object, Object> cacheTenantRecordId = cacheControllerDispatcher.getCacheController(CacheType.TENANT_RECORD_ID);
-            cacheTenantRecordId.add(getKey(model.getId().toString(), CacheType.TENANT_RECORD_ID, model.getTableName()), model.getTenantRecordId());
+            cacheTenantRecordId.add(IdCacheKey.forObjectId(model.getId()), model.getTenantRecordId());
         }
 
         if (model.getAccountRecordId() != null) {
             final CacheController<Object, Object> cacheAccountRecordId = cacheControllerDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID);
-            cacheAccountRecordId.add(getKey(model.getId().toString(), CacheType.ACCOUNT_RECORD_ID, model.getTableName()), model.getAccountRecordId());
+            cacheAccountRecordId.add(IdCacheKey.forObjectId(model.getId()), model.getAccountRecordId());
         }
     }
 
-    private String getKey(final String rawKey, final CacheType cacheType, final TableName tableName) {
-        return cacheType.isKeyPrefixedWithTableName() ?
-               tableName + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + rawKey :
-               rawKey;
-    }
-
     private void updateHistoryAndAudit(final String entityId, final Map<String, M> entities, final Map<String, Long> entityRecordIds,
                                        final ChangeType changeType, final InternalCallContext context) throws Throwable {
 
@@ -364,6 +418,11 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
                 final Long entityRecordId = Objects.firstNonNull(reHydratedEntityRecordId, entityRecordIds.get(entityId));
                 final TableName tableName = entity.getTableName();
 
+                if (historyAndAuditBuffer != null) {
+                    historyAndAuditBuffer.add(sqlDaoClass, sqlDao, entity, entityRecordId, changeType, getAuditContext(tableName, entityRecordId, changeType, context), clock.getUTCNow());
+                    return null;
+                }
+
                 // Note: audit entries point to the history record id
                 final Long historyRecordId;
                 if (tableName.getHistoryTableName() != null) {
@@ -451,41 +510,92 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         final TableName destinationTableName = Objects.firstNonNull(tableName.getHistoryTableName(), tableName);
         final EntityAudit audit = new EntityAudit(destinationTableName, historyRecordId, changeType, clock.getUTCNow());
 
-        final InternalCallContext context;
+        final InternalCallContext context = getAuditContext(tableName, entityRecordId, changeType, contextMaybeWithoutAccountRecordId);
+        sqlDao.insertAuditFromTransaction(audit, context);
+
+        invalidateAuditCache(cacheControllerDispatcher, tableName, entityRecordId);
+    }
+
+    private InternalCallContext getAuditContext(final TableName tableName, final Long entityRecordId, final ChangeType changeType, final InternalCallContext contextMaybeWithoutAccountRecordId) {
         // Populate the account record id when creating the account record
         if (TableName.ACCOUNT.equals(tableName) && ChangeType.INSERT.equals(changeType)) {
-            context = new InternalCallContext(contextMaybeWithoutAccountRecordId, entityRecordId);
+            return new InternalCallContext(contextMaybeWithoutAccountRecordId, entityRecordId);
         } else {
-            context = contextMaybeWithoutAccountRecordId;
+            return contextMaybeWithoutAccountRecordId;
         }
-        sqlDao.insertAuditFromTransaction(audit, context);
+    }
 
+    static void invalidateAuditCache(final CacheControllerDispatcher cacheControllerDispatcher, final TableName tableName, final Long entityRecordId) {
         // We need to invalidate the caches. There is a small window of doom here where caches will be stale.
         // TODO Knowledge on how the key is constructed is also in AuditSqlDao
         if (tableName.getHistoryTableName() != null) {
             final CacheController<Object, Object> cacheController = cacheControllerDispatcher.getCacheController(CacheType.AUDIT_LOG_VIA_HISTORY);
             if (cacheController != null) {
-                final String key = buildCacheKey(ImmutableMap.<Integer, Object>of(0, tableName.getHistoryTableName(), 1, tableName.getHistoryTableName(), 2, entityRecordId));
+                final String key = buildCacheKey(tableName.getHistoryTableName(), tableName.getHistoryTableName(), entityRecordId);
                 cacheController.remove(key);
             }
         } else {
             final CacheController<Object, Object> cacheController = cacheControllerDispatcher.getCacheController(CacheType.AUDIT_LOG);
             if (cacheController != null) {
-                final String key = buildCacheKey(ImmutableMap.<Integer, Object>of(0, tableName, 1, entityRecordId));
+                final String key = buildCacheKey(tableName, entityRecordId);
                 cacheController.remove(key);
             }
         }
     }
 
-    private String buildCacheKey(final Map<Integer, Object> keyPieces) {
+    private static Object buildCacheKey(final CacheType cacheType, final Method method, final Object[] args) {
+        final int[] cachableKeyArgs = getCachableKeyArgs(method);
+
+        // The id caches are keyed by IdCacheKey (see DefaultNonEntityDao)
+        if (cacheType == CacheType.RECORD_ID) {
+            return IdCacheKey.forObjectId(String.valueOf(args[cachableKeyArgs[0]]));
+        }
+
+        final Object[] keyPieces = new Object[cachableKeyArgs.length];
+        for (int i = 0; i < cachableKeyArgs.length; i++) {
+            keyPieces[i] = args[cachableKeyArgs[i]];
+        }
+        return buildCacheKey(keyPieces);
+    }
+
+    // Indexes of the arguments marked with @CachableKey, in key order
+    private static int[] getCachableKeyArgs(final Method method) {
+        int[] cachableKeyArgs = CACHABLE_KEY_ARGS.get(method);
+        if (cachableKeyArgs != null) {
+            return cachableKeyArgs;
+        }
+
+        final Map<Integer, Integer> keyPositions = new TreeMap<Integer, Integer>();
+        final Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < annotations.length; i++) {
+            for (int j = 0; j < annotations[i].length; j++) {
+                final Annotation annotation = annotations[i][j];
+                if (CachableKey.class.equals(annotation.annotationType())) {
+                    // CachableKey position starts at 1
+                    keyPositions.put(((CachableKey) annotation).value() - 1, i);
+                    break;
+                }
+            }
+        }
+
+        cachableKeyArgs = new int[keyPositions.size()];
+        int i = 0;
+        for (final Integer arg : keyPositions.values()) {
+            cachableKeyArgs[i++] = arg;
+        }
+        CACHABLE_KEY_ARGS.putIfAbsent(method, cachableKeyArgs);
+        return cachableKeyArgs;
+    }
+
+    private static String buildCacheKey(final Object... keyPieces) {
         final StringBuilder cacheKey = new StringBuilder();
-        for (int i = 0; i < keyPieces.size(); i++) {
+        for (int i = 0; i < keyPieces.length; i++) {
             // To normalize the arguments and avoid casing issues, we make all pieces of the key uppercase.
             // Since the database engine may be case insensitive and we use arguments of the SQL method call
             // to build the key, the key has to be case insensitive as well.
-            final String str = String.valueOf(keyPieces.get(i)).toUpperCase();
+            final String str = String.valueOf(keyPieces[i]).toUpperCase();
             cacheKey.append(str);
-            if (i < keyPieces.size() - 1) {
+            if (i < keyPieces.length - 1) {
                 cacheKey.append(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
             }
         }
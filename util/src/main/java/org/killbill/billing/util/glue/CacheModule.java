@@ -19,9 +19,16 @@
 package org.killbill.billing.util.glue;
 
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.util.broadcast.BroadcastService;
+import org.killbill.billing.util.broadcast.DefaultBroadcastService;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.cache.CacheControllerDispatcherProvider;
+import org.killbill.billing.util.cache.CacheControllerProvider;
+import org.killbill.billing.util.cache.CacheService;
+import org.killbill.billing.util.cache.DefaultCacheService;
+import org.killbill.billing.util.cache.EhCacheCacheControllerProvider;
 import org.killbill.billing.util.cache.EhCacheCacheManagerProvider;
+import org.killbill.billing.util.cache.GuavaCacheControllerProvider;
 import org.killbill.billing.util.config.CacheConfig;
 import org.skife.config.ConfigurationObjectFactory;
 
@@ -29,6 +36,9 @@ import net.sf.ehcache.CacheManager;
 
 public class CacheModule extends KillBillModule {
 
+    public static final String EHCACHE_CACHE_PROVIDER = "ehcache";
+    public static final String GUAVA_CACHE_PROVIDER = "guava";
+
     public CacheModule(final KillbillConfigSource configSource) {
         super(configSource);
     }
@@ -38,10 +48,23 @@ public class CacheModule extends KillBillModule {
         final CacheConfig config = new ConfigurationObjectFactory(skifeConfigSource).build(CacheConfig.class);
         bind(CacheConfig.class).toInstance(config);
 
-        // EhCache specifics
+        // EhCache specifics (also used by Shiro, and for the cache definitions of the other backends)
         bind(CacheManager.class).toProvider(EhCacheCacheManagerProvider.class).asEagerSingleton();
 
+        if (EHCACHE_CACHE_PROVIDER.equals(config.getCacheProvider())) {
+            bind(CacheControllerProvider.class).to(EhCacheCacheControllerProvider.class).asEagerSingleton();
+        } else if (GUAVA_CACHE_PROVIDER.equals(config.getCacheProvider())) {
+            bind(CacheControllerProvider.class).to(GuavaCacheControllerProvider.class).asEagerSingleton();
+        } else {
+            throw new IllegalArgumentException("Unknown cache provider " + config.getCacheProvider());
+        }
+
         // Kill Bill generic cache dispatcher
         bind(CacheControllerDispatcher.class).toProvider(CacheControllerDispatcherProvider.class).asEagerSingleton();
+        // Releases the resources of the backend on shutdown
+        bind(CacheService.class).to(DefaultCacheService.class).asEagerSingleton();
+
+        // Cross-node cache invalidations (the bus only delivers events to the node which posted them)
+        bind(BroadcastService.class).to(DefaultBroadcastService.class).asEagerSingleton();
     }
 }
@@ -72,6 +72,19 @@ public class DefaultTagInternalApi implements TagInternalApi {
                                                                 }));
     }
 
+    @Override
+    public List<Tag> getTagsForAccount(final boolean includedDeleted, final InternalTenantContext context) {
+        return ImmutableList.<Tag>copyOf(Collections2.transform(tagDao.getTagsForAccount(includedDeleted, context),
+                                                                new Function<TagModelDao, Tag>() {
+                                                                    @Override
+                                                                    public Tag apply(final TagModelDao input) {
+                                                                        return TagModelDaoHelper.isControlTag(input.getTagDefinitionId()) ?
+                                                                               new DefaultControlTag(ControlTagType.getTypeFromId(input.getTagDefinitionId()), input.getObjectType(), input.getObjectId(), input.getCreatedDate()) :
+                                                                               new DescriptiveTag(input.getTagDefinitionId(), input.getObjectType(), input.getObjectId(), input.getCreatedDate());
+                                                                    }
+                                                                }));
+    }
+
     @Override
     public void addTag(final UUID objectId, final ObjectType objectType, final UUID tagDefinitionId, final InternalCallContext context)
             throws TagApiException {
@@ -16,6 +16,7 @@
 
 package org.killbill.billing.util.tag.api;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
@@ -115,9 +116,13 @@ public class DefaultTagUserApi implements TagUserApi {
 
     @Override
     public void addTags(final UUID objectId, final ObjectType objectType, final Collection<UUID> tagDefinitionIds, final CallContext context) throws TagApiException {
+        final InternalCallContext internalContext = internalCallContextFactory.createInternalCallContext(objectId, objectType, context);
+        final List<TagModelDao> tags = new ArrayList<TagModelDao>(tagDefinitionIds.size());
         for (final UUID tagDefinitionId : tagDefinitionIds) {
-            addTag(objectId, objectType, tagDefinitionId, context);
+            tags.add(new TagModelDao(context.getCreatedDate(), tagDefinitionId, objectId, objectType));
         }
+        // Like addTag, existing tags are ignored
+        tagDao.createTags(tags, internalContext);
     }
 
     @Override
@@ -17,6 +17,7 @@
 package org.killbill.billing.util.tag.dao;
 
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 
@@ -145,14 +146,7 @@ public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiExcepti
 
     @Override
     protected boolean checkEntityAlreadyExists(final EntitySqlDao<TagModelDao, Tag> transactional, final TagModelDao entity, final InternalCallContext context) {
-        return Iterables.find(transactional.getByAccountRecordId(context),
-                              new Predicate<TagModelDao>() {
-                                  @Override
-                                  public boolean apply(final TagModelDao existingTag) {
-                                      return entity.equals(existingTag) || entity.isSame(existingTag);
-                                  }
-                              },
-                              null) != null;
+        return isExistingTag(entity, transactional.getByAccountRecordId(context));
     }
 
     @Override
@@ -186,6 +180,46 @@ public class DefaultTagDao extends EntityDaoBase<TagModelDao, Tag, TagApiExcepti
         transactionalSqlDao.execute(TagApiException.class, getCreateEntitySqlDaoTransactionWrapper(entity, context));
     }
 
+    @Override
+    public void createTags(final List<TagModelDao> tags, final InternalCallContext context) throws TagApiException {
+        transactionalSqlDao.execute(TagApiException.class, new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final TagSqlDao transactional = entitySqlDaoWrapperFactory.become(TagSqlDao.class);
+
+                // Look-up the existing tags only once for all new tags
+                final List<TagModelDao> existingTags = transactional.getByAccountRecordId(context);
+                final List<TagModelDao> newTags = new LinkedList<TagModelDao>();
+                for (final TagModelDao tag : tags) {
+                    if (!isExistingTag(tag, existingTags) && !isExistingTag(tag, newTags)) {
+                        newTags.add(tag);
+                    }
+                }
+                if (newTags.isEmpty()) {
+                    return null;
+                }
+
+                transactional.batchCreate(newTags, context);
+
+                for (final TagModelDao tag : newTags) {
+                    postBusEventFromTransaction(tag, tag, ChangeType.INSERT, entitySqlDaoWrapperFactory, context);
+                }
+                return null;
+            }
+        });
+    }
+
+    private boolean isExistingTag(final TagModelDao tag, final Iterable<TagModelDao> existingTags) {
+        return Iterables.find(existingTags,
+                              new Predicate<TagModelDao>() {
+                                  @Override
+                                  public boolean apply(final TagModelDao existingTag) {
+                                      return tag.equals(existingTag) || tag.isSame(existingTag);
+                                  }
+                              },
+                              null) != null;
+    }
+
     @Override
     public void deleteTag(final UUID objectId, final ObjectType objectType, final UUID tagDefinitionId, final InternalCallContext context) throws TagApiException {
 
@@ -29,6 +29,9 @@ import org.killbill.billing.util.tag.Tag;
 
 public interface TagDao extends EntityDao<TagModelDao, Tag, TagApiException> {
 
+    // Tags which already exist are ignored
+    void createTags(List<TagModelDao> tags, InternalCallContext context) throws TagApiException;
+
     void deleteTag(UUID objectId, ObjectType objectType, UUID tagDefinition, InternalCallContext context) throws TagApiException;
 
     Pagination<TagModelDao> searchTags(String searchKey, Long offset, Long limit, InternalTenantContext context);
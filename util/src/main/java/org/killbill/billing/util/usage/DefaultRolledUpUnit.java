@@ -15,7 +15,7 @@
  * under the License.
  */
 
-package org.killbill.billing.usage.api.user;
+package org.killbill.billing.util.usage;
 
 import org.killbill.billing.usage.api.RolledUpUnit;
 
@@ -14,7 +14,7 @@
  * under the License.
  */
 
-package org.killbill.billing.usage.api.user;
+package org.killbill.billing.util.usage;
 
 import java.util.List;
 import java.util.UUID;
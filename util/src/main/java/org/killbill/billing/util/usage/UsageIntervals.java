@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.util.usage;
+
+import java.util.List;
+
+import org.joda.time.LocalDate;
+
+public class UsageIntervals {
+
+    private UsageIntervals() {
+    }
+
+    /**
+     * @param transitionTimes sorted transition times, supporting random access
+     * @param date            usage record date
+     * @return the index i of the [transitionTimes[i], transitionTimes[i + 1]) interval containing the date, -1 if there is none
+     */
+    public static int findIntervalIndex(final List<LocalDate> transitionTimes, final LocalDate date) {
+        // Last transition time which is on or before the date
+        int low = 0;
+        int high = transitionTimes.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (transitionTimes.get(mid).compareTo(date) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found < transitionTimes.size() - 1 ? found : -1;
+    }
+}
@@ -40,6 +40,7 @@ CREATE TABLE custom_field_history (
     tenant_record_id int(11) unsigned default null,
     PRIMARY KEY(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE INDEX custom_field_history_id ON custom_field_history(id);
 CREATE INDEX custom_field_history_target_record_id ON custom_field_history(target_record_id);
 CREATE INDEX custom_field_history_object_id_object_type ON custom_fields(object_id, object_type);
 CREATE INDEX custom_field_history_tenant_account_record_id ON custom_field_history(tenant_record_id, account_record_id);
@@ -121,6 +122,7 @@ CREATE TABLE tag_history (
     tenant_record_id int(11) unsigned default null,
     PRIMARY KEY(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE INDEX tag_history_id ON tag_history(id);
 CREATE INDEX tag_history_target_record_id ON tag_history(target_record_id);
 CREATE INDEX tag_history_by_object ON tags(object_id);
 CREATE INDEX tag_history_tenant_account_record_id ON tag_history(tenant_record_id, account_record_id);
@@ -238,3 +240,14 @@ create table sessions (
 , session_data mediumblob default null
 , primary key(record_id)
 ) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+
+DROP TABLE IF EXISTS broadcasts;
+CREATE TABLE broadcasts (
+    record_id int(11) unsigned NOT NULL AUTO_INCREMENT,
+    event_type varchar(64) NOT NULL,
+    event_key varchar(255) NOT NULL,
+    tenant_record_id int(11) unsigned default null,
+    created_date datetime NOT NULL,
+    PRIMARY KEY(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE INDEX broadcasts_created_date ON broadcasts(created_date);
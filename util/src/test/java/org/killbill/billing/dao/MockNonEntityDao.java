@@ -16,6 +16,8 @@
 
 package org.killbill.billing.dao;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -43,11 +45,31 @@ public class MockNonEntityDao implements NonEntityDao {
         return null;
     }
 
+    @Override
+    public Map<UUID, Long> retrieveRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType, @Nullable final CacheController<Object, Object> cache) {
+        return null;
+    }
+
+    @Override
+    public Map<UUID, Long> retrieveAccountRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType, @Nullable final CacheController<Object, Object> cache) {
+        return null;
+    }
+
+    @Override
+    public Map<UUID, Long> retrieveTenantRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType, @Nullable final CacheController<Object, Object> cache) {
+        return null;
+    }
+
     @Override
     public Long retrieveLastHistoryRecordIdFromTransaction(final Long targetRecordId, final TableName tableName, final NonEntitySqlDao transactional) {
         return null;
     }
 
+    @Override
+    public Map<UUID, Long> retrieveHistoryRecordIdsFromTransaction(final Collection<String> historyIds, final TableName historyTableName, final NonEntitySqlDao transactional) {
+        return null;
+    }
+
     @Override
     public Long retrieveHistoryTargetRecordId(final Long recordId, final TableName tableName) {
         return null;
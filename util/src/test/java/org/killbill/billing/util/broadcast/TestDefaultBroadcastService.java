@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.util.broadcast;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.util.UtilTestSuiteWithEmbeddedDB;
+import org.killbill.billing.util.config.CacheConfig;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestDefaultBroadcastService extends UtilTestSuiteWithEmbeddedDB {
+
+    @Inject
+    private CacheConfig cacheConfig;
+
+    @Test(groups = "slow")
+    public void testPoll() throws Exception {
+        final BroadcastSqlDao broadcastSqlDao = idbi.onDemand(BroadcastSqlDao.class);
+        final DefaultBroadcastService broadcastService = new DefaultBroadcastService(idbi, cacheConfig, clock);
+        final RecordingListener listener = new RecordingListener();
+        broadcastService.registerListener("SOME_TYPE", listener);
+
+        final DateTime now = clock.getUTCNow();
+        broadcastSqlDao.create(new BroadcastModelDao("SOME_TYPE", "key1", 1L, now));
+        broadcastSqlDao.create(new BroadcastModelDao("OTHER_TYPE", "key2", 1L, now));
+        // Outside of the window
+        broadcastSqlDao.create(new BroadcastModelDao("SOME_TYPE", "key3", 1L, now.minus(cacheConfig.getCacheInvalidationWindow().getMillis()).minusSeconds(1)));
+
+        broadcastService.poll();
+        Assert.assertEquals(listener.getEventKeys().size(), 1);
+        Assert.assertEquals(listener.getEventKeys().get(0), "key1");
+
+        // Already dispatched entries aren't dispatched again
+        broadcastService.poll();
+        Assert.assertEquals(listener.getEventKeys().size(), 1);
+
+        // An entry committed late, after a more recent one has been polled, is still dispatched
+        broadcastSqlDao.create(new BroadcastModelDao("SOME_TYPE", "key4", null, now.minusSeconds(30)));
+        broadcastService.poll();
+        Assert.assertEquals(listener.getEventKeys().size(), 2);
+        Assert.assertEquals(listener.getEventKeys().get(1), "key4");
+
+        broadcastService.unregisterListener("SOME_TYPE", listener);
+        broadcastSqlDao.create(new BroadcastModelDao("SOME_TYPE", "key5", 1L, now));
+        broadcastService.poll();
+        Assert.assertEquals(listener.getEventKeys().size(), 2);
+    }
+
+    private static final class RecordingListener implements BroadcastListener {
+
+        private final List<String> eventKeys = new LinkedList<String>();
+
+        @Override
+        public void onBroadcast(final String eventKey, @Nullable final Long tenantRecordId) {
+            eventKeys.add(eventKey);
+        }
+
+        public List<String> getEventKeys() {
+            return eventKeys;
+        }
+    }
+}
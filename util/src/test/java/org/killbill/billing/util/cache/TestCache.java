@@ -53,8 +53,7 @@ public class TestCache extends UtilTestSuiteWithEmbeddedDB {
         final CacheController<Object, Object> cache = controlCacheDispatcher.getCacheController(CacheType.RECORD_ID);
         Object result = null;
         if (cache != null) {
-            // Keys are upper cased by convention
-            result = cache.get(tagId.toString().toUpperCase(), new CacheLoaderArgument(ObjectType.TAG));
+            result = cache.get(IdCacheKey.forObjectId(tagId), new CacheLoaderArgument(ObjectType.TAG));
         }
         return (Long) result;
     }
@@ -107,16 +106,16 @@ public class TestCache extends UtilTestSuiteWithEmbeddedDB {
         Assert.assertEquals(getCacheSize(CacheType.TENANT_RECORD_ID), 1);
         Assert.assertEquals(getCacheSize(CacheType.OBJECT_ID), 1);
 
-        final Long recordId = (Long) controlCacheDispatcher.getCacheController(CacheType.RECORD_ID).get(tag.getId().toString(), new CacheLoaderArgument(ObjectType.TAG));
+        final Long recordId = (Long) controlCacheDispatcher.getCacheController(CacheType.RECORD_ID).get(IdCacheKey.forObjectId(tag.getId()), new CacheLoaderArgument(ObjectType.TAG));
         Assert.assertEquals(recordId, result.getRecordId());
 
-        final Long tenantRecordId = (Long) controlCacheDispatcher.getCacheController(CacheType.TENANT_RECORD_ID).get(tag.getId().toString(), new CacheLoaderArgument(ObjectType.TAG));
+        final Long tenantRecordId = (Long) controlCacheDispatcher.getCacheController(CacheType.TENANT_RECORD_ID).get(IdCacheKey.forObjectId(tag.getId()), new CacheLoaderArgument(ObjectType.TAG));
         Assert.assertEquals(tenantRecordId, result.getTenantRecordId());
 
-        final UUID objectId = (UUID) controlCacheDispatcher.getCacheController(CacheType.OBJECT_ID).get(TableName.TAG + CacheControllerDispatcher.CACHE_KEY_SEPARATOR  + recordId, new CacheLoaderArgument(ObjectType.TAG));
+        final UUID objectId = (UUID) controlCacheDispatcher.getCacheController(CacheType.OBJECT_ID).get(IdCacheKey.forRecordId(TableName.TAG, recordId), new CacheLoaderArgument(ObjectType.TAG));
         Assert.assertEquals(objectId, result.getId());
 
-        final Long accountRecordId = (Long) controlCacheDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID).get(tag.getId().toString(), new CacheLoaderArgument(ObjectType.TAG));
+        final Long accountRecordId = (Long) controlCacheDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID).get(IdCacheKey.forObjectId(tag.getId()), new CacheLoaderArgument(ObjectType.TAG));
         Assert.assertEquals(accountRecordId, result.getAccountRecordId());
 
     }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
+public class TestGuavaCacheBasedCacheController extends UtilTestSuiteNoDB {
+
+    private static final Executor SAME_THREAD_EXECUTOR = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    private final Map<String, Object> values = new HashMap<String, Object>();
+    private final AtomicInteger nbLoads = new AtomicInteger();
+    private final FakeTicker ticker = new FakeTicker();
+
+    private BaseCacheLoader cacheLoader;
+
+    @BeforeMethod(groups = "fast")
+    public void beforeMethod() throws Exception {
+        super.beforeMethod();
+
+        values.clear();
+        nbLoads.set(0);
+        cacheLoader = new BaseCacheLoader(null, null) {
+            @Override
+            public CacheType getCacheType() {
+                return CacheType.TENANT_KV;
+            }
+
+            @Override
+            public Object load(final Object key, final Object argument) {
+                checkCacheLoaderStatus();
+                nbLoads.incrementAndGet();
+                return values.get(key);
+            }
+        };
+        cacheLoader.init();
+    }
+
+    @Test(groups = "fast")
+    public void testLoadOnMiss() throws Exception {
+        final GuavaCacheBasedCacheController<Object, Object> cacheController = createCacheController(100, 0, 0);
+        values.put("key", "value");
+
+        Assert.assertEquals(cacheController.get("key", newCacheLoaderArgument()), "value");
+        Assert.assertEquals(cacheController.get("key", newCacheLoaderArgument()), "value");
+        Assert.assertEquals(nbLoads.get(), 1);
+        Assert.assertEquals(cacheController.size(), 1);
+
+        final CacheStats stats = cacheController.getStats();
+        Assert.assertEquals(stats.hitCount(), 1);
+        Assert.assertEquals(stats.missCount(), 1);
+        Assert.assertEquals(stats.loadSuccessCount(), 1);
+
+        // Missing values are not cached
+        Assert.assertNull(cacheController.get("unknown", newCacheLoaderArgument()));
+        Assert.assertNull(cacheController.get("unknown", newCacheLoaderArgument()));
+        Assert.assertEquals(nbLoads.get(), 3);
+        Assert.assertEquals(cacheController.size(), 1);
+
+        Assert.assertTrue(cacheController.remove("key"));
+        Assert.assertFalse(cacheController.remove("key"));
+        Assert.assertEquals(cacheController.size(), 0);
+
+        // add doesn't override an existing entry
+        cacheController.add("other", "value1");
+        cacheController.add("other", "value2");
+        Assert.assertEquals(cacheController.get("other", newCacheLoaderArgument()), "value1");
+        cacheController.removeAll();
+        Assert.assertEquals(cacheController.size(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testMaximumWeight() throws Exception {
+        final GuavaCacheBasedCacheController<Object, Object> cacheController = createCacheController(10, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            values.put("key" + i, "value" + i);
+            Assert.assertEquals(cacheController.get("key" + i, newCacheLoaderArgument()), "value" + i);
+        }
+        Assert.assertTrue(cacheController.size() <= 10);
+
+        // Collections weigh their size
+        values.put("list", ImmutableList.<Integer>of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11));
+        Assert.assertEquals(cacheController.get("list", newCacheLoaderArgument()), values.get("list"));
+        Assert.assertTrue(cacheController.size() <= 10);
+        Assert.assertTrue(cacheController.getStats().evictionCount() >= 90);
+    }
+
+    @Test(groups = "fast")
+    public void testRefreshAndExpiration() throws Exception {
+        final GuavaCacheBasedCacheController<Object, Object> cacheController = createCacheController(100, 600, 300);
+        values.put("key", "value1");
+        Assert.assertEquals(cacheController.get("key", newCacheLoaderArgument()), "value1");
+
+        // Not yet stale
+        values.put("key", "value2");
+        ticker.advance(200, TimeUnit.SECONDS);
+        Assert.assertEquals(cacheController.get("key", newCacheLoaderArgument()), "value1");
+        Assert.assertEquals(nbLoads.get(), 1);
+
+        // Stale: the entry is reloaded on read, without expiring
+        ticker.advance(200, TimeUnit.SECONDS);
+        cacheController.get("key", newCacheLoaderArgument());
+        Assert.assertEquals(cacheController.get("key", newCacheLoaderArgument()), "value2");
+        Assert.assertEquals(nbLoads.get(), 2);
+
+        // Entries which haven't been read in a while still expire
+        values.put("key", "value3");
+        ticker.advance(601, TimeUnit.SECONDS);
+        Assert.assertEquals(cacheController.get("key", newCacheLoaderArgument()), "value3");
+        Assert.assertEquals(nbLoads.get(), 3);
+    }
+
+    private GuavaCacheBasedCacheController<Object, Object> createCacheController(final long maximumWeight, final long timeToLiveSeconds, final long refreshAfterWriteSeconds) {
+        return new GuavaCacheBasedCacheController<Object, Object>(CacheType.TENANT_KV, cacheLoader, maximumWeight, timeToLiveSeconds, 0, refreshAfterWriteSeconds, SAME_THREAD_EXECUTOR, ticker);
+    }
+
+    private CacheLoaderArgument newCacheLoaderArgument() {
+        return new CacheLoaderArgument(ObjectType.TENANT_KVS, new Object[]{}, internalCallContext);
+    }
+
+    private static final class FakeTicker extends Ticker {
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        public void advance(final long time, final TimeUnit timeUnit) {
+            nanos.addAndGet(timeUnit.toNanos(time));
+        }
+    }
+}
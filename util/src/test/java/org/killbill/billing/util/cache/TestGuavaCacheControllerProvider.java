@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.killbill.billing.util.cache;
+
+import java.util.Map;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.config.CacheConfig;
+import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.loader.CacheLoader;
+
+public class TestGuavaCacheControllerProvider extends UtilTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testStatsGauges() throws Exception {
+        final CacheManager cacheManager = new CacheManager(new Configuration().name("TestGuavaCacheControllerProvider"));
+        try {
+            cacheManager.addCache(new Cache(new CacheConfiguration(CacheType.TENANT_KV.getCacheName(), 100).timeToLiveSeconds(600)));
+            final CacheLoader cacheLoader = Mockito.mock(CacheLoader.class);
+            Mockito.when(cacheLoader.load(Mockito.eq("key"), Mockito.any())).thenReturn("value");
+            cacheManager.getCache(CacheType.TENANT_KV.getCacheName()).registerCacheLoader(cacheLoader);
+
+            final CacheConfig cacheConfig = Mockito.mock(CacheConfig.class);
+            Mockito.when(cacheConfig.getCacheRefreshAfterWrite()).thenReturn(new TimeSpan("0s"));
+            final MetricRegistry metricRegistry = new MetricRegistry();
+            final GuavaCacheControllerProvider provider = new GuavaCacheControllerProvider(cacheManager, cacheConfig, metricRegistry);
+
+            final Map<CacheType, CacheController<Object, Object>> cacheControllers = provider.getCacheControllers();
+            final CacheController<Object, Object> cacheController = cacheControllers.get(CacheType.TENANT_KV);
+            final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(ObjectType.TENANT_KVS, new Object[]{}, internalCallContext);
+            Assert.assertEquals(cacheController.get("key", cacheLoaderArgument), "value");
+            Assert.assertEquals(cacheController.get("key", cacheLoaderArgument), "value");
+
+            final Map<String, Gauge> gauges = metricRegistry.getGauges();
+            final String prefix = MetricRegistry.name(GuavaCacheBasedCacheController.class, CacheType.TENANT_KV.getCacheName());
+            Assert.assertEquals(gauges.get(prefix + ".size").getValue(), 1L);
+            Assert.assertEquals(gauges.get(prefix + ".hitCount").getValue(), 1L);
+            Assert.assertEquals(gauges.get(prefix + ".missCount").getValue(), 1L);
+
+            provider.close();
+        } finally {
+            cacheManager.shutdown();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.UUID;
+
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.dao.TableName;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestIdCacheKey extends UtilTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testObjectIdKeys() throws Exception {
+        final UUID objectId = UUID.randomUUID();
+
+        final IdCacheKey key = IdCacheKey.forObjectId(objectId);
+        Assert.assertEquals(key.getObjectId(), objectId);
+        Assert.assertNull(key.getTableName());
+        Assert.assertEquals(key.toString(), objectId.toString());
+
+        // Ids bound as Strings by the SqlDaos map to the same entry, whatever their case
+        Assert.assertEquals(IdCacheKey.forObjectId(objectId.toString()), key);
+        Assert.assertEquals(IdCacheKey.forObjectId(objectId.toString().toUpperCase()), key);
+        Assert.assertEquals(IdCacheKey.forObjectId(objectId.toString().toUpperCase()).hashCode(), key.hashCode());
+        Assert.assertEquals(IdCacheKey.forCacheType(CacheType.RECORD_ID, TableName.ACCOUNT, objectId), key);
+
+        Assert.assertFalse(IdCacheKey.forObjectId(UUID.randomUUID()).equals(key));
+    }
+
+    @Test(groups = "fast")
+    public void testRecordIdKeys() throws Exception {
+        final IdCacheKey key = IdCacheKey.forRecordId(TableName.TAG, 12L);
+        Assert.assertEquals(key.getRecordId(), (Long) 12L);
+        Assert.assertEquals(key.getTableName(), TableName.TAG);
+        Assert.assertEquals(key.toString(), TableName.TAG + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + 12);
+
+        Assert.assertEquals(IdCacheKey.forCacheType(CacheType.OBJECT_ID, TableName.TAG, 12L), key);
+        Assert.assertEquals(IdCacheKey.forCacheType(CacheType.OBJECT_ID, TableName.TAG, 12L).hashCode(), key.hashCode());
+
+        // Record ids are only unique per table
+        Assert.assertFalse(IdCacheKey.forRecordId(TableName.ACCOUNT, 12L).equals(key));
+        Assert.assertFalse(IdCacheKey.forRecordId(TableName.TAG, 13L).equals(key));
+    }
+}
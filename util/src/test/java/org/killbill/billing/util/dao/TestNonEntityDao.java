@@ -18,6 +18,7 @@ package org.killbill.billing.util.dao;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.Map;
 import java.util.UUID;
 
 import org.skife.jdbi.v2.Handle;
@@ -27,6 +28,11 @@ import org.testng.annotations.Test;
 
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.util.UtilTestSuiteWithEmbeddedDB;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
+import org.killbill.billing.util.cache.IdCacheKey;
+
+import com.google.common.collect.ImmutableList;
 
 public class TestNonEntityDao extends UtilTestSuiteWithEmbeddedDB {
 
@@ -91,6 +97,49 @@ public class TestNonEntityDao extends UtilTestSuiteWithEmbeddedDB {
         Assert.assertEquals(resultTenantRecordId, tenantRecordId);
     }
 
+    @Test(groups = "slow")
+    public void testRetrieveRecordIdsFromObjects() throws IOException {
+        insertAccount();
+        insertTag();
+
+        final UUID unknownId = UUID.randomUUID();
+
+        final Map<UUID, Long> recordIds = nonEntityDao.retrieveRecordIdsFromObjects(ImmutableList.<UUID>of(accountId, unknownId), ObjectType.ACCOUNT, null);
+        Assert.assertEquals(recordIds.size(), 1);
+        Assert.assertEquals(recordIds.get(accountId), accountRecordId);
+
+        final Map<UUID, Long> accountRecordIds = nonEntityDao.retrieveAccountRecordIdsFromObjects(ImmutableList.<UUID>of(tagId, unknownId), ObjectType.TAG, null);
+        Assert.assertEquals(accountRecordIds.size(), 1);
+        Assert.assertEquals(accountRecordIds.get(tagId), accountRecordId);
+
+        final Map<UUID, Long> tenantRecordIds = nonEntityDao.retrieveTenantRecordIdsFromObjects(ImmutableList.<UUID>of(accountId), ObjectType.ACCOUNT, null);
+        Assert.assertEquals(tenantRecordIds.get(accountId), tenantRecordId);
+
+        Assert.assertTrue(nonEntityDao.retrieveAccountRecordIdsFromObjects(ImmutableList.<UUID>of(tagDefinitionId), ObjectType.TAG_DEFINITION, null).isEmpty());
+    }
+
+    @Test(groups = "slow")
+    public void testRetrieveAccountRecordIdsFromObjectsPopulatesCache() throws IOException {
+        insertAccount();
+
+        final CacheController<Object, Object> cache = controlCacheDispatcher.getCacheController(CacheType.ACCOUNT_RECORD_ID);
+        Assert.assertNull(cache.getIfPresent(IdCacheKey.forObjectId(accountId)));
+
+        final Map<UUID, Long> accountRecordIds = nonEntityDao.retrieveAccountRecordIdsFromObjects(ImmutableList.<UUID>of(accountId), ObjectType.ACCOUNT, cache);
+        Assert.assertEquals(accountRecordIds.get(accountId), accountRecordId);
+        Assert.assertEquals(cache.getIfPresent(IdCacheKey.forObjectId(accountId)), accountRecordId);
+
+        // Served from the cache from now on
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute("delete from accounts where id = ?", accountId.toString());
+                return null;
+            }
+        });
+        Assert.assertEquals(nonEntityDao.retrieveAccountRecordIdsFromObjects(ImmutableList.<UUID>of(accountId), ObjectType.ACCOUNT, cache).get(accountId), accountRecordId);
+    }
+
     private void insertAccount() throws IOException {
         dbi.withHandle(new HandleCallback<Void>() {
             @Override
@@ -20,6 +20,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -32,6 +34,7 @@ import org.killbill.billing.util.entity.Pagination;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 
 public class MockEntityDaoBase<M extends EntityModelDao<E>, E extends Entity, U extends BillingExceptionBase> implements EntityDao<M, E, U> {
 
@@ -78,6 +81,21 @@ public class MockEntityDaoBase<M extends EntityModelDao<E>, E extends Entity, U
         return DefaultPagination.<M>build(offset, limit, ImmutableList.<M>copyOf(getAll(context)));
     }
 
+    @Override
+    public Pagination<M> getByRecordIdCursor(final Long recordIdCursor, final Long limit, final boolean withCount, final InternalTenantContext context) {
+        final SortedMap<Long, M> sortedResults = new TreeMap<Long, M>();
+        for (final Map<Long, M> cur : entities.values()) {
+            final Long recordId = cur.keySet().iterator().next();
+            if (recordId > recordIdCursor) {
+                sortedResults.put(recordId, cur.values().iterator().next());
+            }
+        }
+        final List<M> results = ImmutableList.<M>copyOf(Iterables.<M>limit(sortedResults.values(), limit.intValue()));
+        final Long nextRecordIdCursor = results.isEmpty() || results.size() < limit ? null : Iterables.<Long>get(sortedResults.keySet(), results.size() - 1);
+        final Long count = withCount ? getCount(context) : null;
+        return new DefaultPagination<M>(recordIdCursor, limit, count, count, nextRecordIdCursor, results.iterator());
+    }
+
     @Override
     public Long getCount(final InternalTenantContext context) {
         return (long) entities.keySet().size();
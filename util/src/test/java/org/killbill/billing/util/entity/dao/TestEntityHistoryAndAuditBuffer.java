@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.killbill.billing.util.entity.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.util.UtilTestSuiteWithEmbeddedDB;
+import org.killbill.billing.util.api.AuditLevel;
+import org.killbill.billing.util.audit.AuditLog;
+import org.killbill.billing.util.audit.ChangeType;
+import org.killbill.billing.util.customfield.dao.CustomFieldModelDao;
+import org.killbill.billing.util.customfield.dao.CustomFieldSqlDao;
+import org.killbill.billing.util.dao.TableName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterators;
+
+public class TestEntityHistoryAndAuditBuffer extends UtilTestSuiteWithEmbeddedDB {
+
+    private static final Logger log = LoggerFactory.getLogger(TestEntityHistoryAndAuditBuffer.class);
+
+    @Test(groups = "slow")
+    public void testBufferedHistoryAndAudit() throws Exception {
+        final EntitySqlDaoTransactionalJdbiWrapper bufferedTransactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, controlCacheDispatcher, nonEntityDao, true);
+
+        // Create and delete some fields in the same transaction: each field has two history rows
+        final List<CustomFieldModelDao> customFields = createCustomFields(bufferedTransactionalSqlDao, 10, true);
+        for (final CustomFieldModelDao customField : customFields) {
+            final List<AuditLog> auditLogs = auditDao.getAuditLogsForId(TableName.CUSTOM_FIELD, customField.getId(), AuditLevel.FULL, internalCallContext);
+            Assert.assertEquals(auditLogs.size(), 2);
+            Assert.assertEquals(auditLogs.get(0).getChangeType(), ChangeType.INSERT);
+            Assert.assertEquals(auditLogs.get(1).getChangeType(), ChangeType.DELETE);
+        }
+
+        // Batch creates go through the same buffer
+        final List<CustomFieldModelDao> batchCreatedCustomFields = batchCreateCustomFields(bufferedTransactionalSqlDao, 10);
+        for (final CustomFieldModelDao customField : batchCreatedCustomFields) {
+            final List<AuditLog> auditLogs = auditDao.getAuditLogsForId(TableName.CUSTOM_FIELD, customField.getId(), AuditLevel.FULL, internalCallContext);
+            Assert.assertEquals(auditLogs.size(), 1);
+            Assert.assertEquals(auditLogs.get(0).getChangeType(), ChangeType.INSERT);
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testHistoryAndAuditVisibilityWithinTransaction() throws Exception {
+        final EntitySqlDaoTransactionalJdbiWrapper singleRowTransactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, controlCacheDispatcher, nonEntityDao, false);
+        final EntitySqlDaoTransactionalJdbiWrapper bufferedTransactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, controlCacheDispatcher, nonEntityDao, true);
+
+        // Single-row mode: the audit rows are written along with each statement
+        int nbAuditLogs = countAuditLogs(singleRowTransactionalSqlDao);
+        Assert.assertEquals(createCustomFieldsAndCountAuditLogs(singleRowTransactionalSqlDao, 3), nbAuditLogs + 3);
+        nbAuditLogs = countAuditLogs(singleRowTransactionalSqlDao);
+
+        // Buffered mode: the audit rows are only written right before the commit
+        Assert.assertEquals(createCustomFieldsAndCountAuditLogs(bufferedTransactionalSqlDao, 3), nbAuditLogs);
+        Assert.assertEquals(countAuditLogs(bufferedTransactionalSqlDao), nbAuditLogs + 3);
+    }
+
+    @Test(groups = "slow", enabled = false, description = "Compare the single-row and buffered history and audit modes")
+    public void benchmarkHistoryAndAudit() throws Exception {
+        final EntitySqlDaoTransactionalJdbiWrapper singleRowTransactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, controlCacheDispatcher, nonEntityDao, false);
+        final EntitySqlDaoTransactionalJdbiWrapper bufferedTransactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, clock, controlCacheDispatcher, nonEntityDao, true);
+
+        for (final int nbEntities : new int[]{10, 100, 1000}) {
+            // Warm-up
+            createCustomFields(singleRowTransactionalSqlDao, nbEntities, false);
+            createCustomFields(bufferedTransactionalSqlDao, nbEntities, false);
+
+            long startNanos = System.nanoTime();
+            createCustomFields(singleRowTransactionalSqlDao, nbEntities, false);
+            final long singleRowMillis = (System.nanoTime() - startNanos) / 1000000;
+
+            startNanos = System.nanoTime();
+            createCustomFields(bufferedTransactionalSqlDao, nbEntities, false);
+            final long bufferedMillis = (System.nanoTime() - startNanos) / 1000000;
+
+            startNanos = System.nanoTime();
+            batchCreateCustomFields(bufferedTransactionalSqlDao, nbEntities);
+            final long batchCreateMillis = (System.nanoTime() - startNanos) / 1000000;
+
+            log.info("{} entities: single-row={}ms, buffered={}ms, buffered with batch create={}ms", new Object[]{nbEntities, singleRowMillis, bufferedMillis, batchCreateMillis});
+        }
+    }
+
+    private List<CustomFieldModelDao> createCustomFields(final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao, final int nbEntities, final boolean delete) {
+        final List<CustomFieldModelDao> customFields = buildCustomFields(nbEntities);
+        transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final CustomFieldSqlDao customFieldSqlDao = entitySqlDaoWrapperFactory.become(CustomFieldSqlDao.class);
+                for (final CustomFieldModelDao customField : customFields) {
+                    customFieldSqlDao.create(customField, internalCallContext);
+                }
+                if (delete) {
+                    for (final CustomFieldModelDao customField : customFields) {
+                        customFieldSqlDao.markTagAsDeleted(customField.getId().toString(), internalCallContext);
+                    }
+                }
+                return null;
+            }
+        });
+        return customFields;
+    }
+
+    private int createCustomFieldsAndCountAuditLogs(final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao, final int nbEntities) {
+        final List<CustomFieldModelDao> customFields = buildCustomFields(nbEntities);
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Integer>() {
+            @Override
+            public Integer inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                final CustomFieldSqlDao customFieldSqlDao = entitySqlDaoWrapperFactory.become(CustomFieldSqlDao.class);
+                for (final CustomFieldModelDao customField : customFields) {
+                    customFieldSqlDao.create(customField, internalCallContext);
+                }
+                return Iterators.size(customFieldSqlDao.getAuditLogsForTableNameAndAccountRecordId(TableName.CUSTOM_FIELD_HISTORY.name(), internalCallContext));
+            }
+        });
+    }
+
+    private int countAuditLogs(final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao) {
+        return transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Integer>() {
+            @Override
+            public Integer inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                return Iterators.size(entitySqlDaoWrapperFactory.become(CustomFieldSqlDao.class).getAuditLogsForTableNameAndAccountRecordId(TableName.CUSTOM_FIELD_HISTORY.name(), internalCallContext));
+            }
+        });
+    }
+
+    private List<CustomFieldModelDao> batchCreateCustomFields(final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao, final int nbEntities) {
+        final List<CustomFieldModelDao> customFields = buildCustomFields(nbEntities);
+        transactionalSqlDao.execute(new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory<EntitySqlDao> entitySqlDaoWrapperFactory) throws Exception {
+                entitySqlDaoWrapperFactory.become(CustomFieldSqlDao.class).batchCreate(customFields, internalCallContext);
+                return null;
+            }
+        });
+        return customFields;
+    }
+
+    private List<CustomFieldModelDao> buildCustomFields(final int nbEntities) {
+        final UUID objectId = UUID.randomUUID();
+        final List<CustomFieldModelDao> customFields = new ArrayList<CustomFieldModelDao>(nbEntities);
+        for (int i = 0; i < nbEntities; i++) {
+            customFields.add(new CustomFieldModelDao(UUID.randomUUID(), clock.getUTCNow(), clock.getUTCNow(), "field-" + i, "value-" + i, objectId, ObjectType.ACCOUNT));
+        }
+        return customFields;
+    }
+}
@@ -47,6 +47,13 @@ public class MockTagDao extends MockEntityDaoBase<TagModelDao, Tag, TagApiExcept
         tagStore.get(tag.getObjectId()).add(tag);
     }
 
+    @Override
+    public void createTags(final List<TagModelDao> tags, final InternalCallContext context) throws TagApiException {
+        for (final TagModelDao tag : tags) {
+            create(tag, context);
+        }
+    }
+
     @Override
     public void deleteTag(final UUID objectId, final ObjectType objectType,
                           final UUID tagDefinitionId, final InternalCallContext context) {
@@ -93,7 +100,12 @@ public class MockTagDao extends MockEntityDaoBase<TagModelDao, Tag, TagApiExcept
 
     @Override
     public List<TagModelDao> getTagsForAccount(final boolean includedDeleted, final InternalTenantContext internalTenantContext) {
-        throw new UnsupportedOperationException();
+        // The store isn't keyed by account: return everything
+        final List<TagModelDao> result = new ArrayList<TagModelDao>();
+        for (final List<TagModelDao> tags : tagStore.values()) {
+            result.addAll(tags);
+        }
+        return result;
     }
 
     public void clear() {
@@ -28,7 +28,11 @@ import org.killbill.billing.ObjectType;
 import org.killbill.billing.api.TestApiListener.NextEvent;
 import org.killbill.billing.util.UtilTestSuiteWithEmbeddedDB;
 import org.killbill.billing.util.api.TagApiException;
+import org.killbill.billing.util.api.AuditLevel;
 import org.killbill.billing.util.api.TagDefinitionApiException;
+import org.killbill.billing.util.audit.AuditLog;
+import org.killbill.billing.util.audit.ChangeType;
+import org.killbill.billing.util.dao.TableName;
 import org.killbill.billing.util.tag.ControlTagType;
 import org.killbill.billing.util.tag.DescriptiveTag;
 import org.killbill.billing.util.tag.Tag;
@@ -176,4 +180,32 @@ public class TestDefaultTagDao extends UtilTestSuiteWithEmbeddedDB {
         }
     }
 
+    @Test(groups = "slow")
+    public void testCreateTagsInBatch() throws Exception {
+        final UUID objectId = UUID.randomUUID();
+        final ObjectType objectType = ObjectType.INVOICE_ITEM;
+
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        final Tag existingTag = new DescriptiveTag(ControlTagType.AUTO_INVOICING_OFF.getId(), objectType, objectId, internalCallContext.getCreatedDate());
+        tagDao.create(new TagModelDao(existingTag), internalCallContext);
+        assertListenerStatus();
+
+        // The existing tag is ignored
+        final List<TagModelDao> tags = new ArrayList<TagModelDao>();
+        tags.add(new TagModelDao(internalCallContext.getCreatedDate(), ControlTagType.AUTO_INVOICING_OFF.getId(), objectId, objectType));
+        tags.add(new TagModelDao(internalCallContext.getCreatedDate(), ControlTagType.AUTO_PAY_OFF.getId(), objectId, objectType));
+        tags.add(new TagModelDao(internalCallContext.getCreatedDate(), ControlTagType.OVERDUE_ENFORCEMENT_OFF.getId(), objectId, objectType));
+        eventsListener.pushExpectedEvents(NextEvent.TAG, NextEvent.TAG);
+        tagDao.createTags(tags, internalCallContext);
+        assertListenerStatus();
+
+        Assert.assertEquals(tagDao.getTagsForObject(objectId, objectType, false, internalCallContext).size(), 3);
+
+        // Each new tag has its history and audit rows
+        for (final TagModelDao tag : tags.subList(1, 3)) {
+            final List<AuditLog> auditLogs = auditDao.getAuditLogsForId(TableName.TAG, tag.getId(), AuditLevel.FULL, internalCallContext);
+            Assert.assertEquals(auditLogs.size(), 1);
+            Assert.assertEquals(auditLogs.get(0).getChangeType(), ChangeType.INSERT);
+        }
+    }
 }